@@ -44,6 +44,7 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.openflow.protocol.OFMessage;
 import org.openflow.protocol.OFPacketIn;
@@ -61,12 +62,19 @@ import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.IOFSwitch.PortChangeType;
+import net.floodlightcontroller.core.IOFSwitchListener;
 import net.floodlightcontroller.core.OFSwitchPort;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService.CounterException;
+import net.floodlightcontroller.debugcounter.NullDebugCounter;
 import net.floodlightcontroller.devicemanager.IDeviceService;
 import net.floodlightcontroller.devicemanager.internal.Device;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
 import net.floodlightcontroller.packet.ARP;
 import net.floodlightcontroller.packet.Data;
 import net.floodlightcontroller.packet.Ethernet;
@@ -75,6 +83,7 @@ import net.floodlightcontroller.packet.IPv4;
 import net.floodlightcontroller.routing.IRoutingDecision;
 import net.floodlightcontroller.routing.RoutingDecision;
 import net.floodlightcontroller.topology.IOlimpsTopologyService;
+import net.floodlightcontroller.topology.ITopologyListener;
 import net.floodlightcontroller.topology.NodePortTuple;
 import net.floodlightcontroller.util.MACAddress;
 
@@ -89,11 +98,17 @@ import net.floodlightcontroller.util.MACAddress;
  * 
  * @author Michael Bredel <michael.bredel@cern.ch>
  */
-public class ARPProxy extends TimerTask implements IOFMessageListener, IFloodlightModule, IARPProxyService {
+public class ARPProxy extends TimerTask implements IOFMessageListener, IOFSwitchListener, ITopologyListener, IFloodlightModule, IARPProxyService {
 	/** Broadcast MAC address. */
 	protected static final long BROADCAST_MAC = 0xffffffffffffL;
 	/** APR timeout in milliseconds. Default = 1 second. */
 	protected static final long ARP_TIMEOUT = 1000L;
+	/** The maximum number of targets with pending ARP requests. */
+	protected static final int ARP_MAX_PENDING_TARGETS = 4096;
+	/** The maximum number of pending ARP requests per target. */
+	protected static final int ARP_MAX_REQUESTS_PER_TARGET = 64;
+	/** The package name of the ARP proxy, used for debug counters. */
+	protected static final String PACKAGE = ARPProxy.class.getPackage().getName();
 	
 	/** Logger to log ProxyARP events.*/
 	protected static Logger logger;
@@ -103,14 +118,20 @@ public class ARPProxy extends TimerTask implements IOFMessageListener, IFloodlig
 	protected IDeviceService deviceManager;
 	/** Required Module: Topology Manager module. We listen to the topologyManager for changes of the topology. */
 	protected IOlimpsTopologyService topologyManager;
+	/** Optional Module: Debug counter service. */
+	protected IDebugCounterService debugCounters;
 	/** A list of APR proxy listener. */
 	protected List<IARPProxyListener> proxyListener;
-	/** A map that maps: TargetIPAddress -> Set of ARPRequest. */
-	protected Map<Integer, Set<ARPMessage>> arpRequests;
+	/** The ARP requests that wait for a reply, by target IP address. */
+	protected PendingARPTable pendingARPs;
 	/** A timer object to schedule ARP timeouts. */
 	protected Timer timer;
 	/**List of ports through which ARPs are not sent. */
     protected Set<NodePortTuple> suppressARP;
+    /** A map that maps: SwitchId -> VLAN ID -> edge ports to which ARP requests are sent. Computed on demand. */
+    protected Map<Long, Map<Short, List<OFSwitchPort>>> edgePorts;
+    /** Incremented whenever the edge ports are invalidated. */
+    protected AtomicLong edgePortsVersion;
 
 	@Override
 	public String getName() {
@@ -155,42 +176,37 @@ public class ARPProxy extends TimerTask implements IOFMessageListener, IFloodlig
 		floodlightProvider = context.getServiceImpl(IFloodlightProviderService.class);
 		topologyManager = context.getServiceImpl(IOlimpsTopologyService.class);
 		deviceManager = context.getServiceImpl(IDeviceService.class);
+		debugCounters = context.getServiceImpl(IDebugCounterService.class);
 		logger = LoggerFactory.getLogger(ARPProxy.class);	
 	}
 
 	@Override
-	public void startUp(FloodlightModuleContext context) {
+	public void startUp(FloodlightModuleContext context) throws FloodlightModuleException {
 		floodlightProvider.addOFMessageListener(OFType.PACKET_IN, this);
-		arpRequests = new ConcurrentHashMap<Integer, Set<ARPMessage>>();
+		floodlightProvider.addOFSwitchListener(this);
+		topologyManager.addListener(this);
+		edgePorts = new ConcurrentHashMap<Long, Map<Short, List<OFSwitchPort>>>();
+		edgePortsVersion = new AtomicLong();
+		pendingARPs = new PendingARPTable(ARP_TIMEOUT, ARP_MAX_PENDING_TARGETS, ARP_MAX_REQUESTS_PER_TARGET);
+		registerARPProxyDebugCounters();
 		proxyListener = new ArrayList<IARPProxyListener>();
 		timer = new Timer();
-		timer.schedule(this, ARP_TIMEOUT, ARP_TIMEOUT);
+		timer.schedule(this, PendingARPTable.TICK_DURATION, PendingARPTable.TICK_DURATION);
 		suppressARP = Collections.synchronizedSet(new HashSet<NodePortTuple>());
 	}
 	
 
 	@Override
 	public void initiateARPRequest(long switchId, int portId, long srcMACAddress, int srcIPAddress, int dstIPAddress) {
-		// Check if there is an ongoing ARP process for this packet.
-		if (arpRequests.containsKey(srcIPAddress)) {
-			// Update start time of current ARPRequest objects
-			long startTime = System.currentTimeMillis();
-			Set<ARPMessage> arpRequestSet = arpRequests.get(srcIPAddress);
-
-			for (Iterator<ARPMessage> iter = arpRequestSet.iterator(); iter.hasNext();) {
-				iter.next().setStartTime(startTime);
-			}
-		} else {
-			ARPMessage arpRequest = new ARPMessage()
-				.setSourceMACAddress(srcMACAddress)
-				.setSourceIPAddress(srcIPAddress)
-				.setTargetIPAddress(dstIPAddress)
-				.setSwitchId(switchId)
-				.setInPort(portId)
-				.setStartTime(System.currentTimeMillis());
-			// Put new ARPRequest object to current ARPRequests list.
-			this.putArpRequest(dstIPAddress, arpRequest);
-			// Send ARP request
+		ARPMessage arpRequest = new ARPMessage()
+			.setSourceMACAddress(srcMACAddress)
+			.setSourceIPAddress(srcIPAddress)
+			.setTargetIPAddress(dstIPAddress)
+			.setSwitchId(switchId)
+			.setInPort(portId)
+			.setStartTime(System.currentTimeMillis());
+		// Put new ARPRequest object to the pending ARP requests. Send it, if there is no ongoing ARP process for the target.
+		if (pendingARPs.put(arpRequest)) {
 			this.sendARPRequest(arpRequest);
 		}
 	}
@@ -209,12 +225,14 @@ public class ARPProxy extends TimerTask implements IOFMessageListener, IFloodlig
 	public void addToSuppressARPs(long switchId, int portId) {
 		NodePortTuple npt = new NodePortTuple(switchId, portId);
 		this.suppressARP.add(npt);
+		this.invalidateEdgePorts(switchId);
 	}
 
 	@Override
 	public void removeFromSuppressARPs(long switchId, int portId) {
 		NodePortTuple npt = new NodePortTuple(switchId, portId);
 		this.suppressARP.remove(npt);
+		this.invalidateEdgePorts(switchId);
 	}
 
 	@Override
@@ -338,14 +356,20 @@ public class ARPProxy extends TimerTask implements IOFMessageListener, IFloodlig
 		}
 		
 		// Check if there is an ongoing ARP process for this packet.
-		if (arpRequests.containsKey(targetIPAddress)) {
-			// Update start time of current ARPRequest objects
-			long startTime = System.currentTimeMillis();
-			Set<ARPMessage> arpRequestSet = arpRequests.get(targetIPAddress);
-			
-			for (Iterator<ARPMessage> iter = arpRequestSet.iterator(); iter.hasNext();) {
-				iter.next().setStartTime(startTime);
+		if (pendingARPs.contains(targetIPAddress)) {
+			// Join the ongoing ARP process, which extends its timeout.
+			ARPMessage arpMessage = new ARPMessage()
+				.setSourceMACAddress(sourceMACAddress)
+				.setSourceIPAddress(sourceIPAddress)
+				.setTargetIPAddress(targetIPAddress)
+				.setSwitchId(switchId)
+				.setInPort(portId)
+				.setStartTime(System.currentTimeMillis());
+			if (!pendingARPs.put(arpMessage)) {
+				return Command.STOP;
 			}
+			// The ARP process ended in the meantime.
+			this.sendARPRequest(arpMessage);
 			return Command.STOP;
 		}
 		
@@ -379,10 +403,11 @@ public class ARPProxy extends TimerTask implements IOFMessageListener, IFloodlig
 					.setSwitchId(switchId)
 					.setInPort(portId)
 					.setStartTime(System.currentTimeMillis());
-				// Put new ARPRequest object to current ARPRequests list.
-				this.putArpRequest(targetIPAddress, arpMessage);
-				// Send ARP request.
-				this.sendARPRequest(arpMessage);
+				// Put new ARPRequest object to the pending ARP requests.
+				if (pendingARPs.put(arpMessage)) {
+					// Send ARP request.
+					this.sendARPRequest(arpMessage);
+				}
 			}
 		} else {
 			ARPMessage arpMessage = new ARPMessage()
@@ -392,10 +417,11 @@ public class ARPProxy extends TimerTask implements IOFMessageListener, IFloodlig
 				.setSwitchId(switchId)
 				.setInPort(portId)
 				.setStartTime(System.currentTimeMillis());
-			// Put new ARPRequest object to current ARPRequests list.		
-			this.putArpRequest(targetIPAddress, arpMessage);
-			// Send ARP request
-			this.sendARPRequest(arpMessage);
+			// Put new ARPRequest object to the pending ARP requests.
+			if (pendingARPs.put(arpMessage)) {
+				// Send ARP request
+				this.sendARPRequest(arpMessage);
+			}
 		}
 		
 		// Make a routing decision and forward the ARP message
@@ -418,10 +444,8 @@ public class ARPProxy extends TimerTask implements IOFMessageListener, IFloodlig
 	protected Command handleARPReply(ARP arp, long switchId, int portId, FloodlightContext cntx) {
 		/* The IP address of the ARP target. */
 		int targetIPAddress = IPv4.toIPv4Address(arp.getSenderProtocolAddress());
-		/* The set of APRRequest objects related to the target IP address.*/
-		Set<ARPMessage> arpRequestSet = arpRequests.remove(targetIPAddress);
-		/* The ARPRequenst object related to the ARP reply message. */
-		ARPMessage arpMessage;
+		/* The APRRequest objects related to the target IP address.*/
+		Collection<ARPMessage> arpRequestSet = pendingARPs.remove(targetIPAddress);
 		
 		if (logger.isDebugEnabled()) {
 			logger.debug("Received ARP reply message at " + HexString.toHexString(switchId) + " - " + OFSwitchPort.stringOf(portId) + " from " + IPv4.fromIPv4Address(IPv4.toIPv4Address(arp.getSenderProtocolAddress())));
@@ -432,9 +456,7 @@ public class ARPProxy extends TimerTask implements IOFMessageListener, IFloodlig
 		if (arpRequestSet == null)
 			return Command.STOP;
 		
-		for (Iterator<ARPMessage> iter = arpRequestSet.iterator(); iter.hasNext();) {
-			arpMessage = iter.next();
-			iter.remove();
+		for (ARPMessage arpMessage : arpRequestSet) {
 			arpMessage.setTargetMACAddress(MACAddress.valueOf(arp.getSenderHardwareAddress()).toLong());
 			sendARPReply(arpMessage);
 			
@@ -454,13 +476,15 @@ public class ARPProxy extends TimerTask implements IOFMessageListener, IFloodlig
 	/**
 	 * Creates an ARP request frame, puts it into a packet out message and 
 	 * sends the packet out message to all switch ports (attachment point ports)
-	 * that are not connected to other OpenFlow switches.
+	 * that are not connected to other OpenFlow switches. The frame is serialized
+	 * once per VLAN and sent as one packet out message with several output actions
+	 * per switch and VLAN.
 	 * 
 	 * @param arpMessage The ARPMessage object containing information regarding the current ARP process.
 	 */
 	protected void sendARPRequest(ARPMessage arpMessage) {
 		// Create an ARP request frame
-		IPacket arpReply = new Ethernet()
+		Ethernet arpRequest = (Ethernet) new Ethernet()
     		.setSourceMACAddress(Ethernet.toByteArray(arpMessage.getSourceMACAddress()))
         	.setDestinationMACAddress(Ethernet.toByteArray(BROADCAST_MAC))
         	.setEtherType(Ethernet.TYPE_ARP)
@@ -475,37 +499,107 @@ public class ARPProxy extends TimerTask implements IOFMessageListener, IFloodlig
 				.setTargetHardwareAddress(Ethernet.toByteArray(arpMessage.getTargetMACAddress()))
 				.setTargetProtocolAddress(IPv4.toIPv4AddressBytes(arpMessage.getTargetIPAddress()))
 				.setPayload(new Data(new byte[] {0x01})));
+		/* A map that maps: VLAN ID -> serialized ARP request frame. */
+		Map<Short, byte[]> frames = new HashMap<Short, byte[]>();
 		
 		// Send ARP request to all attachment point ports, except the one that received it.
 		for (long switchId : floodlightProvider.getAllSwitchDpids()) {
 			IOFSwitch sw = floodlightProvider.getSwitch(switchId);
-			for (OFSwitchPort port : sw.getPorts()) {
-				int virtPortId = port.getPortNumber();
-				// Don't send ARP request to the requester.
-				if (switchId == arpMessage.getSwitchId() && virtPortId == arpMessage.getInPort()) {
-					continue;
+			if (sw == null)
+				continue;
+			for (Map.Entry<Short, List<OFSwitchPort>> entry : this.getEdgePorts(sw).entrySet()) {
+				short vlan = entry.getKey();
+				List<Short> phyPortIds = new ArrayList<Short>(entry.getValue().size());
+				for (OFSwitchPort port : entry.getValue()) {
+					// Don't send ARP request to the requester.
+					if (switchId == arpMessage.getSwitchId() && port.getPortNumber() == arpMessage.getInPort()) {
+						continue;
+					}
+					phyPortIds.add(port.getOFPhysicalPort().getPortNumber());
 				}
-				// Don't send ARP if the ARP is suppressed.
-				if (this.isARPSuppressed(switchId, virtPortId)) {
+				if (phyPortIds.isEmpty())
 					continue;
+				
+				byte[] data = frames.get(vlan);
+				if (data == null) {
+					arpRequest.setVlanID(vlan);
+					data = arpRequest.serialize();
+					frames.put(vlan, data);
 				}
-				short phyPortId = port.getOFPhysicalPort().getPortNumber(); 
-				short vlan = port.getVlanId();
-				if (vlan > 0) {
-					((Ethernet) arpReply).setVlanID(vlan);
-				}
-				if (topologyManager.isAttachmentPointPort(switchId, virtPortId)) {
-					this.sendPOMessage(arpReply, sw, phyPortId);
-					if (logger.isDebugEnabled()) {
-						logger.debug("Send ARP request from " + HexString.toHexString(switchId) + " - " + port.getName() + " " + OFSwitchPort.stringOf(virtPortId) + " for target " + IPv4.fromIPv4Address(arpMessage.getTargetIPAddress()));
-					}
+				this.sendPOMessage(data, sw, phyPortIds);
+				if (logger.isDebugEnabled()) {
+					logger.debug("Send ARP request from " + HexString.toHexString(switchId) + " - " + phyPortIds + " (" + vlan + ") for target " + IPv4.fromIPv4Address(arpMessage.getTargetIPAddress()));
 				}
-				// Reset the vlan id.
-				((Ethernet) arpReply).setVlanID((short) -1);
 			}
 		}
 	}
 	
+	/**
+	 * Gets the edge ports of a switch to which ARP requests are sent, i.e. the
+	 * enabled attachment point ports whose link is up and on which ARP is not
+	 * suppressed, grouped by VLAN. The edge ports are computed once and cached
+	 * until the topology, the switch ports or their state, or the suppressed
+	 * ports change.
+	 * 
+	 * @param sw The switch.
+	 * @return <b>Map&lt;Short, List&lt;OFSwitchPort&gt;&gt;</b> A map that maps: VLAN ID -> edge ports.
+	 */
+	protected Map<Short, List<OFSwitchPort>> getEdgePorts(IOFSwitch sw) {
+		long switchId = sw.getId();
+		Map<Short, List<OFSwitchPort>> ports = edgePorts.get(switchId);
+		if (ports != null)
+			return ports;
+		
+		long version = edgePortsVersion.get();
+		ports = new HashMap<Short, List<OFSwitchPort>>();
+		for (OFSwitchPort port : sw.getPorts()) {
+			int virtPortId = port.getPortNumber();
+			// Don't send ARP to ports that are administratively down or whose link is down.
+			if (!port.isEnabled() || port.isLinkDown()) {
+				continue;
+			}
+			// Don't send ARP if the ARP is suppressed.
+			if (this.isARPSuppressed(switchId, virtPortId)) {
+				continue;
+			}
+			if (!topologyManager.isAttachmentPointPort(switchId, virtPortId)) {
+				continue;
+			}
+			short vlan = (port.getVlanId() > 0) ? port.getVlanId() : Ethernet.VLAN_UNTAGGED;
+			List<OFSwitchPort> vlanPorts = ports.get(vlan);
+			if (vlanPorts == null) {
+				vlanPorts = new ArrayList<OFSwitchPort>();
+				ports.put(vlan, vlanPorts);
+			}
+			vlanPorts.add(port);
+		}
+		
+		edgePorts.put(switchId, ports);
+		// Drop the result if the edge ports have been invalidated in the meantime.
+		if (version != edgePortsVersion.get()) {
+			edgePorts.remove(switchId);
+		}
+		return ports;
+	}
+	
+	/**
+	 * Invalidates the cached edge ports of a switch.
+	 * 
+	 * @param switchId The switch ID.
+	 */
+	protected void invalidateEdgePorts(long switchId) {
+		edgePortsVersion.incrementAndGet();
+		edgePorts.remove(switchId);
+	}
+	
+	/**
+	 * Invalidates the cached edge ports of all switches.
+	 */
+	protected void invalidateEdgePorts() {
+		edgePortsVersion.incrementAndGet();
+		edgePorts.clear();
+	}
+	
 	/**
 	 * Creates an ARP reply frame, puts it into a packet out message and 
 	 * sends the packet out message to the switch that received the ARP
@@ -557,17 +651,29 @@ public class ARPProxy extends TimerTask implements IOFMessageListener, IFloodlig
 	 * @param port The port the packet is sent out.
 	 */
 	protected void sendPOMessage(IPacket packet, IOFSwitch sw, short port) {		
-		// Serialize and wrap in a packet out
-        byte[] data = packet.serialize();
+		this.sendPOMessage(packet.serialize(), sw, Collections.singletonList(port));
+	}
+	
+	/**
+	 * Creates and sends an OpenFlow PacketOut message containing the serialized
+	 * packet to the switch. The packet is sent out at all given ports.
+	 * 
+	 * @param data The serialized packet that is sent out.
+	 * @param sw The switch the packet is sent out.
+	 * @param ports The ports the packet is sent out.
+	 */
+	protected void sendPOMessage(byte[] data, IOFSwitch sw, List<Short> ports) {
         OFPacketOut po = (OFPacketOut) floodlightProvider.getOFMessageFactory().getMessage(OFType.PACKET_OUT);
         po.setBufferId(OFPacketOut.BUFFER_ID_NONE);
         po.setInPort(OFPort.OFPP_NONE);
 
         // Set actions
-        List<OFAction> actions = new ArrayList<OFAction>();
-        actions.add(new OFActionOutput(port, (short) 0));
+        List<OFAction> actions = new ArrayList<OFAction>(ports.size());
+        for (short port : ports) {
+        	actions.add(new OFActionOutput(port, (short) 0));
+        }
         po.setActions(actions);
-        po.setActionsLength((short) OFActionOutput.MINIMUM_LENGTH);
+        po.setActionsLength((short) (OFActionOutput.MINIMUM_LENGTH * actions.size()));
 
         // Set data
         po.setLengthU(OFPacketOut.MINIMUM_LENGTH + po.getActionsLength() + data.length);
@@ -578,42 +684,24 @@ public class ARPProxy extends TimerTask implements IOFMessageListener, IFloodlig
         	sw.write(po, null);
         	sw.flush();
         } catch (IOException e) {
-        	logger.error("Failure sending ARP out port {} on switch {}", new Object[] { port, sw.getStringId() }, e);
+        	logger.error("Failure sending ARP out ports {} on switch {}", new Object[] { ports, sw.getStringId() }, e);
         }
 	}
 	
 	/**
-	 * Puts the current ARP request to a list of concurrent ARP requests.
+	 * Registers the debug counters of the ARP proxy.
 	 * 
-	 * @param targetIPAddress The IP address of the target (destination) hosts.
-	 * @param arpRequest The ARP request initialized by the source hosts.
+	 * @throws FloodlightModuleException
 	 */
-	private synchronized void putArpRequest(int targetIPAddress, ARPMessage arpRequest) {
-		if (arpRequests.containsKey(targetIPAddress)) {
-			arpRequests.get(targetIPAddress).add(arpRequest);
-		} else {
-			arpRequests.put(targetIPAddress, new HashSet<ARPMessage>());
-			arpRequests.get(targetIPAddress).add(arpRequest);
+	private void registerARPProxyDebugCounters() throws FloodlightModuleException {
+		if (debugCounters == null) {
+			logger.error("Debug Counter Service not found.");
+			debugCounters = new NullDebugCounter();
 		}
-	}
-	
-	/**
-	 * Check for old ARP request. Remove ARP requests 
-	 * older than ARP_TIMEOUT from the arpRequests data 
-	 * structure.
-	 */
-	private synchronized void removeOldArpRequests() {
-		/* The current time stamp. */
-		long currentTime = System.currentTimeMillis();
-		
-		for (int targetIPAddress : arpRequests.keySet()) {
-			Set<ARPMessage> arpRequestSet = arpRequests.get(targetIPAddress);
-			for (Iterator<ARPMessage> iter = arpRequestSet.iterator(); iter.hasNext();) {
-				if ((currentTime - iter.next().getStartTime()) > ARP_TIMEOUT)
-					iter.remove();
-				if (arpRequestSet.isEmpty()) 
-					arpRequests.remove(targetIPAddress);
-			}
+		try {
+			pendingARPs.registerDebugCounters(debugCounters, PACKAGE);
+		} catch (CounterException e) {
+			throw new FloodlightModuleException(e.getMessage());
 		}
 	}
 	
@@ -628,11 +716,40 @@ public class ARPProxy extends TimerTask implements IOFMessageListener, IFloodlig
         return this.suppressARP.contains(new NodePortTuple(switchId, portId));
     }
 
+	@Override
+	public void switchAdded(long switchId) {
+		this.invalidateEdgePorts(switchId);
+	}
+
+	@Override
+	public void switchRemoved(long switchId) {
+		this.invalidateEdgePorts(switchId);
+	}
+
+	@Override
+	public void switchActivated(long switchId) {
+		this.invalidateEdgePorts(switchId);
+	}
+
+	@Override
+	public void switchPortChanged(long switchId, OFSwitchPort port, PortChangeType type) {
+		this.invalidateEdgePorts(switchId);
+	}
+
+	@Override
+	public void switchChanged(long switchId) {
+		// NO-OP
+	}
+
+	@Override
+	public void topologyChanged(List<LDUpdate> linkUpdates) {
+		// Attachment point ports depend on the whole topology instance.
+		this.invalidateEdgePorts();
+	}
+
 	@Override
 	public void run() {
-		if (!arpRequests.isEmpty()) {
-			this.removeOldArpRequests();
-		}
+		pendingARPs.expire(System.currentTimeMillis());
 	}
 
 }
@@ -0,0 +1,316 @@
+package net.floodlightcontroller.arp;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService.CounterException;
+import net.floodlightcontroller.debugcounter.IDebugCounterService.CounterType;
+import net.floodlightcontroller.debugcounter.NullDebugCounter;
+import net.floodlightcontroller.util.TimingWheel;
+
+/**
+ * A bounded table of pending ARP requests, i.e. requests that wait for the
+ * ARP reply of their target. Requests for the same target are coalesced:
+ * only the first one is sent out, all of them are answered by the reply.
+ * Pending targets expire on a timing wheel, thus expiry only visits targets
+ * that are actually due.
+ * 
+ * If the table is full, the pending target that expires next is evicted
+ * to make room for a new one.
+ */
+public class PendingARPTable {
+	/** The duration of one tick of the timing wheel in milliseconds. */
+	protected static final long TICK_DURATION = 50L;
+	/** The number of ticks of the timing wheel. */
+	protected static final int TICKS_PER_WHEEL = 64;
+	
+	/**
+	 * The ARP requests pending for one target IP address.
+	 */
+	protected static class PendingTarget implements TimingWheel.Expirable {
+		/** The target IP address. */
+		protected final int targetIPAddress;
+		/** A map that maps: SourceMACAddress -> ARP request. */
+		protected final ConcurrentMap<Long, ARPMessage> requests;
+		/** The time the target expires. */
+		protected volatile long expirationTime;
+		
+		protected PendingTarget(int targetIPAddress, long expirationTime) {
+			this.targetIPAddress = targetIPAddress;
+			this.requests = new ConcurrentHashMap<Long, ARPMessage>();
+			this.expirationTime = expirationTime;
+		}
+		
+		@Override
+		public long getExpirationTime() {
+			return this.expirationTime;
+		}
+	}
+	
+	/** The time after which a pending target expires, in milliseconds. */
+	protected final long timeout;
+	/** The maximum number of pending targets. */
+	protected final int maxTargets;
+	/** The maximum number of requests pending for one target. */
+	protected final int maxRequestsPerTarget;
+	/** A map that maps: TargetIPAddress -> pending ARP requests. */
+	protected final ConcurrentMap<Integer, PendingTarget> targets;
+	/** The number of pending targets. */
+	protected final AtomicInteger size;
+	/** The timing wheel that expires pending targets. */
+	protected final TimingWheel<PendingTarget> wheel;
+	
+	/** Counts ARP requests for targets that are not pending yet. */
+	protected IDebugCounter ctrMisses;
+	/** Counts ARP requests that joined a pending target. */
+	protected IDebugCounter ctrCoalesced;
+	/** Counts ARP replies that answered pending requests. */
+	protected IDebugCounter ctrHits;
+	/** Counts pending targets that expired without reply. */
+	protected IDebugCounter ctrExpired;
+	/** Counts pending targets that were evicted from the full table. */
+	protected IDebugCounter ctrEvicted;
+	/** Counts ARP requests that were dropped since their target had too many pending requests. */
+	protected IDebugCounter ctrDropped;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param timeout The time after which a pending target expires, in milliseconds.
+	 * @param maxTargets The maximum number of pending targets.
+	 * @param maxRequestsPerTarget The maximum number of requests pending for one target.
+	 */
+	public PendingARPTable(long timeout, int maxTargets, int maxRequestsPerTarget) {
+		this.timeout = timeout;
+		this.maxTargets = maxTargets;
+		this.maxRequestsPerTarget = maxRequestsPerTarget;
+		this.targets = new ConcurrentHashMap<Integer, PendingTarget>();
+		this.size = new AtomicInteger();
+		this.wheel = new TimingWheel<PendingTarget>(TICK_DURATION, TICKS_PER_WHEEL, System.currentTimeMillis());
+		try {
+			this.registerDebugCounters(new NullDebugCounter(), "");
+		} catch (CounterException e) {
+			// The null debug counter service does not throw.
+		}
+	}
+	
+	/**
+	 * Registers the debug counters of the table.
+	 * 
+	 * @param debugCounters The debug counter service.
+	 * @param moduleName The module name the counters are registered for.
+	 * @throws CounterException
+	 */
+	public void registerDebugCounters(IDebugCounterService debugCounters, String moduleName) throws CounterException {
+		ctrMisses = debugCounters.registerCounter(moduleName, "pending-arp-misses",
+			"ARP requests for targets that were not pending",
+			CounterType.ALWAYS_COUNT);
+		ctrCoalesced = debugCounters.registerCounter(moduleName, "pending-arp-coalesced",
+			"ARP requests that joined a pending target",
+			CounterType.ALWAYS_COUNT);
+		ctrHits = debugCounters.registerCounter(moduleName, "pending-arp-hits",
+			"ARP replies that answered pending requests",
+			CounterType.ALWAYS_COUNT);
+		ctrExpired = debugCounters.registerCounter(moduleName, "pending-arp-expired",
+			"Pending targets that expired without reply",
+			CounterType.ALWAYS_COUNT);
+		ctrEvicted = debugCounters.registerCounter(moduleName, "pending-arp-evicted",
+			"Pending targets evicted from the full table",
+			CounterType.ALWAYS_COUNT, IDebugCounterService.CTR_MDATA_WARN);
+		ctrDropped = debugCounters.registerCounter(moduleName, "pending-arp-dropped",
+			"ARP requests dropped since their target had too many pending requests",
+			CounterType.ALWAYS_COUNT, IDebugCounterService.CTR_MDATA_WARN);
+	}
+	
+	/**
+	 * Adds an ARP request for its target. If the target is pending already, the
+	 * request joins the pending requests and the expiration time of the target
+	 * is extended. A new request of a requester replaces its previous one.
+	 * 
+	 * If the pending target is removed while the request joins it, e.g. since
+	 * it was answered or expired, the request is added again as a new target.
+	 * 
+	 * @param arpRequest The ARP request.
+	 * @return <b>boolean</b> True if the target was not pending, i.e. the ARP request needs to be sent out.
+	 */
+	public boolean put(ARPMessage arpRequest) {
+		int targetIPAddress = arpRequest.getTargetIPAddress();
+		long expirationTime = arpRequest.getStartTime() + timeout;
+		
+		for (;;) {
+			PendingTarget target = targets.get(targetIPAddress);
+			if (target == null) {
+				PendingTarget newTarget = new PendingTarget(targetIPAddress, expirationTime);
+				newTarget.requests.put(arpRequest.getSourceMACAddress(), arpRequest);
+				target = targets.putIfAbsent(targetIPAddress, newTarget);
+				if (target == null) {
+					ctrMisses.updateCounterNoFlush();
+					wheel.add(newTarget);
+					if (size.incrementAndGet() > maxTargets) {
+						this.evict();
+					}
+					return true;
+				}
+			}
+			
+			if (this.coalesce(target, arpRequest, expirationTime))
+				return false;
+		}
+	}
+	
+	/**
+	 * Adds an ARP request to the requests of a pending target.
+	 * 
+	 * @param target The pending target.
+	 * @param arpRequest The ARP request.
+	 * @param expirationTime The expiration time of the ARP request.
+	 * @return <b>boolean</b> False if the target is no longer pending, i.e. the request needs to be added again.
+	 */
+	protected boolean coalesce(PendingTarget target, ARPMessage arpRequest, long expirationTime) {
+		boolean added = false;
+		if (target.requests.size() >= maxRequestsPerTarget && !target.requests.containsKey(arpRequest.getSourceMACAddress())) {
+			ctrDropped.updateCounterNoFlush();
+		} else {
+			target.requests.put(arpRequest.getSourceMACAddress(), arpRequest);
+			added = true;
+		}
+		if (target.expirationTime < expirationTime) {
+			target.expirationTime = expirationTime;
+		}
+		
+		// The target has been removed in the meantime. Its requests are answered or dropped already.
+		if (targets.get(target.targetIPAddress) != target) {
+			if (added) {
+				target.requests.remove(arpRequest.getSourceMACAddress(), arpRequest);
+			}
+			return false;
+		}
+		if (added) {
+			ctrCoalesced.updateCounterNoFlush();
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks whether ARP requests are pending for a target.
+	 * 
+	 * @param targetIPAddress The IP address of the target.
+	 * @return <b>boolean</b> True if ARP requests are pending for the target.
+	 */
+	public boolean contains(int targetIPAddress) {
+		return targets.containsKey(targetIPAddress);
+	}
+	
+	/**
+	 * Removes all ARP requests pending for a target, e.g. once the target replied.
+	 * 
+	 * @param targetIPAddress The IP address of the target.
+	 * @return <b>Collection&lt;ARPMessage&gt;</b> The pending ARP requests, or null if none are pending.
+	 */
+	public Collection<ARPMessage> remove(int targetIPAddress) {
+		PendingTarget target = targets.remove(targetIPAddress);
+		if (target == null)
+			return null;
+		
+		size.decrementAndGet();
+		ctrHits.updateCounterNoFlush();
+		return target.requests.values();
+	}
+	
+	/**
+	 * Removes all targets whose expiration time has passed. The entries of
+	 * targets removed otherwise are dropped from the wheel here, too.
+	 * 
+	 * @param now The current time in milliseconds.
+	 * @return <b>int</b> The number of expired targets.
+	 */
+	public int expire(long now) {
+		int expired = 0;
+		for (PendingTarget target : wheel.expire(now)) {
+			if (targets.remove(target.targetIPAddress, target)) {
+				size.decrementAndGet();
+				expired++;
+			}
+		}
+		if (expired > 0) {
+			ctrExpired.updateCounterWithFlush(expired);
+		}
+		return expired;
+	}
+	
+	/**
+	 * Gets the number of pending targets.
+	 * 
+	 * @return <b>int</b> The number of pending targets.
+	 */
+	public int size() {
+		return size.get();
+	}
+	
+	/**
+	 * Gets the ARP requests of all pending targets.
+	 * 
+	 * @return <b>List&lt;ARPMessage&gt;</b> The pending ARP requests.
+	 */
+	public List<ARPMessage> getPendingRequests() {
+		List<ARPMessage> requests = new ArrayList<ARPMessage>();
+		for (PendingTarget target : targets.values()) {
+			requests.addAll(target.requests.values());
+		}
+		return requests;
+	}
+	
+	/**
+	 * Evicts pending targets until the table is within its bounds again. Evicts
+	 * the targets that expire next.
+	 */
+	private void evict() {
+		while (size.get() > maxTargets) {
+			PendingTarget target = wheel.pollEarliest();
+			if (target == null)
+				return;
+			if (targets.remove(target.targetIPAddress, target)) {
+				size.decrementAndGet();
+				ctrEvicted.updateCounterNoFlush();
+			}
+		}
+	}
+	
+}
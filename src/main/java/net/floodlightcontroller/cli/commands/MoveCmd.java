@@ -32,10 +32,6 @@ package net.floodlightcontroller.cli.commands;
 */
 
 import java.util.Collection;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 import org.openflow.protocol.OFMatch;
 
@@ -121,17 +117,11 @@ public class MoveCmd implements ICommand, IFlowQueryHandler {
 		case 2:
 			matchString = argumentElements[0];
 			dstPathId = Integer.parseInt(argumentElements[1]);
-			FlowCacheQueryResp fcqr = null;
 			
 			match.fromString(matchString);
 			FlowCacheQuery fcq = new FlowCacheQuery(this, IFlowCacheService.DEFAULT_DB_NAME, "showpathcmd", null, null, match);
-			Future<FlowCacheQueryResp> future = this.flowCache.queryDB(fcq);
-			try {
-				fcqr = future.get(5, TimeUnit.SECONDS);
-			} catch (InterruptedException | ExecutionException e) {
-				e.printStackTrace();
-				return "Moving flow failed";
-			} catch (TimeoutException e) {
+			FlowCacheQueryResp fcqr = this.flowCache.queryFlows(fcq);
+			if (fcqr == null) {
 				// Object not found.
 				return "Moving flow failed. Could not find flow.";
 			}
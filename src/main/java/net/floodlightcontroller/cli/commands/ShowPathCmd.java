@@ -41,10 +41,6 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 import org.openflow.protocol.OFMatch;
 import org.openflow.util.HexString;
@@ -399,31 +395,12 @@ public class ShowPathCmd implements ICommand, IFlowQueryHandler {
 				.setPathId(path.getId());
 			flowCacheQueryList.add(fcq);
 		}
-        List<Future<FlowCacheQueryResp>> futureList = this.flowCache.queryDB(flowCacheQueryList);
-        
-        if (futureList == null) {
-        	// Error.
-        	return null;
+        for (FlowCacheQueryResp fcqr : this.flowCache.queryFlows(flowCacheQueryList)) {
+        	if (fcqr.flowCacheObjList != null) {
+        		flowCacheObjs.addAll(fcqr.flowCacheObjList);
+        	}
         }
         
-        while (!futureList.isEmpty()) {
-			Iterator<Future<FlowCacheQueryResp>> iter = futureList.iterator();
-			while (iter.hasNext()) {
-				Future<FlowCacheQueryResp> future = iter.next();
-				try {
-					FlowCacheQueryResp fcqr = future.get(10, TimeUnit.SECONDS);
-					if (fcqr != null && fcqr.flowCacheObjList != null) {
-						flowCacheObjs.addAll(fcqr.flowCacheObjList);
-					}
-					iter.remove();
-				} catch (InterruptedException | ExecutionException e) {
-					e.printStackTrace();
-				} catch (TimeoutException e) {
-					iter.remove();
-				}
-			}
-		}
-        
         // Reduce flow cache objects by match.
         Set<OFMatch> matchSet = new HashSet<OFMatch>();
         for (Iterator<FlowCacheObj> iter = flowCacheObjs.iterator(); iter.hasNext();) {
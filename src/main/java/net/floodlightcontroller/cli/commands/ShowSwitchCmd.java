@@ -39,14 +39,9 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 import jline.console.completer.Completer;
 
@@ -317,23 +312,9 @@ public class ShowSwitchCmd implements ICommand, IFlowQueryHandler {
 			flowCacheQueryList.add(fcq);
 		}
 
-		List<Future<FlowCacheQueryResp>> futureList = this.flowCache.queryDB(flowCacheQueryList);
-		
-		while (!futureList.isEmpty()) {
-			Iterator<Future<FlowCacheQueryResp>> iter = futureList.iterator();
-			while (iter.hasNext()) {
-				Future<FlowCacheQueryResp> future = iter.next();
-				try {
-					FlowCacheQueryResp fcqr = future.get(1, TimeUnit.SECONDS);
-					if (fcqr != null && fcqr.queryObj != null) {
-						this.portFlowCount.put(fcqr.queryObj.outPort, fcqr.flowCacheObjList.size());
-					}
-					iter.remove();
-				} catch (InterruptedException | ExecutionException e) {
-					e.printStackTrace();
-				} catch (TimeoutException e) {
-					iter.remove();
-				}
+		for (FlowCacheQueryResp fcqr : this.flowCache.queryFlows(flowCacheQueryList)) {
+			if (fcqr.queryObj != null) {
+				this.portFlowCount.put(fcqr.queryObj.outPort, fcqr.flowCacheObjList.size());
 			}
 		}
 		
@@ -25,6 +25,7 @@ import java.util.Map;
 
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.PacketInView;
 
 import org.openflow.protocol.OFMessage;
 import org.openflow.protocol.OFType;
@@ -47,6 +48,13 @@ public interface IFloodlightProviderService extends
     public static final String CONTEXT_PI_PAYLOAD =
             "net.floodlightcontroller.core.IFloodlightProvider.piPayload";
 
+    /**
+     * A value stored in the floodlight context containing a lazily decoded
+     * view of the packet data of a packet-in message.
+     */
+    public static final String CONTEXT_PI_VIEW =
+            "net.floodlightcontroller.core.IFloodlightProvider.piView";
+
     /**
      * The role of the controller as used by the OF 1.2 and OVS failover and
      * load-balancing mechanism.
@@ -85,6 +93,13 @@ public interface IFloodlightProviderService extends
     public static final FloodlightContextStore<Ethernet> bcStore =
             new FloodlightContextStore<Ethernet>();
 
+    /**
+     * A FloodlightContextStore object that can be used to retrieve the
+     * packet-in view
+     */
+    public static final FloodlightContextStore<PacketInView> piViewStore =
+            new FloodlightContextStore<PacketInView>();
+
     /**
      * Adds an OpenFlow message listener
      * @param type The OFType the component wants to listen for
@@ -186,6 +186,16 @@ public interface IOFSwitch {
      */
     public boolean inputThrottled(OFMessage ofm);
 
+    /**
+     * Called when OFMessage enters pipeline. Returning true cause the message
+     * to be dropped. If a packet-in is decoded for throttling, its view is
+     * stored in the given context, so the listeners do not decode it again.
+     * @param ofm
+     * @param cntx the context of the message, or null
+     * @return
+     */
+    public boolean inputThrottled(OFMessage ofm, FloodlightContext cntx);
+
     /**
      * Return if the switch is currently overloaded. The definition of
      * overload refers to excessive traffic in the control path, namely
@@ -0,0 +1,224 @@
+package net.floodlightcontroller.core;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.channel.Channel;
+import org.openflow.protocol.OFMessage;
+
+/**
+ * Coalesces the OpenFlow messages that all threads write to a switch
+ * channel. Messages are queued and written to the channel as a single
+ * list, which the OFMessageEncoder encodes into a single buffer, i.e.
+ * a burst of flow mods becomes a few large socket writes.
+ *
+ * The queue is flushed if a writer requests it, if the queued messages
+ * exceed a size limit, or after a flush delay. Only one thread flushes
+ * at a time, so the messages are written in queue order.
+ */
+public class OFChannelWriter {
+	/** The default maximum number of queued messages. */
+	public static final int DEFAULT_MAX_PENDING_MESSAGES = 100;
+	/** The default maximum number of queued bytes. */
+	public static final int DEFAULT_MAX_PENDING_BYTES = 32 * 1024;
+	/** The default flush delay in milliseconds. */
+	public static final int DEFAULT_FLUSH_DELAY = 5;
+	
+	/** The channel to write to. */
+	protected final Channel channel;
+	/** The maximum number of queued messages before the queue is flushed. */
+	protected final int maxPendingMessages;
+	/** The maximum number of queued bytes before the queue is flushed. */
+	protected final int maxPendingBytes;
+	/** The flush delay in milliseconds. */
+	protected final int flushDelay;
+	/** The queued messages. */
+	protected final ConcurrentLinkedQueue<OFMessage> queue;
+	/** The number of queued messages. */
+	protected final AtomicInteger pendingMessages;
+	/** The number of queued bytes. */
+	protected final AtomicInteger pendingBytes;
+	/** States whether a thread is flushing the queue. */
+	protected final AtomicBoolean flushing;
+	/** States whether a delayed flush is scheduled. */
+	protected final AtomicBoolean flushScheduled;
+	/** The executor that runs delayed flushes. */
+	protected volatile ScheduledExecutorService executor;
+	/** The delayed flush task. */
+	protected final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			flushScheduled.set(false);
+			flush();
+		}
+	};
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param channel The channel to write to.
+	 */
+	public OFChannelWriter(Channel channel) {
+		this(channel, DEFAULT_MAX_PENDING_MESSAGES, DEFAULT_MAX_PENDING_BYTES, DEFAULT_FLUSH_DELAY);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param channel The channel to write to.
+	 * @param maxPendingMessages The maximum number of queued messages before the queue is flushed.
+	 * @param maxPendingBytes The maximum number of queued bytes before the queue is flushed.
+	 * @param flushDelay The flush delay in milliseconds.
+	 */
+	public OFChannelWriter(Channel channel, int maxPendingMessages, int maxPendingBytes, int flushDelay) {
+		this.channel = channel;
+		this.maxPendingMessages = maxPendingMessages;
+		this.maxPendingBytes = maxPendingBytes;
+		this.flushDelay = flushDelay;
+		this.queue = new ConcurrentLinkedQueue<OFMessage>();
+		this.pendingMessages = new AtomicInteger();
+		this.pendingBytes = new AtomicInteger();
+		this.flushing = new AtomicBoolean();
+		this.flushScheduled = new AtomicBoolean();
+	}
+	
+	/**
+	 * Sets the executor that runs delayed flushes. Without an executor,
+	 * queued messages are written by the next flush only.
+	 * 
+	 * @param executor The executor that runs delayed flushes.
+	 */
+	public void setExecutor(ScheduledExecutorService executor) {
+		this.executor = executor;
+	}
+	
+	/**
+	 * Queues a message.
+	 * 
+	 * @param m The message to write.
+	 * @param flush Flush the queue immediately.
+	 */
+	public void write(OFMessage m, boolean flush) {
+		queue.add(m);
+		int messages = pendingMessages.incrementAndGet();
+		int bytes = pendingBytes.addAndGet(m.getLengthU());
+		
+		if (flush || messages >= maxPendingMessages || bytes >= maxPendingBytes) {
+			this.flush();
+		} else {
+			this.scheduleFlush();
+		}
+	}
+	
+	/**
+	 * Queues a list of messages.
+	 * 
+	 * @param msglist The messages to write.
+	 * @param flush Flush the queue immediately.
+	 */
+	public void write(List<OFMessage> msglist, boolean flush) {
+		int length = 0;
+		for (OFMessage m : msglist) {
+			queue.add(m);
+			length += m.getLengthU();
+		}
+		int messages = pendingMessages.addAndGet(msglist.size());
+		int bytes = pendingBytes.addAndGet(length);
+		
+		if (flush || messages >= maxPendingMessages || bytes >= maxPendingBytes) {
+			this.flush();
+		} else {
+			this.scheduleFlush();
+		}
+	}
+	
+	/**
+	 * Writes all queued messages to the channel. If another thread is
+	 * flushing the queue already, that thread writes the messages.
+	 */
+	public void flush() {
+		while (!queue.isEmpty() && flushing.compareAndSet(false, true)) {
+			try {
+				List<OFMessage> msglist = new ArrayList<OFMessage>(pendingMessages.get());
+				int length = 0;
+				OFMessage m;
+				while ((m = queue.poll()) != null) {
+					msglist.add(m);
+					length += m.getLengthU();
+				}
+				pendingMessages.addAndGet(-msglist.size());
+				pendingBytes.addAndGet(-length);
+				if (!msglist.isEmpty()) {
+					channel.write(msglist);
+				}
+			} finally {
+				flushing.set(false);
+			}
+		}
+	}
+	
+	/**
+	 * Getter for the number of queued messages.
+	 * 
+	 * @return The number of queued messages.
+	 */
+	public int getPendingMessages() {
+		return pendingMessages.get();
+	}
+	
+	/**
+	 * Getter for the number of queued bytes.
+	 * 
+	 * @return The number of queued bytes.
+	 */
+	public int getPendingBytes() {
+		return pendingBytes.get();
+	}
+	
+	/**
+	 * Schedules a delayed flush, unless one is scheduled already.
+	 */
+	protected void scheduleFlush() {
+		ScheduledExecutorService executor = this.executor;
+		if (executor != null && flushScheduled.compareAndSet(false, true)) {
+			executor.schedule(flushTask, flushDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+}
@@ -20,12 +20,13 @@ package net.floodlightcontroller.core;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
@@ -47,6 +48,7 @@ import net.floodlightcontroller.debugcounter.IDebugCounterService.CounterType;
 import net.floodlightcontroller.debugcounter.NullDebugCounter;
 import net.floodlightcontroller.devicemanager.SwitchPort;
 import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.PacketInView;
 import net.floodlightcontroller.routing.ForwardingBase;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 import net.floodlightcontroller.util.MACAddress;
@@ -109,6 +111,7 @@ public abstract class OFSwitchBase implements IOFSwitch {
 
     private boolean startDriverHandshakeCalled = false;
     protected Channel channel;
+    protected OFChannelWriter channelWriter;
 
     /**
      * Members hidden from subclasses
@@ -153,11 +156,12 @@ public abstract class OFSwitchBase implements IOFSwitch {
     private static final String PACKAGE = OFSwitchBase.class.getPackage().getName();
 
 
-    protected final static ThreadLocal<Map<IOFSwitch,List<OFMessage>>> local_msg_buffer =
-            new ThreadLocal<Map<IOFSwitch,List<OFMessage>>>() {
+    // The switches this thread has queued messages for since its last flush_all
+    protected final static ThreadLocal<Set<IOFSwitch>> local_written_switches =
+            new ThreadLocal<Set<IOFSwitch>>() {
         @Override
-        protected Map<IOFSwitch,List<OFMessage>> initialValue() {
-            return new HashMap<IOFSwitch,List<OFMessage>>();
+        protected Set<IOFSwitch> initialValue() {
+            return new HashSet<IOFSwitch>();
         }
     };
 
@@ -229,6 +233,12 @@ public abstract class OFSwitchBase implements IOFSwitch {
     @JsonIgnore
     public void setChannel(Channel channel) {
         this.channel = channel;
+        this.channelWriter = new OFChannelWriter(channel,
+                Controller.BATCH_MAX_SIZE,
+                OFChannelWriter.DEFAULT_MAX_PENDING_BYTES,
+                OFChannelWriter.DEFAULT_FLUSH_DELAY);
+        if (threadPool != null)
+            this.channelWriter.setExecutor(threadPool.getScheduledExecutor());
     }
 
     // For driver subclass to set throttling
@@ -288,20 +298,15 @@ public abstract class OFSwitchBase implements IOFSwitch {
         if (channel == null || !isConnected())
             return;
             //throws IOException {
-        Map<IOFSwitch,List<OFMessage>> msg_buffer_map = local_msg_buffer.get();
-        List<OFMessage> msg_buffer = msg_buffer_map.get(this);
-        if (msg_buffer == null) {
-            msg_buffer = new ArrayList<OFMessage>();
-            msg_buffer_map.put(this, msg_buffer);
-        }
-
         this.floodlightProvider.handleOutgoingMessage(this, m, bc);
-        msg_buffer.add(m);
 
-        if ((msg_buffer.size() >= Controller.BATCH_MAX_SIZE) ||
-            ((m.getType() != OFType.PACKET_OUT) && (m.getType() != OFType.FLOW_MOD))) {
-            this.write(msg_buffer);
-            msg_buffer.clear();
+        // Flow mods and packet outs are coalesced until the end of the
+        // message train, all other messages are written immediately
+        if ((m.getType() != OFType.PACKET_OUT) && (m.getType() != OFType.FLOW_MOD)) {
+            this.channelWriter.write(m, true);
+        } else {
+            local_written_switches.get().add(this);
+            this.channelWriter.write(m, false);
         }
     }
     @Override
@@ -342,7 +347,7 @@ public abstract class OFSwitchBase implements IOFSwitch {
     protected void write(List<OFMessage> msglist) {
         if (channel == null || !isConnected())
             return;
-        this.channel.write(msglist);
+        this.channelWriter.write(msglist, true);
     }
 
     @Override
@@ -586,6 +591,8 @@ public abstract class OFSwitchBase implements IOFSwitch {
     @JsonIgnore
     public void setThreadPoolService(IThreadPoolService tp) {
         this.threadPool = tp;
+        if (channelWriter != null)
+            channelWriter.setExecutor(tp.getScheduledExecutor());
     }
 
     @Override
@@ -656,7 +663,7 @@ public abstract class OFSwitchBase implements IOFSwitch {
         List<OFMessage> msglist = new ArrayList<OFMessage>(2);
         msglist.add(fm);
         msglist.add(barrierMsg);
-        channel.write(msglist);
+        channelWriter.write(msglist, true);
     }
 
     @Override
@@ -691,33 +698,17 @@ public abstract class OFSwitchBase implements IOFSwitch {
 
     @Override
     public void flush() {
-        Map<IOFSwitch,List<OFMessage>> msg_buffer_map = local_msg_buffer.get();
-        List<OFMessage> msglist = msg_buffer_map.get(this);
-        if ((msglist != null) && (msglist.size() > 0)) {
-            /* ============================ BIG CAVEAT ===============================
-             * This code currently works, but relies on undocumented behavior of
-             * netty.
-             *
-             * The method org.jboss.netty.channel.Channel.write(Object)
-             * (invoked from this.write(List<OFMessage> msg) is currently
-             * documented to be <emph>asynchronous</emph>. If the method /were/ truely
-             * asynchronous, this would break our code (because we are clearing the
-             * msglist right after calling write.
-             *
-             * For now, Netty actually invokes the conversion pipeline before doing
-             * anything asynchronous, so we are safe. But we should probably change
-             * that behavior.
-             */
-            this.write(msglist);
-            msglist.clear();
-        }
+        // Writes the messages queued by all threads, not just this one
+        if (channelWriter != null)
+            channelWriter.flush();
     }
 
     public static void flush_all() {
-        Map<IOFSwitch,List<OFMessage>> msg_buffer_map = local_msg_buffer.get();
-        for (IOFSwitch sw : msg_buffer_map.keySet()) {
+        Set<IOFSwitch> switches = local_written_switches.get();
+        for (IOFSwitch sw : switches) {
             sw.flush();
         }
+        switches.clear();
     }
 
 
@@ -851,6 +842,11 @@ public abstract class OFSwitchBase implements IOFSwitch {
      */
     @Override
     public boolean inputThrottled(OFMessage ofm) {
+        return inputThrottled(ofm, null);
+    }
+
+    @Override
+    public boolean inputThrottled(OFMessage ofm, FloodlightContext cntx) {
         if (ofm.getType() != OFType.PACKET_IN) {
             return false;
         }
@@ -879,9 +875,20 @@ public abstract class OFSwitchBase implements IOFSwitch {
         // Now we are in the slow path where we need to do filtering
         // First filter based on OFMatch
         OFPacketIn pin = (OFPacketIn)ofm;
-        OFMatch match = new OFMatch();
-        match.loadFromPacket(pin.getPacketData(), pin.getInPort());
-        if (ofMatchCache.update(match)) {
+        PacketInView piView = null;
+        if (cntx != null) {
+            piView = IFloodlightProviderService.piViewStore.get(cntx,
+                    IFloodlightProviderService.CONTEXT_PI_VIEW);
+        }
+        if (piView == null) {
+            // Decode the packet once, the listeners share the view
+            piView = new PacketInView(pin.getPacketData(), pin.getInPort());
+            if (cntx != null) {
+                IFloodlightProviderService.piViewStore.put(cntx,
+                        IFloodlightProviderService.CONTEXT_PI_VIEW, piView);
+            }
+        }
+        if (ofMatchCache.update(piView.getMatch())) {
            ctrSwitchPktinDrops.updateCounterNoFlush();
             return true;
         }
@@ -889,7 +896,7 @@ public abstract class OFSwitchBase implements IOFSwitch {
         // We have packet in with a distinct flow, check per mac rate
         messageCountUniqueOFMatch++;
         if ((messageCountUniqueOFMatch % packetInRatePerMacThreshold) == 1) {
-            checkPerSourceMacRate(pin);
+            checkPerSourceMacRate(pin, piView);
         }
 
         // Check per port rate
@@ -978,30 +985,32 @@ public abstract class OFSwitchBase implements IOFSwitch {
      * last 5 seconds.
      *
      * @param pin
+     * @param piView
      * @return
      */
-    private void checkPerSourceMacRate(OFPacketIn pin) {
-        byte[] data = pin.getPacketData();
-        byte[] mac = Arrays.copyOfRange(data, 6, 12);
-        MACAddress srcMac = MACAddress.valueOf(mac);
-        short ethType = (short) (((data[12] & 0xff) << 8) + (data[13] & 0xff));
+    private void checkPerSourceMacRate(OFPacketIn pin, PacketInView piView) {
+        if (!piView.isEthernet()) {
+            return;
+        }
+        long srcMac = piView.getSourceMAC();
+        short ethType = piView.getEtherType();
         if (ethType != Ethernet.TYPE_LLDP && ethType != Ethernet.TYPE_BSN &&
-                macCache.update(srcMac.toLong())) {
+                macCache.update(srcMac)) {
             // Check if we already pushed a flow in the last 5 seconds
-            if (macBlockedCache.update(srcMac.toLong())) {
+            if (macBlockedCache.update(srcMac)) {
                 return;
             }
             // write out drop flow per srcMac
             int port = pin.getInPort();
             SwitchPort swPort = new SwitchPort(getId(), port);
             ForwardingBase.blockHost(floodlightProvider,
-                    swPort, srcMac.toLong(), (short) 5,
+                    swPort, srcMac, (short) 5,
                     AppCookie.makeCookie(OFSWITCH_APP_ID, 0));
             floodlightProvider.addSwitchEvent(this.datapathId,
                     "SWITCH_PORT_BLOCKED_TEMPORARILY " +
-                    "OFPort " + port + " mac " + srcMac, false);
+                    "OFPort " + port + " mac " + MACAddress.valueOf(srcMac), false);
             log.info("Excessive packet in from {} on {}, block host for 5 sec",
-                    srcMac.toString(), swPort);
+                    MACAddress.valueOf(srcMac), swPort);
         }
     }
 
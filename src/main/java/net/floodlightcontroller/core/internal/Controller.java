@@ -83,6 +83,7 @@ import net.floodlightcontroller.debugevent.IDebugEventService.MaxEventsRegistere
 import net.floodlightcontroller.notification.INotificationManager;
 import net.floodlightcontroller.notification.NotificationManagerFactory;
 import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.PacketInView;
 import net.floodlightcontroller.perfmon.IPktInProcessingTimeService;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.storage.IResultSet;
@@ -169,6 +170,11 @@ public class Controller implements IFloodlightProviderService,
     protected String openFlowHost = null;
     protected int openFlowPort = 6633;
     protected int workerThreads = 0;
+    protected boolean zeroCopyDecode = false;
+    protected int packetInThreads = 0;
+    protected int packetInQueueSize = 1024;
+    protected PacketInDispatcher.Sharding packetInSharding =
+            PacketInDispatcher.Sharding.SWITCH;
 
 
     // This controller's current role that modules can use/query to decide
@@ -250,6 +256,10 @@ public class Controller implements IFloodlightProviderService,
         Boolean.parseBoolean(System.getProperty("overload_drop", "false"));
     protected final LoadMonitor loadmonitor = new LoadMonitor(log);
 
+    // Dispatches packet-ins to worker threads, null if packet-ins
+    // are processed by the I/O threads
+    protected PacketInDispatcher packetInDispatcher;
+
     private class NotificationSwitchListener implements IOFSwitchListener {
 
         @Override
@@ -312,6 +322,7 @@ public class Controller implements IFloodlightProviderService,
         public IDebugCounter controllerNodeIpsChanged;
         public IDebugCounter messageReceived;
         public IDebugCounter messageInputThrottled;
+        public IDebugCounter packetInDispatchDropped;
         public IDebugCounter switchDisconnectReadTimeout;
         public IDebugCounter switchDisconnectHandshakeTimeout;
         public IDebugCounter switchDisconnectIOError;
@@ -582,6 +593,14 @@ public class Controller implements IFloodlightProviderService,
                             "throttled due to high load from the sender",
                             CounterType.ALWAYS_COUNT,
                             IDebugCounterService.CTR_MDATA_WARN);
+            packetInDispatchDropped =
+                debugCounters.registerCounter(
+                            prefix, "packet-in-dispatch-dropped",
+                            "Number of packet-ins that were dropped " +
+                            "because the queue of their packet-in " +
+                            "worker was full",
+                            CounterType.ALWAYS_COUNT,
+                            IDebugCounterService.CTR_MDATA_WARN);
         // TODO: more counters in messageReceived ??
 
             switchDisconnectReadTimeout =
@@ -1770,6 +1789,11 @@ public class Controller implements IFloodlightProviderService,
                                  FloodlightContext bContext)
             throws IOException {
         Ethernet eth = null;
+        PacketInView piView = null;
+        if (bContext != null) {
+            piView = IFloodlightProviderService.piViewStore.get(bContext,
+                    IFloodlightProviderService.CONTEXT_PI_VIEW);
+        }
 
         if (this.notifiedRole == Role.SLAVE) {
             counters.dispatchMessageWhileSlave.updateCounterNoFlush();
@@ -1782,16 +1806,19 @@ public class Controller implements IFloodlightProviderService,
             case PACKET_IN:
                 OFPacketIn pi = (OFPacketIn)m;
 
-                if (pi.getPacketData().length <= 0) {
+                if (pi.getPacketDataLength() <= 0) {
                     log.error("Ignoring PacketIn (Xid = " + pi.getXid() +
                               ") because the data field is empty.");
                     return;
                 }
 
+                // The view decodes the packet once, on demand, for all listeners
+                if (piView == null) {
+                    piView = new PacketInView(pi.getPacketData(),
+                                              pi.getInPort());
+                }
                 if (Controller.ALWAYS_DECODE_ETH) {
-                    eth = new Ethernet();
-                    eth.deserialize(pi.getPacketData(), 0,
-                            pi.getPacketData().length);
+                    eth = piView.getEthernet();
                     counterStore.updatePacketInCountersLocal(sw, m, eth);
                 }
                 // fall through to default case...
@@ -1814,6 +1841,11 @@ public class Controller implements IFloodlightProviderService,
                     } else {
                         bc = bContext;
                     }
+                    if (piView != null) {
+                        IFloodlightProviderService.piViewStore.put(bc,
+                                IFloodlightProviderService.CONTEXT_PI_VIEW,
+                                piView);
+                    }
                     if (eth != null) {
                         IFloodlightProviderService.bcStore.put(bc,
                                 IFloodlightProviderService.CONTEXT_PI_PAYLOAD,
@@ -2017,6 +2049,13 @@ public class Controller implements IFloodlightProviderService,
     @LogMessageDoc(message="Calling System.exit",
                    explanation="The controller is terminating")
     public synchronized void terminate() {
+        if (packetInDispatcher != null) {
+            try {
+                packetInDispatcher.stop(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         log.info("Calling System.exit");
         System.exit(1);
     }
@@ -2227,6 +2266,26 @@ public class Controller implements IFloodlightProviderService,
             this.workerThreads = Integer.parseInt(threads);
         }
         log.debug("Number of worker threads set to {}", this.workerThreads);
+        String zeroCopy = configParams.get("zerocopydecode");
+        if (zeroCopy != null) {
+            this.zeroCopyDecode = Boolean.parseBoolean(zeroCopy.trim());
+        }
+        log.debug("Zero-copy packet-in decoding set to {}", this.zeroCopyDecode);
+        threads = configParams.get("packetinthreads");
+        if (threads != null) {
+            this.packetInThreads = Integer.parseInt(threads);
+        }
+        String queueSize = configParams.get("packetinqueuesize");
+        if (queueSize != null) {
+            this.packetInQueueSize = Integer.parseInt(queueSize);
+        }
+        String sharding = configParams.get("packetinsharding");
+        if (sharding != null) {
+            this.packetInSharding = PacketInDispatcher.Sharding.valueOf(
+                    sharding.trim().toUpperCase());
+        }
+        log.debug("Number of packet-in threads set to {}, sharded by {}",
+                  this.packetInThreads, this.packetInSharding);
 
     }
 
@@ -2297,6 +2356,10 @@ public class Controller implements IFloodlightProviderService,
         this.counters = new Counters();
         this.swConnectCache =
                 new TimedCache<Long>(100, 5*1000 );  // 5 seconds interval
+        if (packetInThreads > 0) {
+            this.packetInDispatcher = new PacketInDispatcher(this,
+                    packetInThreads, packetInQueueSize, packetInSharding);
+        }
      }
 
     /**
@@ -2353,6 +2416,11 @@ public class Controller implements IFloodlightProviderService,
         addInfoProvider("summary", this);
 
         registerControllerDebugEvents();
+
+        // Startup packet-in workers
+        if (packetInDispatcher != null) {
+            packetInDispatcher.start();
+        }
     }
 
     @LogMessageDoc(level="ERROR",
@@ -2638,6 +2706,36 @@ public class Controller implements IFloodlightProviderService,
         }
     }
 
+    /**
+     * Get the current load level used to drop packet-ins. This is the
+     * CPU load level, raised by the backlog of the packet-in workers.
+     * @return the load level
+     */
+    LoadMonitor.LoadLevel getLoadLevel() {
+        if (packetInDispatcher == null) {
+            return loadmonitor.getLoadLevel();
+        }
+        return loadmonitor.getLoadLevel(packetInDispatcher.getBacklog());
+    }
+
+    /**
+     * Dispatch a packet-in to the packet-in workers, if configured, or
+     * process it in the calling thread.
+     * @param sw the switch that sent the packet-in
+     * @param pi the packet-in message
+     * @param cntx the context of the packet-in, e.g. with the view decoded
+     *        by the input throttle, or null
+     * @throws IOException
+     */
+    void dispatchPacketIn(IOFSwitch sw, OFPacketIn pi,
+                          FloodlightContext cntx) throws IOException {
+        if (packetInDispatcher == null) {
+            handleMessage(sw, pi, cntx);
+        } else if (!packetInDispatcher.dispatch(sw, pi, cntx)) {
+            counters.packetInDispatchDropped.updateCounterNoFlush();
+        }
+    }
+
     void flushAll() {
         // Flush all flow-mods/packet-out/stats generated from this "train"
         OFSwitchBase.flush_all();
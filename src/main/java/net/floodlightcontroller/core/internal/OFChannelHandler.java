@@ -99,6 +99,10 @@ class OFChannelHandler
     private OFFeaturesReply featuresReply;
 
     private final ArrayList<OFPortStatus> pendingPortStatusMsg;
+    /** The context of the packet-in being processed, if the input
+     * throttle decoded it. Only the I/O thread of the channel uses it.
+     */
+    private FloodlightContext packetInContext;
 
     /** transaction Ids to use during handshake. Since only one thread
      * calls into the OFChannelHandler we don't need atomic.
@@ -878,7 +882,7 @@ class OFChannelHandler
 
             @Override
             void processOFPacketIn(OFChannelHandler h, OFPacketIn m) throws IOException {
-                h.dispatchMessage(m);
+                h.controller.dispatchPacketIn(h.sw, m, h.packetInContext);
             }
 
             @Override
@@ -1498,7 +1502,7 @@ class OFChannelHandler
             int lldps_allowed = 0;
 
             if (this.controller.overload_drop) {
-                loadlevel = this.controller.loadmonitor.getLoadLevel();
+                loadlevel = this.controller.getLoadLevel();
             }
             else {
                 loadlevel = LoadMonitor.LoadLevel.OK;
@@ -1506,8 +1510,15 @@ class OFChannelHandler
 
             for (OFMessage ofm : msglist) {
                 counters.messageReceived.updateCounterNoFlush();
+                // While the switch is overloaded, the throttle decodes
+                // packet-ins. Keep the view for the listeners.
+                FloodlightContext cntx = null;
+                if (sw != null && ofm.getType() == OFType.PACKET_IN &&
+                        sw.isOverloaded()) {
+                    cntx = new FloodlightContext();
+                }
                 // Per-switch input throttling
-                if (sw != null && sw.inputThrottled(ofm)) {
+                if (sw != null && sw.inputThrottled(ofm, cntx)) {
                     counters.messageInputThrottled.updateCounterNoFlush();
                     continue;
                 }
@@ -1523,12 +1534,14 @@ class OFChannelHandler
                                 continue;
                             case HIGH:
                                 // Drop all packet-ins, except LLDP/BDDPs
-                                byte[] data = ((OFPacketIn)ofm).getPacketData();
-                                if (data.length > 14) {
-                                    if (((data[12] == (byte)0x88) &&
-                                         (data[13] == (byte)0xcc)) ||
-                                        ((data[12] == (byte)0x89) &&
-                                         (data[13] == (byte)0x42))) {
+                                ChannelBuffer data = ((OFPacketIn)ofm).getPacketDataBuffer();
+                                if (data.readableBytes() > 14) {
+                                    byte type0 = data.getByte(data.readerIndex() + 12);
+                                    byte type1 = data.getByte(data.readerIndex() + 13);
+                                    if (((type0 == (byte)0x88) &&
+                                         (type1 == (byte)0xcc)) ||
+                                        ((type0 == (byte)0x89) &&
+                                         (type1 == (byte)0x42))) {
                                         lldps_allowed++;
                                         packets_allowed++;
                                         break;
@@ -1550,7 +1563,12 @@ class OFChannelHandler
                     }
 
                     // Do the actual packet processing
-                    state.processOFMessage(this, ofm);
+                    packetInContext = cntx;
+                    try {
+                        state.processOFMessage(this, ofm);
+                    } finally {
+                        packetInContext = null;
+                    }
 
                 }
                 catch (Exception ex) {
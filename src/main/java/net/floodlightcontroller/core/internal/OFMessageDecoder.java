@@ -17,25 +17,75 @@
 
 package net.floodlightcontroller.core.internal;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.handler.codec.frame.FrameDecoder;
 import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFPacketIn;
+import org.openflow.protocol.OFType;
 import org.openflow.protocol.factory.BasicFactory;
-import org.openflow.protocol.factory.OFMessageFactory;
 
 /**
  * Decode an openflow message from a Channel, for use in a netty
  * pipeline
+ *
+ * In zero-copy mode, the packet data of packet-in messages references a
+ * slice of the inbound buffer instead of a copy. As netty 3 buffers are
+ * not reference counted, the decoder then never reuses or compacts an
+ * inbound buffer: Incomplete messages are kept as a slice and joined
+ * with the next inbound buffer by a composite buffer. A buffer is freed
+ * by the garbage collector once the last message that references it is.
  * @author readams
  */
 public class OFMessageDecoder extends FrameDecoder {
 
-    OFMessageFactory factory = BasicFactory.getInstance();
-    
+    BasicFactory factory = BasicFactory.getInstance();
+    // Reference the packet data of packet-ins instead of copying it
+    protected final boolean zeroCopy;
+    // The unread bytes of previous inbound buffers in zero-copy mode
+    protected ChannelBuffer remainder;
+
+    public OFMessageDecoder() {
+        this(false);
+    }
+
+    public OFMessageDecoder(boolean zeroCopy) {
+        super();
+        this.zeroCopy = zeroCopy;
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
+            throws Exception {
+        if (!zeroCopy || !(e.getMessage() instanceof ChannelBuffer)) {
+            super.messageReceived(ctx, e);
+            return;
+        }
+
+        ChannelBuffer input = (ChannelBuffer) e.getMessage();
+        if (!input.readable())
+            return;
+        ChannelBuffer buffer = (remainder == null) ?
+                input : ChannelBuffers.wrappedBuffer(remainder, input);
+        remainder = null;
+
+        Object messages = decode(ctx, e.getChannel(), buffer);
+        if (buffer.readable()) {
+            remainder = buffer.slice(buffer.readerIndex(),
+                                     buffer.readableBytes());
+        }
+        if (messages != null) {
+            Channels.fireMessageReceived(ctx, messages, e.getRemoteAddress());
+        }
+    }
+
     @Override
     protected Object decode(ChannelHandlerContext ctx, Channel channel,
                             ChannelBuffer buffer) throws Exception {
@@ -45,8 +95,32 @@ public class OFMessageDecoder extends FrameDecoder {
             return null;
         }
 
-        List<OFMessage> message = factory.parseMessage(buffer);
-        return message;
+        if (!zeroCopy) {
+            List<OFMessage> message = factory.parseMessage(buffer);
+            return message;
+        }
+
+        List<OFMessage> msglist = null;
+        while (buffer.readableBytes() >= OFMessage.MINIMUM_LENGTH) {
+            int index = buffer.readerIndex();
+            int length = buffer.getUnsignedShort(index + 2);
+            if (length > buffer.readableBytes())
+                break;
+            OFMessage ofm;
+            if (buffer.getByte(index + 1) == OFType.PACKET_IN.getTypeValue()) {
+                OFPacketIn pi = new OFPacketIn();
+                pi.readFrom(buffer, true);
+                ofm = pi;
+            } else {
+                ofm = factory.parseMessageOne(buffer);
+                if (ofm == null)
+                    break;
+            }
+            if (msglist == null)
+                msglist = new ArrayList<OFMessage>();
+            msglist.add(ofm);
+        }
+        return msglist;
     }
 
     @Override
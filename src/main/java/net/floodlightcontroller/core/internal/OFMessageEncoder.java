@@ -20,7 +20,8 @@ package net.floodlightcontroller.core.internal;
 import java.util.List;
 
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
@@ -29,9 +30,27 @@ import org.openflow.protocol.OFMessage;
 /**
  * Encode an openflow message for output into a ChannelBuffer, for use in a
  * netty pipeline
+ *
+ * Buffers are slices of preallocated direct buffers, so encoding does not
+ * allocate a new buffer per message list and the socket writes need no
+ * copy from the heap.
  * @author readams
  */
 public class OFMessageEncoder extends OneToOneEncoder {
+    // The size of the preallocated direct buffers. Larger message lists
+    // get a dedicated direct buffer.
+    public static final int PREALLOCATED_BUFFER_SIZE = 64 * 1024;
+
+    protected final ChannelBufferFactory bufferFactory;
+
+    public OFMessageEncoder() {
+        this(new DirectChannelBufferFactory(PREALLOCATED_BUFFER_SIZE));
+    }
+
+    public OFMessageEncoder(ChannelBufferFactory bufferFactory) {
+        super();
+        this.bufferFactory = bufferFactory;
+    }
 
     @Override
     protected Object encode(ChannelHandlerContext ctx, Channel channel,
@@ -41,12 +60,21 @@ public class OFMessageEncoder extends OneToOneEncoder {
 
         @SuppressWarnings("unchecked")
         List<OFMessage> msglist = (List<OFMessage>)msg;
+        return encode(msglist);
+    }
+
+    /**
+     * Encodes a list of messages into a single buffer of the buffer factory.
+     * @param msglist the messages to encode
+     * @return the buffer holding all messages
+     */
+    protected ChannelBuffer encode(List<OFMessage> msglist) {
         int size = 0;
         for (OFMessage ofm :  msglist) {
                 size += ofm.getLengthU();
         }
 
-        ChannelBuffer buf = ChannelBuffers.buffer(size);;
+        ChannelBuffer buf = bufferFactory.getBuffer(size);
         for (OFMessage ofm :  msglist) {
             ofm.writeTo(buf);
         }
@@ -0,0 +1,358 @@
+package net.floodlightcontroller.core.internal;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.PacketInView;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.openflow.protocol.OFPacketIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatches packet-in messages from the Netty I/O threads to a fixed
+ * number of worker threads, which run the packet-in listeners. Thus,
+ * a slow listener no longer stalls all switches that share an I/O
+ * thread.
+ *
+ * Packet-ins are sharded either by the DPID of the switch or by a
+ * hash of their L2-L4 header fields. Every shard is processed by
+ * a single worker in order, so packet-ins of the same switch (or
+ * flow) keep their order.
+ *
+ * Sharding by switch is the default, as it keeps the guarantee of
+ * a single I/O thread: the packet-ins of a switch are processed one
+ * at a time. Listeners with per-switch state rely on it, e.g. the
+ * device manager learning attachment points, link discovery, and
+ * the ARP proxy. Sharding by flow processes the packet-ins of one
+ * switch concurrently and must only be configured if all packet-in
+ * listeners are safe under it; the listeners above have not been
+ * audited for that.
+ *
+ * The shard is calculated from the packet buffer of the packet-in,
+ * without copying the packet data. The packet data is copied and
+ * the view of the packet-in is created by the worker, i.e. only for
+ * packet-ins that are not dropped.
+ *
+ * The queue of every worker is bounded. If a queue is full, the
+ * packet-in is dropped. The fill level of the fullest queue is
+ * reported as backlog, which raises the load level used by the
+ * overload-drop logic before the queues overflow.
+ */
+public class PacketInDispatcher {
+    protected static final Logger log = LoggerFactory.getLogger(PacketInDispatcher.class);
+
+    /** The length of an Ethernet header without VLAN tag. */
+    private static final int ETHERNET_HEADER_LENGTH = 14;
+    /** The length of a VLAN tag. */
+    private static final int VLAN_TAG_LENGTH = 4;
+    /** The Ethertype of a VLAN tag. */
+    private static final short TYPE_VLAN = (short) 0x8100;
+
+    /**
+     * The header fields packet-ins are sharded by.
+     */
+    public enum Sharding {
+        /** Shard by the DPID of the switch. */
+        SWITCH,
+        /**
+         * Shard by a hash of the L2-L4 header fields. Packet-ins of
+         * the same switch are processed concurrently.
+         */
+        FLOW,
+    }
+
+    /**
+     * A packet-in message waiting for its listeners.
+     */
+    protected static class PacketInEvent {
+        /** The switch that sent the packet-in. */
+        protected final IOFSwitch sw;
+        /** The packet-in message. */
+        protected final OFPacketIn pi;
+        /** The context of the packet-in, or null. */
+        protected final FloodlightContext cntx;
+
+        protected PacketInEvent(IOFSwitch sw, OFPacketIn pi, FloodlightContext cntx) {
+            this.sw = sw;
+            this.pi = pi;
+            this.cntx = cntx;
+        }
+    }
+
+    /**
+     * A worker thread that processes the packet-ins of its queue.
+     */
+    protected class Worker implements Runnable {
+        /** The bounded queue of the worker. */
+        protected final BlockingQueue<PacketInEvent> queue;
+        /** A batch of packet-ins, drained from the queue at once. */
+        protected final List<PacketInEvent> batch;
+
+        protected Worker(int queueSize) {
+            this.queue = new ArrayBlockingQueue<PacketInEvent>(queueSize);
+            this.batch = new ArrayList<PacketInEvent>(queueSize);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    batch.add(queue.take());
+                    queue.drainTo(batch);
+                    for (PacketInEvent event : batch) {
+                        process(event);
+                    }
+                    batch.clear();
+                    // Flush all thread local queues generated by this batch.
+                    controller.flushAll();
+                } catch (InterruptedException e) {
+                    log.debug("Packet-in worker interrupted, terminating");
+                    return;
+                }
+            }
+        }
+    }
+
+    /** The controller that runs the packet-in listeners. */
+    protected final Controller controller;
+    /** The header fields packet-ins are sharded by. */
+    protected final Sharding sharding;
+    /** The capacity of the queue of every worker. */
+    protected final int queueSize;
+    /** The workers. */
+    protected final Worker[] workers;
+    /** The worker threads, once started. */
+    protected Thread[] threads;
+
+    /**
+     * Constructor.
+     *
+     * @param controller The controller that runs the packet-in listeners.
+     * @param numWorkers The number of worker threads.
+     * @param queueSize The capacity of the queue of every worker.
+     * @param sharding The header fields packet-ins are sharded by.
+     */
+    public PacketInDispatcher(Controller controller, int numWorkers, int queueSize, Sharding sharding) {
+        if (numWorkers < 1 || queueSize < 1)
+            throw new IllegalArgumentException("Number of workers and queue size must be positive");
+        this.controller = controller;
+        this.sharding = sharding;
+        this.queueSize = queueSize;
+        this.workers = new Worker[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+            this.workers[i] = new Worker(queueSize);
+        }
+    }
+
+    /**
+     * Starts the worker threads.
+     */
+    public synchronized void start() {
+        if (threads != null)
+            return;
+        threads = new Thread[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            threads[i] = new Thread(workers[i], "PacketInWorker-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Stops the worker threads and waits for them to terminate.
+     * Packet-ins still queued are dropped.
+     *
+     * @param timeout The maximum time to wait for every worker, in milliseconds.
+     * @throws InterruptedException
+     */
+    public synchronized void stop(long timeout) throws InterruptedException {
+        if (threads == null)
+            return;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            thread.join(timeout);
+        }
+        for (Worker worker : workers) {
+            worker.queue.clear();
+        }
+        threads = null;
+    }
+
+    /**
+     * Queues a packet-in for its listeners. Does not block and does
+     * not copy the packet data.
+     *
+     * @param sw The switch that sent the packet-in.
+     * @param pi The packet-in message.
+     * @return <b>false</b> iff the packet-in is dropped, as the queue of its shard is full.
+     */
+    public boolean dispatch(IOFSwitch sw, OFPacketIn pi) {
+        return dispatch(sw, pi, null);
+    }
+
+    /**
+     * Queues a packet-in for its listeners, together with its context,
+     * e.g. a context that holds the view decoded by the input throttle.
+     *
+     * @param sw The switch that sent the packet-in.
+     * @param pi The packet-in message.
+     * @param cntx The context of the packet-in, or null.
+     * @return <b>false</b> iff the packet-in is dropped, as the queue of its shard is full.
+     */
+    public boolean dispatch(IOFSwitch sw, OFPacketIn pi, FloodlightContext cntx) {
+        return workers[getShard(sw, pi)].queue.offer(new PacketInEvent(sw, pi, cntx));
+    }
+
+    /**
+     * Gets the backlog, i.e. the fill level of the fullest queue.
+     *
+     * @return The backlog between 0.0 (all queues empty) and 1.0 (a queue is full).
+     */
+    public double getBacklog() {
+        int maxSize = 0;
+        for (Worker worker : workers) {
+            maxSize = Math.max(maxSize, worker.queue.size());
+        }
+        return (double) maxSize / queueSize;
+    }
+
+    /**
+     * Gets the shard, i.e. the worker index, of a packet-in.
+     *
+     * @param sw The switch that sent the packet-in.
+     * @param pi The packet-in message.
+     * @return The worker index of the packet-in.
+     */
+    protected int getShard(IOFSwitch sw, OFPacketIn pi) {
+        int hash;
+        int length = pi.getPacketDataLength();
+        if (sharding == Sharding.SWITCH || length < ETHERNET_HEADER_LENGTH) {
+            long dpid = sw.getId();
+            hash = (int) (dpid ^ (dpid >>> 32));
+        } else {
+            hash = getFlowHash(pi.getPacketDataBuffer(), length);
+        }
+        // Spread the hash bits, as the lower bits of addresses are often similar.
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return (hash & Integer.MAX_VALUE) % workers.length;
+    }
+
+    /**
+     * Calculates a hash of the L2-L4 header fields of a packet, read
+     * directly from the packet buffer. The fields are the same the
+     * PacketInView provides: the MAC addresses, the Ethertype after an
+     * optional VLAN tag, the IPv4 (or ARP) addresses, and the TCP or
+     * UDP ports.
+     *
+     * @param data The packet data, starting at its reader index.
+     * @param length The length of the packet data, at least an Ethernet header.
+     * @return The hash of the header fields.
+     */
+    protected static int getFlowHash(ChannelBuffer data, int length) {
+        int start = data.readerIndex();
+        long macs = getMAC(data, start) ^ getMAC(data, start + Ethernet.DATALAYER_ADDRESS_LENGTH);
+        int offset = ETHERNET_HEADER_LENGTH;
+        short etherType = data.getShort(start + offset - 2);
+        if (etherType == TYPE_VLAN && length >= ETHERNET_HEADER_LENGTH + VLAN_TAG_LENGTH) {
+            etherType = data.getShort(start + offset + 2);
+            offset += VLAN_TAG_LENGTH;
+        }
+
+        int nwSrc = 0, nwDst = 0;
+        short tpSrc = 0, tpDst = 0;
+        if (etherType == Ethernet.TYPE_IPv4 && length >= offset + 20) {
+            int headerLength = (data.getByte(start + offset) & 0x0f) * 4;
+            if (headerLength >= 20 && length >= offset + headerLength) {
+                nwSrc = data.getInt(start + offset + 12);
+                nwDst = data.getInt(start + offset + 16);
+                byte protocol = data.getByte(start + offset + 9);
+                if ((protocol == IPv4.PROTOCOL_TCP || protocol == IPv4.PROTOCOL_UDP)
+                        && length >= offset + headerLength + 4) {
+                    tpSrc = data.getShort(start + offset + headerLength);
+                    tpDst = data.getShort(start + offset + headerLength + 2);
+                }
+            }
+        } else if (etherType == Ethernet.TYPE_ARP && length >= offset + 28
+                && data.getShort(start + offset + 2) == Ethernet.TYPE_IPv4
+                && data.getByte(start + offset + 5) == 4) {
+            nwSrc = data.getInt(start + offset + 14);
+            nwDst = data.getInt(start + offset + 24);
+        }
+
+        int hash = (int) (macs ^ (macs >>> 32));
+        hash = 31 * hash + etherType;
+        hash = 31 * hash + nwSrc;
+        hash = 31 * hash + nwDst;
+        hash = 31 * hash + tpSrc;
+        hash = 31 * hash + tpDst;
+        return hash;
+    }
+
+    private static long getMAC(ChannelBuffer data, int index) {
+        return ((long) data.getUnsignedShort(index) << 32) | data.getUnsignedInt(index + 2);
+    }
+
+    /**
+     * Runs the packet-in listeners for a packet-in. Unless the context
+     * of the packet-in holds a view already, the view is created here,
+     * i.e. in the worker thread, and passed on to the listeners.
+     *
+     * @param event The packet-in event.
+     */
+    protected void process(PacketInEvent event) {
+        FloodlightContext cntx = (event.cntx != null) ? event.cntx : new FloodlightContext();
+        if (IFloodlightProviderService.piViewStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_VIEW) == null) {
+            PacketInView piView = new PacketInView(event.pi.getPacketData(), event.pi.getInPort());
+            IFloodlightProviderService.piViewStore.put(cntx, IFloodlightProviderService.CONTEXT_PI_VIEW, piView);
+        }
+        try {
+            controller.handleMessage(event.sw, event.pi, cntx);
+        } catch (Exception e) {
+            log.error("Error while processing packet-in from switch " + event.sw.getStringId(), e);
+        }
+    }
+
+}
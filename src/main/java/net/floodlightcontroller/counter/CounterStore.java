@@ -155,7 +155,7 @@ public class CounterStore implements IFloodlightModule, ICounterStoreService {
 
     @Override
     public void updatePacketInCountersLocal(IOFSwitch sw, OFMessage m, Ethernet eth) {
-        if (((OFPacketIn)m).getPacketData().length <= 0) {
+        if (((OFPacketIn)m).getPacketDataLength() <= 0) {
             return;
         }
         CounterKeyTuple countersKey = this.getCountersKey(sw, m, eth);
@@ -74,6 +74,12 @@ public class Device implements IDevice {
      */
     protected volatile List<AttachmentPoint> attachmentPoints;
 
+    /**
+     * The result of the last call to {@link #getIPv4Addresses()}, valid
+     * as long as the device manager's IPv4 version has not changed.
+     */
+    private volatile IPv4AddressCache ipv4Cache;
+
     // ************
     // Constructors
     // ************
@@ -108,7 +114,7 @@ public class Device implements IDevice {
 
             if (deviceManager.isValidAttachmentPoint(sw, port)) {
                 AttachmentPoint ap;
-                ap = new AttachmentPoint(sw, port, entity.getLastSeenTimestamp().getTime());
+                ap = new AttachmentPoint(sw, port, entity.getLastSeen());
 
                 this.attachmentPoints = new ArrayList<AttachmentPoint>();
                 this.attachmentPoints.add(ap);
@@ -654,8 +660,13 @@ public class Device implements IDevice {
 
     @Override
     public Integer[] getIPv4Addresses() {
-        // XXX - TODO we can cache this result.  Let's find out if this
-        // is really a performance bottleneck first though.
+        // The set of entities of a device never changes, so the cached addresses
+        // only become stale when another device claims one of our
+        // addresses, which bumps the device manager's IPv4 version
+        long version = deviceManager.getIPv4Version();
+        IPv4AddressCache cache = ipv4Cache;
+        if (cache != null && cache.version == version)
+            return cache.addresses.clone();
 
         TreeSet<Integer> vals = new TreeSet<Integer>();
         for (Entity e : entities) {
@@ -673,9 +684,8 @@ public class Device implements IDevice {
                 for (Entity se : d.entities) {
                     if (se.getIpv4Address() != null &&
                             se.getIpv4Address().equals(e.getIpv4Address()) &&
-                            se.getLastSeenTimestamp() != null &&
-                            0 < se.getLastSeenTimestamp().
-                            compareTo(e.getLastSeenTimestamp())) {
+                            se.getLastSeen() != Entity.NO_TIMESTAMP &&
+                            se.getLastSeen() > e.getLastSeen()) {
                         validIP = false;
                         break;
                     }
@@ -688,7 +698,9 @@ public class Device implements IDevice {
                 vals.add(e.getIpv4Address());
         }
 
-        return vals.toArray(new Integer[vals.size()]);
+        Integer[] addresses = vals.toArray(new Integer[vals.size()]);
+        ipv4Cache = new IPv4AddressCache(version, addresses);
+        return addresses.clone();
     }
 
     @Override
@@ -708,13 +720,12 @@ public class Device implements IDevice {
 
     @Override
     public Date getLastSeen() {
-        Date d = null;
+        long last = Entity.NO_TIMESTAMP;
         for (int i = 0; i < entities.length; i++) {
-            if (d == null ||
-                    entities[i].getLastSeenTimestamp().compareTo(d) > 0)
-                d = entities[i].getLastSeenTimestamp();
+            if (entities[i].getLastSeen() > last)
+                last = entities[i].getLastSeen();
         }
-        return d;
+        return (last == Entity.NO_TIMESTAMP) ? null : new Date(last);
     }
 
     // ***************
@@ -792,4 +803,18 @@ public class Device implements IDevice {
         builder.append("]");
         return builder.toString();
     }
+
+    /**
+     * IPv4 addresses of a device along with the device manager's IPv4
+     * version at the time they were computed
+     */
+    private static class IPv4AddressCache {
+        final long version;
+        final Integer[] addresses;
+
+        public IPv4AddressCache(long version, Integer[] addresses) {
+            this.version = version;
+            this.addresses = addresses;
+        }
+    }
 }
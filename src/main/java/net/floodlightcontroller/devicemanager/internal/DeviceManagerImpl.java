@@ -19,7 +19,6 @@ package net.floodlightcontroller.devicemanager.internal;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -91,9 +90,11 @@ import net.floodlightcontroller.packet.DHCP.DHCPOptionCode;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.storage.IStorageSourceService;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.threadpool.IThreadPoolService.ExecutorLane;
 import net.floodlightcontroller.topology.ITopologyListener;
 import net.floodlightcontroller.topology.IOlimpsTopologyService;
 import net.floodlightcontroller.util.MultiIterator;
+import net.floodlightcontroller.util.TimingWheel;
 import static net.floodlightcontroller.devicemanager.internal.
 DeviceManagerImpl.DeviceUpdate.Change.*;
 
@@ -160,6 +161,9 @@ public class DeviceManagerImpl implements
     public IDebugCounter cntDeviceMoved;
     public IDebugCounter cntCleanupEntitiesRuns;
     public IDebugCounter cntEntityRemovedTimeout;
+    public IDebugCounter cntCleanupEntitiesVisited;
+    public IDebugCounter cntCleanupEntitiesTime;
+    public IDebugCounter cntCleanupEntitiesLag;
     public IDebugCounter cntDeviceDeleted;
     public IDebugCounter cntDeviceReclassifyDelete;
     public IDebugCounter cntDeviceStrored;
@@ -213,9 +217,17 @@ public class DeviceManagerImpl implements
     protected static final int ENTITY_TIMEOUT = 60*60*1000;
 
     /**
-     * Time in seconds between cleaning up old entities/devices
+     * Time in seconds between cleaning up old entities/devices.  This is
+     * also the tick of the entity expiry wheel, so entities are removed at
+     * most this long after they expire.
      */
-    protected static final int ENTITY_CLEANUP_INTERVAL = 60*60;
+    protected static final int ENTITY_CLEANUP_INTERVAL = 60;
+
+    /**
+     * Entities ordered by the time they expire.  Each cleanup run only
+     * visits the entities that became due since the previous run.
+     */
+    protected TimingWheel<Entity> entityExpiryWheel;
 
     /**
      * This is the master device map that maps device IDs to {@link Device}
@@ -238,6 +250,26 @@ public class DeviceManagerImpl implements
      */
     protected Map<EnumSet<DeviceField>, DeviceIndex> secondaryIndexMap;
 
+    /**
+     * Key fields of the global secondary indices that are always maintained
+     */
+    protected static final EnumSet<DeviceField> IPV4_INDEX_FIELDS =
+            EnumSet.of(DeviceField.IPV4);
+    protected static final EnumSet<DeviceField> MAC_VLAN_INDEX_FIELDS =
+            EnumSet.of(DeviceField.MAC, DeviceField.VLAN);
+
+    /**
+     * The global IPv4 index, also registered in {@link #secondaryIndexMap}
+     */
+    protected DeviceIndex ipv4Index;
+
+    /**
+     * Incremented whenever an IPv4 address that is claimed by more than one
+     * device is learned, refreshed or removed.  Devices cache their IPv4
+     * addresses for as long as this version does not change.
+     */
+    protected AtomicLong ipv4Version = new AtomicLong(0);
+
     /**
      * This map contains state for each of the {@ref IEntityClass}
      * that exist
@@ -493,7 +525,9 @@ public class DeviceManagerImpl implements
                          EnumSet<DeviceField> keyFields) {
         if (perClass) {
             perClassIndices.add(keyFields);
-        } else {
+        } else if (!secondaryIndexMap.containsKey(keyFields)) {
+            // Keep an existing index, such as the global IPv4 index, which
+            // is populated already and referenced by ipv4Index
             secondaryIndexMap.put(keyFields,
                                   new DeviceMultiIndex(keyFields));
         }
@@ -917,10 +951,19 @@ public class DeviceManagerImpl implements
     public void startUp(FloodlightModuleContext fmc) throws FloodlightModuleException {
         isMaster = (floodlightProvider.getRole() == Role.MASTER);
         primaryIndex = new DeviceUniqueIndex(entityClassifier.getKeyFields());
-        secondaryIndexMap = new HashMap<EnumSet<DeviceField>, DeviceIndex>();
+        secondaryIndexMap =
+                new ConcurrentHashMap<EnumSet<DeviceField>, DeviceIndex>();
+        ipv4Index = new DeviceMultiIndex(IPV4_INDEX_FIELDS);
+        secondaryIndexMap.put(IPV4_INDEX_FIELDS, ipv4Index);
+        secondaryIndexMap.put(MAC_VLAN_INDEX_FIELDS,
+                              new DeviceMultiIndex(MAC_VLAN_INDEX_FIELDS));
 
         deviceMap = new ConcurrentHashMap<Long, Device>();
         classStateMap = new ConcurrentHashMap<String, ClassState>();
+        entityExpiryWheel =
+                new TimingWheel<Entity>(ENTITY_CLEANUP_INTERVAL * 1000L,
+                                        ENTITY_TIMEOUT / (ENTITY_CLEANUP_INTERVAL * 1000),
+                                        System.currentTimeMillis());
         apComparator = new AttachmentPointComparator();
 
         floodlightProvider.addOFMessageListener(OFType.PACKET_IN, this);
@@ -931,7 +974,7 @@ public class DeviceManagerImpl implements
         flowReconcileMgr.addFlowReconcileListener(this);
         entityClassifier.addListener(this);
 
-        ScheduledExecutorService ses = threadPool.getScheduledExecutor();
+        ScheduledExecutorService ses = threadPool.getScheduledExecutor(ExecutorLane.HOUSEKEEPING);
         Runnable ecr = new Runnable() {
             @Override
             public void run() {
@@ -1061,6 +1104,19 @@ public class DeviceManagerImpl implements
                  "Number of times entities have been removed due to timeout " +
                  "(entity has been inactive for " + ENTITY_TIMEOUT/1000 + "s)",
                  CounterType.ALWAYS_COUNT);
+            cntCleanupEntitiesVisited = debugCounters.registerCounter(PACKAGE,
+                 "cleanup-entities-visited",
+                 "Number of expired entities visited by the entity cleanup task",
+                 CounterType.ALWAYS_COUNT);
+            cntCleanupEntitiesTime = debugCounters.registerCounter(PACKAGE,
+                 "cleanup-entities-time-ms",
+                 "Total time in milliseconds spent in the entity cleanup task",
+                 CounterType.ALWAYS_COUNT);
+            cntCleanupEntitiesLag = debugCounters.registerCounter(PACKAGE,
+                 "cleanup-entities-lag-ms",
+                 "Total time in milliseconds between the expiry of entities " +
+                 "and their removal by the entity cleanup task",
+                 CounterType.ALWAYS_COUNT);
             cntDeviceDeleted = debugCounters.registerCounter(PACKAGE, "device-deleted",
                  "Number of devices that have been removed due to inactivity",
                  CounterType.ALWAYS_COUNT);
@@ -1607,6 +1663,7 @@ public class DeviceManagerImpl implements
                 }
 
                 updateSecondaryIndices(entity, entityClass, deviceKey);
+                scheduleEntityExpiry(entity);
 
                 // We need to count and log here. If we log earlier we could
                 // hit a concurrent modification and restart the dev creation
@@ -1639,12 +1696,14 @@ public class DeviceManagerImpl implements
             if ((entityindex = device.entityIndex(entity)) >= 0) {
                 // Entity already exists
                 // update timestamp on the found entity
-                Date lastSeen = entity.getLastSeenTimestamp();
-                if (lastSeen == null) {
-                    lastSeen = new Date();
-                    entity.setLastSeenTimestamp(lastSeen);
+                long lastSeen = entity.getLastSeen();
+                if (lastSeen == Entity.NO_TIMESTAMP) {
+                    lastSeen = System.currentTimeMillis();
+                    entity.setLastSeen(lastSeen);
                 }
-                device.entities[entityindex].setLastSeenTimestamp(lastSeen);
+                device.entities[entityindex].setLastSeen(lastSeen);
+                // a newer timestamp can move a shared IP to this device
+                invalidateIPv4IfShared(entity);
                 // we break the loop after checking for changes to the AP
             } else {
                 // New entity for this device
@@ -1673,6 +1732,7 @@ public class DeviceManagerImpl implements
                 updateSecondaryIndices(entity,
                                        device.getEntityClass(),
                                        deviceKey);
+                scheduleEntityExpiry(entity);
 
                 // We need to count here after all the possible "continue"
                 // statements in this branch
@@ -1693,7 +1753,7 @@ public class DeviceManagerImpl implements
                         device.updateAttachmentPoint(entity.getSwitchDPID(),
                                 //entity.getSwitchPort().shortValue(),
                                 entity.getSwitchPort(),
-                                entity.getLastSeenTimestamp().getTime());
+                                entity.getLastSeen());
                 // TODO: use update mechanism instead of sending the
                 // notification directly
                 if (moved) {
@@ -1934,22 +1994,82 @@ public class DeviceManagerImpl implements
         for (DeviceIndex index : state.secondaryIndexMap.values()) {
             index.updateIndex(entity, deviceKey);
         }
+        invalidateIPv4IfShared(entity);
+    }
+
+    /**
+     * Invalidate the cached IPv4 addresses of all devices if the IPv4
+     * address of the given entity is claimed by more than one device
+     * @param entity the entity that was learned, refreshed or removed
+     */
+    protected void invalidateIPv4IfShared(Entity entity) {
+        if (entity.getIpv4Address() == null || ipv4Index == null) return;
+        Iterator<Long> keys = ipv4Index.queryByEntity(entity);
+        if (keys.hasNext()) {
+            keys.next();
+            if (keys.hasNext())
+                ipv4Version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the current IPv4 version
+     * @return the version
+     * @see #ipv4Version
+     */
+    protected long getIPv4Version() {
+        return ipv4Version.get();
+    }
+
+    /**
+     * Add a newly learned entity to the expiry wheel.  Entities that are
+     * already in the wheel are not added again; refreshing the last seen
+     * time of an entity moves it in the wheel lazily.
+     * @param entity the entity
+     */
+    protected void scheduleEntityExpiry(Entity entity) {
+        if (entity.getLastSeen() == Entity.NO_TIMESTAMP) return;
+        if (entity.expiryScheduled) return;
+        entity.expiryScheduled = true;
+        entityExpiryWheel.add(entity);
     }
 
     /**
      * Clean up expired entities/devices
      */
     protected void cleanupEntities () {
+        cleanupEntities(System.currentTimeMillis());
+    }
+
+    /**
+     * Clean up the entities/devices that are expired at the given time
+     * @param now the current time in milliseconds
+     */
+    protected void cleanupEntities(long now) {
         cntCleanupEntitiesRuns.updateCounterWithFlush();
 
-        Calendar c = Calendar.getInstance();
-        c.add(Calendar.MILLISECOND, -ENTITY_TIMEOUT);
-        Date cutoff = c.getTime();
+        long start = System.currentTimeMillis();
+        long cutoff = now - ENTITY_TIMEOUT;
+
+        // Find the devices of the entities that are due. An entity that
+        // is no longer part of its device has been removed already.
+        List<Entity> expired = entityExpiryWheel.expire(now);
+        Map<Long, Device> dueDevices = new HashMap<Long, Device>();
+        long lag = 0;
+        for (Entity e : expired) {
+            e.expiryScheduled = false;
+            lag += now - e.getExpirationTime();
+            Device d = getDeviceForEntity(e);
+            if (d != null)
+                dueDevices.put(d.getDeviceKey(), d);
+        }
+        cntCleanupEntitiesVisited.updateCounterWithFlush(expired.size());
+        cntCleanupEntitiesLag.updateCounterWithFlush((int)Math.min(lag, Integer.MAX_VALUE));
 
         ArrayList<Entity> toRemove = new ArrayList<Entity>();
         ArrayList<Entity> toKeep = new ArrayList<Entity>();
 
-        Iterator<Device> diter = deviceMap.values().iterator();
+        Iterator<Device> diter = dueDevices.values().iterator();
         LinkedList<DeviceUpdate> deviceUpdates =
                 new LinkedList<DeviceUpdate>();
 
@@ -1961,8 +2081,8 @@ public class DeviceManagerImpl implements
                 toRemove.clear();
                 toKeep.clear();
                 for (Entity e : d.getEntities()) {
-                    if (e.getLastSeenTimestamp() != null &&
-                         0 > e.getLastSeenTimestamp().compareTo(cutoff)) {
+                    if (e.getLastSeen() != Entity.NO_TIMESTAMP &&
+                         e.getLastSeen() < cutoff) {
                         // individual entity needs to be removed
                         toRemove.add(e);
                     } else {
@@ -2029,11 +2149,33 @@ public class DeviceManagerImpl implements
                 break;
             }
         }
+        // Entities that were refreshed in the meantime stay in the wheel
+        for (Entity e : expired) {
+            if (getDeviceForEntity(e) != null)
+                scheduleEntityExpiry(e);
+        }
+
+        cntCleanupEntitiesTime.updateCounterWithFlush((int)(System.currentTimeMillis() - start));
         // Since cleanupEntities() is not called in the packet-in pipeline,
         // debugEvents need to be flushed explicitly
         debugEvents.flushEvents();
     }
 
+    /**
+     * Get the device that currently contains the given entity object
+     * @param entity the entity
+     * @return the device, or null if the entity is not part of a device
+     */
+    private Device getDeviceForEntity(Entity entity) {
+        Long deviceKey = primaryIndex.findByEntity(entity);
+        if (deviceKey == null) return null;
+        Device d = deviceMap.get(deviceKey);
+        if (d == null) return null;
+        int index = d.entityIndex(entity);
+        if (index < 0 || d.entities[index] != entity) return null;
+        return d;
+    }
+
     protected void removeEntity(Entity removed,
                               IEntityClass entityClass,
                               Long deviceKey,
@@ -2041,6 +2183,7 @@ public class DeviceManagerImpl implements
         // Don't count in this method. This method CAN BE called to clean-up
         // after concurrent device adds/updates and thus counting here
         // is misleading
+        invalidateIPv4IfShared(removed);
         for (DeviceIndex index : secondaryIndexMap.values()) {
             index.removeEntityIfNeeded(removed, deviceKey, others);
         }
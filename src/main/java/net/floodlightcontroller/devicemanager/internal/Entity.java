@@ -23,6 +23,7 @@ import net.floodlightcontroller.core.web.serializers.IPv4Serializer;
 import net.floodlightcontroller.core.web.serializers.MACSerializer;
 import net.floodlightcontroller.core.web.serializers.DPIDSerializer;
 import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.util.TimingWheel;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
@@ -42,12 +43,17 @@ import org.openflow.util.HexString;
  * @author readams
  *
  */
-public class Entity implements Comparable<Entity> {
+public class Entity implements Comparable<Entity>, TimingWheel.Expirable {
     /**
      * Timeout for computing {@link Entity#activeSince}.
      * @see {@link Entity#activeSince}
      */
     protected static int ACTIVITY_TIMEOUT = 30000;
+
+    /**
+     * Value of a timestamp that has not been set
+     */
+    protected static final long NO_TIMESTAMP = Long.MIN_VALUE;
     
     /**
      * The MAC address associated with this entity
@@ -78,9 +84,10 @@ public class Entity implements Comparable<Entity> {
     protected Integer switchPort;
     
     /**
-     * The last time we observed this entity on the network
+     * The last time we observed this entity on the network, in milliseconds,
+     * or {@link Entity#NO_TIMESTAMP}
      */
-    protected Date lastSeenTimestamp;
+    protected volatile long lastSeenTimestamp;
 
     /**
      * The time between {@link Entity#activeSince} and 
@@ -90,7 +97,12 @@ public class Entity implements Comparable<Entity> {
      * {@link Entity#lastSeenTimestamp} and {@link Entity#activeSince} will 
      * be set to the current time.
      */
-    protected Date activeSince;
+    protected volatile long activeSince;
+
+    /**
+     * Whether the entity is currently in the device manager's expiry wheel
+     */
+    protected volatile boolean expiryScheduled = false;
     
     private int hashCode = 0;
 
@@ -116,8 +128,9 @@ public class Entity implements Comparable<Entity> {
         this.vlan = vlan;
         this.switchDPID = switchDPID;
         this.switchPort = switchPort;
-        this.lastSeenTimestamp = lastSeenTimestamp;
-        this.activeSince = lastSeenTimestamp;
+        this.lastSeenTimestamp = (lastSeenTimestamp == null) ?
+                NO_TIMESTAMP : lastSeenTimestamp.getTime();
+        this.activeSince = this.lastSeenTimestamp;
     }
 
     // ***************
@@ -153,6 +166,17 @@ public class Entity implements Comparable<Entity> {
     }
 
     public Date getLastSeenTimestamp() {
+        long ts = lastSeenTimestamp;
+        return (ts == NO_TIMESTAMP) ? null : new Date(ts);
+    }
+
+    /**
+     * Get the last seen timestamp without allocating a {@link Date}
+     * @return the last seen time in milliseconds, or
+     * {@link Entity#NO_TIMESTAMP} if the entity has not been seen
+     */
+    @JsonIgnore
+    public long getLastSeen() {
         return lastSeenTimestamp;
     }
 
@@ -163,19 +187,42 @@ public class Entity implements Comparable<Entity> {
      * @see {@link Entity#activeSince}
      */
     public void setLastSeenTimestamp(Date lastSeenTimestamp) {
-        if (activeSince == null ||
-            (activeSince.getTime() +  ACTIVITY_TIMEOUT) <
-                lastSeenTimestamp.getTime())
-            this.activeSince = lastSeenTimestamp;
-        this.lastSeenTimestamp = lastSeenTimestamp;
+        setLastSeen(lastSeenTimestamp.getTime());
+    }
+
+    /**
+     * Set the last seen timestamp and also update {@link Entity#activeSince}
+     * if appropriate
+     * @param lastSeen the new last seen time in milliseconds
+     * @see {@link Entity#activeSince}
+     */
+    public void setLastSeen(long lastSeen) {
+        if (activeSince == NO_TIMESTAMP ||
+            (activeSince +  ACTIVITY_TIMEOUT) < lastSeen)
+            this.activeSince = lastSeen;
+        this.lastSeenTimestamp = lastSeen;
     }
 
     public Date getActiveSince() {
-        return activeSince;
+        long ts = activeSince;
+        return (ts == NO_TIMESTAMP) ? null : new Date(ts);
     }
 
     public void setActiveSince(Date activeSince) {
-        this.activeSince = activeSince;
+        this.activeSince = (activeSince == null) ?
+                NO_TIMESTAMP : activeSince.getTime();
+    }
+
+    /**
+     * The entity expires {@link DeviceManagerImpl#ENTITY_TIMEOUT} after it
+     * was last seen. An entity that was never seen does not expire.
+     */
+    @Override
+    @JsonIgnore
+    public long getExpirationTime() {
+        long ts = lastSeenTimestamp;
+        if (ts == NO_TIMESTAMP) return Long.MAX_VALUE;
+        return ts + DeviceManagerImpl.ENTITY_TIMEOUT;
     }
     
     @Override
@@ -234,9 +281,9 @@ public class Entity implements Comparable<Entity> {
         builder.append(", switchPort=");
         builder.append(switchPort);
         builder.append(", lastSeenTimestamp=");
-        builder.append(lastSeenTimestamp == null? "null" : lastSeenTimestamp.getTime());
+        builder.append(lastSeenTimestamp == NO_TIMESTAMP? "null" : lastSeenTimestamp);
         builder.append(", activeSince=");
-        builder.append(activeSince == null? "null" : activeSince.getTime());
+        builder.append(activeSince == NO_TIMESTAMP? "null" : activeSince);
         builder.append("]");
         return builder.toString();
     }
@@ -39,12 +39,16 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
@@ -61,6 +65,7 @@ import net.floodlightcontroller.devicemanager.IDeviceService;
 import net.floodlightcontroller.flowcache.FlowCacheObj.Status;
 import net.floodlightcontroller.packet.Ethernet;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.threadpool.IThreadPoolService.ExecutorLane;
 
 
 import org.openflow.protocol.OFFlowRemoved;
@@ -77,6 +82,8 @@ import org.openflow.protocol.statistics.OFStatistics;
 import org.openflow.protocol.statistics.OFStatisticsType;
 import org.openflow.util.HexString;
 
+import com.google.common.util.concurrent.Futures;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -96,6 +103,10 @@ public class FlowCache implements IFloodlightModule, IFlowCacheService, IOFMessa
     
 	/** The logger. */
     protected static Logger log = LoggerFactory.getLogger(FlowCache.class);
+    /** The default number of threads used to fan out queries for all switches. */
+    protected static final int DEFAULT_QUERY_THREADS = 4;
+    /** The minimum number of switches before a query for all switches is fanned out. */
+    protected static final int PARALLEL_QUERY_MIN_SWITCHES = 16;
     /** */
     protected IFloodlightProviderService floodlightProvider;
     /** */
@@ -104,10 +115,10 @@ public class FlowCache implements IFloodlightModule, IFlowCacheService, IOFMessa
     protected IThreadPoolService threadPool;
     /** Flow query task to scan switches for their flow tables. */
     protected SendPeriodicFlowQueryToSwitches flowQueryTask;
-    /** */
-    protected FlowReconcileQueryTask flowReconcileQueryTask;
-    /** The pending query list. */
-    protected BlockingQueue<PendingQuery> pendingQueryList;
+    /** Executor to fan out queries for all switches. Null, if all-switch queries are handled sequentially. */
+    protected ExecutorService queryExecutor;
+    /** The number of threads of the query executor. Zero disables parallel all-switch queries. */
+    protected int queryThreads = DEFAULT_QUERY_THREADS;
     /** A Map of all flow cache databases. ApplicationName -> FlowCacheDB. One database per application. */
     protected ConcurrentHashMap<String, IFlowCacheDB> flowCacheDBs;
     /** Override entries if they have the same match hashes, even if the flow cache objects differ. Default is true. */
@@ -191,142 +202,42 @@ public class FlowCache implements IFloodlightModule, IFlowCacheService, IOFMessa
             for (Long switchId : switchIds) {
                 SwitchFlowTablePeriodicScanTask scanTask = new SwitchFlowTablePeriodicScanTask(switchId, callbackHandler);
                 // Schedule the queries to different switches in a staggered way.
-                threadPool.getScheduledExecutor().schedule(scanTask, interval_ms*idx, TimeUnit.MILLISECONDS);
+                threadPool.getScheduledExecutor(ExecutorLane.POLLING).schedule(scanTask, interval_ms*idx, TimeUnit.MILLISECONDS);
                 idx++;
             }
         }
     }
     
     /**
-     * The Class PendingQuery. Represents a FCQueryObj and
-     * the timestamp of its instantiation.
+     * Task that queries one switch of a flow cache database. Used
+     * to fan out queries for all switches to the query executor.
      */
-    protected class PendingQuery {
-        /** The query obj. */
-        protected FlowCacheQuery  queryObj;
-        /** The query receive time stamp. */
-        protected long queryRcvdTimeStamp_ms;
-        /** The pending switch response. */
-        //protected ArrayList<PendingSwitchResp> pendingSwitchResp;
-
-        /**
-         * Default Constructor. Instantiates a new pending query.
-         *
-         * @param query the query
-         */
-        protected PendingQuery(FlowCacheQuery query) {
-            queryObj = query;
-            queryRcvdTimeStamp_ms = System.currentTimeMillis();
-        }
-    }
-    
-    /**
-     * Worker task that handles asynchronous flow queries.
-     * 
-     * TODO: Why Thread and not Runnable?
-     */
-    protected class FlowReconcileQueryTask extends Thread {
-    	/** Pending query object that is handled. */
-    	PendingQuery pendingQuery;
-    	/** Corresponding query object. */
-    	FlowCacheQuery queryObj;
-    	
-    	@Override
-    	public void run() {
-            while (true) {
-				try {
-					pendingQuery = pendingQueryList.take();
-					queryObj = pendingQuery.queryObj;
-					FlowCacheQueryResp queryResp = new FlowCacheQueryResp(queryObj);
-
-					if (log.isTraceEnabled()) {
-						log.trace("Handle query: {}", queryObj);
-					}
-					
-					// Do the actual query, i.e. search for corresponding flow cache entries.
-					IFlowCacheDB flowCacheDb;
-					if (queryObj.applInstName != null && flowCacheDBs.containsKey(queryObj.applInstName)) {
-						 flowCacheDb = flowCacheDBs.get(queryObj.applInstName);
-					} else {
-						flowCacheDb = flowCacheDBs.get(FlowCache.DEFAULT_DB_NAME);
-					}
-					
-					queryResp.switchId = queryObj.switchId;
-					Map<Long, Set<FlowCacheObj>> resultMap = flowCacheDb.queryDB(queryObj.switchId, queryObj);
-					if (resultMap != null) {
-						queryResp.flowCacheObjList.addAll(resultMap.get(queryObj.switchId));
-					} else {
-						continue;
-					}
-
-					// Pass query result to query handler.
-					if (queryObj.fcQueryHandler != null) {
-						queryObj.fcQueryHandler.flowQueryRespHandler(queryResp);
-					}
-				} catch (Exception e) {
-					log.warn("Exception in doReconcile(): {}", e.getMessage());
-					e.printStackTrace();
-				}
-			}
-            	
-    	}
-    }
-    
-    /**
-     * TESTING
-     * 
-     * @author Michael Bredel <michael.bredel@cern.ch>
-     */
-    public class SearcherCallable implements Callable<FlowCacheQueryResp> {
-    	/** */
+    protected class SwitchQueryCallable implements Callable<Set<FlowCacheObj>> {
+    	/** The flow cache database to query. */
+    	private IFlowCacheDB flowCacheDb;
+    	/** The switch to query. */
+    	private long switchId;
+    	/** The flow cache query. */
     	private FlowCacheQuery fcq;
-    	/** */
-    	private FlowCacheQueryResp resp;
     	
     	/**
     	 * Constructor.
     	 * 
-    	 * @param fcq
+    	 * @param flowCacheDb The flow cache database to query.
+    	 * @param switchId The switch to query.
+    	 * @param fcq The flow cache query.
     	 */
-    	public SearcherCallable(FlowCacheQuery fcq) {
+    	protected SwitchQueryCallable(IFlowCacheDB flowCacheDb, long switchId, FlowCacheQuery fcq) {
+    		this.flowCacheDb = flowCacheDb;
+    		this.switchId = switchId;
     		this.fcq = fcq;
-    		this.resp = new FlowCacheQueryResp(fcq);
     	}
 
 		@Override
-		public FlowCacheQueryResp call() throws Exception {
-			// Do the actual query, i.e. search for corresponding flow cache entries.
-			IFlowCacheDB flowCacheDb;
-			if (fcq.applInstName != null && flowCacheDBs.containsKey(fcq.applInstName)) {
-				 flowCacheDb = flowCacheDBs.get(fcq.applInstName);
-			} else {
-				flowCacheDb = flowCacheDBs.get(FlowCache.DEFAULT_DB_NAME);
-			}
-			
-			if (fcq.switchId != 0) {
-				// Query one switch.
-				resp.switchId = fcq.switchId;
-				Map<Long, Set<FlowCacheObj>> resultMap = flowCacheDb.queryDB(fcq.switchId, fcq);
-				if (resultMap != null) {
-					resp.flowCacheObjList.addAll(resultMap.get(fcq.switchId));
-				}
-			} else {
-				resp.switchId = 0;
-				// Query all switches.
-				for (long switchId : floodlightProvider.getAllSwitchDpids()) {
-					Map<Long, Set<FlowCacheObj>> resultMap = flowCacheDb.queryDB(switchId, fcq);
-					if (resultMap != null) {
-						resp.flowCacheObjList.addAll(resultMap.get(switchId));
-						// TODO: Dirty hack. We should return a list of FlowCacheQueryResp objects, or they should contain a list of switches.
-						resp.switchId = switchId;
-					}
-				}
-			}
-			
-			// Return query result.
-			return (!resp.flowCacheObjList.isEmpty()) ? resp : null;
+		public Set<FlowCacheObj> call() throws Exception {
+			Map<Long, Set<FlowCacheObj>> resultMap = flowCacheDb.queryDB(switchId, fcq);
+			return (resultMap != null) ? resultMap.get(switchId) : null;
 		}
-    	
     }
 
 	@Override
@@ -373,9 +284,33 @@ public class FlowCache implements IFloodlightModule, IFlowCacheService, IOFMessa
         deviceManager = context.getServiceImpl(IDeviceService.class);
         threadPool = context.getServiceImpl(IThreadPoolService.class);
 		flowQueryTask = new SendPeriodicFlowQueryToSwitches(this);
-		flowReconcileQueryTask = new FlowReconcileQueryTask();
-		pendingQueryList = new LinkedBlockingQueue<PendingQuery>();
 		flowCacheDBs = new ConcurrentHashMap<String, IFlowCacheDB>();
+		// Register a default flow cache database, e.g. for flow-mods already on the switch. Registered early, such that other modules can listen to it on startup.
+		this.registerFlowCacheDB(DEFAULT_DB_NAME, new IndexedFlowCacheDB(DEFAULT_DB_NAME));
+		
+		// Read our config options.
+		Map<String, String> configOptions = context.getConfigParams(this);
+		String queryThreadsString = configOptions.get("querythreads");
+		if (queryThreadsString != null) {
+			try {
+				queryThreads = Integer.parseInt(queryThreadsString);
+			} catch (NumberFormatException e) {
+				log.warn("Error parsing query threads, using default of {}", DEFAULT_QUERY_THREADS);
+			}
+		}
+		if (queryThreads > 0) {
+			queryExecutor = Executors.newFixedThreadPool(queryThreads, new ThreadFactory() {
+				/** The number of threads created so far. */
+				private final AtomicInteger threadCount = new AtomicInteger(0);
+				
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "FlowCacheQuery-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
 	}
 
 	@Override
@@ -383,15 +318,11 @@ public class FlowCache implements IFloodlightModule, IFlowCacheService, IOFMessa
 		floodlightProvider.addOFSwitchListener(this);
 		floodlightProvider.addOFMessageListener(OFType.FLOW_REMOVED, this);
 		floodlightProvider.addOFMessageListener(OFType.STATS_REPLY, this);
-		threadPool.getScheduledExecutor().scheduleAtFixedRate(
+		threadPool.getScheduledExecutor(ExecutorLane.POLLING).scheduleAtFixedRate(
 				flowQueryTask,
 				SWITCH_FLOW_TBL_SCAN_INITIAL_DELAY_MSEC, 
 				SWITCH_FLOW_TBL_SCAN_INTERVAL_MSEC,
                 TimeUnit.MILLISECONDS);
-		flowReconcileQueryTask.start();
-		// Register a default flow cache database, e.g. for flow-mods already on the switch
-		//this.registerFlowCacheDB(DEFAULT_DB_NAME, new ExtendedFlowCacheDB(DEFAULT_DB_NAME)); // ExtendedFlowCacheDB still has errors.
-		this.registerFlowCacheDB(DEFAULT_DB_NAME, new FlowCacheDB(DEFAULT_DB_NAME));
 	}
 	
 	@Override
@@ -464,6 +395,22 @@ public class FlowCache implements IFloodlightModule, IFlowCacheService, IOFMessa
 	public IFlowCacheDB unRegisterFlowCacheDB(String appName) {
 		return flowCacheDBs.remove(appName);
 	}
+	
+	@Override
+	public boolean addFlowCacheListener(String appName, IFlowCacheListener listener) {
+		/* The flow cache database to listen to. */
+		IFlowCacheDB flowCacheDb = this.getFlowCacheDB(appName);
+		
+		if (flowCacheDb instanceof IndexedFlowCacheDB) {
+			((IndexedFlowCacheDB) flowCacheDb).addListener(listener);
+			return true;
+		}
+		
+		if (log.isWarnEnabled()) {
+			log.warn("addFlowCacheListener: Flow cache db {} does not support listeners.", flowCacheDb);
+		}
+		return false;
+	}
 
 	@Override
 	public synchronized FlowCacheObj addFlow(String appName, long switchId, Long cookie, short priority, OFMatch match, List<OFAction> actions) {
@@ -621,33 +568,140 @@ public class FlowCache implements IFloodlightModule, IFlowCacheService, IOFMessa
             log.debug("submit Query: {}", flowCacheQuery);
         }
 		
-		PendingQuery pq = new PendingQuery(flowCacheQuery);
-        boolean retCode = pendingQueryList.offer(pq);
-        if (!retCode) {
-            log.warn("Failed to post a query {}", pq);
-        }
+		FlowCacheQueryResp queryResp = this.queryFlows(flowCacheQuery);
+		
+		// Pass query result to query handler.
+		if (queryResp != null && flowCacheQuery.fcQueryHandler != null) {
+			flowCacheQuery.fcQueryHandler.flowQueryRespHandler(queryResp);
+		}
 	}
 	
 	@Override
+	public FlowCacheQueryResp queryFlows(FlowCacheQuery flowCacheQuery) {
+		/* The query response. */
+		FlowCacheQueryResp resp = new FlowCacheQueryResp(flowCacheQuery);
+		/* The flow cache database to query. */
+		IFlowCacheDB flowCacheDb = this.getFlowCacheDB(flowCacheQuery.applInstName);
+		
+		if (flowCacheDb == null) {
+			return null;
+		}
+		
+		if (flowCacheQuery.switchId != 0) {
+			// Query one switch.
+			resp.switchId = flowCacheQuery.switchId;
+			Map<Long, Set<FlowCacheObj>> resultMap = flowCacheDb.queryDB(flowCacheQuery.switchId, flowCacheQuery);
+			if (resultMap != null) {
+				resp.flowCacheObjList.addAll(resultMap.get(flowCacheQuery.switchId));
+			}
+		} else {
+			// Query all switches.
+			this.queryAllSwitches(flowCacheDb, flowCacheQuery, resp);
+		}
+		
+		// Return query result.
+		return (!resp.flowCacheObjList.isEmpty()) ? resp : null;
+	}
+	
+	@Override
+	public List<FlowCacheQueryResp> queryFlows(List<FlowCacheQuery> flowCacheQueryList) {
+		/* The list of query responses. */
+		List<FlowCacheQueryResp> respList = new ArrayList<FlowCacheQueryResp>(flowCacheQueryList.size());
+		
+		for (FlowCacheQuery fcq : flowCacheQueryList) {
+			FlowCacheQueryResp resp = this.queryFlows(fcq);
+			if (resp != null) {
+				respList.add(resp);
+			}
+		}
+		
+		return respList;
+	}
+	
+	@Override
+	@Deprecated
 	public Future<FlowCacheQueryResp> queryDB(FlowCacheQuery flowCacheQuery) {
-		return this.threadPool.getScheduledExecutor().submit(new SearcherCallable(flowCacheQuery));
+		return Futures.immediateFuture(this.queryFlows(flowCacheQuery));
 	}
 	
 	@Override
+	@Deprecated
 	public List<Future<FlowCacheQueryResp>> queryDB(List<FlowCacheQuery> flowCacheQueryList) {
-		/* The task list. */
-		Set<SearcherCallable> callableSet = new HashSet<SearcherCallable>();
+		/* The list of (completed) futures. */
+		List<Future<FlowCacheQueryResp>> futureList = new ArrayList<Future<FlowCacheQueryResp>>(flowCacheQueryList.size());
+		
+		for (FlowCacheQuery fcq : flowCacheQueryList) {
+			futureList.add(Futures.immediateFuture(this.queryFlows(fcq)));
+		}
 		
-		// Populate the task list with callable objects.
-		for(FlowCacheQuery fcq : flowCacheQueryList) {
-			callableSet.add(new SearcherCallable(fcq));
+		return futureList;
+	}
+	
+	/**
+	 * Queries all switches of a flow cache database. If a query executor is
+	 * configured, the query is fanned out to the executor, one task per switch.
+	 * Otherwise, the switches are queried sequentially in the calling thread.
+	 * 
+	 * @param flowCacheDb The flow cache database to query.
+	 * @param fcq The flow cache query.
+	 * @param resp The query response to populate.
+	 */
+	private void queryAllSwitches(IFlowCacheDB flowCacheDb, FlowCacheQuery fcq, FlowCacheQueryResp resp) {
+		/* All switches to query. */
+		Set<Long> switchIds = floodlightProvider.getAllSwitchDpids();
+		
+		resp.switchId = 0;
+		
+		if (queryExecutor == null || switchIds.size() < PARALLEL_QUERY_MIN_SWITCHES) {
+			for (long switchId : switchIds) {
+				Map<Long, Set<FlowCacheObj>> resultMap = flowCacheDb.queryDB(switchId, fcq);
+				if (resultMap != null) {
+					resp.flowCacheObjList.addAll(resultMap.get(switchId));
+					// TODO: Dirty hack. We should return a list of FlowCacheQueryResp objects, or they should contain a list of switches.
+					resp.switchId = switchId;
+				}
+			}
+			return;
+		}
+		
+		/* One task per switch. */
+		List<SwitchQueryCallable> tasks = new ArrayList<SwitchQueryCallable>(switchIds.size());
+		/* The switch Ids in the order of the tasks. */
+		List<Long> taskSwitchIds = new ArrayList<Long>(switchIds.size());
+		for (long switchId : switchIds) {
+			tasks.add(new SwitchQueryCallable(flowCacheDb, switchId, fcq));
+			taskSwitchIds.add(switchId);
 		}
 		
+		/* The futures of the tasks, cancelled if the query timed out. */
+		List<Future<Set<FlowCacheObj>>> futureList;
 		try {
-			return this.threadPool.getScheduledExecutor().invokeAll(callableSet, DEFAULT_TIMEOUT, DEFAULT_TIMEOUT_UNIT);
+			futureList = queryExecutor.invokeAll(tasks, DEFAULT_TIMEOUT, DEFAULT_TIMEOUT_UNIT);
 		} catch (InterruptedException e) {
-			e.printStackTrace();
-			return null;
+			Thread.currentThread().interrupt();
+			return;
+		}
+		
+		for (int i = 0; i < futureList.size(); i++) {
+			/* The result of a single switch. */
+			Set<FlowCacheObj> result;
+			try {
+				result = futureList.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException | CancellationException e) {
+				// Skip the failed switch, but keep the results of the others.
+				if (log.isWarnEnabled()) {
+					log.warn("Could not query switch {} for {}: {}", new Object[] {taskSwitchIds.get(i), fcq, e.toString()});
+				}
+				continue;
+			}
+			if (result != null) {
+				resp.flowCacheObjList.addAll(result);
+				// TODO: Dirty hack. We should return a list of FlowCacheQueryResp objects, or they should contain a list of switches.
+				resp.switchId = taskSwitchIds.get(i);
+			}
 		}
 	}
 
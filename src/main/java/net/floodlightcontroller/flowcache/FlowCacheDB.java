@@ -38,7 +38,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
-import org.bouncycastle.util.Arrays;
 import org.openflow.util.HexString;
 
 import org.slf4j.Logger;
@@ -113,7 +112,7 @@ public class FlowCacheDB implements IFlowCacheDB {
     }
     
     @Override
-	public synchronized FlowCacheObj getEntry(long switchId, FlowCacheObj fco) {
+	public FlowCacheObj getEntry(long switchId, FlowCacheObj fco) {
 		return this.getEntry(switchId, fco.getId());
 	}
 	
@@ -124,7 +123,7 @@ public class FlowCacheDB implements IFlowCacheDB {
 	 * @param matchHash The flow cache object hash of the flow to get.
 	 * @return <b>FlowCacheObj</b> The flow cache entry.
 	 */
-	protected synchronized FlowCacheObj getEntry(long switchId, int matchHash) {
+	protected FlowCacheObj getEntry(long switchId, int matchHash) {
 		/* The removed flow cache object. */
 		FlowCacheObj getFco = null;
 		
@@ -200,17 +199,12 @@ public class FlowCacheDB implements IFlowCacheDB {
 	 * @return <b>boolean</b> True iff the object is in the flow cache database.
 	 */
     protected boolean hasEntry(long switchId, int matchHash) {
-    	if (!flowCacheMatchHashMap.containsKey(switchId))
+		// Get switch's flow cache map once, as removeEntry may remove it concurrently.
+		ConcurrentHashMap<Integer, FlowCacheObj> switchFlowCacheMap = flowCacheMatchHashMap.get(switchId);
+		if (switchFlowCacheMap == null)
 			return false;
 		
-		// Set of match hashes of flows installed on the switch.
-		Set<Integer> hashSet = flowCacheMatchHashMap.get(switchId).keySet();
-		
-		if (hashSet != null && hashSet.contains(matchHash)) {
-			return true;
-		} else {
-			return false;
-		}
+		return switchFlowCacheMap.containsKey(matchHash);
     }
 
     @Override
@@ -223,22 +217,21 @@ public class FlowCacheDB implements IFlowCacheDB {
     	/* New HashMap that contains all flow cache objects. */
 		HashMap<Long, Set<FlowCacheObj>> resultMap = new HashMap<Long, Set<FlowCacheObj>>();
 		
-		for (Long switchId : this.flowCacheMatchHashMap.keySet()) {
-			if (!resultMap.containsKey(switchId)) {
-				resultMap.put(switchId, new HashSet<FlowCacheObj>());
-			}
-			resultMap.get(switchId).addAll(this.flowCacheMatchHashMap.get(switchId).values());
+		for (Map.Entry<Long, ConcurrentHashMap<Integer, FlowCacheObj>> entry : this.flowCacheMatchHashMap.entrySet()) {
+			resultMap.put(entry.getKey(), new HashSet<FlowCacheObj>(entry.getValue().values()));
 		}
 		
 		return resultMap;
     }
 
 	@Override
-	public synchronized Map<Long, Set<FlowCacheObj>> queryDB(long switchId, FlowCacheQuery query) {
+	public Map<Long, Set<FlowCacheObj>> queryDB(long switchId, FlowCacheQuery query) {
 		/* New HashMap that contains all flow cache objects that match the query: switchId -> SetOf FlowCacheObj. */
 		HashMap<Long, Set<FlowCacheObj>> resultMap = new HashMap<Long, Set<FlowCacheObj>>();
 		
-		if (!this.flowCacheMatchHashMap.containsKey(switchId)) {
+		// Get switch's flow cache map once, as removeEntry may remove it concurrently.
+		ConcurrentHashMap<Integer, FlowCacheObj> switchFlowCacheMap = this.flowCacheMatchHashMap.get(switchId);
+		if (switchFlowCacheMap == null) {
 			if (log.isDebugEnabled()) {
 				log.debug("Switch ID {} not found.", HexString.toHexString(switchId));
 			}
@@ -246,96 +239,15 @@ public class FlowCacheDB implements IFlowCacheDB {
 		}
 		
 		// Add all flow cache objects of the switch to the resulting map.
-		if (!resultMap.containsKey(switchId)) {
-			resultMap.put(switchId, new HashSet<FlowCacheObj>());
-		}
-		resultMap.get(switchId).addAll(this.flowCacheMatchHashMap.get(switchId).values());
+		resultMap.put(switchId, new HashSet<FlowCacheObj>(switchFlowCacheMap.values()));
 		
 		// Remove unwanted entries - according to the flow cache query.
 		for (Iterator<FlowCacheObj> iter = resultMap.get(switchId).iterator(); iter.hasNext();) {
 			// Get the flow cache object.
 			FlowCacheObj fco = iter.next();
 			
-			// Cookie
-			if (query.cookie != 0 && query.cookie != fco.getCookie()) {
-				iter.remove();
-				continue;
-			}
-			// priority
-			if (query.priority != 0 && query.priority != fco.getPriority()) {
-				iter.remove();
-				continue;
-			}
-			// OutPort
-			if (query.outPort != 0 && (fco.getOutPorts() == null || !fco.getOutPorts().contains(query.outPort))) {
-				iter.remove();
-				continue;
-			}
-			// InPort
-			if (query.inPort != 0 && (fco.getMatch() == null || query.inPort != fco.getMatch().getInputPort())) {
-				iter.remove();
-				continue;
-			}
-			// DL_DST
-			if (query.dataLayerDestination != null && !Arrays.areEqual(query.dataLayerDestination, fco.getMatch().getDataLayerDestination())) {
-				iter.remove();
-				continue;
-			}
-			// DL_SRC
-			if (query.dataLayerSource != null && !Arrays.areEqual(query.dataLayerSource, fco.getMatch().getDataLayerSource())) {
-				iter.remove();
-				continue;
-			}
-			// DL_VLAN
-			if (query.dataLayerVirtualLan != 0 && query.dataLayerVirtualLan != fco.getMatch().getDataLayerVirtualLan()) {
-				iter.remove();
-				continue;
-			}
-			// DL_VLAN_PCP
-			if (query.dataLayerVirtualLanPriorityCodePoint != 0 && query.dataLayerVirtualLanPriorityCodePoint != fco.getMatch().getDataLayerVirtualLanPriorityCodePoint()) {
-				iter.remove();
-				continue;
-			}
-			// DL_TYPE
-			if (query.dataLayerType != 0 && query.dataLayerType != fco.getMatch().getDataLayerType()) {
-				iter.remove();
-				continue;
-			}
-			// NW_PROTO
-			if (query.networkProtocol != 0 && query.networkProtocol != fco.getMatch().getNetworkProtocol()) {
-				iter.remove();
-				continue;
-			}
-			// NW_TOS
-			if (query.networkTypeOfService != 0 && query.networkTypeOfService != fco.getMatch().getNetworkTypeOfService()) {
-				iter.remove();
-				continue;
-			}
-			// NW_SRC
-			if (query.networkSource != 0 && query.networkSource != fco.getMatch().getNetworkSource()) {
-				iter.remove();
-				continue;
-			}
-			// NW_DST
-			if (query.networkDestination != 0 && query.networkDestination != fco.getMatch().getNetworkDestination()) {
-				iter.remove();
-				continue;
-			}
-			// TP_SRC
-			if (query.transportSource != 0 && query.transportSource != fco.getMatch().getTransportSource()) {
-				iter.remove();
-				continue;
-			}
-			// TP_DST
-			if (query.transportDestination != 0 && query.transportDestination != fco.getMatch().getTransportDestination()) {
-				iter.remove();
-				continue;
-			}
-			
-			// Path ID
-			if (query.pathId > 0 && query.pathId != fco.getPathId()) {
+			if (!query.matches(fco)) {
 				iter.remove();
-				continue;
 			}
 		}
 		
@@ -36,6 +36,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.openflow.protocol.OFFlowMod;
 import org.openflow.protocol.OFFlowRemoved;
@@ -87,6 +88,8 @@ public class FlowCacheObj {
 	private short idleTimeout;
 	/** The hard timeout of the flow. */
 	private short hardTimeout;
+	/** Listeners, e.g. database indexes, that are notified if a field changes. */
+	private volatile List<IFlowCacheObjListener> listeners;
 	
 	/**
 	 * The status of a flow cache object.
@@ -116,6 +119,21 @@ public class FlowCacheObj {
 		APPAWARE
 	}
 	
+	/**
+	 * Fields of a flow cache object that may change after the object
+	 * is stored and that are used to index flow cache objects.
+	 * 
+	 * @author Michael Bredel <michael.bredel@cern.ch>
+	 */
+	public static enum Field {
+		/** The cookie of the flow-mod. */
+		COOKIE,
+		/** The path Id of the flow. */
+		PATH_ID,
+		/** The set of output ports of the flow. */
+		OUT_PORTS
+	}
+	
 	/**
 	 * Creates a set of unique output ports of the flow cache object, 
 	 * derived by its actions.
@@ -319,7 +337,11 @@ public class FlowCacheObj {
 	 * @param pathId The new path Id of the flow cache object.
 	 */
 	public void setPathId(int pathId) {
+		int oldPathId = this.pathId;
 		this.pathId = pathId;
+		if (oldPathId != pathId) {
+			this.notifyListeners(Field.PATH_ID, oldPathId);
+		}
 	}
 	
 	/**
@@ -365,7 +387,11 @@ public class FlowCacheObj {
 	 * @param cookie A long value representing the cookie.
 	 */
 	public void setCookie(long cookie) {
+		long oldCookie = this.cookie;
 		this.cookie = cookie;
+		if (oldCookie != cookie) {
+			this.notifyListeners(Field.COOKIE, oldCookie);
+		}
 	}
 	
 	/**
@@ -410,7 +436,9 @@ public class FlowCacheObj {
 	 * @param outPorts A set of output ports.
 	 */
 	public void setOutPorts(Set<Integer> outPorts) {
+		Set<Integer> oldOutPorts = this.outPorts;
 		this.outPorts = outPorts;
+		this.notifyListeners(Field.OUT_PORTS, oldOutPorts);
 	}
 	
 	/**
@@ -467,6 +495,51 @@ public class FlowCacheObj {
 		return timestamp;
 	}
 	
+	/**
+	 * Adds a listener that is notified whenever an indexed field
+	 * of this flow cache object changes.
+	 * 
+	 * @param listener The listener to add.
+	 */
+	public synchronized void addListener(IFlowCacheObjListener listener) {
+		if (listeners == null) {
+			listeners = new CopyOnWriteArrayList<IFlowCacheObjListener>();
+		}
+		listeners.add(listener);
+	}
+	
+	/**
+	 * Removes a listener from this flow cache object.
+	 * 
+	 * @param listener The listener to remove.
+	 */
+	public synchronized void removeListener(IFlowCacheObjListener listener) {
+		if (listeners == null)
+			return;
+		listeners.remove(listener);
+		if (listeners.isEmpty()) {
+			listeners = null;
+		}
+	}
+	
+	/**
+	 * Notifies all listeners about a changed field.
+	 * 
+	 * @param field The field that has changed.
+	 * @param oldValue The value of the field before the change.
+	 */
+	private void notifyListeners(Field field, Object oldValue) {
+		/* Local copy, since listeners may be reset concurrently. */
+		List<IFlowCacheObjListener> currentListeners = this.listeners;
+		
+		if (currentListeners == null)
+			return;
+		
+		for (IFlowCacheObjListener listener : currentListeners) {
+			listener.flowCacheObjChanged(this, field, oldValue);
+		}
+	}
+	
 	@Override
     public int hashCode() {
         final int prime = 131;
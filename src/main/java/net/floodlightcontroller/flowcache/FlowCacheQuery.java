@@ -307,6 +307,69 @@ public class FlowCacheQuery {
     	return this;
     }
     
+    /**
+     * Checks whether a flow cache object meets all the query fields that
+     * are set in this query. Unset fields, i.e. 0 or null, match everything.
+     * 
+     * @param fco The flow cache object to check.
+     * @return <b>boolean</b> True iff the flow cache object matches this query.
+     */
+    public boolean matches(FlowCacheObj fco) {
+    	/* The match of the flow cache object. */
+    	OFMatch match = fco.getMatch();
+    	
+    	// Cookie
+    	if (cookie != 0 && cookie != fco.getCookie())
+    		return false;
+    	// Priority
+    	if (priority != 0 && priority != fco.getPriority())
+    		return false;
+    	// OutPort
+    	if (outPort != 0 && (fco.getOutPorts() == null || !fco.getOutPorts().contains(outPort)))
+    		return false;
+    	// Path ID
+    	if (pathId > 0 && pathId != fco.getPathId())
+    		return false;
+    	// InPort
+    	if (inPort != 0 && (match == null || inPort != match.getInputPort()))
+    		return false;
+    	// DL_DST
+    	if (dataLayerDestination != null && !Arrays.equals(dataLayerDestination, match.getDataLayerDestination()))
+    		return false;
+    	// DL_SRC
+    	if (dataLayerSource != null && !Arrays.equals(dataLayerSource, match.getDataLayerSource()))
+    		return false;
+    	// DL_VLAN
+    	if (dataLayerVirtualLan != 0 && dataLayerVirtualLan != match.getDataLayerVirtualLan())
+    		return false;
+    	// DL_VLAN_PCP
+    	if (dataLayerVirtualLanPriorityCodePoint != 0 && dataLayerVirtualLanPriorityCodePoint != match.getDataLayerVirtualLanPriorityCodePoint())
+    		return false;
+    	// DL_TYPE
+    	if (dataLayerType != 0 && dataLayerType != match.getDataLayerType())
+    		return false;
+    	// NW_PROTO
+    	if (networkProtocol != 0 && networkProtocol != match.getNetworkProtocol())
+    		return false;
+    	// NW_TOS
+    	if (networkTypeOfService != 0 && networkTypeOfService != match.getNetworkTypeOfService())
+    		return false;
+    	// NW_SRC
+    	if (networkSource != 0 && networkSource != match.getNetworkSource())
+    		return false;
+    	// NW_DST
+    	if (networkDestination != 0 && networkDestination != match.getNetworkDestination())
+    		return false;
+    	// TP_SRC
+    	if (transportSource != 0 && transportSource != match.getTransportSource())
+    		return false;
+    	// TP_DST
+    	if (transportDestination != 0 && transportDestination != match.getTransportDestination())
+    		return false;
+    	
+    	return true;
+    }
+    
 //    public OFMatch getMatch() {
 //    	/* The new OpenFlow match object. */
 //    	OFMatch match = new OFMatch();
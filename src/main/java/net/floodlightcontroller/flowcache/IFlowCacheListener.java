@@ -0,0 +1,64 @@
+package net.floodlightcontroller.flowcache;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+/**
+ * Listener that is notified whenever a flow cache object is mapped to, or
+ * unmapped from, an output port of a switch. Allows to maintain aggregated
+ * per-port views of the flow cache incrementally, instead of querying it.
+ * 
+ * Listeners are called while the flow table of the switch is locked, and
+ * thus should return quickly.
+ */
+public interface IFlowCacheListener {
+	
+	/**
+	 * Called after a flow cache object has been mapped to an output port,
+	 * i.e. it has been stored or its output ports have changed.
+	 * 
+	 * @param switchId The switch Id the flow cache object is stored for.
+	 * @param outPort The output port of the flow cache object.
+	 * @param fco The flow cache object.
+	 */
+	public void flowAdded(long switchId, int outPort, FlowCacheObj fco);
+	
+	/**
+	 * Called after a flow cache object has been unmapped from an output port,
+	 * i.e. it has been removed or its output ports have changed.
+	 * 
+	 * @param switchId The switch Id the flow cache object was stored for.
+	 * @param outPort The former output port of the flow cache object.
+	 * @param fco The flow cache object.
+	 */
+	public void flowRemoved(long switchId, int outPort, FlowCacheObj fco);
+
+}
@@ -0,0 +1,18 @@
+package net.floodlightcontroller.flowcache;
+
+/**
+ * Listener that is notified whenever a field of a flow cache object
+ * changes that might be used as a key by a flow cache database index.
+ */
+public interface IFlowCacheObjListener {
+	
+	/**
+	 * Called after a field of a flow cache object has changed.
+	 * 
+	 * @param fco The flow cache object that has changed.
+	 * @param field The field that has changed.
+	 * @param oldValue The value of the field before the change.
+	 */
+	public void flowCacheObjChanged(FlowCacheObj fco, FlowCacheObj.Field field, Object oldValue);
+
+}
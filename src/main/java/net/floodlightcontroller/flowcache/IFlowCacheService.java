@@ -45,6 +45,16 @@ public interface IFlowCacheService extends IFloodlightService {
 	 */
 	public IFlowCacheDB unRegisterFlowCacheDB(String appName);
 	
+	/**
+	 * Adds a listener that is notified whenever a flow of the given application's
+	 * database is mapped to, or unmapped from, an output port of a switch.
+	 * 
+	 * @param appName The application name that uses this database.
+	 * @param listener The flow cache listener.
+	 * @return <b>boolean</b> True if the listener was added, false if the database does not support listeners.
+	 */
+	public boolean addFlowCacheListener(String appName, IFlowCacheListener listener);
+	
 	/**
 	 * Adds a new flow to the flow cache and returns the corresponding
 	 * flow cache object or null if no flow was stored.
@@ -123,9 +133,28 @@ public interface IFlowCacheService extends IFloodlightService {
 	 */
 	public void deleteFlowCacheBySwitch(long switchId);
 	
+	/**
+	 * Queries the flow cache looking for flow cache objects. The query is handled
+	 * synchronously in the calling thread and does not block on any lock. If the
+	 * query does not specify a switch, all switches are queried - possibly in parallel.
+	 * 
+	 * @param flowCacheQuery The flow cache query comprising all the information we are looking for.
+	 * @return <b>FlowCacheQueryResp</b> The query response - or null if nothing was found.
+	 */
+	public FlowCacheQueryResp queryFlows(FlowCacheQuery flowCacheQuery);
+	
+	/**
+	 * Queries the flow cache for a list of queries. The queries are handled
+	 * synchronously in the calling thread.
+	 * 
+	 * @param flowCacheQueryList The list of flow cache queries comprising all the information we are looking for.
+	 * @return A list of query responses. Queries that did not find anything are omitted.
+	 */
+	public List<FlowCacheQueryResp> queryFlows(List<FlowCacheQuery> flowCacheQueryList);
+	
 	/**
 	 * Submits a query to the flow cache looking for flow cache objects. The query
-	 * is handled asynchronously. The query response message is pushed to the
+	 * is handled in the calling thread. The query response message is pushed to the
 	 * IFlowCacheQueryResponseHandler.
 	 * 
 	 * @param flowCachequery The flow cache query comprising all the information we are looking for.
@@ -134,21 +163,23 @@ public interface IFlowCacheService extends IFloodlightService {
 	public void submitFlowCacheQuery(FlowCacheQuery flowCachequery);
 	
 	/**
-	 * Submits a query to the flow cache looking for flow cache objects. The query
-	 * is handled asynchronously.
+	 * Submits a query to the flow cache looking for flow cache objects. The returned
+	 * future is already completed. Use queryFlows(FlowCacheQuery) instead.
 	 * 
 	 * @param flowCacheQuery The flow cache query comprising all the information we are looking for.
 	 * @return <b>Future</b> A future object that contains the information we are looking for - or null if nothing was found.
 	 */
+	@Deprecated
 	public Future<FlowCacheQueryResp> queryDB(FlowCacheQuery flowCacheQuery);
 	
 	/**
-	 * Submits a list of queries to the flow cache looking for flow cache objects. The queries
-	 * are handled asynchronously.
+	 * Submits a list of queries to the flow cache looking for flow cache objects. The returned
+	 * futures are already completed. Use queryFlows(List) instead.
 	 * 
 	 * @param flowCacheQueryList The list of flow cache queries comprising all the information we are looking for.
 	 * @return A list of future objects that contain the information we are looking for - or null if nothing was found.
 	 */
+	@Deprecated
 	public List<Future<FlowCacheQueryResp>> queryDB(List<FlowCacheQuery> flowCacheQueryList);
 	
 	/**
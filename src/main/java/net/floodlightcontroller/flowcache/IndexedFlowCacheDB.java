@@ -0,0 +1,584 @@
+package net.floodlightcontroller.flowcache;
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+*
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.openflow.protocol.OFMatch;
+import org.openflow.util.HexString;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A flow cache database that maintains secondary indexes on the
+ * output ports, the path Id, the cookie, and the L3/L4 match fields
+ * of its flow cache objects. Queries are answered by a simple query
+ * planner that picks the most selective index, i.e. the smallest
+ * candidate set, and only checks the remaining query fields on these
+ * candidates. Thus, a query costs O(size of the result set) instead
+ * of O(flows on the switch).
+ *
+ * Reads are lock-free. Writes are serialized per switch to keep the
+ * primary table and its secondary indexes consistent.
+ *
+ * Flow cache listeners are notified whenever a flow is mapped to, or
+ * unmapped from, an output port, e.g. to maintain per-link load views.
+ */
+public class IndexedFlowCacheDB implements IFlowCacheDB {
+	/** The logger. */
+    protected static Logger log = LoggerFactory.getLogger(IndexedFlowCacheDB.class);
+
+    /** The name of the application that uses this flow cache database. */
+    protected String appName;
+    /** SwitchId -> flow cache table of that switch, including its secondary indexes. */
+    protected ConcurrentHashMap<Long, SwitchFlowTable> switchFlowTables;
+    /** Listeners that are notified whenever a flow is mapped to, or unmapped from, an output port. */
+    protected CopyOnWriteArrayList<IFlowCacheListener> listeners;
+
+    /**
+     * A secondary index that maps a key, e.g. an output port, to all
+     * flow cache objects having that key: Key -> MatchHash -> FlowCacheObj.
+     *
+     * We use the match hash of the flow cache object as key of the inner
+     * map, since the equals method of the flow cache object depends on
+     * fields that may change while the object is stored.
+     *
+     * @param <K> The type of the index key.
+     */
+    protected static class SecondaryIndex<K> {
+    	/** Key -> MatchHash -> FlowCacheObj. */
+    	private final ConcurrentHashMap<K, ConcurrentHashMap<Integer, FlowCacheObj>> index = new ConcurrentHashMap<K, ConcurrentHashMap<Integer, FlowCacheObj>>();
+
+    	/**
+    	 * Adds a flow cache object to the index. Needs to be called
+    	 * while holding the lock of the owning switch flow table.
+    	 *
+    	 * @param key The index key.
+    	 * @param fco The flow cache object.
+    	 */
+    	protected void add(K key, FlowCacheObj fco) {
+    		ConcurrentHashMap<Integer, FlowCacheObj> bucket = index.get(key);
+    		if (bucket == null) {
+    			bucket = new ConcurrentHashMap<Integer, FlowCacheObj>();
+    			index.put(key, bucket);
+    		}
+    		bucket.put(fco.getId(), fco);
+    	}
+
+    	/**
+    	 * Removes a flow cache object from the index. Needs to be called
+    	 * while holding the lock of the owning switch flow table.
+    	 *
+    	 * @param key The index key.
+    	 * @param fco The flow cache object.
+    	 */
+    	protected void remove(K key, FlowCacheObj fco) {
+    		ConcurrentHashMap<Integer, FlowCacheObj> bucket = index.get(key);
+    		if (bucket == null)
+    			return;
+    		bucket.remove(fco.getId(), fco);
+    		if (bucket.isEmpty()) {
+    			index.remove(key);
+    		}
+    	}
+
+    	/**
+    	 * Gets all flow cache objects for a given key.
+    	 *
+    	 * @param key The index key.
+    	 * @return A collection of flow cache objects, or an empty collection.
+    	 */
+    	protected Collection<FlowCacheObj> get(K key) {
+    		ConcurrentHashMap<Integer, FlowCacheObj> bucket = index.get(key);
+    		return (bucket != null) ? bucket.values() : Collections.<FlowCacheObj>emptySet();
+    	}
+
+    	/**
+    	 * Removes all entries from this index.
+    	 */
+    	protected void clear() {
+    		index.clear();
+    	}
+    }
+
+    /**
+     * The flow cache table of a single switch. It holds the flow cache
+     * objects by their match hash and maintains the secondary indexes.
+     * The table listens to changes of its flow cache objects to keep the
+     * indexes up-to-date, e.g. if the path Id of a stored flow changes.
+     */
+    protected class SwitchFlowTable implements IFlowCacheObjListener {
+    	/** The switch Id of this table. */
+    	protected final long switchId;
+    	/** MatchHash -> FlowCacheObj. */
+    	protected final ConcurrentHashMap<Integer, FlowCacheObj> flows = new ConcurrentHashMap<Integer, FlowCacheObj>();
+    	/** OutPort -> FlowCacheObj. */
+    	protected final SecondaryIndex<Integer> outPortIndex = new SecondaryIndex<Integer>();
+    	/** PathId -> FlowCacheObj. */
+    	protected final SecondaryIndex<Integer> pathIdIndex = new SecondaryIndex<Integer>();
+    	/** Cookie -> FlowCacheObj. */
+    	protected final SecondaryIndex<Long> cookieIndex = new SecondaryIndex<Long>();
+    	/** NW_SRC -> FlowCacheObj. */
+    	protected final SecondaryIndex<Integer> nwSrcIndex = new SecondaryIndex<Integer>();
+    	/** NW_DST -> FlowCacheObj. */
+    	protected final SecondaryIndex<Integer> nwDstIndex = new SecondaryIndex<Integer>();
+    	/** NW_PROTO -> FlowCacheObj. */
+    	protected final SecondaryIndex<Byte> nwProtoIndex = new SecondaryIndex<Byte>();
+    	/** TP_SRC -> FlowCacheObj. */
+    	protected final SecondaryIndex<Short> tpSrcIndex = new SecondaryIndex<Short>();
+    	/** TP_DST -> FlowCacheObj. */
+    	protected final SecondaryIndex<Short> tpDstIndex = new SecondaryIndex<Short>();
+
+    	/**
+    	 * Default constructor.
+    	 *
+    	 * @param switchId The switch Id of this table.
+    	 */
+    	protected SwitchFlowTable(long switchId) {
+    		this.switchId = switchId;
+    	}
+
+    	/**
+    	 * Stores a flow cache object in this table.
+    	 *
+    	 * @param fco The flow cache object to store.
+    	 * @param overrideEntries States whether a different object with the same match hash should be overridden.
+    	 * @return <b>boolean</b> True iff the object is stored.
+    	 */
+    	protected synchronized boolean store(FlowCacheObj fco, boolean overrideEntries) {
+    		FlowCacheObj oldFco = flows.get(fco.getId());
+
+    		if (oldFco == null) {
+    			flows.put(fco.getId(), fco);
+    			this.index(fco);
+    			return true;
+    		}
+    		if (oldFco == fco || oldFco.equals(fco)) {
+    			return true;
+    		}
+
+    		if (log.isDebugEnabled()) {
+				log.debug("storeEntry: Flow cache objects for switch {} are not identical, although there hashes are!", HexString.toHexString(switchId));
+			}
+    		if (!overrideEntries) {
+    			return false;
+    		}
+
+    		this.unindex(oldFco);
+    		flows.put(fco.getId(), fco);
+    		this.index(fco);
+    		if (log.isDebugEnabled()) {
+				log.debug("storeEntry: Overriding exsting entry.");
+			}
+    		return true;
+    	}
+
+    	/**
+    	 * Removes the flow cache object with the same match hash from this table.
+    	 *
+    	 * @param fco The flow cache object to remove.
+    	 * @return <b>FlowCacheObj</b> The removed flow cache object, or null.
+    	 */
+    	protected synchronized FlowCacheObj remove(FlowCacheObj fco) {
+    		FlowCacheObj removedFco = flows.remove(fco.getId());
+    		if (removedFco != null) {
+    			this.unindex(removedFco);
+    		}
+    		return removedFco;
+    	}
+
+    	/**
+    	 * Removes all flow cache objects from this table.
+    	 */
+    	protected synchronized void clear() {
+    		for (FlowCacheObj fco : flows.values()) {
+    			fco.removeListener(this);
+    			notifyRemoved(switchId, fco.getOutPorts(), fco);
+    		}
+    		flows.clear();
+    		outPortIndex.clear();
+    		pathIdIndex.clear();
+    		cookieIndex.clear();
+    		nwSrcIndex.clear();
+    		nwDstIndex.clear();
+    		nwProtoIndex.clear();
+    		tpSrcIndex.clear();
+    		tpDstIndex.clear();
+    	}
+
+    	/**
+    	 * Queries this table. Picks the most selective index for the
+    	 * query and checks all remaining query fields on the candidates.
+    	 *
+    	 * @param query The flow cache query.
+    	 * @return A set of flow cache objects that match the query. Might be empty.
+    	 */
+    	protected Set<FlowCacheObj> query(FlowCacheQuery query) {
+    		/* The resulting set of flow cache objects. */
+    		Set<FlowCacheObj> result = new HashSet<FlowCacheObj>();
+
+    		for (FlowCacheObj fco : this.selectCandidates(query)) {
+    			if (query.matches(fco)) {
+    				result.add(fco);
+    			}
+    		}
+
+    		return result;
+    	}
+
+    	/**
+    	 * The query planner: Selects the smallest set of candidates from all
+    	 * indexes that can be used for the given query. If no index can be used,
+    	 * all flow cache objects of the switch are candidates.
+    	 *
+    	 * @param query The flow cache query.
+    	 * @return A collection of candidate flow cache objects.
+    	 */
+    	protected Collection<FlowCacheObj> selectCandidates(FlowCacheQuery query) {
+    		Collection<FlowCacheObj> candidates = flows.values();
+
+    		if (query.outPort != 0)
+    			candidates = smaller(candidates, outPortIndex.get(query.outPort));
+    		if (query.pathId > 0)
+    			candidates = smaller(candidates, pathIdIndex.get(query.pathId));
+    		if (query.cookie != 0)
+    			candidates = smaller(candidates, cookieIndex.get(query.cookie));
+    		if (query.networkDestination != 0)
+    			candidates = smaller(candidates, nwDstIndex.get(query.networkDestination));
+    		if (query.networkSource != 0)
+    			candidates = smaller(candidates, nwSrcIndex.get(query.networkSource));
+    		if (query.transportDestination != 0)
+    			candidates = smaller(candidates, tpDstIndex.get(query.transportDestination));
+    		if (query.transportSource != 0)
+    			candidates = smaller(candidates, tpSrcIndex.get(query.transportSource));
+    		if (query.networkProtocol != 0)
+    			candidates = smaller(candidates, nwProtoIndex.get(query.networkProtocol));
+
+    		return candidates;
+    	}
+
+    	/**
+    	 * Adds a flow cache object to all secondary indexes and registers
+    	 * this table as a listener of the object.
+    	 *
+    	 * @param fco The flow cache object.
+    	 */
+    	private void index(FlowCacheObj fco) {
+    		/* The match of the flow cache object. */
+    		OFMatch match = fco.getMatch();
+
+    		if (fco.getOutPorts() != null) {
+    			for (int outPort : fco.getOutPorts()) {
+    				outPortIndex.add(outPort, fco);
+    			}
+    		}
+    		notifyAdded(switchId, fco.getOutPorts(), fco);
+    		if (fco.getPathId() > 0)
+    			pathIdIndex.add(fco.getPathId(), fco);
+    		if (fco.getCookie() != 0)
+    			cookieIndex.add(fco.getCookie(), fco);
+    		if (match.getNetworkSource() != 0)
+    			nwSrcIndex.add(match.getNetworkSource(), fco);
+    		if (match.getNetworkDestination() != 0)
+    			nwDstIndex.add(match.getNetworkDestination(), fco);
+    		if (match.getNetworkProtocol() != 0)
+    			nwProtoIndex.add(match.getNetworkProtocol(), fco);
+    		if (match.getTransportSource() != 0)
+    			tpSrcIndex.add(match.getTransportSource(), fco);
+    		if (match.getTransportDestination() != 0)
+    			tpDstIndex.add(match.getTransportDestination(), fco);
+
+    		fco.addListener(this);
+    	}
+
+    	/**
+    	 * Removes a flow cache object from all secondary indexes and
+    	 * deregisters this table as a listener of the object.
+    	 *
+    	 * @param fco The flow cache object.
+    	 */
+    	private void unindex(FlowCacheObj fco) {
+    		/* The match of the flow cache object. */
+    		OFMatch match = fco.getMatch();
+
+    		fco.removeListener(this);
+
+    		if (fco.getOutPorts() != null) {
+    			for (int outPort : fco.getOutPorts()) {
+    				outPortIndex.remove(outPort, fco);
+    			}
+    		}
+    		notifyRemoved(switchId, fco.getOutPorts(), fco);
+    		pathIdIndex.remove(fco.getPathId(), fco);
+    		cookieIndex.remove(fco.getCookie(), fco);
+    		nwSrcIndex.remove(match.getNetworkSource(), fco);
+    		nwDstIndex.remove(match.getNetworkDestination(), fco);
+    		nwProtoIndex.remove(match.getNetworkProtocol(), fco);
+    		tpSrcIndex.remove(match.getTransportSource(), fco);
+    		tpDstIndex.remove(match.getTransportDestination(), fco);
+    	}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public synchronized void flowCacheObjChanged(FlowCacheObj fco, FlowCacheObj.Field field, Object oldValue) {
+			// Ignore objects that are not (or no longer) stored in this table.
+			if (flows.get(fco.getId()) != fco)
+				return;
+
+			switch (field) {
+				case COOKIE:
+					cookieIndex.remove((Long) oldValue, fco);
+					if (fco.getCookie() != 0)
+						cookieIndex.add(fco.getCookie(), fco);
+					break;
+				case PATH_ID:
+					pathIdIndex.remove((Integer) oldValue, fco);
+					if (fco.getPathId() > 0)
+						pathIdIndex.add(fco.getPathId(), fco);
+					break;
+				case OUT_PORTS:
+					if (oldValue != null) {
+						for (int outPort : (Set<Integer>) oldValue) {
+							outPortIndex.remove(outPort, fco);
+						}
+					}
+					if (fco.getOutPorts() != null) {
+						for (int outPort : fco.getOutPorts()) {
+							outPortIndex.add(outPort, fco);
+						}
+					}
+					notifyRemoved(switchId, (Set<Integer>) oldValue, fco);
+					notifyAdded(switchId, fco.getOutPorts(), fco);
+					break;
+				default:
+					break;
+			}
+		}
+    }
+
+    /**
+	 * Default constructor instantiates this flow cache
+	 * database for a given application.
+	 *
+	 * @param appName
+	 */
+    public IndexedFlowCacheDB(String appName) {
+    	this.appName = appName;
+    	this.switchFlowTables = new ConcurrentHashMap<Long, SwitchFlowTable>();
+    	this.listeners = new CopyOnWriteArrayList<IFlowCacheListener>();
+
+    	if (log.isDebugEnabled()) {
+    		log.debug("New flow cache database created for {}", appName);
+    	}
+    }
+
+	/**
+	 * Adds a listener that is notified whenever a flow cache object of this
+	 * database is mapped to, or unmapped from, an output port.
+	 *
+	 * @param listener The flow cache listener.
+	 */
+	public void addListener(IFlowCacheListener listener) {
+		listeners.addIfAbsent(listener);
+	}
+
+	/**
+	 * Removes a flow cache listener.
+	 *
+	 * @param listener The flow cache listener.
+	 */
+	public void removeListener(IFlowCacheListener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public boolean storeEntry(long switchId, FlowCacheObj fco, boolean overrideEntries) {
+		SwitchFlowTable table = switchFlowTables.get(switchId);
+		if (table == null) {
+			SwitchFlowTable newTable = new SwitchFlowTable(switchId);
+			table = switchFlowTables.putIfAbsent(switchId, newTable);
+			if (table == null) {
+				table = newTable;
+			}
+		}
+		return table.store(fco, overrideEntries);
+	}
+
+	@Override
+	public FlowCacheObj getEntry(long switchId, FlowCacheObj fco) {
+		SwitchFlowTable table = switchFlowTables.get(switchId);
+		if (table == null) {
+			if (log.isDebugEnabled()) {
+				log.debug("getEntry: No flow cache map found for switch {}", HexString.toHexString(switchId));
+			}
+			return null;
+		}
+		return table.flows.get(fco.getId());
+	}
+
+	@Override
+	public FlowCacheObj removeEntry(long switchId, FlowCacheObj fco) {
+		SwitchFlowTable table = switchFlowTables.get(switchId);
+		FlowCacheObj removedFco = (table != null) ? table.remove(fco) : null;
+
+		if (removedFco == null) {
+			if(log.isWarnEnabled()) {
+    			log.warn("removeEntry: Could not remove flow cache object {} for switch {} from indexed db. Object not found. ", fco, HexString.toHexString(switchId));
+    		}
+		}
+
+		return removedFco;
+	}
+
+	@Override
+	public boolean hasEntry(long switchId, FlowCacheObj fco) {
+		SwitchFlowTable table = switchFlowTables.get(switchId);
+		return table != null && table.flows.containsKey(fco.getId());
+	}
+
+	@Override
+	public boolean isEmpty() {
+		for (SwitchFlowTable table : switchFlowTables.values()) {
+			if (!table.flows.isEmpty())
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public Map<Long, Set<FlowCacheObj>> getAllEntries() {
+		/* New HashMap that contains all flow cache objects. */
+		HashMap<Long, Set<FlowCacheObj>> resultMap = new HashMap<Long, Set<FlowCacheObj>>();
+
+		for (SwitchFlowTable table : switchFlowTables.values()) {
+			if (!table.flows.isEmpty()) {
+				resultMap.put(table.switchId, new HashSet<FlowCacheObj>(table.flows.values()));
+			}
+		}
+
+		return resultMap;
+	}
+
+	@Override
+	public Map<Long, Set<FlowCacheObj>> queryDB(long switchId, FlowCacheQuery query) {
+		SwitchFlowTable table = switchFlowTables.get(switchId);
+		if (table == null) {
+			if (log.isDebugEnabled()) {
+				log.debug("Switch ID {} not found.", HexString.toHexString(switchId));
+			}
+			return null;
+		}
+
+		/* New HashMap that contains all flow cache objects that match the query: switchId -> SetOf FlowCacheObj. */
+		HashMap<Long, Set<FlowCacheObj>> resultMap = new HashMap<Long, Set<FlowCacheObj>>();
+		
+		Set<FlowCacheObj> result = table.query(query);
+		if (!result.isEmpty()) {
+			resultMap.put(switchId, result);
+		}
+
+		// Return new result map, or null if result map is empty.
+		return (!resultMap.isEmpty()) ? resultMap : null;
+	}
+
+	@Override
+	public void clear() {
+		for (SwitchFlowTable table : switchFlowTables.values()) {
+			table.clear();
+		}
+	}
+
+	@Override
+	public String toString() {
+		/* The string builder. */
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("IndexedFlowCacheDB [");
+		sb.append("appName=" + this.appName);
+		sb.append("]");
+
+		return sb.toString();
+	}
+
+	/**
+	 * Notifies all listeners that a flow cache object has been mapped to output ports.
+	 *
+	 * @param switchId The switch Id.
+	 * @param outPorts The output ports. Might be null.
+	 * @param fco The flow cache object.
+	 */
+	private void notifyAdded(long switchId, Set<Integer> outPorts, FlowCacheObj fco) {
+		if (outPorts == null || listeners.isEmpty())
+			return;
+		for (IFlowCacheListener listener : listeners) {
+			for (int outPort : outPorts) {
+				listener.flowAdded(switchId, outPort, fco);
+			}
+		}
+	}
+
+	/**
+	 * Notifies all listeners that a flow cache object has been unmapped from output ports.
+	 *
+	 * @param switchId The switch Id.
+	 * @param outPorts The former output ports. Might be null.
+	 * @param fco The flow cache object.
+	 */
+	private void notifyRemoved(long switchId, Set<Integer> outPorts, FlowCacheObj fco) {
+		if (outPorts == null || listeners.isEmpty())
+			return;
+		for (IFlowCacheListener listener : listeners) {
+			for (int outPort : outPorts) {
+				listener.flowRemoved(switchId, outPort, fco);
+			}
+		}
+	}
+
+	/**
+	 * Returns the smaller of two collections of candidates.
+	 *
+	 * @param candidates The current candidates.
+	 * @param indexCandidates The candidates of an index.
+	 * @return The collection with less elements.
+	 */
+	private static Collection<FlowCacheObj> smaller(Collection<FlowCacheObj> candidates, Collection<FlowCacheObj> indexCandidates) {
+		return (indexCandidates.size() < candidates.size()) ? indexCandidates : candidates;
+	}
+
+}
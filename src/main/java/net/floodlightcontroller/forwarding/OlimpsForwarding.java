@@ -39,18 +39,20 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 import net.floodlightcontroller.arp.ARPMessage;
@@ -61,6 +63,8 @@ import net.floodlightcontroller.configuration.IConfigurationService;
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.IOFSwitch.PortChangeType;
+import net.floodlightcontroller.core.IOFSwitchListener;
 import net.floodlightcontroller.core.OFSwitchPort;
 import net.floodlightcontroller.core.annotations.LogMessageCategory;
 import net.floodlightcontroller.core.annotations.LogMessageDoc;
@@ -83,10 +87,12 @@ import net.floodlightcontroller.multipath.IPathCacheService;
 import net.floodlightcontroller.multipath.IPathFinderService;
 import net.floodlightcontroller.packet.Ethernet;
 import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.PacketInView;
 import net.floodlightcontroller.routing.ForwardingBase;
 import net.floodlightcontroller.routing.IRoutingDecision;
 import net.floodlightcontroller.routing.Link;
 import net.floodlightcontroller.routing.Path;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
 import net.floodlightcontroller.topology.IOlimpsTopologyService;
 import net.floodlightcontroller.topology.ITopologyService;
 
@@ -113,6 +119,11 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 /**
  * TODO: Make sure arpCache does not have a memory leak. Thus, remove old entries continuously.
@@ -120,7 +131,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
  * @author Michael Bredel <michael.bredel@caltech.edu>
  */
 @LogMessageCategory("Flow Programming")
-public class OlimpsForwarding extends ForwardingBase implements IMultipathService, IARPProxyListener, IConfigurationListener, IFloodlightModule {
+public class OlimpsForwarding extends ForwardingBase implements IMultipathService, IARPProxyListener, IConfigurationListener, IOFSwitchListener, IFloodlightModule {
 	/** The logger. */
     protected static Logger log = LoggerFactory.getLogger(OlimpsForwarding.class);
 	
@@ -142,6 +153,8 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 	protected static final long RSTP_MAC = 0x0180c200000eL;
 	/** MAC address that identifies PRSTP messages. */
 	protected static final long PVSTP_MAC = 0x01000ccccccdL;
+	/** The number of lock stripes used to serialize the setup of the same flow. Needs to be a power of two. */
+	protected static final int FLOW_SETUP_LOCK_STRIPES = 256;
 	
 	/** Pathfinder might be used instead of the IRoutingService (That is also implemented by PathFinder.class). However, IPathFinderService is not yet used! */
 	protected IPathFinderService pathfinder;
@@ -153,24 +166,28 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 	protected IPathCacheService pathCache;
 	/** Required Module: */
     protected IConfigurationService configManager;
+    /** Required Module: Used to time out barrier replies. */
+    protected IThreadPoolService threadPool;
     
 	/** targetIPAddress -> OFMatch. */
-	protected Map<Integer, OFMatch> arpCache;
-	/** A cache that stores information regarding barrier requests. switchId -> barrierTransactionId -> Cookie. */
-	protected Map<Long, Map<Integer, Long>> barrierCacheCookie = new HashMap<Long, Map<Integer, Long>>();
+	protected ConcurrentMap<Integer, OFMatch> arpCache;
+	/** A cache that stores information regarding barrier requests. switchId -> barrierTransactionId -> PendingBarrier. */
+	protected ConcurrentMap<Long, ConcurrentMap<Integer, PendingBarrier>> barrierCacheCookie = new ConcurrentHashMap<Long, ConcurrentMap<Integer, PendingBarrier>>();
 	/** A Set of already used flow IDs. */
 	protected Set<Integer> flowIds;
 	/** A list of forwarding listener. */
 	protected List<IForwardingListener> forwardingListener;
-	/** A temporary set of pending flows, i.e. cookies, we are expecting barrier replies for. cookie -> Set of switchId. */
-	protected Map<Long, Set<Long>> pendingFlows;
+	/** A temporary set of pending flows, i.e. cookies, we are expecting barrier replies for. cookie -> switchId -> barrier reply. */
+	protected ConcurrentMap<Long, Map<Long, ListenableFuture<Long>>> pendingFlows;
 	/** */
 	protected long appCookie = AppCookie.makeCookie(FORWARDING_APP_ID, 0) ;
 	
 	/** Reentrant lock for the flow id calculation. */
 	private final ReentrantLock flowIdLock = new ReentrantLock();
-	/** */
-	private ExecutorService executor = Executors.newCachedThreadPool();
+	/** Striped locks that serialize packet-ins of the same flow, while different flows are forwarded in parallel. */
+	private final ReentrantLock[] flowSetupLocks = new ReentrantLock[FLOW_SETUP_LOCK_STRIPES];
+	/** The flow setups whose first hop is not committed yet. Match -> flow setup. */
+	protected final ConcurrentMap<OFMatch, FlowSetup> flowSetupsInFlight = new ConcurrentHashMap<OFMatch, FlowSetup>();
 	/** Default wildcards that match on dl_type, nw_src, nw_dst, nw_proto, tp_src, and tp_dst. */
 	private int wildcards = 3145743;
 	
@@ -190,11 +207,77 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 	}
 	
 	/**
-	 * Installs flow rules on a path.
+	 * A pending barrier request, i.e. the flow it was requested for
+	 * and the future that is completed by the barrier reply.
 	 */
-	protected class FlowInstallerCallable implements Callable<Boolean> {
-		/** */
-		boolean installed = false;
+	protected static class PendingBarrier {
+		/** The cookie of the flow. */
+		final long cookie;
+		/** Completed with the switch Id, once the barrier reply has been received. */
+		final SettableFuture<Long> reply = SettableFuture.create();
+		
+		/**
+		 * Default constructor.
+		 * 
+		 * @param cookie The cookie of the flow.
+		 */
+		protected PendingBarrier(long cookie) {
+			this.cookie = cookie;
+		}
+	}
+	
+	/**
+	 * A batch of flow mods for the switches of a path. Keeps the order in
+	 * which the switches have been added, i.e. destination first.
+	 */
+	protected static class PathInstallBatch {
+		/** Switch -> flow mods for this switch. */
+		private final Map<IOFSwitch, List<OFFlowMod>> flowMods = new LinkedHashMap<IOFSwitch, List<OFFlowMod>>();
+		
+		/**
+		 * Adds a flow mod for a switch to the batch.
+		 * 
+		 * @param iofSwitch The switch.
+		 * @param flowMod The flow mod.
+		 */
+		protected void add(IOFSwitch iofSwitch, OFFlowMod flowMod) {
+			List<OFFlowMod> switchFlowMods = flowMods.get(iofSwitch);
+			if (switchFlowMods == null) {
+				switchFlowMods = new ArrayList<OFFlowMod>();
+				flowMods.put(iofSwitch, switchFlowMods);
+			}
+			switchFlowMods.add(flowMod);
+		}
+		
+		/**
+		 * Gets the flow mods of the batch.
+		 * 
+		 * @return <b>Map</b> Switch -> flow mods for this switch.
+		 */
+		protected Map<IOFSwitch, List<OFFlowMod>> getFlowMods() {
+			return flowMods;
+		}
+	}
+	
+	/**
+	 * A flow setup in flight, i.e. a flow whose path is being installed.
+	 */
+	protected static class FlowSetup {
+		/** The path of the flow. */
+		protected final Path path;
+		/** The future that states whether the path has been installed successfully. */
+		protected final ListenableFuture<Boolean> installed;
+		
+		protected FlowSetup(Path path, ListenableFuture<Boolean> installed) {
+			this.path = path;
+			this.installed = installed;
+		}
+	}
+	
+	/**
+	 * Pushes the packet of a packet-in, once the flow is installed on its path.
+	 */
+	protected class FlowInstalledCallback implements FutureCallback<Boolean> {
 		/** */
 		IOFSwitch sw;
 		/** */
@@ -202,12 +285,6 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 		/** */
 		OFMatch match;
 		/** */
-		int outPort;
-		/** */
-		List<OFAction> additionalActions;
-		/** */
-		long cookie;
-		/** */
 		OFPacketIn packetInMsg;
 		/** */
 		FloodlightContext cntx;
@@ -215,33 +292,31 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 		/**
 		 * Default constructor.
 		 */
-		public FlowInstallerCallable(IOFSwitch sw, OFMatch match, Path path, int outPort, List<OFAction> additionalActions, long cookie, OFPacketIn packetInMsg, FloodlightContext cntx) {
+		public FlowInstalledCallback(IOFSwitch sw, OFMatch match, Path path, OFPacketIn packetInMsg, FloodlightContext cntx) {
 			this.sw = sw;
 			this.match = match;
 			this.path = path;
-			this.outPort = outPort;
-			this.additionalActions = additionalActions;
-			this.cookie = cookie;
 			this.packetInMsg = packetInMsg;
 			this.cntx = cntx;
 		}
 
 		@Override
-		public Boolean call() throws Exception {
-			// Install flow.
-			installed = installFlow(match, path, outPort, null, cookie);
-			// Modify the outPort for the packet out to the first hop.
-			outPort = path.getSrcPort();
-			// Push the packet. Output port is the output port of the first link in the path or the dstDap port.
+		public void onSuccess(Boolean installed) {
+			// Push the packet. Output port is the output port of the first link in the path.
 			if (installed) {
 				// Remove the drop rule.
 				clearFlowMod(sw, match, OFPort.OFPP_NONE.getValue(), FLOWMOD_DROP_RULE_PRIORITY, 0, null);
 				// Push the packet.
-				pushPacket(sw, packetInMsg, false, outPort, cntx);
+				pushPacket(sw, packetInMsg, false, path.getSrcPort(), cntx);
+			}
+		}
+
+		@Override
+		public void onFailure(Throwable t) {
+			if (log.isErrorEnabled()) {
+				log.error("Could not install flow " + match + " on path " + path.getId(), t);
 			}
-			return installed;
 		}
-		
 	}
 	
 	@Override
@@ -275,6 +350,7 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
         l.add(IFlowCacheService.class);
         l.add(IPathCacheService.class);
         l.add(IConfigurationService.class);
+        l.add(IThreadPoolService.class);
         return l;
     }
     
@@ -290,6 +366,7 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
         flowCache = context.getServiceImpl(IFlowCacheService.class);
         pathCache = context.getServiceImpl(IPathCacheService.class);
         configManager = context.getServiceImpl(IConfigurationService.class);
+        threadPool = context.getServiceImpl(IThreadPoolService.class);
     }
     
     @Override
@@ -299,15 +376,20 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
         floodlightProvider.addOFMessageListener(OFType.FLOW_REMOVED, this);
         floodlightProvider.addOFMessageListener(OFType.ERROR, this);
         floodlightProvider.addOFMessageListener(OFType.BARRIER_REPLY, this);
+        // Register to switch updates, to clean up the barrier cache.
+        floodlightProvider.addOFSwitchListener(this);
         // Register to the ARP proxy.
         arpManager.addListener(this);
         // Register to configuration manager.
         configManager.addListener(this);
         // Initiate local variables.
-        arpCache = new HashMap<Integer, OFMatch>();
+        arpCache = new ConcurrentHashMap<Integer, OFMatch>();
         flowIds = new HashSet<Integer>();
-        pendingFlows = new HashMap<Long, Set<Long>>();
-        forwardingListener = new ArrayList<IForwardingListener>();
+        pendingFlows = new ConcurrentHashMap<Long, Map<Long, ListenableFuture<Long>>>();
+        forwardingListener = new CopyOnWriteArrayList<IForwardingListener>();
+        for (int i = 0; i < flowSetupLocks.length; i++) {
+        	flowSetupLocks[i] = new ReentrantLock();
+        }
         // Initiate default timeouts.
         barrierMessageTimeout = OlimpsForwarding.BARRIER_MESSAGE_TIMEOUT;
         idleTimeout = OlimpsForwarding.FLOWMOD_DEFAULT_IDLE_TIMEOUT;
@@ -322,8 +404,8 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 		/* The target IP address. */
 		int targetIPAddress = arpMessage.getTargetIPAddress();
 		
-		if (this.arpCache.containsKey(targetIPAddress)) {
-			OFMatch match = this.arpCache.get(targetIPAddress);
+		OFMatch match = this.arpCache.get(targetIPAddress);
+		if (match != null) {
 			IOFSwitch iofSwitch = this.floodlightProvider.getSwitch(arpMessage.getSwitchId());
 			// Remove the drop rule.
 			this.clearFlowMod(iofSwitch, match, OFPort.OFPP_NONE.getValue(), FLOWMOD_DROP_RULE_PRIORITY, 0, null);
@@ -334,6 +416,41 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 		}
 	}
 
+	@Override
+	public void switchAdded(long switchId) {
+		// NO-OP
+	}
+
+	@Override
+	public void switchRemoved(long switchId) {
+		/* The barrier cache of the switch. */
+		ConcurrentMap<Integer, PendingBarrier> xidCache = this.barrierCacheCookie.remove(switchId);
+		
+		if (xidCache == null)
+			return;
+		
+		// Fail the pending barrier requests, i.e. abort the installation of their paths.
+		for (PendingBarrier pendingBarrier : xidCache.values()) {
+			this.removePendingFlow(pendingBarrier.cookie, switchId, pendingBarrier.reply);
+			pendingBarrier.reply.setException(new IOException("Switch " + HexString.toHexString(switchId) + " removed"));
+		}
+	}
+
+	@Override
+	public void switchActivated(long switchId) {
+		// NO-OP
+	}
+
+	@Override
+	public void switchPortChanged(long switchId, OFSwitchPort port, PortChangeType type) {
+		// NO-OP
+	}
+
+	@Override
+	public void switchChanged(long switchId) {
+		// NO-OP
+	}
+
 	@Override
     public String getName() {
         return "olimpsforwarding";
@@ -364,8 +481,8 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
     
     @Override
     public Command processPacketInMessage(IOFSwitch sw, OFPacketIn pi, IRoutingDecision decision, FloodlightContext cntx) {
-    	/* Ethernet frame extracted from the Packet_In messages. */
-        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+    	/* Packet view of the Packet_In message, shared by all listeners. */
+        PacketInView piView = this.getPacketInView(pi, cntx);
         
         // If a decision has been made we obey it, otherwise we just forward
         if (decision != null) {
@@ -385,8 +502,7 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
                     //doFlood(sw, pi, cntx);
                     return Command.CONTINUE;
                 case DROP:
-                	OFMatch match = new OFMatch();
-                    match.loadFromPacket(pi.getPacketData(), pi.getInPort());
+                	OFMatch match = piView.getMatch().clone();
                     if (decision.getWildcards() != null) {
                         match.setWildcards(decision.getWildcards());
                     }
@@ -398,15 +514,15 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
             }
         } else {
             // Drop CFM messages
-            if (eth.getEtherType() == (short) 0x8902) {
+            if (piView.getEtherType() == (short) 0x8902) {
             	return Command.STOP;
             }
             // Drop BPDU messages.
-            if (eth.getDestinationMAC().toLong() == PVSTP_MAC || eth.getDestinationMAC().toLong() == RSTP_MAC) {
+            if (piView.getDestinationMAC() == PVSTP_MAC || piView.getDestinationMAC() == RSTP_MAC) {
             	return Command.STOP;
             }
             // Drop all broadcast and multicast messages. 
-        	if (eth.isBroadcast() || eth.isMulticast()) {
+        	if (piView.isBroadcast() || piView.isMulticast()) {
         		// For now we don't support multicast as broadcast.
         		return Command.STOP;
         	}
@@ -439,21 +555,51 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 	/**
 	 * Forwards a flow, i.e. it calculates a path and installs all flow mods on switches along the path.
 	 * 
+	 * Packet-ins of the same flow are serialized by a striped lock. The first hop
+	 * of a flow is committed asynchronously, after the lock has been released. Until
+	 * then, further packet-ins of the flow join the setup in flight instead of starting
+	 * another one, so that a flow is set up only once. Packet-ins of different flows
+	 * are forwarded in parallel.
+	 * 
 	 * @param sw
 	 * @param packetInMsg
 	 * @param cntx
 	 * @param requestFlowRemovedNotifn
 	 */
-	protected synchronized void doForwardFlow(IOFSwitch sw, OFPacketIn packetInMsg, FloodlightContext cntx, boolean requestFlowRemovedNotifn) {
-		/* The match filter. */
-		OFMatch match = new OFMatch();
+	protected void doForwardFlow(IOFSwitch sw, OFPacketIn packetInMsg, FloodlightContext cntx, boolean requestFlowRemovedNotifn) {
         /* Wildcard hints used in net.floodlightcontroller.forwarding.Forwarding.wildcard(...). (Unused). */
         int wildcardHints = 0;
 
-		// Initialize the match filter from the packetIn message.
-		match.loadFromPacket(packetInMsg.getPacketData(), packetInMsg.getInPort());
-		match = wildcard(match, sw, wildcardHints);
-
+		// Initialize the match filter from the packetIn message. Wildcarding clones the shared match.
+		OFMatch match = wildcard(this.getPacketInView(packetInMsg, cntx).getMatch(), sw, wildcardHints);
+		
+		/* The lock of the stripe this flow belongs to. */
+		ReentrantLock flowSetupLock = this.getFlowSetupLock(match);
+		flowSetupLock.lock();
+		try {
+			this.doForwardFlow(sw, packetInMsg, match, cntx);
+		} finally {
+			flowSetupLock.unlock();
+		}
+	}
+	
+	/**
+	 * Forwards a flow for a given match. Needs to be called while holding the
+	 * flow setup lock of the match.
+	 * 
+	 * @param sw The switch that sent the packet-in.
+	 * @param packetInMsg The packet-in message.
+	 * @param match The wildcarded match of the flow.
+	 * @param cntx The Floodlight context.
+	 */
+	private void doForwardFlow(IOFSwitch sw, OFPacketIn packetInMsg, OFMatch match, FloodlightContext cntx) {
+		// Wait for the setup of this flow, if its first hop is not committed yet.
+		FlowSetup inFlight = this.flowSetupsInFlight.get(match);
+		if (inFlight != null) {
+			Futures.addCallback(inFlight.installed, new FlowInstalledCallback(sw, match, inFlight.path, packetInMsg, cntx));
+			return;
+		}
+		
 		// Avoid a new path calculation and mapping, if the flow is already present.
 		// TODO: Check for the whole path.
 		if (this.flowCache.hasFlow(IFlowCacheService.DEFAULT_DB_NAME, sw.getId(), appCookie, FLOWMOD_DEFAULT_PRIORITY, match, null)) {
@@ -462,21 +608,7 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 			
 			// Query the flow cache to find an corresponding match to the packet in. 
 			FlowCacheQuery fcq = new FlowCacheQuery(IFlowCacheService.DEFAULT_DB_NAME, this.getName(), null, sw.getId(), match);
-			Future<FlowCacheQueryResp> future = this.flowCache.queryDB(fcq);
-			FlowCacheQueryResp fcqr = null;
-			try {
-				fcqr = future.get(1, TimeUnit.SECONDS);
-			} catch (TimeoutException e) {
-				if (log.isDebugEnabled()) {
-					log.debug("We did not find any flow cache object in time for query {}", fcq);
-				}
-				// Just do nothing and continue.
-			} catch (InterruptedException | ExecutionException e) {
-				if (log.isDebugEnabled()) {
-					log.debug(e.toString());
-				}
-				// Just do nothing and continue.
-			}
+			FlowCacheQueryResp fcqr = this.flowCache.queryFlows(fcq);
 			
 			// Once we find the flow cache object. If its active, send the packet and return.
 			if (fcqr != null) {
@@ -617,7 +749,21 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 				if (path != null) {
 					int flowId  = this.getNextFlowId();
 					long cookie = AppCookie.makeCookie(FORWARDING_APP_ID, flowId);
-					this.executor.submit(new FlowInstallerCallable(sw, match, path, outPort, null, cookie, packetInMsg, cntx));
+					/* The match of the flow, before the installation adapts it to the hops. */
+					final OFMatch setupMatch = match.clone();
+					ListenableFuture<Boolean> installed = this.installFlowAsync(match, path, outPort, null, cookie);
+					// Remember the setup until its first hop is committed. Still holding the flow setup lock.
+					if (!installed.isDone()) {
+						final FlowSetup flowSetup = new FlowSetup(path, installed);
+						this.flowSetupsInFlight.put(setupMatch, flowSetup);
+						installed.addListener(new Runnable() {
+							@Override
+							public void run() {
+								flowSetupsInFlight.remove(setupMatch, flowSetup);
+							}
+						}, MoreExecutors.sameThreadExecutor());
+					}
+					Futures.addCallback(installed, new FlowInstalledCallback(sw, match, path, packetInMsg, cntx));
 				}
 				
 //				// Install the path on the switches.
@@ -690,40 +836,6 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 	    writeFlowMod(sw, flowMod, cntx);
 	}
 
-	/**
-	 * 
-	 * @param switchId
-	 * @param match
-	 * @param cookie
-	 * @param outPort
-	 * @param pathId
-	 * @param cntx
-	 */
-	protected void installLastHop(long switchId, OFMatch match, long cookie, int outPort, int pathId, FloodlightContext cntx) {
-		// Get the last switch, i.e. the destination device attachment point.
-		IOFSwitch sw = floodlightProvider.getSwitch(switchId);
-		// Wildcard the flow according to the configuration in this.wildcard(...).
-		match = this.wildcard(match, sw, 0);
-		// Add flow mod.
-		FlowCacheObj fco = this.addFlowMod(sw, match, outPort, cookie, cntx);
-		// Write path Id to flow cache object.
-		fco.setPathId(pathId);
-		// Flush switch.
-		sw.flush();
-		// Request a barrier message
-        if (flowMode) {
-    		int xid = this.sendBarrierRequest(sw, cntx);
-    		// Add the pending barrier message.
-    		this.addBarrierXid(switchId, xid, cookie);
-    		// Add pending flow.
-    		this.addPendingFlow(cookie, switchId);
-    	}
-		
-		if (log.isTraceEnabled()) {
-			log.trace("Installed flow on: " + HexString.toHexString(switchId) + " : " + match + " : " + OFSwitchPort.stringOf(outPort));
-		}
-	}
-	
 	/**
 	 * 
 	 * @param switchId
@@ -783,7 +895,9 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 	}
 	
 	/**
-	 * Adds or removes flow mods to or from a path.
+	 * Adds or removes flow mods to or from a path. Blocks until the path
+	 * is installed, i.e. until all barrier replies have been received, but
+	 * not longer than twice the barrier message timeout.
 	 * 
 	 * @param path The path to push to the switches.
 	 * @param match The flow match.
@@ -792,6 +906,50 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 	 * @return
 	 */
 	protected boolean updatePath(Path path, OFMatch match, long cookie, Operation operation, FloodlightContext cntx) {
+		return this.awaitInstalled(this.updatePathAsync(path, match, cookie, operation, cntx), cookie);
+	}
+	
+	/**
+	 * Waits for the result of a path installation. The installation completes
+	 * within the barrier message timeout, thus we wait at most twice as long.
+	 * 
+	 * @param installed The future that states whether the path has been installed successfully.
+	 * @param cookie The unique cookie.
+	 * @return <b>boolean</b> true if the path has been installed successfully in time.
+	 */
+	private boolean awaitInstalled(ListenableFuture<Boolean> installed, long cookie) {
+		try {
+			return installed.get(2L * this.barrierMessageTimeout, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			if (log.isErrorEnabled()) {
+				log.error("Installing path 0x" + Long.toHexString(cookie) + " failed", e.getCause());
+			}
+			return false;
+		} catch (TimeoutException e) {
+			if (log.isErrorEnabled()) {
+				log.error("Installing path 0x" + Long.toHexString(cookie) + " did not complete in time");
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * Adds or removes flow mods to or from a path.
+	 * 
+	 * @param path The path to push to the switches.
+	 * @param match The flow match.
+	 * @param operation The path operation, i.e INSTALL, REMOVE, MOVE
+	 * @param cntx The Floodlight context.
+	 * @return <b>ListenableFuture</b> A future that states whether the path has been updated successfully.
+	 */
+	protected ListenableFuture<Boolean> updatePathAsync(Path path, OFMatch match, long cookie, Operation operation, FloodlightContext cntx) {
+		if (operation == Operation.INSTALL) {
+			return this.installPathAsync(path, match, cookie, new PathInstallBatch(), cntx);
+		}
+		
 		/* We need to update the match.inputPort for the first hop. */
 		short firstPhyInputPort = match.getInputPort();
         /* The links of the path. */
@@ -802,7 +960,7 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
         int outPort;
         IOFSwitch iofSwitch;
         
-        // Install links in reverse order, i.e. begin at the last (destination) switch.
+        // Update links in reverse order, i.e. begin at the last (destination) switch.
         ListIterator<Link> iter = links.listIterator(links.size());
     	// Get the last link.
     	Link link = iter.previous();
@@ -818,11 +976,12 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
                     log.warn("Unable to update path, switch {} not available", HexString.toHexString(switchId));
                 }
                 // Remove the path again if necessary.
-                if (operation == Operation.INSTALL || operation == Operation.MOVE) {
+                if (operation == Operation.MOVE) {
                 	match.setInputPort(firstPhyInputPort);
                 	this.updatePath(path, match, cookie, Operation.REMOVE, cntx);
-                	return false;
+                	return Futures.immediateFuture(false);
                 }
+                // Skip the missing switch, but clear the remaining hops.
             }
             
             if (iter.hasPrevious()) {
@@ -834,72 +993,206 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
         		outPort = link.getSrcPort();
         		match.setInputPort(firstPhyInputPort);
         		moveOn = false;
-        		// Wait for all barrier replies.
-        		long startTime = System.currentTimeMillis();
-        		if (flowMode && operation == Operation.INSTALL) {
-        			while( this.pendingFlows.containsKey(cookie) && (System.currentTimeMillis() - startTime) < this.barrierMessageTimeout * 1000) {
-        				// Busy waiting.
-        				try {
-							Thread.sleep(100);
-						} catch (InterruptedException e) {
-							e.printStackTrace();
-						}
-        			}
-        			// Check if flow was installed successfully. 
-        			if (this.pendingFlows.containsKey(cookie)) {
-        				// Error output.
-        				for (Long unhandledSwitchId : this.pendingFlows.get(cookie)) {
-        					if (log.isErrorEnabled())
-        						log.error("Did not receive a barrier message for 0x" + Long.toHexString(cookie) + " from " + HexString.toHexString(unhandledSwitchId) + " in time.");
-        				}
-        				
-        				// Remove the path again if necessary.
-                        if (operation == Operation.INSTALL || operation == Operation.MOVE) {
-                        	match.setInputPort(firstPhyInputPort);
-                        	this.updatePath(path, match, cookie, Operation.REMOVE, cntx);
-                        	return false;
-                        }
-        			}
-        		}
         	}
             
             // Write flow-mod.
             switch (operation) {
-            	case INSTALL:
-            		// Wildcard the flow according to the configuration in this.wildcard(...).
-            		match = this.wildcard(match, iofSwitch, 0);
-            		// Add flow.
-            		FlowCacheObj fco = this.addFlowMod(iofSwitch, match, outPort, cookie, cntx);
-                    // Write path Id to flow cache object.
-            		if (fco != null) {
-            			fco.setPathId(path.getId());
-            		}
-            		if (log.isTraceEnabled()) {
-            			log.trace("Installed flow on: " + HexString.toHexString(switchId) + " : " + match + " : " + OFSwitchPort.stringOf(outPort));
-            		}
-            		break;
             	case REMOVE:
                     this.clearFlowMod(iofSwitch, match, OFSwitchPort.physicalPortIdOf(outPort), FLOWMOD_DEFAULT_PRIORITY, cookie, cntx);
                     this.removePendingFlow(cookie, switchId);
             		break;
-            	case MOVE:
+            	default:
             		break;
             }
             
             // Flush switch.
-            iofSwitch.flush();
-            // Query barrier request.
-    		if (flowMode && operation == Operation.INSTALL) {
-        		int xid = this.sendBarrierRequest(iofSwitch, cntx);
-        		// Add the pending barrier message.
-        		this.addBarrierXid(switchId, xid, cookie);
-        		// Add pending flow.
-        		this.addPendingFlow(cookie, switchId);
-        	}
+            if (iofSwitch != null)
+            	iofSwitch.flush();
         } while (moveOn);
         
         // Return.
-		return true;
+		return Futures.immediateFuture(true);
+	}
+	
+	/**
+	 * Installs a path in a pipeline: First, the flow mods of all hops are built
+	 * and added to a batch, destination first. Then, the batch is written to all
+	 * switches without waiting in between, followed by one barrier request per
+	 * switch. The barrier replies are awaited together. Thus, the setup time of
+	 * a path is about one round trip, independent of its length.
+	 * 
+	 * In flow mode, the flow mod of the first hop is the commit point: It is
+	 * written once the barrier replies of all other switches of the flow have
+	 * been received. If they do not arrive within the barrier timeout, the path
+	 * is removed again.
+	 * 
+	 * @param path The path to install.
+	 * @param match The flow match, including the input port of the first hop.
+	 * @param cookie The unique cookie.
+	 * @param batch A batch of flow mods that are installed together with the path, e.g. the last hop.
+	 * @param cntx The Floodlight context.
+	 * @return <b>ListenableFuture</b> A future that states whether the path has been installed successfully.
+	 */
+	protected ListenableFuture<Boolean> installPathAsync(Path path, OFMatch match, long cookie, PathInstallBatch batch, FloodlightContext cntx) {
+        /* The links of the path. */
+        List<Link> links = path.getLinks();
+        /* The first switch of the path, i.e. the commit point. */
+        IOFSwitch firstSwitch = floodlightProvider.getSwitch(links.get(0).getSrc());
+        
+        if (firstSwitch == null) {
+        	if (log.isWarnEnabled()) {
+                log.warn("Unable to install path, switch {} not available", HexString.toHexString(links.get(0).getSrc()));
+            }
+        	return Futures.immediateFuture(false);
+        }
+        
+        // Build the flow mods of all other hops in reverse order, i.e. begin at the last (destination) switch.
+        for (int i = links.size() - 1; i > 0; i--) {
+        	Link link = links.get(i);
+        	IOFSwitch iofSwitch = floodlightProvider.getSwitch(link.getSrc());
+        	if (iofSwitch == null) {
+        		if (log.isWarnEnabled()) {
+                    log.warn("Unable to install path, switch {} not available", HexString.toHexString(link.getSrc()));
+                }
+        		// Nothing has been written yet.
+        		return Futures.immediateFuture(false);
+        	}
+        	// The input port is the destination port of the previous link.
+        	OFMatch hopMatch = this.wildcard(match, iofSwitch, 0)
+        		.setInputPort(OFSwitchPort.physicalPortIdOf(links.get(i - 1).getDstPort()));
+        	batch.add(iofSwitch, this.createFlowMod(iofSwitch, OFFlowMod.OFPFC_ADD, OFPacketOut.BUFFER_ID_NONE, hopMatch, link.getSrcPort(), FLOWMOD_DEFAULT_PRIORITY, cookie));
+        }
+        
+        /* The flow mod of the first hop. */
+        OFFlowMod firstHopFlowMod = this.createFlowMod(firstSwitch, OFFlowMod.OFPFC_ADD, OFPacketOut.BUFFER_ID_NONE, this.wildcard(match, firstSwitch, 0), links.get(0).getSrcPort(), FLOWMOD_DEFAULT_PRIORITY, cookie);
+        
+        if (!flowMode) {
+        	batch.add(firstSwitch, firstHopFlowMod);
+        	this.writeBatch(batch, cookie, path.getId(), cntx);
+        	return Futures.immediateFuture(true);
+        }
+        
+        // Write all other hops and commit the first hop once all barrier replies have been received.
+        this.writeBatch(batch, cookie, path.getId(), cntx);
+        PathInstallBatch commitBatch = new PathInstallBatch();
+        commitBatch.add(firstSwitch, firstHopFlowMod);
+		return this.commitFirstHop(path, match, commitBatch, cookie, cntx);
+	}
+	
+	/**
+	 * Writes a batch of flow mods to its switches and adds them to the flow cache.
+	 * Every switch is flushed once. In flow mode, one barrier request is sent per
+	 * switch of the batch.
+	 * 
+	 * @param batch The batch of flow mods.
+	 * @param cookie The unique cookie.
+	 * @param pathId The path Id.
+	 * @param cntx The Floodlight context.
+	 */
+	private void writeBatch(PathInstallBatch batch, long cookie, int pathId, FloodlightContext cntx) {
+		for (Map.Entry<IOFSwitch, List<OFFlowMod>> entry : batch.getFlowMods().entrySet()) {
+			IOFSwitch iofSwitch = entry.getKey();
+			for (OFFlowMod flowMod : entry.getValue()) {
+				if (log.isTraceEnabled()) {
+					log.trace("{} adding flow mod {}", iofSwitch, flowMod);
+				}
+				try {
+					messageDamper.write(iofSwitch, flowMod, cntx);
+				} catch (IOException e) {
+					log.error("Failed to write {} to switch {}", new Object[]{ flowMod, iofSwitch }, e);
+					continue;
+				}
+				// Add flow to the flow cache.
+				FlowCacheObj fco = this.updateFlowCache(iofSwitch.getId(), flowMod.getCommand(), flowMod.getPriority(), flowMod.getIdleTimeout(), flowMod.getHardTimeout(), flowMod.getCookie(), flowMod.getMatch(), flowMod.getActions(), cntx);
+				// Write path Id to flow cache object.
+				if (fco != null) {
+					fco.setPathId(pathId);
+				}
+			}
+			
+			// Query barrier request. Flushes the switch.
+			if (flowMode) {
+				this.requestBarrier(iofSwitch, cookie, cntx);
+			} else {
+				iofSwitch.flush();
+			}
+		}
+	}
+	
+	/**
+	 * Installs the first hop of a path once the barrier replies of all pending
+	 * switches of the flow have been received. If they are not received within
+	 * the barrier timeout, the path is removed again.
+	 * 
+	 * @param path The path to install.
+	 * @param match The flow match, including the input port of the first hop.
+	 * @param commitBatch The batch that contains the flow mod of the first hop.
+	 * @param cookie The unique cookie.
+	 * @param cntx The Floodlight context.
+	 * @return <b>ListenableFuture</b> A future that states whether the path has been installed successfully.
+	 */
+	private ListenableFuture<Boolean> commitFirstHop(final Path path, OFMatch match, final PathInstallBatch commitBatch, final long cookie, final FloodlightContext cntx) {
+		/* The future that completes the installation. */
+		final SettableFuture<Boolean> installed = SettableFuture.create();
+		/* Guards that the path is either committed or removed, but not both. */
+		final AtomicBoolean completed = new AtomicBoolean(false);
+		/* The match used to remove the path. We do not own the match of the caller. */
+		final OFMatch removeMatch = match.clone();
+		/* The barrier replies we are waiting for. */
+		ListenableFuture<List<Long>> barrierReplies = Futures.allAsList(this.getPendingBarriers(cookie));
+		
+		// Remove the path again, if the barrier replies do not arrive (in time).
+		final Runnable abort = new Runnable() {
+			@Override
+			public void run() {
+				if (!completed.compareAndSet(false, true))
+					return;
+				
+				// Error output.
+				for (Long unhandledSwitchId : getPendingSwitches(cookie)) {
+					if (log.isErrorEnabled())
+						log.error("Did not receive a barrier message for 0x" + Long.toHexString(cookie) + " from " + HexString.toHexString(unhandledSwitchId) + " in time.");
+				}
+				try {
+					// Forget the outstanding barrier requests, late replies are ignored.
+					abortPendingBarriers(cookie);
+					
+					updatePath(path, removeMatch, cookie, Operation.REMOVE, cntx);
+				} finally {
+					// Always complete the installation, even if removing the path failed.
+					installed.set(false);
+				}
+			}
+		};
+		final ScheduledFuture<?> timeout = this.threadPool.getScheduledExecutor().schedule(abort, this.barrierMessageTimeout, TimeUnit.SECONDS);
+		
+		// Commit the first hop, as soon as the last barrier reply has been received.
+		Futures.addCallback(barrierReplies, new FutureCallback<List<Long>>() {
+			@Override
+			public void onSuccess(List<Long> switchIds) {
+				if (!completed.compareAndSet(false, true))
+					return;
+				timeout.cancel(false);
+				
+				try {
+					writeBatch(commitBatch, cookie, path.getId(), cntx);
+				} finally {
+					installed.set(true);
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				// A barrier request could not be sent.
+				if (log.isDebugEnabled()) {
+					log.debug("Waiting for barrier replies for 0x{} failed: {}", Long.toHexString(cookie), t.toString());
+				}
+				timeout.cancel(false);
+				abort.run();
+			}
+		});
+		
+		return installed;
 	}
     
     /**
@@ -1049,10 +1342,16 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 		}
     	
     	int xid = barrierReplyMsg.getXid();
-    	long cookie = this.removeBarrierXid(iofSwitch.getId(), xid);
-    	if (cookie != 0) {
+    	PendingBarrier pendingBarrier = this.removeBarrierXid(iofSwitch.getId(), xid);
+    	if (pendingBarrier != null) {
+    		/* The cookie of the flow the barrier was requested for. */
+    		long cookie = pendingBarrier.cookie;
     		// Remove the cookie+switch combination from the pending flows.
-			this.removePendingFlow(cookie, iofSwitch.getId());
+			this.removePendingFlow(cookie, iofSwitch.getId(), pendingBarrier.reply);
+			// Notify the path installation waiting for this barrier reply. Ignore the reply, if the installation has been aborted.
+			if (!pendingBarrier.reply.set(iofSwitch.getId())) {
+				return Command.STOP;
+			}
     		// Query flow cache for the flow from this switch with the given cookie.
     		FlowCacheQuery fcq = new FlowCacheQuery(null, IFlowCacheService.DEFAULT_DB_NAME, this.getName(), null, iofSwitch.getId());
 			fcq.setCookie(cookie);
@@ -1090,14 +1389,13 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 	 * Sends a barrier request. Barrier requests are flushed immediately.
 	 * 
 	 * @param iofSwitch
+	 * @param xid The transaction id of the barrier request.
 	 * @param cntx
-	 * @param <b>int</b> The transaction id of the barrier request.
+	 * @param <b>boolean</b> True, if the barrier request has been sent.
 	 */
-	private int sendBarrierRequest(IOFSwitch iofSwitch, FloodlightContext cntx){
+	private boolean sendBarrierRequest(IOFSwitch iofSwitch, int xid, FloodlightContext cntx){
 		/* The barrier request message. */
 		OFBarrierRequest barrierRequest = (OFBarrierRequest) floodlightProvider.getOFMessageFactory().getMessage(OFType.BARRIER_REQUEST);
-		/* The next transaction ID of the switch. */
-		int xid = iofSwitch.getNextTransactionId();
 
 		if (log.isDebugEnabled()) {
 			log.debug("Sending barrier request message to {} with Xid {}", iofSwitch.getStringId(), xid);
@@ -1109,10 +1407,34 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 			iofSwitch.flush();
 		} catch (IOException e) {
 			e.printStackTrace();
-			return 0;
+			return false;
 		}
 		
-		return xid;
+		return true;
+	}
+	
+	/**
+	 * Sends a barrier request for a flow and registers it as pending.
+	 * 
+	 * @param iofSwitch The switch to send the barrier request to.
+	 * @param cookie The cookie of the flow.
+	 * @param cntx The Floodlight context.
+	 * @return <b>ListenableFuture</b> A future that completes with the switch Id once the barrier reply has been received.
+	 */
+	private ListenableFuture<Long> requestBarrier(IOFSwitch iofSwitch, long cookie, FloodlightContext cntx) {
+		/* The pending barrier request. */
+		PendingBarrier pendingBarrier = new PendingBarrier(cookie);
+		
+		// Add pending flow before sending the request, the reply might be fast.
+		this.addPendingFlow(cookie, iofSwitch.getId(), pendingBarrier.reply);
+		int xid = iofSwitch.getNextTransactionId();
+		this.addBarrierXid(iofSwitch.getId(), xid, pendingBarrier);
+		if (!this.sendBarrierRequest(iofSwitch, xid, cntx)) {
+			this.removeBarrierXid(iofSwitch.getId(), xid);
+			pendingBarrier.reply.setException(new IOException("Could not send barrier request to " + iofSwitch.getStringId()));
+		}
+		
+		return pendingBarrier.reply;
 	}
 
 	/**
@@ -1158,6 +1480,9 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 	 * @param cntx
 	 */
 	private void clearFlowMod(IOFSwitch iofSwitch, OFMatch match, short outPort, short priority, long cookie, FloodlightContext cntx) {
+		// The switch has been removed, i.e. its flow table is gone anyway.
+		if (iofSwitch == null)
+			return;
 		if (priority == 0)
 			priority = FLOWMOD_DEFAULT_PRIORITY;
 		if (cookie == 0)
@@ -1179,6 +1504,23 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
      * @return <b>FlowCacheObj</b> A flow cache object representing this flow.
 	 */
 	private FlowCacheObj writeFlowMod(IOFSwitch iofSwitch, short command, int bufferId, OFMatch match, int outPort, short priority, long cookie, FloodlightContext cntx) {
+		// Write the flow mod.
+        return this.writeFlowMod(iofSwitch, this.createFlowMod(iofSwitch, command, bufferId, match, outPort, priority, cookie), cntx);
+	}
+	
+	/**
+     * Creates a OFFlowMod for a switch. Canonicalizes the given match.
+     * 
+     * @param iofSwitch The switch to create the flowMod for.
+     * @param command The FlowMod actions (add, delete, etc).
+     * @param bufferId The buffer ID if the switch has buffered the packet.
+     * @param match The OFMatch structure to write.
+     * @param outPort The switch port to output it to.
+     * @param priority The priority of the flow rule.
+     * @param cookie
+     * @return <b>OFFlowMod</b> The new flow mod.
+	 */
+	private OFFlowMod createFlowMod(IOFSwitch iofSwitch, short command, int bufferId, OFMatch match, int outPort, short priority, long cookie) {
 		/* The new FlowMod message. */
 		OFFlowMod flowMod = (OFFlowMod) floodlightProvider.getOFMessageFactory().getMessage(OFType.FLOW_MOD);
 		// Get the input port from the match (before canonicalizing the match).
@@ -1251,8 +1593,7 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
     	    flowMod.setHardTimeout(this.hardTimeout);
         }
         
-        // Write the flow mod.
-        return this.writeFlowMod(iofSwitch, flowMod, cntx);
+        return flowMod;
 	}
 	
 	/**
@@ -1345,28 +1686,11 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 	    Map<Long, List<FlowCacheObj>> flowCacheObjects = new HashMap<Long, List<FlowCacheObj>>();
 	    
 	    // Query the flow cache.
-	 	List<Future<FlowCacheQueryResp>> futureList = this.flowCache.queryDB(flowCacheQueryList);
-	 	if (futureList == null) {
-	 		log.error("Could not get futures from flow cache.");
-	 		return null;
+	 	for (FlowCacheQueryResp fcqr : this.flowCache.queryFlows(flowCacheQueryList)) {
+	 		if (fcqr.flowCacheObjList != null) {
+	 			flowCacheObjects.put(fcqr.switchId, fcqr.flowCacheObjList);
+	 		}
 	 	}
-		while (!futureList.isEmpty()) {
-			Iterator<Future<FlowCacheQueryResp>> iter = futureList.iterator();
-			while (iter.hasNext()) {
-				Future<FlowCacheQueryResp> future = iter.next();
-				try {
-					FlowCacheQueryResp fcqr = future.get(1, TimeUnit.SECONDS);
-					if (fcqr != null && fcqr.flowCacheObjList != null) {
-						flowCacheObjects.put(fcqr.switchId, fcqr.flowCacheObjList);
-					}
-					iter.remove();
-				} catch (InterruptedException | ExecutionException e) {
-					e.printStackTrace();
-				} catch (TimeoutException e) {
-					iter.remove();
-				}
-			}
-		}
 	    
 	    return flowCacheObjects;
     }
@@ -1382,23 +1706,11 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 	    List<FlowCacheObj> flowCacheObjects = new ArrayList<FlowCacheObj>();
 	    
 	    // Query the flow cache.
-	 	Future<FlowCacheQueryResp> future = this.flowCache.queryDB(flowCacheQuery);
-	 	if (future == null) {
-	 		log.error("Could not get future from flow cache.");
-	 		return null;
+	 	FlowCacheQueryResp fcqr = this.flowCache.queryFlows(flowCacheQuery);
+	 	if (fcqr != null && fcqr.flowCacheObjList != null) {
+	 		flowCacheObjects.addAll(fcqr.flowCacheObjList);
 	 	}
 
-		try {
-			FlowCacheQueryResp fcqr = future.get(1, TimeUnit.SECONDS);
-			if (fcqr != null && fcqr.flowCacheObjList != null) {
-				flowCacheObjects.addAll(fcqr.flowCacheObjList);
-			}
-		} catch (InterruptedException | ExecutionException e) {
-			e.printStackTrace();
-		} catch (TimeoutException e) {
-			e.printStackTrace();
-		}
-
 	    return flowCacheObjects;
     }
     
@@ -1418,8 +1730,22 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 
 	@Override
 	public boolean installFlow(OFMatch match, Path path, int outPortId, List<OFAction> additionalActions, long cookie) {
+		return this.awaitInstalled(this.installFlowAsync(match, path, outPortId, additionalActions, cookie), cookie);
+	}
+	
+	/**
+	 * Installs a flow on a path without blocking the calling thread.
+	 * 
+	 * @param match The OFMatch that characterizes the flow to be installed.
+	 * @param path The path, i.e. a list of switches where the flow should be installed.
+	 * @param outPortId The ID of the output port at the egress switch.
+	 * @param additionalActions Some optional actions, e.g. SET_VLAN, STRIP_VLAN, that should be performed at the ingress switch.
+	 * @param cookie The (optional) cookie that identifies the application and the flow. 
+	 * @return <b>ListenableFuture</b> A future that states whether the path has been installed successfully.
+	 */
+	protected ListenableFuture<Boolean> installFlowAsync(OFMatch match, Path path, int outPortId, List<OFAction> additionalActions, long cookie) {
 		/* States whether the flow was successfully installed or not. */
-		boolean installed = false;
+		ListenableFuture<Boolean> installed = Futures.immediateFuture(false);
 		/* */
 		short firstPhyInputPort = match.getInputPort();
 		/* */
@@ -1447,13 +1773,23 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 		if (path.getLinks() != null && path.getDstPort() != 0)
 			match.setInputPort(OFSwitchPort.physicalPortIdOf(path.getDstPort()));
 		
-		// Install the last hop, i.e. the port to the receiving end host, i.e. dstDap.getPort().
-		this.installLastHop(path.getEndPoints().getDst(), match, cookie, outPortId, path.getId(), null);
+		// Add the last hop, i.e. the port to the receiving end host, i.e. dstDap.getPort(), to the batch of the path.
+		PathInstallBatch batch = new PathInstallBatch();
+		IOFSwitch dstSwitch = floodlightProvider.getSwitch(path.getEndPoints().getDst());
+		if (dstSwitch == null) {
+			if (log.isWarnEnabled()) {
+				log.warn("Unable to install flow, switch {} not available", HexString.toHexString(path.getEndPoints().getDst()));
+			}
+			return installed;
+		}
+		batch.add(dstSwitch, this.createFlowMod(dstSwitch, OFFlowMod.OFPFC_ADD, OFPacketOut.BUFFER_ID_NONE, this.wildcard(match, dstSwitch, 0), outPortId, FLOWMOD_DEFAULT_PRIORITY, cookie));
 		
 		// Install the flow on the path.
 		if (path.getLinks() != null) {
 			match.setInputPort(firstPhyInputPort);
-			installed = this.installPath(path, match, cookie, null);
+			installed = this.installPathAsync(path, match, cookie, batch, null);
+		} else {
+			this.writeBatch(batch, cookie, path.getId(), null);
 		}
 		
 		// Remove the drop rule.
@@ -1465,7 +1801,13 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 		// TODO
 		
 		if (log.isTraceEnabled()) {
-			log.trace("Flow installation time: " + (System.currentTimeMillis() - startTime) + " ms.");
+			final long installStartTime = startTime;
+			installed.addListener(new Runnable() {
+				@Override
+				public void run() {
+					log.trace("Flow installation time: " + (System.currentTimeMillis() - installStartTime) + " ms.");
+				}
+			}, MoreExecutors.sameThreadExecutor());
 			log.trace("***** END OlimpsForwarding.installFlow *****************************************");
 		}
 			
@@ -1572,26 +1914,19 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 		// Update path id of last-hop flow cache object.
 		FlowCacheQuery fcq = new FlowCacheQuery(IFlowCacheService.DEFAULT_DB_NAME, this.getName(), null, srcPath.getEndPoints().getDst(), match);
 		
-		Future<FlowCacheQueryResp> future = this.flowCache.queryDB(fcq);
-		try {
-			FlowCacheQueryResp fcqr = future.get(5, TimeUnit.SECONDS);
-			if (fcqr != null && fcqr.flowCacheObjList.size() == 1) {
-				fcqr.flowCacheObjList.get(0).setPathId(dstPath.getId());
-			} else {
-				if (log.isWarnEnabled()) {
-					log.warn("Did not update the path id of the last hop." + fcqr.flowCacheObjList);
-				}
-			}
-		} catch (InterruptedException | ExecutionException e) {
+		FlowCacheQueryResp fcqr = this.flowCache.queryFlows(fcq);
+		if (fcqr == null) {
 			if (log.isWarnEnabled()) {
-				log.warn("Could not get future from flow cache.");
+				log.warn("Could not find the last hop in the flow cache. Object not found.");
 			}
-			e.printStackTrace();
-		} catch (TimeoutException e) {
+			return false;
+		}
+		if (fcqr.flowCacheObjList.size() == 1) {
+			fcqr.flowCacheObjList.get(0).setPathId(dstPath.getId());
+		} else {
 			if (log.isWarnEnabled()) {
-				log.warn("Could not get future from flow cache. Object not found.");
+				log.warn("Did not update the path id of the last hop." + fcqr.flowCacheObjList);
 			}
-			return false;
 		}
 		
 		return true;
@@ -1847,50 +2182,76 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 	}
 	
 	/**
-	 * Convenience method to add a flow cookie to the barrier cache.
+	 * Convenience method to add a pending barrier request to the barrier cache.
 	 * 
 	 * @param switchId
 	 * @param xid
-	 * @param cookie
+	 * @param pendingBarrier
 	 */
-	private void addBarrierXid(long switchId, int xid, long cookie) {
-		if (!this.barrierCacheCookie.containsKey(switchId))
-			this.barrierCacheCookie.put(switchId, new HashMap<Integer, Long>());
-		this.barrierCacheCookie.get(switchId).put(xid, cookie);
+	private void addBarrierXid(long switchId, int xid, PendingBarrier pendingBarrier) {
+		ConcurrentMap<Integer, PendingBarrier> xidCache = this.barrierCacheCookie.get(switchId);
+		if (xidCache == null) {
+			ConcurrentMap<Integer, PendingBarrier> newXidCache = new ConcurrentHashMap<Integer, PendingBarrier>();
+			xidCache = this.barrierCacheCookie.putIfAbsent(switchId, newXidCache);
+			if (xidCache == null) {
+				xidCache = newXidCache;
+			}
+		}
+		xidCache.put(xid, pendingBarrier);
 	}
 	
 	/**
-	 * Convenience method to remove a flow from the barrier cache.
+	 * Convenience method to remove a pending barrier request from the barrier cache.
 	 * 
 	 * @param switchId
 	 * @param xid
-	 * @param <b>long</b> The cookie that was stored for the switch and the barrier transaction id.
+	 * @param <b>PendingBarrier</b> The pending barrier request that was stored for the switch and the barrier transaction id, or null.
 	 */
-	private long removeBarrierXid(long switchId, int xid) {
-		/* The cookie that will be returned. */
-		long cookie = 0;
+	private PendingBarrier removeBarrierXid(long switchId, int xid) {
+		/* The barrier cache of the switch. The (possibly empty) cache is kept until the switch is removed. */
+		ConcurrentMap<Integer, PendingBarrier> xidCache = this.barrierCacheCookie.get(switchId);
 		
-		if (!this.barrierCacheCookie.containsKey(switchId)) {
+		if (xidCache == null) {
 			if (log.isDebugEnabled()) {
 				log.debug("Can not remove barrier Xid from barrier cache. Switch {} not found.", HexString.toHexString(switchId));
 			}
-			return cookie;
+			return null;
 		}
 		
-		if (!this.barrierCacheCookie.get(switchId).containsKey(xid)) {
+		/* The pending barrier request that will be returned. */
+		PendingBarrier pendingBarrier = xidCache.remove(xid);
+		
+		if (pendingBarrier == null) {
 			if (log.isDebugEnabled()) {
 				log.debug("Can not remove barrier Xid from barrier cache. Xid {} not found.", xid);
 			}
-			return cookie;
 		}
 		
-		cookie = this.barrierCacheCookie.get(switchId).remove(xid);
-		
-		if (this.barrierCacheCookie.get(switchId).isEmpty()) {
-			this.barrierCacheCookie.remove(switchId);
+		return pendingBarrier;
+	}
+	
+	/**
+	 * Removes all pending barrier requests of a flow from the barrier cache
+	 * and fails their futures, e.g. if the flow installation timed out.
+	 * 
+	 * @param cookie The cookie of the flow.
+	 */
+	private void abortPendingBarriers(long cookie) {
+		for (Long switchId : this.getPendingSwitches(cookie)) {
+			/* The barrier cache of the switch. */
+			ConcurrentMap<Integer, PendingBarrier> xidCache = this.barrierCacheCookie.get(switchId);
+			
+			if (xidCache != null) {
+				for (Iterator<PendingBarrier> iter = xidCache.values().iterator(); iter.hasNext();) {
+					PendingBarrier pendingBarrier = iter.next();
+					if (pendingBarrier.cookie == cookie) {
+						iter.remove();
+						pendingBarrier.reply.setException(new IOException("Barrier request for 0x" + Long.toHexString(cookie) + " to " + HexString.toHexString(switchId) + " aborted"));
+					}
+				}
+			}
+			this.removePendingFlow(cookie, switchId);
 		}
-		
-		return cookie;
 	}
 	
 	/**
@@ -1898,11 +2259,26 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 	 * 
 	 * @param cookie
 	 * @param switchId
+	 * @param barrierReply The future of the barrier reply we are expecting from the switch.
 	 */
-	private void addPendingFlow(long cookie, long switchId) {
-		if (!this.pendingFlows.containsKey(cookie))
-			this.pendingFlows.put(cookie, new HashSet<Long>());
-		this.pendingFlows.get(cookie).add(switchId);
+	private void addPendingFlow(long cookie, long switchId, ListenableFuture<Long> barrierReply) {
+		while (true) {
+			Map<Long, ListenableFuture<Long>> barrierReplies = this.pendingFlows.get(cookie);
+			if (barrierReplies == null) {
+				Map<Long, ListenableFuture<Long>> newBarrierReplies = new HashMap<Long, ListenableFuture<Long>>();
+				barrierReplies = this.pendingFlows.putIfAbsent(cookie, newBarrierReplies);
+				if (barrierReplies == null) {
+					barrierReplies = newBarrierReplies;
+				}
+			}
+			synchronized (barrierReplies) {
+				// The map might have been removed concurrently, once it became empty.
+				if (this.pendingFlows.get(cookie) == barrierReplies) {
+					barrierReplies.put(switchId, barrierReply);
+					return;
+				}
+			}
+		}
 	}
 	
 	/**
@@ -1912,26 +2288,119 @@ public class OlimpsForwarding extends ForwardingBase implements IMultipathServic
 	 * @param switchId
 	 */
 	private void removePendingFlow(long cookie, long switchId) {
+		this.removePendingFlow(cookie, switchId, null);
+	}
+	
+	/**
+	 * Convenience method to remove a pending flow from the cache.
+	 * 
+	 * @param cookie
+	 * @param switchId
+	 * @param barrierReply The future of the barrier reply that was received, or null to remove any barrier reply of the switch.
+	 */
+	private void removePendingFlow(long cookie, long switchId, ListenableFuture<Long> barrierReply) {
+		/* The barrier replies of the pending flow. */
+		Map<Long, ListenableFuture<Long>> barrierReplies = this.pendingFlows.get(cookie);
 		
-		if (!this.pendingFlows.containsKey(cookie)) {
+		if (barrierReplies == null) {
 			if (log.isDebugEnabled()) {
 				log.debug("Can not remove switch from pending flows. Cookie 0x{} not found.", Long.toHexString(cookie));
 			}
 			return;
 		}
 		
-		if (!this.pendingFlows.get(cookie).contains(switchId)) {
-			if (log.isDebugEnabled()) {
-				log.debug("Can not remove switch from pending flows. switch {} not found.", HexString.toHexString(switchId));
+		synchronized (barrierReplies) {
+			if (!barrierReplies.containsKey(switchId)) {
+				if (log.isDebugEnabled()) {
+					log.debug("Can not remove switch from pending flows. switch {} not found.", HexString.toHexString(switchId));
+				}
+				return;
+			}
+			
+			// A newer barrier request for the same flow and switch is still pending.
+			if (barrierReply != null && barrierReplies.get(switchId) != barrierReply) {
+				return;
+			}
+			
+			barrierReplies.remove(switchId);
+			if (barrierReplies.isEmpty()) {
+				this.pendingFlows.remove(cookie, barrierReplies);
 			}
-			return;
 		}
+	}
+	
+	/**
+	 * Gets the barrier replies we are still expecting for a flow.
+	 * 
+	 * @param cookie
+	 * @return <b>List</b> A snapshot of the pending barrier replies. Might be empty.
+	 */
+	private List<ListenableFuture<Long>> getPendingBarriers(long cookie) {
+		/* The barrier replies of the pending flow. */
+		Map<Long, ListenableFuture<Long>> barrierReplies = this.pendingFlows.get(cookie);
 		
-		this.pendingFlows.get(cookie).remove(switchId);
+		if (barrierReplies == null) {
+			return Collections.emptyList();
+		}
+		synchronized (barrierReplies) {
+			return new ArrayList<ListenableFuture<Long>>(barrierReplies.values());
+		}
+	}
+	
+	/**
+	 * Gets the switches we are still expecting barrier replies from for a flow.
+	 * 
+	 * @param cookie
+	 * @return <b>Set</b> A snapshot of the pending switch Ids. Might be empty.
+	 */
+	private Set<Long> getPendingSwitches(long cookie) {
+		/* The barrier replies of the pending flow. */
+		Map<Long, ListenableFuture<Long>> barrierReplies = this.pendingFlows.get(cookie);
 		
-		if (this.pendingFlows.get(cookie).isEmpty()) {
-			this.pendingFlows.remove(cookie);
+		if (barrierReplies == null) {
+			return Collections.emptySet();
+		}
+		synchronized (barrierReplies) {
+			return new HashSet<Long>(barrierReplies.keySet());
+		}
+	}
+	
+	/**
+	 * Gets the packet view of a packet-in message from the Floodlight context.
+	 * If the context does not contain a view yet, a new view is created and
+	 * stored in the context.
+	 * 
+	 * @param pi The packet-in message.
+	 * @param cntx The Floodlight context of the packet-in message.
+	 * @return <b>PacketInView</b> The packet view of the packet-in message.
+	 */
+	private PacketInView getPacketInView(OFPacketIn pi, FloodlightContext cntx) {
+		PacketInView piView = IFloodlightProviderService.piViewStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_VIEW);
+		if (piView == null) {
+			piView = new PacketInView(pi.getPacketData(), pi.getInPort());
+			IFloodlightProviderService.piViewStore.put(cntx, IFloodlightProviderService.CONTEXT_PI_VIEW, piView);
 		}
+		return piView;
+	}
+	
+	/**
+	 * Gets the flow setup lock for a given match. The stripe is selected by the
+	 * L3/L4 header fields of the match, so all packet-ins of a flow share the
+	 * same lock, independent of the switch and input port they arrive at.
+	 * 
+	 * @param match The wildcarded match of the flow.
+	 * @return <b>ReentrantLock</b> The flow setup lock of the match.
+	 */
+	private ReentrantLock getFlowSetupLock(OFMatch match) {
+		int hash = match.getDataLayerType();
+		hash = 31 * hash + match.getNetworkSource();
+		hash = 31 * hash + match.getNetworkDestination();
+		hash = 31 * hash + match.getNetworkProtocol();
+		hash = 31 * hash + match.getTransportSource();
+		hash = 31 * hash + match.getTransportDestination();
+		// Spread the higher bits, since IP addresses often differ in their lower bits only.
+		hash ^= (hash >>> 16);
+		return this.flowSetupLocks[hash & (FLOW_SETUP_LOCK_STRIPES - 1)];
 	}
 
 }
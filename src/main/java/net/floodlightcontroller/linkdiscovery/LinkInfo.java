@@ -15,6 +15,8 @@
 
 package net.floodlightcontroller.linkdiscovery;
 
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LinkType;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -47,8 +49,15 @@ public class LinkInfo {
     }
 
     protected Long firstSeenTime;
-    protected Long lastLldpReceivedTime; /* Standard LLLDP received time */
-    protected Long lastBddpReceivedTime; /* Modified LLDP received time  */
+    protected volatile Long lastLldpReceivedTime; /* Standard LLLDP received time */
+    protected volatile Long lastBddpReceivedTime; /* Modified LLDP received time  */
+
+    private static final AtomicReferenceFieldUpdater<LinkInfo, Long> lldpTimeUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(LinkInfo.class, Long.class,
+                                                   "lastLldpReceivedTime");
+    private static final AtomicReferenceFieldUpdater<LinkInfo, Long> bddpTimeUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(LinkInfo.class, Long.class,
+                                                   "lastBddpReceivedTime");
 
     /** The port states stored here are topology's last knowledge of
      * the state of the port. This mostly mirrors the state
@@ -84,6 +93,64 @@ public class LinkInfo {
         this.lastBddpReceivedTime = multicastValidTime;
     }
 
+    /**
+     * Advance the unicast valid time of a link that is already valid for
+     * unicast. This does not take any lock and never moves the valid time
+     * backwards.
+     * @param time the time the LLDP was received
+     * @return false if the unicast valid time is not set, i.e. the link
+     * type would change
+     */
+    public boolean refreshUnicastValidTime(long time) {
+        return refresh(lldpTimeUpdater, time);
+    }
+
+    /**
+     * Advance the multicast valid time of a link that is already valid for
+     * multicast. This does not take any lock and never moves the valid time
+     * backwards.
+     * @param time the time the BDDP was received
+     * @return false if the multicast valid time is not set, i.e. the link
+     * type would change
+     */
+    public boolean refreshMulticastValidTime(long time) {
+        return refresh(bddpTimeUpdater, time);
+    }
+
+    /**
+     * Clear the unicast valid time unless it was refreshed since it was
+     * read.
+     * @param expected the valid time as returned by
+     * {@link #getUnicastValidTime()}
+     * @return true if the valid time was cleared
+     */
+    public boolean clearUnicastValidTime(Long expected) {
+        return lldpTimeUpdater.compareAndSet(this, expected, null);
+    }
+
+    /**
+     * Clear the multicast valid time unless it was refreshed since it was
+     * read.
+     * @param expected the valid time as returned by
+     * {@link #getMulticastValidTime()}
+     * @return true if the valid time was cleared
+     */
+    public boolean clearMulticastValidTime(Long expected) {
+        return bddpTimeUpdater.compareAndSet(this, expected, null);
+    }
+
+    private boolean refresh(AtomicReferenceFieldUpdater<LinkInfo, Long> updater,
+                            long time) {
+        while (true) {
+            Long current = updater.get(this);
+            if (current == null)
+                return false;
+            if (current.longValue() >= time ||
+                updater.compareAndSet(this, current, Long.valueOf(time)))
+                return true;
+        }
+    }
+
     @JsonIgnore
     public LinkType getLinkType() {
         if (lastLldpReceivedTime != null) {
@@ -31,7 +31,6 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
@@ -93,7 +92,9 @@ import net.floodlightcontroller.storage.IStorageSourceService;
 import net.floodlightcontroller.storage.OperatorPredicate;
 import net.floodlightcontroller.storage.StorageException;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.threadpool.IThreadPoolService.ExecutorLane;
 import net.floodlightcontroller.topology.NodePortTuple;
+import net.floodlightcontroller.util.TimingWheel;
 
 import org.openflow.protocol.OFMessage;
 import org.openflow.protocol.OFPacketIn;
@@ -121,7 +122,8 @@ import org.slf4j.LoggerFactory;
  * one of the src or dst SwitchPortTuple's id matches the switch id -Each
  * LinkTuple will be indexed into switchLinks for both src.id and dst.id, and
  * portLinks for each src and dst -The updates queue is only added to from
- * within a held write lock
+ * within a held write lock -Refreshing the valid time of a known link does not
+ * take the lock and does not add updates
  */
 @LogMessageCategory("Network Topology")
 public class LinkDiscoveryManager implements IOFMessageListener,
@@ -210,10 +212,20 @@ public class LinkDiscoveryManager implements IOFMessageListener,
     protected boolean autoPortFastFeature = AUTOPORTFAST_DEFAULT;
 
     /**
-     * Map from link to the most recent time it was verified functioning
+     * Map from link to the most recent time it was verified functioning.
+     * Readers do not lock the map. Refreshing the valid time of a known link
+     * updates its LinkInfo in place without taking the lock; adding,
+     * replacing, and removing links holds the write lock, which also guards
+     * switchLinks and portLinks.
      */
     protected Map<Link, LinkInfo> links;
 
+    /**
+     * The expiry index of the links. Each LinkInfo that is put into links
+     * is added once; refreshing its valid time does not touch the wheel.
+     */
+    protected TimingWheel<LinkExpiry> linkExpiryWheel;
+
     /**
      * Map from switch id to a set of all links with it as an endpoint
      */
@@ -257,6 +269,37 @@ public class LinkDiscoveryManager implements IOFMessageListener,
         long baseMAC;
         int ignoreBits;
     }
+
+    /**
+     * An entry of the link expiry index. It expires when the earlier of the
+     * unicast and multicast valid times times out. Entries of LinkInfos that
+     * were replaced or removed are stale and dropped on expiry.
+     */
+    protected class LinkExpiry implements TimingWheel.Expirable {
+        protected final Link link;
+        protected final LinkInfo info;
+
+        protected LinkExpiry(Link link, LinkInfo info) {
+            this.link = link;
+            this.info = info;
+        }
+
+        @Override
+        public long getExpirationTime() {
+            Long unicastTime = info.getUnicastValidTime();
+            Long multicastTime = info.getMulticastValidTime();
+            long validTime;
+            if (unicastTime == null && multicastTime == null)
+                return 0;
+            else if (unicastTime == null)
+                validTime = multicastTime;
+            else if (multicastTime == null)
+                validTime = unicastTime;
+            else
+                validTime = Math.min(unicastTime, multicastTime);
+            return validTime + LINK_TIMEOUT * 1000L;
+        }
+    }
     protected Set<MACRange> ignoreMACSet;
 
     private IHAListener haListener;
@@ -504,25 +547,16 @@ public class LinkDiscoveryManager implements IOFMessageListener,
 
     @Override
     public Map<Link, LinkInfo> getLinks() {
-        lock.readLock().lock();
-        Map<Link, LinkInfo> result;
-        try {
-            result = new HashMap<Link, LinkInfo>(links);
-        } finally {
-            lock.readLock().unlock();
-        }
-        return result;
+        return new HashMap<Link, LinkInfo>(links);
     }
 
     @Override
     public LinkInfo getLinkInfo(Link link) {
-        lock.readLock().lock();
         LinkInfo linkInfo = links.get(link);
         LinkInfo retLinkInfo = null;
         if (linkInfo != null) {
             retLinkInfo  = new LinkInfo(linkInfo);
         }
-        lock.readLock().unlock();
         return retLinkInfo;
     }
 
@@ -1302,6 +1336,29 @@ public class LinkDiscoveryManager implements IOFMessageListener,
         return linkChanged;
     }
 
+    /**
+     * Refresh the valid time of a known link in place if the link type
+     * does not change. This does not take the lock.
+     *
+     * @return the refreshed LinkInfo, or null if the link has to be added
+     *         or updated under the write lock
+     */
+    private LinkInfo refreshLink(Link lt, LinkInfo newInfo) {
+        LinkInfo oldInfo = links.get(lt);
+        if (oldInfo == null)
+            return null;
+        Long unicastTime = newInfo.getUnicastValidTime();
+        Long multicastTime = newInfo.getMulticastValidTime();
+        boolean refreshed;
+        if (unicastTime != null && multicastTime == null)
+            refreshed = oldInfo.refreshUnicastValidTime(unicastTime);
+        else if (multicastTime != null && unicastTime == null)
+            refreshed = oldInfo.refreshMulticastValidTime(multicastTime);
+        else
+            refreshed = false;
+        return refreshed ? oldInfo : null;
+    }
+
     @LogMessageDocs({
         @LogMessageDoc(message="Inter-switch link detected:",
                 explanation="Detected a new link between two openflow switches," +
@@ -1318,10 +1375,29 @@ public class LinkDiscoveryManager implements IOFMessageListener,
         if (lt.getSrc() == lt.getDst() && lt.getSrcPort() == lt.getDstPort())
         	return linkChanged;
 
+        // Most LLDPs only confirm a known link.
+        LinkInfo refreshedInfo = refreshLink(lt, newInfo);
+        if (refreshedInfo != null) {
+            writeLinkToStorage(lt, refreshedInfo);
+            // The link may have been deleted, and its row removed, before
+            // the row was written. Remove the row again after the write.
+            if (links.get(lt) != refreshedInfo)
+                removeLinkFromStorage(lt);
+            return linkChanged;
+        }
+
         lock.writeLock().lock();
         try {
+            // The link may have been added since it was looked up.
+            refreshedInfo = refreshLink(lt, newInfo);
+            if (refreshedInfo != null) {
+                writeLinkToStorage(lt, refreshedInfo);
+                return linkChanged;
+            }
+
             // put the new info. if an old info exists, it will be returned.
             LinkInfo oldInfo = links.put(lt, newInfo);
+            linkExpiryWheel.add(new LinkExpiry(lt, newInfo));
             if (oldInfo != null
                     && oldInfo.getFirstSeenTime() < newInfo.getFirstSeenTime())
                 newInfo.setFirstSeenTime(oldInfo.getFirstSeenTime());
@@ -1494,68 +1570,78 @@ public class LinkDiscoveryManager implements IOFMessageListener,
      */
     protected void deleteLinksOnPort(NodePortTuple npt, String reason) {
         List<Link> eraseList = new ArrayList<Link>();
-        if (this.portLinks.containsKey(npt)) {
-            if (log.isTraceEnabled()) {
-                log.trace("handlePortStatus: Switch {} port #{} "
-                                  + "removing links {}",
-                          new Object[] {
-                                        HexString.toHexString(npt.getNodeId()),
-                                        npt.getPortId(),
-                                        this.portLinks.get(npt) });
+        lock.writeLock().lock();
+        try {
+            if (this.portLinks.containsKey(npt)) {
+                if (log.isTraceEnabled()) {
+                    log.trace("handlePortStatus: Switch {} port #{} "
+                                      + "removing links {}",
+                              new Object[] {
+                                            HexString.toHexString(npt.getNodeId()),
+                                            npt.getPortId(),
+                                            this.portLinks.get(npt) });
+                }
+                eraseList.addAll(this.portLinks.get(npt));
+                deleteLinks(eraseList, reason);
             }
-            eraseList.addAll(this.portLinks.get(npt));
-            deleteLinks(eraseList, reason);
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
     /**
-     * Iterates through the list of links and deletes if the last discovery
-     * message reception time exceeds timeout values.
+     * Times out the valid times of the links that are due in the expiry
+     * index and deletes links without any valid time. Does not take the
+     * lock if no link is due.
      */
     protected void timeoutLinks() {
-        List<Link> eraseList = new ArrayList<Link>();
-        Long curTime = System.currentTimeMillis();
-        boolean linkChanged = false;
+        long curTime = System.currentTimeMillis();
+        List<LinkExpiry> expired = linkExpiryWheel.expire(curTime);
+        if (expired.isEmpty())
+            return;
 
+        List<Link> eraseList = new ArrayList<Link>();
         // reentrant required here because deleteLink also write locks
         lock.writeLock().lock();
         try {
-            Iterator<Entry<Link, LinkInfo>> it = this.links.entrySet()
-                                                           .iterator();
-            while (it.hasNext()) {
-                Entry<Link, LinkInfo> entry = it.next();
-                Link lt = entry.getKey();
-                LinkInfo info = entry.getValue();
+            for (LinkExpiry entry : expired) {
+                Link lt = entry.link;
+                LinkInfo info = entry.info;
+                // Skip link infos that have been replaced or removed.
+                if (links.get(lt) != info)
+                    continue;
 
                 // Timeout the unicast and multicast LLDP valid times
-                // independently.
-                if ((info.getUnicastValidTime() != null)
-                    && (info.getUnicastValidTime()
-                        + (this.LINK_TIMEOUT * 1000) < curTime)) {
-                    info.setUnicastValidTime(null);
-                    linkChanged = true;
+                // independently. A valid time refreshed concurrently is
+                // not cleared.
+                boolean linkChanged = false;
+                Long unicastTime = info.getUnicastValidTime();
+                if ((unicastTime != null)
+                    && (unicastTime + (this.LINK_TIMEOUT * 1000) < curTime)) {
+                    linkChanged |= info.clearUnicastValidTime(unicastTime);
                 }
-                if ((info.getMulticastValidTime() != null)
-                    && (info.getMulticastValidTime()
-                        + (this.LINK_TIMEOUT * 1000) < curTime)) {
-                    info.setMulticastValidTime(null);
-                    linkChanged = true;
+                Long multicastTime = info.getMulticastValidTime();
+                if ((multicastTime != null)
+                    && (multicastTime + (this.LINK_TIMEOUT * 1000) < curTime)) {
+                    linkChanged |= info.clearMulticastValidTime(multicastTime);
                 }
-                // Add to the erase list only if the unicast
-                // time is null.
+                // Add to the erase list only if both valid times are null.
+                // Keep all other links in the expiry index.
                 if (info.getUnicastValidTime() == null
                     && info.getMulticastValidTime() == null) {
-                    eraseList.add(entry.getKey());
-                } else if (linkChanged) {
-                    updates.add(new LDUpdate(lt.getSrc(), lt.getSrcPort(),
-                                             lt.getDst(), lt.getDstPort(),
-                                             getLinkType(lt, info),
-                                             UpdateOperation.LINK_UPDATED));
+                    eraseList.add(lt);
+                } else {
+                    linkExpiryWheel.add(entry);
+                    if (linkChanged) {
+                        updates.add(new LDUpdate(lt.getSrc(), lt.getSrcPort(),
+                                                 lt.getDst(), lt.getDstPort(),
+                                                 getLinkType(lt, info),
+                                                 UpdateOperation.LINK_UPDATED));
+                    }
                 }
             }
 
-            // if any link was deleted or any link was changed.
-            if ((eraseList.size() > 0) || linkChanged) {
+            if (eraseList.size() > 0) {
                 deleteLinks(eraseList, "LLDP timeout");
             }
         } finally {
@@ -1985,7 +2071,11 @@ public class LinkDiscoveryManager implements IOFMessageListener,
         this.linkDiscoveryAware = new ArrayList<ILinkDiscoveryListener>();
         this.lock = new ReentrantReadWriteLock();
         this.updates = new LinkedBlockingQueue<LDUpdate>();
-        this.links = new HashMap<Link, LinkInfo>();
+        this.links = new ConcurrentHashMap<Link, LinkInfo>();
+        this.linkExpiryWheel =
+                new TimingWheel<LinkExpiry>(DISCOVERY_TASK_INTERVAL * 1000L,
+                                            LINK_TIMEOUT / DISCOVERY_TASK_INTERVAL,
+                                            System.currentTimeMillis());
         this.portLinks = new HashMap<NodePortTuple, Set<Link>>();
         this.suppressLinkDiscovery = Collections.synchronizedSet(new HashSet<NodePortTuple>());
         this.switchLinks = new HashMap<Long, Set<Link>>();
@@ -2050,7 +2140,7 @@ public class LinkDiscoveryManager implements IOFMessageListener,
                       + "switch table {}", SWITCH_CONFIG_TABLE_NAME);
         }
 
-        ScheduledExecutorService ses = threadPool.getScheduledExecutor();
+        ScheduledExecutorService ses = threadPool.getScheduledExecutor(ExecutorLane.TOPOLOGY);
 
         // To be started by the first switch connection
         discoveryTask = new SingletonTask(ses, new Runnable() {
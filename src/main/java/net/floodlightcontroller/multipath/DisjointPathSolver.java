@@ -0,0 +1,231 @@
+package net.floodlightcontroller.multipath;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.topology.CompactDijkstra;
+import net.floodlightcontroller.topology.CompactTopology;
+import net.floodlightcontroller.util.IndexedMinHeap;
+
+/**
+ * Calculates link disjoint paths between two switches on a compact topology,
+ * using Suurballe's algorithm in the generalized form of Bhandari: Starting
+ * with the shortest path, every iteration searches a shortest path in the
+ * residual graph, in which used links can be traversed backwards at negative
+ * cost. Node potentials (Johnson's reweighting) keep all edge costs
+ * non-negative, such that Dijkstra's algorithm can be used. Links used
+ * in both directions cancel out. After k iterations, the used links form
+ * the k link disjoint paths of minimal total cost.
+ * 
+ * Unlike removing the links of each shortest path from the topology, this
+ * finds the maximum number of link disjoint paths. An instance reuses its
+ * work arrays and is not thread-safe.
+ */
+public class DisjointPathSolver {
+	/** The distance of unreachable nodes. */
+	private static final int UNREACHABLE = CompactDijkstra.UNREACHABLE;
+	
+	/** Calculates the initial shortest paths. */
+	private final CompactDijkstra dijkstra = new CompactDijkstra();
+	/** The priority queue of the residual graph searches. */
+	private final IndexedMinHeap heap = new IndexedMinHeap(0);
+	/** Node id -> potential. */
+	private int[] potential = new int[0];
+	/** Node id -> reduced distance in the residual graph. */
+	private int[] distance = new int[0];
+	/** Node id -> edge + 1 used to reach the node, negative if the edge is traversed backwards, or 0. */
+	private int[] parent = new int[0];
+	/** Edge -> true if the edge is used by a path. */
+	private boolean[] used = new boolean[0];
+	
+	/**
+	 * Calculates link disjoint paths between two switches.
+	 * 
+	 * @param topology The compact topology.
+	 * @param srcSwitchId The source switch of the paths.
+	 * @param dstSwitchId The destination switch of the paths.
+	 * @param maxPaths The maximum number of paths.
+	 * @return <b>List of List of Links</b> The link disjoint paths, each represented by a list of links. The list is empty if there is no path.
+	 */
+	public List<List<Link>> solve(CompactTopology topology, long srcSwitchId, long dstSwitchId, int maxPaths) {
+		int src = topology.getNodeIndex(srcSwitchId);
+		int dst = topology.getNodeIndex(dstSwitchId);
+		if (src < 0 || dst < 0 || src == dst || maxPaths < 1)
+			return Collections.emptyList();
+		
+		this.ensureCapacity(topology.getNodeCount(), topology.getEdgeCount());
+		
+		// The shortest path. Its distances are the initial potentials.
+		dijkstra.compute(topology, src, false);
+		if (dijkstra.getDistance(dst) == UNREACHABLE)
+			return Collections.emptyList();
+		for (int node = 0; node < topology.getNodeCount(); node++) {
+			potential[node] = dijkstra.getDistance(node);
+		}
+		for (int node = dst; node != src; ) {
+			int edge = dijkstra.getParentEdge(node);
+			used[edge] = true;
+			node = topology.getSource(edge);
+		}
+		
+		// Augment by shortest paths in the residual graph.
+		int paths = 1;
+		while (paths < maxPaths && this.searchResidualGraph(topology, src, dst)) {
+			for (int node = dst; node != src; ) {
+				int edge = parent[node];
+				if (edge > 0) {
+					used[edge - 1] = true;
+					node = topology.getSource(edge - 1);
+				} else {
+					used[-edge - 1] = false;
+					node = topology.getTarget(-edge - 1);
+				}
+			}
+			paths++;
+		}
+		
+		// Decompose the used links into paths.
+		List<List<Link>> linkLists = new ArrayList<List<Link>>(paths);
+		for (int i = 0; i < paths; i++) {
+			List<Link> links = new ArrayList<Link>();
+			int node = src;
+			while (node != dst) {
+				int next = -1;
+				for (int edge = topology.getOutBegin(node); edge < topology.getOutEnd(node); edge++) {
+					if (used[edge]) {
+						used[edge] = false;
+						links.add(topology.getLink(edge));
+						next = topology.getTarget(edge);
+						break;
+					}
+				}
+				if (next < 0)
+					break;
+				node = next;
+			}
+			if (node == dst)
+				linkLists.add(links);
+		}
+		
+		return linkLists;
+	}
+	
+	/**
+	 * Searches a shortest path in the residual graph using the reduced edge
+	 * costs, and updates the potentials.
+	 * 
+	 * @param topology The compact topology.
+	 * @param src The source node id.
+	 * @param dst The destination node id.
+	 * @return <b>boolean</b> True if a path to the destination has been found.
+	 */
+	private boolean searchResidualGraph(CompactTopology topology, int src, int dst) {
+		int nodeCount = topology.getNodeCount();
+		Arrays.fill(distance, 0, nodeCount, UNREACHABLE);
+		Arrays.fill(parent, 0, nodeCount, 0);
+		heap.reset(nodeCount);
+		
+		distance[src] = 0;
+		heap.insertOrDecrease(src, 0);
+		while (!heap.isEmpty()) {
+			int node = heap.poll();
+			int nodeDistance = distance[node];
+			// Unused links forward.
+			for (int edge = topology.getOutBegin(node); edge < topology.getOutEnd(node); edge++) {
+				int neighbor = topology.getTarget(edge);
+				if (!used[edge] && potential[neighbor] != UNREACHABLE) {
+					int cost = topology.getWeight(edge) + potential[node] - potential[neighbor];
+					this.relax(neighbor, nodeDistance + cost, edge + 1);
+				}
+			}
+			// Used links backwards.
+			for (int i = topology.getInBegin(node); i < topology.getInEnd(node); i++) {
+				int edge = topology.getInEdge(i);
+				int neighbor = topology.getSource(edge);
+				if (used[edge]) {
+					int cost = -topology.getWeight(edge) + potential[node] - potential[neighbor];
+					this.relax(neighbor, nodeDistance + cost, -(edge + 1));
+				}
+			}
+		}
+		
+		if (distance[dst] == UNREACHABLE)
+			return false;
+		
+		// Nodes that are not reachable now will not be reachable in later iterations.
+		for (int node = 0; node < nodeCount; node++) {
+			if (distance[node] != UNREACHABLE) {
+				potential[node] += distance[node];
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Relaxes an edge of the residual graph.
+	 * 
+	 * @param neighbor The node reached by the edge.
+	 * @param newDistance The distance of the neighbor via the edge.
+	 * @param edge The edge + 1, negative if the edge is traversed backwards.
+	 */
+	private void relax(int neighbor, int newDistance, int edge) {
+		if (newDistance < distance[neighbor]) {
+			distance[neighbor] = newDistance;
+			parent[neighbor] = edge;
+			heap.insertOrDecrease(neighbor, newDistance);
+		}
+	}
+	
+	/**
+	 * Makes sure the work arrays can hold the topology and clears the used links.
+	 * 
+	 * @param nodeCount The number of nodes.
+	 * @param edgeCount The number of edges.
+	 */
+	private void ensureCapacity(int nodeCount, int edgeCount) {
+		if (potential.length < nodeCount) {
+			this.potential = new int[nodeCount];
+			this.distance = new int[nodeCount];
+			this.parent = new int[nodeCount];
+		}
+		if (used.length < edgeCount) {
+			this.used = new boolean[edgeCount];
+		} else {
+			Arrays.fill(used, 0, edgeCount, false);
+		}
+	}
+}
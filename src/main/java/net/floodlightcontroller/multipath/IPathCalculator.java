@@ -49,6 +49,13 @@ public interface IPathCalculator {
 	 */
 	public String getName();
 	
+	/**
+	 * Sets the arguments of the path calculation algorithm.
+	 * 
+	 * @param args The arguments, e.g. space separated values.
+	 */
+	public void setArgs(String args);
+	
 	/**
 	 * Calculates all paths between a source switch and a destination switch.
 	 * 
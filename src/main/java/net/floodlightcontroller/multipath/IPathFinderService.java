@@ -122,4 +122,12 @@ public interface IPathFinderService extends IFloodlightService {
 	 * @return <b>IPathCalculator</b> The current path calculator.
 	 */
 	public IPathCalculator setPathCalculator(String name);
+	
+	/**
+	 * 
+	 * @param name The name of the path calculator.
+	 * @param args The optional arguments of the path calculator.
+	 * @return <b>IPathCalculator</b> The current path calculator.
+	 */
+	public IPathCalculator setPathCalculator(String name, String args);
 }
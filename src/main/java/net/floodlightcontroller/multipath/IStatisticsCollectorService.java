@@ -84,4 +84,11 @@ public interface IStatisticsCollectorService extends IFloodlightService {
      * @return <b>OFStatisticsReply</b> The statistics entry for a given switch port combination.
      */
     public StatisticEntry getStatisticEntry(long switchId, int port);
+    
+    /**
+     * Adds a listener that is notified whenever new port or flow statistics are received.
+     * 
+     * @param listener The statistics listener.
+     */
+    public void addStatisticsListener(IStatisticsListener listener);
 }
@@ -0,0 +1,60 @@
+package net.floodlightcontroller.multipath;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import net.floodlightcontroller.flowcache.FlowCacheObj;
+
+/**
+ * Listener that is notified whenever the statistics collector has
+ * received new port or flow statistics from a switch.
+ */
+public interface IStatisticsListener {
+	
+	/**
+	 * Called after the aggregated statistics of a switch port have been updated.
+	 * 
+	 * @param switchId The switch Id.
+	 * @param port The physical port Id.
+	 * @param statEntry The updated statistic entry, or null if the port has no flows anymore.
+	 */
+	public void portStatisticsUpdated(long switchId, short port, StatisticEntry statEntry);
+	
+	/**
+	 * Called after the statistics of a flow cache object have been updated.
+	 * 
+	 * @param switchId The switch Id.
+	 * @param fco The flow cache object.
+	 * @param statEntry The updated statistic entry of the flow.
+	 */
+	public void flowStatisticsUpdated(long switchId, FlowCacheObj fco, StatisticEntry statEntry);
+
+}
@@ -0,0 +1,297 @@
+package net.floodlightcontroller.multipath;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.topology.CompactDijkstra;
+import net.floodlightcontroller.topology.CompactTopology;
+
+/**
+ * Calculates the k shortest loop-free paths between two switches on a compact
+ * topology, using Yen's algorithm. Every new path deviates from a previously
+ * found path at a spur node: The spur path is the shortest path from the spur
+ * node that neither uses the links the previous paths take at this point, nor
+ * the nodes of the common root path.
+ * 
+ * A diversity constraint limits the fraction of links a path may share with
+ * any path that has already been accepted. Paths that violate the constraint
+ * are not returned, but still used to derive further candidates. The number
+ * of generated paths is bounded, such that the runtime is bounded by
+ * O(k * n * Dijkstra) even on dense topologies. An instance reuses its work
+ * arrays and is not thread-safe.
+ */
+public class KShortestPathSolver {
+	/** The maximum number of generated paths per requested path. Bounds the runtime if the diversity constraint rejects paths. */
+	public static final int MAX_GENERATED_PATHS_FACTOR = 4;
+	
+	/** Calculates the spur paths. */
+	private final CompactDijkstra dijkstra = new CompactDijkstra();
+	/** Node id -> true if the node is part of the current root path. */
+	private boolean[] disabledNodes = new boolean[0];
+	/** Edge -> true if the edge must not be used by the current spur path. */
+	private boolean[] disabledEdges = new boolean[0];
+	/** Edge -> true if the edge is used by the current candidate. */
+	private boolean[] candidateEdges = new boolean[0];
+	
+	/**
+	 * A path represented by its edges.
+	 */
+	private static class EdgePath implements Comparable<EdgePath> {
+		/** The edges of the path. */
+		final int[] edges;
+		/** The total weight of the path. */
+		final int cost;
+		
+		EdgePath(int[] edges, int cost) {
+			this.edges = edges;
+			this.cost = cost;
+		}
+
+		@Override
+		public int compareTo(EdgePath other) {
+			if (this.cost != other.cost)
+				return (this.cost < other.cost) ? -1 : 1;
+			if (this.edges.length != other.edges.length)
+				return (this.edges.length < other.edges.length) ? -1 : 1;
+			return 0;
+		}
+	}
+	
+	/**
+	 * Calculates the k shortest paths between two switches.
+	 * 
+	 * @param topology The compact topology.
+	 * @param srcSwitchId The source switch of the paths.
+	 * @param dstSwitchId The destination switch of the paths.
+	 * @param k The maximum number of paths.
+	 * @param maxOverlap The maximum fraction [0, 1] of its links a path may share with any other path.
+	 * @return <b>List of List of Links</b> The paths in ascending order of their length, each represented by a list of links. The list is empty if there is no path.
+	 */
+	public List<List<Link>> solve(CompactTopology topology, long srcSwitchId, long dstSwitchId, int k, double maxOverlap) {
+		int src = topology.getNodeIndex(srcSwitchId);
+		int dst = topology.getNodeIndex(dstSwitchId);
+		if (src < 0 || dst < 0 || src == dst || k < 1)
+			return Collections.emptyList();
+		
+		this.ensureCapacity(topology.getNodeCount(), topology.getEdgeCount());
+		
+		/* All paths found so far, i.e. the A list of Yen's algorithm. */
+		List<EdgePath> generated = new ArrayList<EdgePath>();
+		/* The paths that satisfy the diversity constraint. */
+		List<EdgePath> accepted = new ArrayList<EdgePath>();
+		/* The candidate paths, i.e. the B list of Yen's algorithm. */
+		PriorityQueue<EdgePath> candidates = new PriorityQueue<EdgePath>();
+		/* The edge sequences of all generated paths and candidates, to avoid duplicates. */
+		Set<List<Integer>> known = new HashSet<List<Integer>>();
+		
+		// The shortest path.
+		dijkstra.compute(topology, src, false);
+		EdgePath shortestPath = this.getPath(topology, null, 0, dst);
+		if (shortestPath == null)
+			return Collections.emptyList();
+		generated.add(shortestPath);
+		accepted.add(shortestPath);
+		known.add(this.asList(shortestPath.edges));
+		
+		int maxGenerated = k * MAX_GENERATED_PATHS_FACTOR;
+		while (accepted.size() < k && generated.size() < maxGenerated) {
+			EdgePath previous = generated.get(generated.size() - 1);
+			
+			for (int spur = 0; spur < previous.edges.length; spur++) {
+				int spurNode = topology.getSource(previous.edges[spur]);
+				
+				// Do not take the links of previous paths that share the same root path.
+				for (EdgePath path : generated) {
+					if (path.edges.length > spur && this.hasSameRoot(path, previous, spur)) {
+						disabledEdges[path.edges[spur]] = true;
+					}
+				}
+				// Do not visit the nodes of the root path again.
+				for (int i = 0; i < spur; i++) {
+					disabledNodes[topology.getSource(previous.edges[i])] = true;
+				}
+				
+				dijkstra.compute(topology, spurNode, false, disabledNodes, disabledEdges);
+				EdgePath candidate = this.getPath(topology, previous, spur, dst);
+				if (candidate != null && known.add(this.asList(candidate.edges))) {
+					candidates.add(candidate);
+				}
+				
+				// Reset the masks.
+				for (EdgePath path : generated) {
+					if (path.edges.length > spur) {
+						disabledEdges[path.edges[spur]] = false;
+					}
+				}
+				for (int i = 0; i < spur; i++) {
+					disabledNodes[topology.getSource(previous.edges[i])] = false;
+				}
+			}
+			
+			if (candidates.isEmpty())
+				break;
+			
+			EdgePath next = candidates.poll();
+			generated.add(next);
+			if (this.isDiverse(next, accepted, maxOverlap)) {
+				accepted.add(next);
+			}
+		}
+		
+		// Convert the edges to links.
+		List<List<Link>> linkLists = new ArrayList<List<Link>>(accepted.size());
+		for (EdgePath path : accepted) {
+			List<Link> links = new ArrayList<Link>(path.edges.length);
+			for (int edge : path.edges) {
+				links.add(topology.getLink(edge));
+			}
+			linkLists.add(links);
+		}
+		return linkLists;
+	}
+	
+	/**
+	 * Builds a path from the root path of a previous path and the spur path of the last Dijkstra run.
+	 * 
+	 * @param topology The compact topology.
+	 * @param root The path that contains the root path, or null.
+	 * @param rootLength The number of edges of the root path.
+	 * @param dst The destination node id.
+	 * @return <b>EdgePath</b> The path, or null if the destination is not reachable from the spur node.
+	 */
+	private EdgePath getPath(CompactTopology topology, EdgePath root, int rootLength, int dst) {
+		if (dijkstra.getDistance(dst) == CompactDijkstra.UNREACHABLE)
+			return null;
+		
+		int spurLength = 0;
+		for (int node = dst, edge = dijkstra.getParentEdge(node); edge >= 0; edge = dijkstra.getParentEdge(node)) {
+			spurLength++;
+			node = topology.getSource(edge);
+		}
+		
+		int[] edges = new int[rootLength + spurLength];
+		int cost = dijkstra.getDistance(dst);
+		for (int i = 0; i < rootLength; i++) {
+			edges[i] = root.edges[i];
+			cost += topology.getWeight(root.edges[i]);
+		}
+		int i = edges.length;
+		for (int node = dst, edge = dijkstra.getParentEdge(node); edge >= 0; edge = dijkstra.getParentEdge(node)) {
+			edges[--i] = edge;
+			node = topology.getSource(edge);
+		}
+		return new EdgePath(edges, cost);
+	}
+	
+	/**
+	 * Checks whether two paths share the same first edges.
+	 * 
+	 * @param path The first path.
+	 * @param other The second path.
+	 * @param length The number of edges to compare.
+	 * @return <b>boolean</b> True if the first edges of both paths are equal.
+	 */
+	private boolean hasSameRoot(EdgePath path, EdgePath other, int length) {
+		for (int i = 0; i < length; i++) {
+			if (path.edges[i] != other.edges[i])
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks whether a path satisfies the diversity constraint with respect to all accepted paths.
+	 * 
+	 * @param candidate The path to check.
+	 * @param accepted The accepted paths.
+	 * @param maxOverlap The maximum fraction of its links a path may share with any other path.
+	 * @return <b>boolean</b> True if the candidate satisfies the diversity constraint.
+	 */
+	private boolean isDiverse(EdgePath candidate, List<EdgePath> accepted, double maxOverlap) {
+		for (int edge : candidate.edges) {
+			candidateEdges[edge] = true;
+		}
+		boolean diverse = true;
+		for (EdgePath path : accepted) {
+			int shared = 0;
+			for (int edge : path.edges) {
+				if (candidateEdges[edge])
+					shared++;
+			}
+			if (shared > maxOverlap * Math.min(path.edges.length, candidate.edges.length)) {
+				diverse = false;
+				break;
+			}
+		}
+		for (int edge : candidate.edges) {
+			candidateEdges[edge] = false;
+		}
+		return diverse;
+	}
+	
+	/**
+	 * Converts edges to a list, to compare edge sequences.
+	 * 
+	 * @param edges The edges.
+	 * @return <b>List of Integer</b> The edges as list.
+	 */
+	private List<Integer> asList(int[] edges) {
+		List<Integer> list = new ArrayList<Integer>(edges.length);
+		for (int edge : edges) {
+			list.add(edge);
+		}
+		return list;
+	}
+	
+	/**
+	 * Makes sure the work arrays can hold the topology.
+	 * 
+	 * @param nodeCount The number of nodes.
+	 * @param edgeCount The number of edges.
+	 */
+	private void ensureCapacity(int nodeCount, int edgeCount) {
+		if (disabledNodes.length < nodeCount) {
+			this.disabledNodes = new boolean[nodeCount];
+		}
+		if (disabledEdges.length < edgeCount) {
+			this.disabledEdges = new boolean[edgeCount];
+			this.candidateEdges = new boolean[edgeCount];
+		}
+	}
+}
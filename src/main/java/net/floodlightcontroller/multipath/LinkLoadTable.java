@@ -0,0 +1,295 @@
+package net.floodlightcontroller.multipath;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.floodlightcontroller.appaware.AppEntry;
+import net.floodlightcontroller.appaware.IAppAwareService;
+import net.floodlightcontroller.core.OFSwitchPort;
+import net.floodlightcontroller.flowcache.FlowCacheObj;
+import net.floodlightcontroller.flowcache.IFlowCacheListener;
+import net.floodlightcontroller.routing.Link;
+
+/**
+ * A continuously maintained view of the load of all links, i.e. of the
+ * sending switch ports: The number of flows mapped to a link, its bit
+ * rate, and the bits the flows on the link still have to transfer.
+ * 
+ * The table is updated incrementally by flow cache events and statistics
+ * samples. Thus, path selectors read precomputed numbers instead of
+ * querying the flow cache for every link of every candidate path.
+ */
+public class LinkLoadTable implements IFlowCacheListener, IStatisticsListener {
+	/** The load of a link without any flows and statistics. */
+	public static final LinkLoad EMPTY_LINK_LOAD = new LinkLoad();
+	
+	/** Optional module: The application aware network manager that knows the file sizes of flows. */
+	protected IAppAwareService appAware;
+	/** Map to store the link loads: SwitchId -> physical PortId -> LinkLoad. */
+	protected ConcurrentHashMap<Long, ConcurrentHashMap<Short, LinkLoad>> linkLoads;
+	
+	/**
+	 * The load of a single link. Updates are serialized, reads are lock-free.
+	 */
+	public static class LinkLoad {
+		/** The flows on this link: FlowCacheObjId -> load of the flow. */
+		private final Map<Integer, FlowLoad> flows = new HashMap<Integer, FlowLoad>();
+		/** The number of flows on this link. */
+		private volatile int flowCount;
+		/** The bits the flows on this link still have to transfer in [MBit]. */
+		private volatile long remainingMBits;
+		/** The bit rate of this link in [bit/s]. */
+		private volatile long bitRate;
+		
+		/**
+		 * Getter for the number of flows on this link.
+		 * 
+		 * @return <b>int</b> The number of flows on this link.
+		 */
+		public int getFlowCount() {
+			return this.flowCount;
+		}
+		
+		/**
+		 * Getter for the bits the flows on this link still have to transfer.
+		 * 
+		 * @return <b>long</b> The remaining bits on this link in [MBit].
+		 */
+		public long getRemainingMBits() {
+			return this.remainingMBits;
+		}
+		
+		/**
+		 * Getter for the bit rate of this link, as measured by the last port statistics.
+		 * 
+		 * @return <b>long</b> The bit rate of this link in [bit/s].
+		 */
+		public long getBitRate() {
+			return this.bitRate;
+		}
+		
+		/**
+		 * Adds a flow to this link, i.e. it has been mapped to one more
+		 * (virtual) port of this link.
+		 * 
+		 * @param flowId The Id of the flow cache object.
+		 * @param remaining The remaining MBit of the flow.
+		 */
+		private synchronized void addFlow(int flowId, long remaining) {
+			FlowLoad flowLoad = this.flows.get(flowId);
+			if (flowLoad == null) {
+				flowLoad = new FlowLoad();
+				this.flows.put(flowId, flowLoad);
+				this.flowCount = this.flows.size();
+			}
+			flowLoad.ports++;
+			this.remainingMBits += remaining - flowLoad.remaining;
+			flowLoad.remaining = remaining;
+		}
+		
+		/**
+		 * Updates the remaining MBit of a flow on this link.
+		 * 
+		 * @param flowId The Id of the flow cache object.
+		 * @param remaining The remaining MBit of the flow.
+		 */
+		private synchronized void updateFlow(int flowId, long remaining) {
+			FlowLoad flowLoad = this.flows.get(flowId);
+			if (flowLoad == null)
+				return;
+			this.remainingMBits += remaining - flowLoad.remaining;
+			flowLoad.remaining = remaining;
+		}
+		
+		/**
+		 * Removes a flow from this link, once it is no longer mapped to
+		 * any (virtual) port of this link.
+		 * 
+		 * @param flowId The Id of the flow cache object.
+		 */
+		private synchronized void removeFlow(int flowId) {
+			FlowLoad flowLoad = this.flows.get(flowId);
+			if (flowLoad == null || --flowLoad.ports > 0)
+				return;
+			this.flows.remove(flowId);
+			this.flowCount = this.flows.size();
+			this.remainingMBits -= flowLoad.remaining;
+		}
+		
+		@Override
+		public String toString() {
+			return "LinkLoad [flowCount=" + flowCount + ", remainingMBits=" + remainingMBits + ", bitRate=" + bitRate + "]";
+		}
+	}
+	
+	/**
+	 * The load of a single flow on a link. A flow might be mapped to several
+	 * virtual ports, e.g. VLANs, of the same physical port.
+	 */
+	private static class FlowLoad {
+		/** The remaining MBit of the flow. */
+		private long remaining;
+		/** The number of (virtual) ports of the link the flow is mapped to. */
+		private int ports;
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param appAware The application aware network manager. Might be null.
+	 */
+	public LinkLoadTable(IAppAwareService appAware) {
+		this.appAware = appAware;
+		this.linkLoads = new ConcurrentHashMap<Long, ConcurrentHashMap<Short, LinkLoad>>();
+	}
+	
+	/**
+	 * Gets the load of a link, i.e. of its sending switch port.
+	 * 
+	 * @param link The link.
+	 * @return <b>LinkLoad</b> The load of the link. Never null.
+	 */
+	public LinkLoad getLinkLoad(Link link) {
+		return this.getLinkLoad(link.getSrc(), link.getSrcPort());
+	}
+	
+	/**
+	 * Gets the load of a switch port.
+	 * 
+	 * @param switchId The switch Id.
+	 * @param port The (virtual) port Id.
+	 * @return <b>LinkLoad</b> The load of the switch port. Never null.
+	 */
+	public LinkLoad getLinkLoad(long switchId, int port) {
+		ConcurrentHashMap<Short, LinkLoad> switchLoads = this.linkLoads.get(switchId);
+		if (switchLoads == null)
+			return EMPTY_LINK_LOAD;
+		LinkLoad linkLoad = switchLoads.get(OFSwitchPort.physicalPortIdOf(port));
+		return (linkLoad != null) ? linkLoad : EMPTY_LINK_LOAD;
+	}
+	
+	/**
+	 * Removes all link loads.
+	 */
+	public void clear() {
+		this.linkLoads.clear();
+	}
+
+	@Override
+	public void flowAdded(long switchId, int outPort, FlowCacheObj fco) {
+		this.getOrCreateLinkLoad(switchId, outPort).addFlow(fco.getId(), this.getRemainingMBits(fco));
+	}
+
+	@Override
+	public void flowRemoved(long switchId, int outPort, FlowCacheObj fco) {
+		this.getOrCreateLinkLoad(switchId, outPort).removeFlow(fco.getId());
+	}
+
+	@Override
+	public void portStatisticsUpdated(long switchId, short port, StatisticEntry statEntry) {
+		this.getOrCreateLinkLoad(switchId, port).bitRate = (statEntry != null) ? statEntry.getByteRate() * 8 : 0;
+	}
+
+	@Override
+	public void flowStatisticsUpdated(long switchId, FlowCacheObj fco, StatisticEntry statEntry) {
+		if (fco.getOutPorts() == null)
+			return;
+		long remaining = this.getRemainingMBits(fco);
+		for (int outPort : fco.getOutPorts()) {
+			this.getOrCreateLinkLoad(switchId, outPort).updateFlow(fco.getId(), remaining);
+		}
+	}
+	
+	/**
+	 * Calculates the bits a flow still has to transfer, i.e. the file size
+	 * known by the application aware network manager minus the bits already
+	 * transfered according to the flow statistics. Only active flows, i.e.
+	 * flows installed on the switch, are considered. Flows that become active
+	 * are considered with their next statistics sample.
+	 * 
+	 * @param fco The flow cache object.
+	 * @return <b>long</b> The remaining bits of the flow in [MBit], or 0 if the file size is unknown or the flow is not active.
+	 */
+	protected long getRemainingMBits(FlowCacheObj fco) {
+		if (this.appAware == null || !fco.isActive())
+			return 0;
+		
+		// Find the application information.
+		AppEntry appEntry = this.appAware.getApplication(fco.getMatch());
+		if (appEntry == null || appEntry.getFileSize() <= 0)
+			return 0;
+		
+		// Check if we have some statistics for the flow.
+		StatisticEntry statEntry = (StatisticEntry) fco.getAttribute(FlowCacheObj.Attribute.STATISTIC);
+		long transferedMBits = 0;
+		if (statEntry != null) {
+			transferedMBits = statEntry.getByteCount() * 8 /1000/1000;
+		}
+		
+		return Math.max(0, appEntry.getFileSize() * 8 - transferedMBits);
+	}
+	
+	/**
+	 * Gets the load of a switch port and creates it if necessary.
+	 * 
+	 * @param switchId The switch Id.
+	 * @param port The (virtual) port Id.
+	 * @return <b>LinkLoad</b> The load of the switch port.
+	 */
+	private LinkLoad getOrCreateLinkLoad(long switchId, int port) {
+		/* Strip the physical port number from the given (virtual) port. */
+		short phyPortId = OFSwitchPort.physicalPortIdOf(port);
+		
+		ConcurrentHashMap<Short, LinkLoad> switchLoads = this.linkLoads.get(switchId);
+		if (switchLoads == null) {
+			ConcurrentHashMap<Short, LinkLoad> newSwitchLoads = new ConcurrentHashMap<Short, LinkLoad>();
+			switchLoads = this.linkLoads.putIfAbsent(switchId, newSwitchLoads);
+			if (switchLoads == null) {
+				switchLoads = newSwitchLoads;
+			}
+		}
+		
+		LinkLoad linkLoad = switchLoads.get(phyPortId);
+		if (linkLoad == null) {
+			LinkLoad newLinkLoad = new LinkLoad();
+			linkLoad = switchLoads.putIfAbsent(phyPortId, newLinkLoad);
+			if (linkLoad == null) {
+				linkLoad = newLinkLoad;
+			}
+		}
+		return linkLoad;
+	}
+	
+}
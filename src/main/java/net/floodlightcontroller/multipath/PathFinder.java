@@ -39,18 +39,12 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.Set;
 
 import org.openflow.protocol.OFFlowMod;
@@ -80,22 +74,23 @@ import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
-import net.floodlightcontroller.flowcache.FlowCacheObj;
-import net.floodlightcontroller.flowcache.FlowCacheQuery;
-import net.floodlightcontroller.flowcache.FlowCacheQueryResp;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService.CounterException;
+import net.floodlightcontroller.debugcounter.IDebugCounterService.CounterType;
+import net.floodlightcontroller.debugcounter.NullDebugCounter;
 import net.floodlightcontroller.flowcache.IFlowCacheService;
-import net.floodlightcontroller.linkdiscovery.ILinkDiscovery;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
 import net.floodlightcontroller.multipath.web.PathFinderWebRoutable;
 import net.floodlightcontroller.packet.Ethernet;
 import net.floodlightcontroller.packet.IPv4;
 import net.floodlightcontroller.restserver.IRestApiService;
-import net.floodlightcontroller.routing.BroadcastTree;
 import net.floodlightcontroller.routing.EndPoints;
 import net.floodlightcontroller.routing.IRoutingService;
 import net.floodlightcontroller.routing.Link;
 import net.floodlightcontroller.routing.Path;
 import net.floodlightcontroller.topology.Cluster;
+import net.floodlightcontroller.topology.CompactTopology;
 import net.floodlightcontroller.topology.OlimpsCluster;
 import net.floodlightcontroller.topology.ITopologyListener;
 import net.floodlightcontroller.topology.IOlimpsTopologyService;
@@ -115,6 +110,8 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
     public static final int MAX_PATH_WEIGHT = Integer.MAX_VALUE - MAX_LINK_WEIGHT - 1;
     /** The unique name of this configuration listener. */
 	public static final String CONFIGURATOR_NAME = "PathFinder";
+	/** The module name used to register debug counters. */
+	protected static final String PACKAGE = PathFinder.class.getPackage().getName();
     
 	/** Logger to log ProactiveFlowPusher events. */
 	protected static Logger log = LoggerFactory.getLogger(PathFinder.class);
@@ -146,6 +143,24 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 	protected Set<IPathCalculator> pathCalculators;
 	/** The current active path calculator. */
 	protected IPathCalculator currentPathCalculator;
+	/** The arguments of the current active path calculator. */
+	protected String currentPathCalculatorArgs = "";
+	/** The compact snapshot of the last topology cluster used to calculate paths. */
+	protected volatile CompactTopology compactTopology;
+	/** Optional Module: The debug counter service. */
+	protected IDebugCounterService debugCounters;
+	/** Dependency tracking from links to cached paths: [Link -> SetOf EndPoints whose paths cross the link]. */
+	protected ConcurrentHashMap<Link, Set<EndPoints>> linkToEndPoints;
+	/** End points whose cached paths may be outdated and are recomputed on their next request. */
+	protected Set<EndPoints> staleEndPoints;
+	/** All links reported by the topology so far. Used to tell new links from link updates. */
+	protected Set<Link> knownLinks;
+	/** Counts the number of paths invalidated by topology changes. */
+	protected IDebugCounter ctrPathsInvalidated;
+	/** Counts the number of end points whose paths were recomputed due to topology changes. */
+	protected IDebugCounter ctrPathsRecomputed;
+	/** The load of all links, maintained from flow cache events and statistics samples. */
+	protected LinkLoadTable linkLoadTable;
 	
 	/**
 	 * Selects a path using the shortest path, i.e. no multipathing.
@@ -462,18 +477,18 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 	protected class FlowUtilizationPathSelector implements IPathSelector {
 		/** The path finder service to get the paths between source and destination nodes. */
 		private IPathFinderService pathFinder;
-		/** Required Module: Floodlight flow cache service. */
-		private IFlowCacheService flowCache;
+		/** The load of all links, maintained from flow cache events. */
+		private LinkLoadTable linkLoads;
 		
 		/**
 		 * Constructor.
 		 *
 		 * @param pathFinder Floodlight path finder service.
-		 * @param flowCache Floodlight flow cache service.
+		 * @param linkLoads The link load table.
 		 */
-		public FlowUtilizationPathSelector(IPathFinderService pathFinder, IFlowCacheService flowCache) {
+		public FlowUtilizationPathSelector(IPathFinderService pathFinder, LinkLoadTable linkLoads) {
 			this.pathFinder = pathFinder;
-			this.flowCache = flowCache;
+			this.linkLoads = linkLoads;
 		}
 
 		@Override
@@ -506,11 +521,11 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 			}
 
 			for (Path path : paths) {
+				// The number of flows on the most utilized link determines the path utilization.
 				int currentPathFlows = 0;
-				 // Query flows
-				Set<FlowCacheObj> flowCacheObjs = this.queryFlows(path);
-				if (flowCacheObjs != null)
-					currentPathFlows = flowCacheObjs.size();
+				for (Link link : path.getLinks()) {
+					currentPathFlows = Math.max(currentPathFlows, this.linkLoads.getLinkLoad(link).getFlowCount());
+				}
 				
 				if (currentPathFlows < bestPathFlows) {
 					bestPathFlows = currentPathFlows;
@@ -520,65 +535,6 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 
 			return (bestPath != null) ? bestPath : null;
 		}
-		
-		/**
-		 * 
-		 * @param path
-		 * @return
-		 */
-		private Set<FlowCacheObj> queryFlows(Path path) {
-			/* A set of flow cache objects queried from the flow cache. */
-		    Set<FlowCacheObj> flowCacheObjs = new HashSet<FlowCacheObj>();
-		    
-	        // Query flows.
-	        FlowCacheQuery fcq;
-	        List<FlowCacheQuery> flowCacheQueryList = new ArrayList<FlowCacheQuery>();
-	        for ( Link link : path.getLinks()) {
-				fcq = new FlowCacheQuery(null, IFlowCacheService.DEFAULT_DB_NAME, "showpathcmd", null, link.getSrc())
-					.setPathId(path.getId());
-				flowCacheQueryList.add(fcq);
-				fcq = new FlowCacheQuery(null, IFlowCacheService.DEFAULT_DB_NAME, "showpathcmd", null, link.getDst())
-					.setPathId(path.getId());
-				flowCacheQueryList.add(fcq);
-			}
-	        List<Future<FlowCacheQueryResp>> futureList = this.flowCache.queryDB(flowCacheQueryList);
-	        
-	        if (futureList == null) {
-	        	// Error.
-	        	return null;
-	        }
-	        
-	        while (!futureList.isEmpty()) {
-				Iterator<Future<FlowCacheQueryResp>> iter = futureList.iterator();
-				while (iter.hasNext()) {
-					Future<FlowCacheQueryResp> future = iter.next();
-					try {
-						FlowCacheQueryResp fcqr = future.get(10, TimeUnit.SECONDS);
-						if (fcqr != null && fcqr.flowCacheObjList != null) {
-							flowCacheObjs.addAll(fcqr.flowCacheObjList);
-						}
-						iter.remove();
-					} catch (InterruptedException | ExecutionException e) {
-						e.printStackTrace();
-					} catch (TimeoutException e) {
-						iter.remove();
-					}
-				}
-			}
-	        
-	        // Reduce flow cache objects by match.
-	        Set<OFMatch> matchSet = new HashSet<OFMatch>();
-	        for (Iterator<FlowCacheObj> iter = flowCacheObjs.iterator(); iter.hasNext();) {
-	        	FlowCacheObj fco = iter.next();
-	        	if (matchSet.contains(fco.getMatch())) {
-	        		iter.remove();
-	        	} else {
-	        		matchSet.add(fco.getMatch());
-	        	}
-	        }
-	        
-	        return flowCacheObjs;
-		}
 	}
 	
 	/**
@@ -654,20 +610,20 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 		private IPathFinderService pathFinder;
 		/** Required Module: Floodlight provider Service. */
 		private IFloodlightProviderService floodlightProvider;
-		/** Required Module: Floodlight flow cache service. */
-		private IFlowCacheService flowCache;
+		/** The load of all links, maintained from flow cache events. */
+		private LinkLoadTable linkLoads;
 		
 		/**
 		 * Constructor.
 		 * 
 		 * @param pathFinder Floodlight path finder service.
 		 * @param floodlightProvider Floodlight provider service.
-		 * @param flowCache Floodlight flow cache service.
+		 * @param linkLoads The link load table.
 		 */
-		public FlowUtilizationAndCapacityPathSelector(IPathFinderService pathFinder, IFloodlightProviderService floodlightProvider, IFlowCacheService flowCache) {
+		public FlowUtilizationAndCapacityPathSelector(IPathFinderService pathFinder, IFloodlightProviderService floodlightProvider, LinkLoadTable linkLoads) {
 			this.pathFinder = pathFinder;
 			this.floodlightProvider = floodlightProvider;
-			this.flowCache = flowCache;
+			this.linkLoads = linkLoads;
 		}
 
 		@Override
@@ -706,33 +662,14 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 				
 				// Calculate the link capacity to flow ratio. The minimal link ratio determines the path ratio.
 				for (Link link : links) {
-					int linkFlows = 0;
+					int linkFlows = this.linkLoads.getLinkLoad(link).getFlowCount();
 					int linkCapacity = 0;
 					
-					// Query the flow cache to collect the flow information in the future.
-					FlowCacheQuery fcq = new FlowCacheQuery(null, IFlowCacheService.DEFAULT_DB_NAME, "pathfinder", null, link.getSrc())
-						.setOutPort(link.getSrcPort());
-					Future<FlowCacheQueryResp> future = this.flowCache.queryDB(fcq);
-					
 					//OFPhysicalPort srcPort = this.floodlightProvider.getSwitch(link.getSrc()).getPort(link.getSrcPort()).toOFPhysicalPort();
 					OFPhysicalPort srcPort = this.floodlightProvider.getSwitch(link.getSrc()).getPort(link.getSrcPort()).getOFPhysicalPort();
 					// Link capacity equals the capacity of the sending port.
 					linkCapacity = Utils.getPortCapacity(srcPort);
 					
-					// Collect the future.
-					try {
-						FlowCacheQueryResp fcqr = future.get(1, TimeUnit.SECONDS);
-						if (fcqr != null) {
-							linkFlows = fcqr.flowCacheObjList.size();
-						}
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					} catch (ExecutionException e) {
-						e.printStackTrace();
-					} catch (TimeoutException e) {
-						e.printStackTrace();
-					}
-					
 					if (linkFlows != 0) {
 						if (linkCapacity / linkFlows < pathCapacityToFlowRatio) {
 							pathCapacityToFlowRatio = linkCapacity / linkFlows;
@@ -863,24 +800,20 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 		private IPathFinderService pathFinder;
 		/** Required Module: Floodlight provider Service. */
 		private IFloodlightProviderService floodlightProvider;
-		/** Required Module: Floodlight statistic collector. */
-		private IStatisticsCollectorService statisticsCollector;
-		/** Required Module: Floodlight flow cache service. */
-		private IFlowCacheService flowCache;
+		/** The load of all links, maintained from flow cache events and statistics samples. */
+		private LinkLoadTable linkLoads;
 		
 		/**
 		 * Constructor.
 		 * 
 		 * @param pathFinder Floodlight path finder service.
 		 * @param floodlightProvider Floodlight provider service.
-		 * @param statisticsCollector Floodlight statistic collector.
-		 * @param flowCache Floodlight flow cache service.
+		 * @param linkLoads The link load table.
 		 */
-		public StrategyPathSelector(IPathFinderService pathFinder, IFloodlightProviderService floodlightProvider, IStatisticsCollectorService statisticsCollector, IFlowCacheService flowCache) {
+		public StrategyPathSelector(IPathFinderService pathFinder, IFloodlightProviderService floodlightProvider, LinkLoadTable linkLoads) {
 			this.pathFinder = pathFinder;
 			this.floodlightProvider = floodlightProvider;
-			this.statisticsCollector = statisticsCollector;
-			this.flowCache = flowCache;
+			this.linkLoads = linkLoads;
 		}
 
 		@Override
@@ -924,43 +857,23 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 				int pathNumberOfHops = links.size();
 				
 				for (Link link : links) {
-					int linkFlows = 0;
-					long linkBitRate = 0;
+					LinkLoadTable.LinkLoad linkLoad = this.linkLoads.getLinkLoad(link);
+					int linkFlows = linkLoad.getFlowCount();
+					long linkBitRate = linkLoad.getBitRate();
 					long linkCapacity = 0;
 					
-					// Query the flow cache to collect the flow information in the future.
-					FlowCacheQuery fcq = new FlowCacheQuery(null, IFlowCacheService.DEFAULT_DB_NAME, "pathfinder", null, link.getSrc())
-						.setOutPort(link.getSrcPort());
-					Future<FlowCacheQueryResp> future = this.flowCache.queryDB(fcq);
-					
 					//OFPhysicalPort srcPort = this.floodlightProvider.getSwitch(link.getSrc()).getPort(link.getSrcPort()).toOFPhysicalPort();
 					OFPhysicalPort srcPort = this.floodlightProvider.getSwitch(link.getSrc()).getPort(link.getSrcPort()).getOFPhysicalPort();
 					// Link capacity equals the capacity of the sending port.
 					linkCapacity = (long) Utils.getPortCapacity(srcPort) * 1000 * 1000;
 					
-					// Query the statistic collector to get the port statistics.
-					linkBitRate = this.statisticsCollector.getBitRate(link.getSrc(), OFSwitchPort.physicalPortIdOf(link.getSrcPort()));
-					
 					// Get the paths available bandwidth.
 					if (linkCapacity - linkBitRate < pathAvailableBandwidth) {
 						pathAvailableBandwidth = linkCapacity - linkBitRate;
 						pathAvailableBandwidth = (pathAvailableBandwidth < 0) ? 0 : pathAvailableBandwidth;
 					}
 					
-					// Collect the future and calculate the capacity-to-flow-ratio.
-					try {
-						FlowCacheQueryResp fcqr = future.get(1, TimeUnit.SECONDS);
-						if (fcqr != null) {
-							linkFlows = fcqr.flowCacheObjList.size();
-						}
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					} catch (ExecutionException e) {
-						e.printStackTrace();
-					} catch (TimeoutException e) {
-						e.printStackTrace();
-					}
-					
+					// Calculate the capacity-to-flow-ratio.
 					if (linkFlows != 0) {
 						if (linkCapacity / linkFlows < pathCapacityToFlowRatio) {
 							pathCapacityToFlowRatio = linkCapacity / linkFlows;
@@ -1019,8 +932,8 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 		private IFloodlightProviderService floodlightProvider;
 		/** The path finder service to get the paths between source and destination nodes. */
 		private IPathFinderService pathFinder;
-		/** Required Module: Floodlight flow cache service. */
-		private IFlowCacheService flowCache;
+		/** The load of all links, maintained from flow cache events and statistics samples. */
+		private LinkLoadTable linkLoads;
 		/** Required Module: Floodlight application awareness service. */
 		private IAppAwareService appAware;
 		
@@ -1029,13 +942,13 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 		 * 
 		 * @param pathFinder Floodlight path finder service.
 		 * @param floodlightProvider Floodlight provider service.
-		 * @param flowCache Floodlight flow cache service.
+		 * @param linkLoads The link load table.
 		 * @param appAware Floodlight application awareness service.
 		 */
-		public AppAwarePathSelector(IPathFinderService pathFinder, IFloodlightProviderService floodlightProvider, IFlowCacheService flowCache, IAppAwareService appAware) {
+		public AppAwarePathSelector(IPathFinderService pathFinder, IFloodlightProviderService floodlightProvider, LinkLoadTable linkLoads, IAppAwareService appAware) {
 			this.floodlightProvider = floodlightProvider;
 			this.pathFinder = pathFinder;
-			this.flowCache = flowCache;
+			this.linkLoads = linkLoads;
 			this.appAware = appAware;
 		}
 
@@ -1073,7 +986,7 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 			
 			// If the application is not known, e.g. for reverse paths, use a default path selector.
 			if (appEntry == null) {
-				IPathSelector backupPathSelector = new FlowUtilizationPathSelector(pathFinder, flowCache);
+				IPathSelector backupPathSelector = new FlowUtilizationPathSelector(pathFinder, linkLoads);
 				return backupPathSelector.selectPath(srcSwitchId, dstSwitchId, match);
 			} else {
 				appEntry.setActive(true);
@@ -1086,25 +999,9 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 				List<Link> links = path.getLinks();
 				
 				for (Link link : links) {
-					FlowCacheQuery fcq = new FlowCacheQuery(null, IFlowCacheService.DEFAULT_DB_NAME, this.getName(), null, link.getSrc())
-						.setOutPort(OFSwitchPort.physicalPortIdOf(link.getSrcPort()));
-					Future<FlowCacheQueryResp> future = this.flowCache.queryDB(fcq);
-					try {
-						FlowCacheQueryResp fcqr = future.get(1, TimeUnit.SECONDS);
-						if (fcqr != null && fcqr.flowCacheObjList != null) {
-							linkFinishingTime = calculateFinishingTime(link, fcqr.flowCacheObjList); // * fcqr.flowCacheObjList.size();
-							if (linkFinishingTime > currentPathFinishingTime) {
-								currentPathFinishingTime = linkFinishingTime;
-							}
-						} else {
-							// Do nothing, since there is no flow on that particular link.
-						}
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					} catch (ExecutionException e) {
-						e.printStackTrace();
-					} catch (TimeoutException e) {
-						e.printStackTrace();
+					linkFinishingTime = calculateFinishingTime(link);
+					if (linkFinishingTime > currentPathFinishingTime) {
+						currentPathFinishingTime = linkFinishingTime;
 					}
 				}
 				
@@ -1123,38 +1020,24 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 		 * capacity of a path into account.
 		 * 
 		 * @param link The link we want to calculate the finishing time for.
-		 * @param flowCacheObjects Information regarding the flows on this link.
 		 * @return <b>int</b> virtual finishing time, i.e. the time the link should be empty again.
 		 */
-		private int calculateFinishingTime(Link link, ArrayList<FlowCacheObj> flowCacheObjects) {
-			/* The finishing time of the link. */
-			double finishingTime = 0;
-			/* The application information, i.e. the file size to transfer. */
-			AppEntry appEntry = null;
+		private int calculateFinishingTime(Link link) {
+			/* The bits the flows on this link still have to transfer. */
+			long remainingMBits = this.linkLoads.getLinkLoad(link).getRemainingMBits();
 			/* Consider some overhead on the link. */
 			double capacityWeigth = 0.8;
 			
+			// Do nothing, since there is no (known) flow on that particular link.
+			if (remainingMBits <= 0)
+				return 0;
+			
 			// Get the port/link capacity.
-			//OFPhysicalPort srcPort = this.floodlightProvider.getSwitch(link.getSrc()).getPort(link.getSrcPort()).toOFPhysicalPort();
 			OFPhysicalPort srcPort = this.floodlightProvider.getSwitch(link.getSrc()).getPort(link.getSrcPort()).getOFPhysicalPort();
 			// Link capacity equals the capacity of the sending port.
 			int linkCapacity = Utils.getPortCapacity(srcPort);
-			
-			for (FlowCacheObj fco : flowCacheObjects) {
-				if (fco.isActive()) {
-					// Check if we have some statistics for the flow.
-					StatisticEntry statEntry = (StatisticEntry) fco.getAttribute(FlowCacheObj.Attribute.STATISTIC);
-					long transferedMBits = 0;
-					if (statEntry != null) {
-						transferedMBits = statEntry.getByteCount() * 8 /1000/1000;
-					}
-					// Find the application information.
-					appEntry = appAware.getApplication(fco.getMatch());
-					if (appEntry != null && appEntry.getFileSize() > 0) {
-						finishingTime += Math.max(0, (appEntry.getFileSize() * 8 - transferedMBits) / ( capacityWeigth * linkCapacity)); 
-					}
-				}
-			}
+			/* The finishing time of the link. */
+			double finishingTime = remainingMBits / (capacityWeigth * linkCapacity);
 			
 			// Return positive finishing time or 0.
 			return (int) ((finishingTime > 0) ? finishingTime : 0);
@@ -1176,8 +1059,8 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 		private IFloodlightProviderService floodlightProvider;
 		/** The path finder service to get the paths between source and destination nodes. */
 		private IPathFinderService pathFinder;
-		/** Required Module: Floodlight flow cache service. */
-		private IFlowCacheService flowCache;
+		/** The load of all links, maintained from flow cache events and statistics samples. */
+		private LinkLoadTable linkLoads;
 		/** Required Module: Floodlight application awareness service. */
 		private IAppAwareService appAware;
 		/** The path ID of the default route for small flows between source and destination switch. */
@@ -1188,13 +1071,13 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 		 * 
 		 * @param pathFinder Floodlight path finder service.
 		 * @param floodlightProvider Floodlight provider service.
-		 * @param flowCache Floodlight flow cache service.
+		 * @param linkLoads The link load table.
 		 * @param appAware Floodlight application awareness service.
 		 */
-		public AppAwareDefaultRoutePathSelector(IPathFinderService pathFinder, IFloodlightProviderService floodlightProvider, IFlowCacheService flowCache, IAppAwareService appAware) {
+		public AppAwareDefaultRoutePathSelector(IPathFinderService pathFinder, IFloodlightProviderService floodlightProvider, LinkLoadTable linkLoads, IAppAwareService appAware) {
 			this.floodlightProvider = floodlightProvider;
 			this.pathFinder = pathFinder;
-			this.flowCache = flowCache;
+			this.linkLoads = linkLoads;
 			this.appAware = appAware;
 			this.defaultRouteIDs = new HashSet<Integer>();
 		}
@@ -1257,7 +1140,7 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 			
 			// If the application is not known, e.g. for reverse paths, use a default path selector.
 			if (appEntry == null) {
-				IPathSelector backupPathSelector = new FlowUtilizationPathSelector(pathFinder, flowCache);
+				IPathSelector backupPathSelector = new FlowUtilizationPathSelector(pathFinder, linkLoads);
 				return backupPathSelector.selectPath(srcSwitchId, dstSwitchId, match);
 			} else {
 				appEntry.setActive(true);
@@ -1274,25 +1157,9 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 				List<Link> links = path.getLinks();
 				
 				for (Link link : links) {
-					FlowCacheQuery fcq = new FlowCacheQuery(null, IFlowCacheService.DEFAULT_DB_NAME, this.getName(), null, link.getSrc())
-						.setOutPort(OFSwitchPort.physicalPortIdOf(link.getSrcPort()));
-					Future<FlowCacheQueryResp> future = this.flowCache.queryDB(fcq);
-					try {
-						FlowCacheQueryResp fcqr = future.get(1, TimeUnit.SECONDS);
-						if (fcqr != null && fcqr.flowCacheObjList != null) {
-							linkFinishingTime = calculateFinishingTime(link, fcqr.flowCacheObjList); // * fcqr.flowCacheObjList.size();
-							if (linkFinishingTime > currentPathFinishingTime) {
-								currentPathFinishingTime = linkFinishingTime;
-							}
-						} else {
-							// Do nothing, since there is no flow on that particular link.
-						}
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					} catch (ExecutionException e) {
-						e.printStackTrace();
-					} catch (TimeoutException e) {
-						e.printStackTrace();
+					linkFinishingTime = calculateFinishingTime(link);
+					if (linkFinishingTime > currentPathFinishingTime) {
+						currentPathFinishingTime = linkFinishingTime;
 					}
 				}
 				
@@ -1311,37 +1178,24 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 		 * capacity of a path into account.
 		 * 
 		 * @param link The link we want to calculate the finishing time for.
-		 * @param flowCacheObjects Information regarding the flows on this link.
 		 * @return <b>int</b> virtual finishing time, i.e. the time the link should be empty again.
 		 */
-		private int calculateFinishingTime(Link link, ArrayList<FlowCacheObj> flowCacheObjects) {
-			/* The finishing time of the link. */
-			double finishingTime = 0;
-			/* The application information, i.e. the file size to transfer. */
-			AppEntry appEntry = null;
+		private int calculateFinishingTime(Link link) {
+			/* The bits the flows on this link still have to transfer. */
+			long remainingMBits = this.linkLoads.getLinkLoad(link).getRemainingMBits();
 			/* Consider some overhead on the link. */
 			double capacityWeigth = 0.8;
 			
+			// Do nothing, since there is no (known) flow on that particular link.
+			if (remainingMBits <= 0)
+				return 0;
+			
 			// Get the port/link capacity.
 			OFPhysicalPort srcPort = this.floodlightProvider.getSwitch(link.getSrc()).getPort(link.getSrcPort()).getOFPhysicalPort();
 			// Link capacity equals the capacity of the sending port.
 			int linkCapacity = Utils.getPortCapacity(srcPort);
-			
-			for (FlowCacheObj fco : flowCacheObjects) {
-				if (fco.isActive()) {
-					// Check if we have some statistics for the flow.
-					StatisticEntry statEntry = (StatisticEntry) fco.getAttribute(FlowCacheObj.Attribute.STATISTIC);
-					long transferedMBits = 0;
-					if (statEntry != null) {
-						transferedMBits = statEntry.getByteCount() * 8 /1000/1000;
-					}
-					// Find the application information.
-					appEntry = appAware.getApplication(fco.getMatch());
-					if (appEntry != null && appEntry.getFileSize() > 0) {
-						finishingTime += Math.max(0, (appEntry.getFileSize() * 8 - transferedMBits) / ( capacityWeigth * linkCapacity)); 
-					}
-				}
-			}
+			/* The finishing time of the link. */
+			double finishingTime = remainingMBits / (capacityWeigth * linkCapacity);
 			
 			// Return positive finishing time or 0.
 			return (int) ((finishingTime > 0) ? finishingTime : 0);
@@ -1460,188 +1314,125 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 	/**
 	 * Calculates link disjoint paths using Dijkstra's algorithm.
 	 * 
+	 * The paths are calculated on a compact snapshot of the topology cluster
+	 * by a DisjointPathSolver, i.e. Suurballe's algorithm, which finds the
+	 * maximum number of link disjoint paths with minimal total length.
+	 * 
 	 * @author Michael Bredel <michael.bredel@caltech.edu>
 	 */
 	protected class DijkstraPathCalculator implements IPathCalculator {
+		/** The path solvers, one per thread, that reuse their work arrays. */
+		private final ThreadLocal<DisjointPathSolver> solver = new ThreadLocal<DisjointPathSolver>() {
+			@Override
+			protected DisjointPathSolver initialValue() {
+				return new DisjointPathSolver();
+			}
+		};
 		
 		@Override
 		public String getName() {
 			return "dijkstrapathcalculator";
 		}
 		
+		@Override
+		public void setArgs(String args) {
+			// Do nothing.
+		}
+		
 		@Override
 		public Set<Path> caluclatePaths(long srcNode, long dstNode, Cluster topologyCluster) {
 			/* The set of paths between source and destination node. */
 			Set<Path> newPaths = new HashSet<Path>();
-			/* Whether the tree starts at the source or destination. */
-			boolean destinationRooted = true;
-			/* Temporary cluster containing all links of the current topology that are not part of a route. */
-			OlimpsCluster cluster = ((OlimpsCluster) topologyCluster).clone();
-			/* The costs of a given link. */
-			Map<Link, Integer> linkCost = new HashMap<Link, Integer>();
-			/* States if there are more paths available in the current topology. */
-			boolean hasPath = true;
-			
-			// Calculate and set link costs.
-			for (Entry<Long, Set<Link>> entry : topologyCluster.getLinks().entrySet()) {
-				for (Link link : entry.getValue()) {
-					linkCost.put(link, 1);
-				}
-			}
 			
-			// calculate paths
-			while (hasPath) {
-				if (cluster.isEmpty())
-					break;
-					
-				// Calculate the shortest path between two nodes for the given temporary cluster 
-				Path path = calculateShortestPath(cluster, linkCost, srcNode, dstNode, destinationRooted);
-				
-				// Add path to path cache. If there is no path anymore - stop searching
-				if (path != null) {
-					newPaths.add(path);
-				} else {
-					hasPath = false;
-					break;
-				}
-				
-				// Remove links from temporary cluster.
-				for (Link link : path.getLinks()) {
-					if (destinationRooted) {
-						cluster.delLink(this.reverseLink(link));
-					} else {
-						cluster.delLink(link);
-					}
-				}
+			if (topologyCluster == null)
+				return null;
+			
+			// Calculate the link disjoint paths.
+			for (List<Link> links : solver.get().solve(getCompactTopology(topologyCluster), srcNode, dstNode, Integer.MAX_VALUE)) {
+				newPaths.add(new Path(srcNode, dstNode, links, 0, caculatePathCapacity(links)));
 			}
 			
 			return (newPaths.isEmpty()) ? null : newPaths;
 		}
 		
-		/**
-		 * Calculates the shorts paths between to nodes using Dijkstra's algorithm.
-		 * 
-		 * @param cluster The current topology cluster.
-		 * @param linkCost The costs of a given link.
-		 * @param srcNode The source node of the path.
-		 * @param dstNode The destination node of the path.
-		 * @param isDstRooted Whether the tree starts at the source or destination.
-		 * @return <b>Route</b> The path from source to destination, represented by a list of NodePortTuples.
-		 */
-		protected Path calculateShortestPath(OlimpsCluster cluster, Map<Link, Integer> linkCost, long srcNode, long dstNode, boolean isDstRooted) {
-			/* The shortest path between source and destination node. */
-			//List<NodePortTuple> path = new ArrayList<NodePortTuple>();
-			LinkedList<Link> links = new LinkedList<Link>();
-	        
-	        // calculate the spanning tree using dijkstra's algorithm.
-			BroadcastTree tree = dijkstra(cluster, srcNode, linkCost, isDstRooted);
-
-			// temporary destination node
-			long dst = dstNode;
-			long src = dstNode;
-			
-			while (tree.getTreeLink(dst) != null) {			
-				if (isDstRooted == true) {
-					links.addFirst(this.reverseLink(tree.getTreeLink(dst)));
-					dst = tree.getTreeLink(dst).getDst();
-				} else {
-					// TODO: check if this is correct!
-					links.add(tree.getTreeLink(src));
-					src = tree.getTreeLink(src).getSrc();
-				}
-			}
-			
-			if (!links.isEmpty()) {
-				return new Path(srcNode, dstNode, links, 0, caculatePathCapacity(links));
-			} else {
-				return null;
+	}
+	
+	/**
+	 * Calculates the k shortest paths using Yen's algorithm. The number of paths
+	 * and their diversity are bounded, such that the runtime is bounded even on
+	 * dense topologies.
+	 * 
+	 * Arguments: "k [maxOverlap]", i.e. the maximum number of paths and the
+	 * maximum fraction [0, 1] of its links a path may share with another path.
+	 * 
+	 * @author Michael Bredel <michael.bredel@cern.ch>
+	 */
+	protected class KShortestPathCalculator implements IPathCalculator {
+		/** The default maximum number of paths. */
+		public static final int DEFAULT_K = 4;
+		/** The default maximum fraction of links a path may share with another path. */
+		public static final double DEFAULT_MAX_OVERLAP = 0.5;
+		/** The maximum number of paths. */
+		private volatile int k = DEFAULT_K;
+		/** The maximum fraction of links a path may share with another path. */
+		private volatile double maxOverlap = DEFAULT_MAX_OVERLAP;
+		/** The path solvers, one per thread, that reuse their work arrays. */
+		private final ThreadLocal<KShortestPathSolver> solver = new ThreadLocal<KShortestPathSolver>() {
+			@Override
+			protected KShortestPathSolver initialValue() {
+				return new KShortestPathSolver();
 			}
+		};
+		
+		@Override
+		public String getName() {
+			return "kshortestpathcalculator";
 		}
 		
-		/**
-		 * Calculates a broadcast tree using Dijkstra's algorithm
-		 * 
-		 * @param cluster The current topology cluster.
-		 * @param root The root node.
-		 * @param linkCost The link costs
-		 * @param isDstRooted States whether the broadcast tree has its root at the destination node (or the source node).
-		 * @return <b>BroadcastTree</b>
-		 */
-		protected BroadcastTree dijkstra(OlimpsCluster cluster, long root, Map<Link, Integer> linkCost, boolean isDstRooted) {
-			/* */
-			HashMap<Long, Link> nexthoplinks = new HashMap<Long, Link>();
-			/* */
-			HashMap<Long, Integer> cost = new HashMap<Long, Integer>();
-			/* */
-			HashMap<Long, Boolean> seen = new HashMap<Long, Boolean>();
-			/* */
-			PriorityQueue<NodeDist> nodeq = new PriorityQueue<NodeDist>();
-			/* */
-			int weight;
-
-			// initialize nexthoplinks and costs
-			for (Long node : cluster.getLinks().keySet()) {
-				nexthoplinks.put(node, null);
-				cost.put(node, MAX_PATH_WEIGHT);
-			}
+		@Override
+		public void setArgs(String args) {
+			if (args == null || args.trim().isEmpty())
+				return;
 			
-			nodeq.add(new NodeDist(root, 0));
-			cost.put(root, 0);
-			while (nodeq.peek() != null) {
-				NodeDist n = nodeq.poll();
-				Long cnode = n.getNode();
-				int cdist = n.getDist();
-				if (cdist >= MAX_PATH_WEIGHT)
-					break;
-				if (cluster.getLinks().get(cnode) == null)
-					break;
-				if (seen.containsKey(cnode))
-					continue;
-				seen.put(cnode, true);
-
-				for (Link link : cluster.getLinks().get(cnode)) {
-					Long neighbor;
-
-					if (isDstRooted == true)
-						neighbor = link.getSrc();
-					else
-						neighbor = link.getDst();
-
-					// links directed toward cnode will result in this condition
-					// if (neighbor == cnode) continue;
-
-					if (linkCost == null || linkCost.get(link) == null)
-						weight = 1;
-					else
-						weight = linkCost.get(link);
-
-					int ndist = cdist + weight;
-					if (ndist < cost.get(neighbor)) {
-						cost.put(neighbor, ndist);
-						nexthoplinks.put(neighbor, link);
-						nodeq.add(new NodeDist(neighbor, ndist));
-					}
+			// Space separated values.
+			String[] argElements = args.trim().split(" +");
+			try {
+				int newK = Integer.parseInt(argElements[0]);
+				double newMaxOverlap = (argElements.length > 1) ? Double.parseDouble(argElements[1]) : this.maxOverlap;
+				if (newK < 1 || newMaxOverlap < 0 || newMaxOverlap > 1)
+					throw new NumberFormatException("k must be positive and maxOverlap in [0, 1]");
+				this.k = newK;
+				this.maxOverlap = newMaxOverlap;
+			} catch (NumberFormatException e) {
+				if (log.isWarnEnabled()) {
+					log.warn("Invalid arguments '{}' for {}: {}", new Object[] {args, this.getName(), e.getMessage()});
 				}
 			}
-			return new BroadcastTree(nexthoplinks, cost);
 		}
 		
-	    /**
-	     * Since Dijkstra returns links in reversed order, i.e. form destination to source,
-	     * we need to invert them again.
-	     * 
-	     * @param link The links to be reversed.
-	     * @return <b>Link</b> A new link in reversed order, i.e. reversedLink.DST == link.SRC and vice versa.
-	     */
-	    private Link reverseLink(Link link) {
-	    	return new Link(link.getDst(), link.getDstPort(), link.getSrc(), link.getSrcPort());
-	    }
-		
+		@Override
+		public Set<Path> caluclatePaths(long srcNode, long dstNode, Cluster topologyCluster) {
+			/* The set of paths between source and destination node. */
+			Set<Path> newPaths = new HashSet<Path>();
+			
+			if (topologyCluster == null)
+				return null;
+			
+			// Calculate the k shortest paths.
+			for (List<Link> links : solver.get().solve(getCompactTopology(topologyCluster), srcNode, dstNode, this.k, this.maxOverlap)) {
+				newPaths.add(new Path(srcNode, dstNode, links, 0, caculatePathCapacity(links)));
+			}
+			
+			return (newPaths.isEmpty()) ? null : newPaths;
+		}
 	}
 	
 	/**
 	 * Calculates all link disjoint paths using a brute force algorithm.
 	 * 
+	 * Enumerates all simple paths, which explodes combinatorially on meshed
+	 * topologies. Use the KShortestPathCalculator for larger topologies.
+	 * 
 	 * @author Michael Bredel <michael.bredel@caltech.edu>
 	 */
 	protected class BruteForcePathCalculator implements IPathCalculator {
@@ -1665,6 +1456,11 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 		public String getName() {
 			return "bruteforcepathcalculator";
 		}
+		
+		@Override
+		public void setArgs(String args) {
+			// Do nothing.
+		}
 
 		@Override
 		public Set<Path> caluclatePaths(long srcSwitchId, long dstSwitchId, Cluster cluster) {
@@ -1929,7 +1725,12 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 		statisticsCollector = context.getServiceImpl(IStatisticsCollectorService.class);
 		appAware = context.getServiceImpl(IAppAwareService.class);
 		configManager = context.getServiceImpl(IConfigurationService.class);
+		debugCounters = context.getServiceImpl(IDebugCounterService.class);
 		pathCounter = new ConcurrentHashMap<EndPoints, Integer>();
+		linkToEndPoints = new ConcurrentHashMap<Link, Set<EndPoints>>();
+		staleEndPoints = Collections.newSetFromMap(new ConcurrentHashMap<EndPoints, Boolean>());
+		knownLinks = Collections.newSetFromMap(new ConcurrentHashMap<Link, Boolean>());
+		linkLoadTable = new LinkLoadTable(appAware);
 		pathSelectors = new HashSet<IPathSelector>();
 		pathCalculators = new HashSet<IPathCalculator>();
 		
@@ -1940,9 +1741,12 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 	}
 
 	@Override
-	public void startUp(FloodlightModuleContext context) {
+	public void startUp(FloodlightModuleContext context) throws FloodlightModuleException {
+		registerPathFinderDebugCounters();
 		configManager.addListener(this);
 		topologyManager.addListener(this);
+		flowCache.addFlowCacheListener(IFlowCacheService.DEFAULT_DB_NAME, linkLoadTable);
+		statisticsCollector.addStatisticsListener(linkLoadTable);
 		restApi.addRestletRoutable(new PathFinderWebRoutable()); 
 		// Add path selectors to map.
 		pathSelectors.add(new ShortestPathSelector(this));
@@ -1950,16 +1754,17 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 		pathSelectors.add(new HashIpPathSelector(this));
 		pathSelectors.add(new HashPortPathSelector(this));
 		pathSelectors.add(new RoundRobinPathSelector(this, this.pathCache));
-		pathSelectors.add(new FlowUtilizationPathSelector(this, this.flowCache));
+		pathSelectors.add(new FlowUtilizationPathSelector(this, this.linkLoadTable));
 		pathSelectors.add(new CapacityPathSelector(this));
-		pathSelectors.add(new FlowUtilizationAndCapacityPathSelector(this, this.floodlightProvider, this.flowCache));
+		pathSelectors.add(new FlowUtilizationAndCapacityPathSelector(this, this.floodlightProvider, this.linkLoadTable));
 		pathSelectors.add(new AvailableBandwidthPathSelector(this, this.floodlightProvider, this.statisticsCollector));
-		pathSelectors.add(new StrategyPathSelector(this, this.floodlightProvider, this.statisticsCollector, this.flowCache));
-		pathSelectors.add(new AppAwarePathSelector(this, this.floodlightProvider, this.flowCache, this.appAware));
-		pathSelectors.add(new AppAwareDefaultRoutePathSelector(this, this.floodlightProvider, this.flowCache, this.appAware));
+		pathSelectors.add(new StrategyPathSelector(this, this.floodlightProvider, this.linkLoadTable));
+		pathSelectors.add(new AppAwarePathSelector(this, this.floodlightProvider, this.linkLoadTable, this.appAware));
+		pathSelectors.add(new AppAwareDefaultRoutePathSelector(this, this.floodlightProvider, this.linkLoadTable, this.appAware));
 		// Add path calculators to map.
 		pathCalculators.add(new DijkstraPathCalculator());
 		pathCalculators.add(new BruteForcePathCalculator());
+		pathCalculators.add(new KShortestPathCalculator());
 		
 	}
     
@@ -1969,9 +1774,7 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
     
     @Override
     public boolean hasPath(long srcNode, long dstNode) {
-    	if (!pathCache.containsPath(srcNode, dstNode)) {
-			this.calculatePaths(srcNode, dstNode);
-        }
+    	this.ensurePaths(srcNode, dstNode);
     	if (!pathCache.containsPath(srcNode, dstNode)) {
     		return false;
     	} else {
@@ -1986,9 +1789,7 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
     		return new Path(srcSwitchId, dstSwitchId, null, 0, 0);
     	}
     	// Make sure we calculated a path.
-    	if (!pathCache.containsPath(srcSwitchId, dstSwitchId)) {
-    		this.calculatePaths(srcSwitchId, dstSwitchId);
-    	}
+    	this.ensurePaths(srcSwitchId, dstSwitchId);
     	return this.currentPathSelector.selectPath(srcSwitchId, dstSwitchId, match);
     }
 	
@@ -2009,9 +1810,7 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
         if (srcNode == dstNode)
             return null;
         
-        if (!pathCache.containsPath(srcNode, dstNode)) {
-			this.calculatePaths(srcNode, dstNode);
-        }
+        this.ensurePaths(srcNode, dstNode);
         
         return this.pathCache.getAllPaths(srcNode, dstNode);
 	}
@@ -2021,15 +1820,23 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 		/* Cluster containing all links of the current topology. */
 		OlimpsCluster topologyCluster = topologyManager.getTopologyCluster();
 		
+		/* The end points of the paths. */
+		EndPoints endPoints = new EndPoints(srcNode, dstNode);
+		
 		// Remove previous entries for this path.
-		if (pathCache.containsPath(srcNode, dstNode))
-			pathCache.removePath(srcNode, dstNode);
+		this.invalidatePaths(endPoints);
 		
 		// Calculate the paths and put them into the path cache.
 		Set<Path> pathSet = this.currentPathCalculator.caluclatePaths(srcNode, dstNode, topologyCluster);
 		if (pathSet != null) {
 			for (Path path : pathSet) {
 				pathCache.addPath(path);
+				// Track the links the path depends on.
+				if (path.getLinks() != null) {
+					for (Link link : path.getLinks()) {
+						this.getDependentEndPoints(link).add(endPoints);
+					}
+				}
 			}
 		}
 	}
@@ -2081,13 +1888,24 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 	}
 	
 	@Override
-	public synchronized IPathCalculator setPathCalculator(String name) {
+	public IPathCalculator setPathCalculator(String name) {
+		return this.setPathCalculator(name, "");
+	}
+	
+	@Override
+	public synchronized IPathCalculator setPathCalculator(String name, String args) {
 		boolean found = false;
 		
 		for (IPathCalculator pathCalculator : this.pathCalculators) {
 			if (pathCalculator.getName().equalsIgnoreCase(name)) {
+				// Set the path calculator arguments.
+				pathCalculator.setArgs(args);
 				this.currentPathCalculator = pathCalculator;
+				this.currentPathCalculatorArgs = (args != null) ? args.trim() : "";
 				found = true;
+				if (log.isInfoEnabled()) {
+					log.info("Changed path calculator to '{}'.", (this.currentPathCalculatorArgs.isEmpty()) ? name : name + " " + this.currentPathCalculatorArgs);
+				}
 				break;
 			}
 		}
@@ -2105,16 +1923,67 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 
 	@Override
 	public void topologyChanged(List<LDUpdate> linkUpdates) {
+		/* End points whose paths cross a removed link or switch, coalesced for the whole batch. */
+		Set<EndPoints> affectedEndPoints = new HashSet<EndPoints>();
+		/* True, if the batch contains a new link. */
+		boolean linkAdded = false;
+		
 		for (LDUpdate ldu : linkUpdates) {
-			// Only recalculate paths if it is NOT a LINK_UPDATE
-			if (!ldu.getOperation().equals(ILinkDiscovery.UpdateOperation.LINK_UPDATED)) {
-				// TODO: Only recalculate paths that are affected.
-				// TODO: Do a flow reconciliation.
-				for (EndPoints endPoints : pathCache.getAllEndPoints()) {
-					calculatePaths(endPoints.getSrc(), endPoints.getDst());
-				}
+			switch (ldu.getOperation()) {
+				case LINK_UPDATED:
+					// Link updates of known links, e.g. port state changes, do not change the paths.
+					if (knownLinks.add(new Link(ldu.getSrc(), ldu.getSrcPort(), ldu.getDst(), ldu.getDstPort()))) {
+						linkAdded = true;
+					}
+					break;
+				case LINK_REMOVED:
+					Link link = new Link(ldu.getSrc(), ldu.getSrcPort(), ldu.getDst(), ldu.getDstPort());
+					knownLinks.remove(link);
+					this.collectDependentEndPoints(link, affectedEndPoints);
+					break;
+				case PORT_DOWN:
+					for (Link portLink : linkToEndPoints.keySet()) {
+						if ((portLink.getSrc() == ldu.getSrc() && portLink.getSrcPort() == ldu.getSrcPort()) ||
+								(portLink.getDst() == ldu.getSrc() && portLink.getDstPort() == ldu.getSrcPort())) {
+							this.collectDependentEndPoints(portLink, affectedEndPoints);
+						}
+					}
+					break;
+				case SWITCH_REMOVED:
+					for (Link switchLink : linkToEndPoints.keySet()) {
+						if (switchLink.getSrc() == ldu.getSrc() || switchLink.getDst() == ldu.getSrc()) {
+							this.collectDependentEndPoints(switchLink, affectedEndPoints);
+						}
+					}
+					for (EndPoints endPoints : pathCache.getAllEndPoints()) {
+						if (endPoints.getSrc() == ldu.getSrc() || endPoints.getDst() == ldu.getSrc()) {
+							affectedEndPoints.add(endPoints);
+						}
+					}
+					break;
+				default:
+					break;
+			}
+		}
+		
+		// A new link may offer better paths for any end points. Recompute them lazily on their next request.
+		if (linkAdded) {
+			staleEndPoints.addAll(pathCache.getAllEndPoints());
+		}
+		
+		// Recompute the paths that crossed a removed link or switch, once per batch.
+		// TODO: Do a flow reconciliation.
+		for (EndPoints endPoints : affectedEndPoints) {
+			if (pathCache.containsPath(endPoints.getSrc(), endPoints.getDst())) {
+				ctrPathsRecomputed.updateCounterWithFlush();
+				this.calculatePaths(endPoints.getSrc(), endPoints.getDst());
+				staleEndPoints.remove(endPoints);
 			}
 		}
+		
+		if (log.isDebugEnabled() && (linkAdded || !affectedEndPoints.isEmpty())) {
+			log.debug("Topology changed: Recomputed paths of {} end points, {} end points marked stale.", affectedEndPoints.size(), staleEndPoints.size());
+		}
 	}
 	
 	///
@@ -2133,8 +2002,12 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 		try {
 			// Write the path selector.
 			rootNode.put("selector", this.currentPathSelector.getName());
-			// Write the path calculator.
-			rootNode.put("calculator", this.currentPathCalculator.getName());
+			// Write the path calculator and its arguments.
+			if (this.currentPathCalculatorArgs.isEmpty()) {
+				rootNode.put("calculator", this.currentPathCalculator.getName());
+			} else {
+				rootNode.put("calculator", this.currentPathCalculator.getName() + " " + this.currentPathCalculatorArgs);
+			}
 			// Write any other PathFinder configuration.
 			// ... here.
 		} catch (Exception e) {
@@ -2161,7 +2034,9 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 					this.setPathSelector(name, args);
 					break;
 				case "calculator":
-					this.setPathCalculator(child.asText().trim().toLowerCase());
+					// The calculator name, followed by space separated arguments.
+					String[] calculatorElements = child.asText().trim().toLowerCase().split(" +", 2);
+					this.setPathCalculator(calculatorElements[0], (calculatorElements.length > 1) ? calculatorElements[1] : "");
 					break;
 				default:
 					if (log.isWarnEnabled()) {
@@ -2175,6 +2050,113 @@ public class PathFinder implements IFloodlightModule, ITopologyListener, IPathFi
 	/// Local methods
 	///
 	
+	/**
+	 * Gets the compact snapshot of a topology cluster. The snapshot is built
+	 * once per cluster instance, as the topology manager creates a new cluster
+	 * on every topology change.
+	 * 
+	 * @param topologyCluster The topology cluster.
+	 * @return <b>CompactTopology</b> The compact snapshot of the cluster.
+	 */
+	protected CompactTopology getCompactTopology(Cluster topologyCluster) {
+		CompactTopology current = this.compactTopology;
+		if (current == null || current.getCluster() != topologyCluster) {
+			current = new CompactTopology(topologyCluster);
+			this.compactTopology = current;
+		}
+		return current;
+	}
+	
+	/**
+	 * Registers the debug counters of the path finder.
+	 * 
+	 * @throws FloodlightModuleException
+	 */
+	private void registerPathFinderDebugCounters() throws FloodlightModuleException {
+		if (debugCounters == null) {
+			log.error("Debug Counter Service not found.");
+			debugCounters = new NullDebugCounter();
+		}
+		try {
+			ctrPathsInvalidated = debugCounters.registerCounter(PACKAGE, "pathsinvalidated",
+				"Paths invalidated by topology changes",
+				CounterType.ALWAYS_COUNT);
+			ctrPathsRecomputed = debugCounters.registerCounter(PACKAGE, "pathsrecomputed",
+				"End points whose paths were recomputed due to topology changes",
+				CounterType.ALWAYS_COUNT);
+		} catch (CounterException e) {
+			throw new FloodlightModuleException(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Makes sure the paths between two nodes are calculated and up to date.
+	 * 
+	 * @param srcNode The source node of the paths.
+	 * @param dstNode The destination node of the paths.
+	 */
+	private void ensurePaths(long srcNode, long dstNode) {
+		if (staleEndPoints.remove(new EndPoints(srcNode, dstNode))) {
+			ctrPathsRecomputed.updateCounterWithFlush();
+			this.calculatePaths(srcNode, dstNode);
+		} else if (!pathCache.containsPath(srcNode, dstNode)) {
+			this.calculatePaths(srcNode, dstNode);
+		}
+	}
+	
+	/**
+	 * Removes all cached paths between two end points, including their
+	 * link dependencies.
+	 * 
+	 * @param endPoints The end points of the paths.
+	 */
+	private void invalidatePaths(EndPoints endPoints) {
+		Set<Path> paths = pathCache.removePath(endPoints.getSrc(), endPoints.getDst());
+		if (paths == null)
+			return;
+		
+		ctrPathsInvalidated.updateCounterWithFlush(paths.size());
+		for (Path path : paths) {
+			if (path.getLinks() == null)
+				continue;
+			for (Link link : path.getLinks()) {
+				Set<EndPoints> dependentEndPoints = linkToEndPoints.get(link);
+				if (dependentEndPoints != null) {
+					dependentEndPoints.remove(endPoints);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Gets the end points whose paths cross a link.
+	 * 
+	 * @param link The link.
+	 * @return <b>Set</b> The end points whose paths cross the link.
+	 */
+	private Set<EndPoints> getDependentEndPoints(Link link) {
+		Set<EndPoints> dependentEndPoints = linkToEndPoints.get(link);
+		if (dependentEndPoints == null) {
+			linkToEndPoints.putIfAbsent(link, Collections.newSetFromMap(new ConcurrentHashMap<EndPoints, Boolean>()));
+			dependentEndPoints = linkToEndPoints.get(link);
+		}
+		return dependentEndPoints;
+	}
+	
+	/**
+	 * Adds all end points whose paths cross a link to a set and removes the
+	 * link from the dependency tracking.
+	 * 
+	 * @param link The link.
+	 * @param endPoints The set to add the dependent end points to.
+	 */
+	private void collectDependentEndPoints(Link link, Set<EndPoints> endPoints) {
+		Set<EndPoints> dependentEndPoints = linkToEndPoints.remove(link);
+		if (dependentEndPoints != null) {
+			endPoints.addAll(dependentEndPoints);
+		}
+	}
+	
 	/**
 	 * Calculates the path capacity.
      * 
@@ -40,14 +40,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 import org.openflow.protocol.OFMatch;
+import org.openflow.protocol.OFMessage;
 import org.openflow.protocol.OFPort;
+import org.openflow.protocol.OFStatisticsReply;
 import org.openflow.protocol.OFStatisticsRequest;
+import org.openflow.protocol.OFType;
 import org.openflow.protocol.statistics.OFAggregateStatisticsReply;
 import org.openflow.protocol.statistics.OFAggregateStatisticsRequest;
 import org.openflow.protocol.statistics.OFFlowStatisticsReply;
@@ -59,7 +61,9 @@ import org.openflow.util.HexString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.OFSwitchPort;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
@@ -73,6 +77,7 @@ import net.floodlightcontroller.flowcache.IFlowCacheService;
 import net.floodlightcontroller.multipath.web.StatisticsCollectorWebRoutable;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.threadpool.IThreadPoolService.ExecutorLane;
 
 /**
  * 
@@ -103,6 +108,12 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsCollec
     protected SendPeriodicFlowQueryToSwitches flowQueryTask;
     /** Map to store the query results: SwitchId -> PortId -> StatisticEntry. */
     protected ConcurrentHashMap<Long, ConcurrentHashMap<Short, StatisticEntry>> statsCache;
+    /** Listeners that are notified whenever new statistics are received. */
+    protected CopyOnWriteArrayList<IStatisticsListener> statisticsListeners;
+    /** The current polling rounds: SwitchId -> PollingRound. */
+    protected ConcurrentHashMap<Long, PollingRound> pollingRounds;
+    /** Receives the statistics replies of the polling rounds. */
+    protected StatisticsReplyHandler statsReplyHandler;
     
     /**
      * Scans one switch periodically for new flows in its flow table
@@ -127,6 +138,118 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsCollec
         }
     }
     
+    /**
+     * The state of one polling round of a switch, i.e. its outstanding statistics requests.
+     */
+    protected static class PollingRound {
+    	/** The switch id of the polled switch. */
+    	protected final long switchId;
+    	/** The time the round has started. */
+    	protected final long startTime;
+    	/** Outstanding requests of this round: Xid -> PendingStatsRequest. */
+    	protected final Map<Integer, PendingStatsRequest> pendingRequests;
+    	/** The timeout task of this round. */
+    	protected ScheduledFuture<?> timeout;
+    	
+    	/**
+    	 * Default constructor.
+    	 * 
+    	 * @param switchId The switch id of the polled switch.
+    	 */
+    	protected PollingRound(long switchId) {
+    		this.switchId = switchId;
+    		this.startTime = System.currentTimeMillis();
+    		this.pendingRequests = new HashMap<Integer, PendingStatsRequest>();
+    	}
+    }
+    
+    /**
+     * An outstanding statistics request. Collects the statistics of multi-part replies.
+     */
+    protected static class PendingStatsRequest {
+    	/** The physical port of an aggregate request, or OFPP_NONE for a flow request. */
+    	protected final short port;
+    	/** The statistics received so far. */
+    	protected final List<OFStatistics> statistics;
+    	
+    	/**
+    	 * Default constructor.
+    	 * 
+    	 * @param port The physical port of an aggregate request, or OFPP_NONE for a flow request.
+    	 */
+    	protected PendingStatsRequest(short port) {
+    		this.port = port;
+    		this.statistics = new ArrayList<OFStatistics>();
+    	}
+    }
+    
+    /**
+     * Aborts a polling round whose replies did not arrive in time.
+     */
+    protected class PollingRoundTimeoutTask implements Runnable {
+    	/** The polling round. */
+    	protected PollingRound round;
+    	
+    	/**
+    	 * Default constructor.
+    	 * 
+    	 * @param round The polling round.
+    	 */
+    	protected PollingRoundTimeoutTask(PollingRound round) {
+    		this.round = round;
+    	}
+    	
+    	@Override
+    	public void run() {
+    		/* The switch of the polling round. */
+    		IOFSwitch iofSwitch = floodlightProvider.getSwitch(round.switchId);
+    		
+    		synchronized (round) {
+    			if (round.pendingRequests.isEmpty())
+    				return;
+    			if (log.isWarnEnabled()) {
+    				log.warn("Did not receive {} stats replies from switch {} in time.", round.pendingRequests.size(), HexString.toHexString(round.switchId));
+    			}
+    			if (iofSwitch != null) {
+    				for (int xid : round.pendingRequests.keySet()) {
+    					iofSwitch.cancelStatisticsReply(xid);
+    				}
+    			}
+    			round.pendingRequests.clear();
+    		}
+    		finishPollingRound(round);
+    	}
+    }
+    
+    /**
+     * Receives the statistics replies of the polling rounds from the switches.
+     */
+    protected class StatisticsReplyHandler implements IOFMessageListener {
+
+		@Override
+		public String getName() {
+			return StatisticsCollector.class.getSimpleName();
+		}
+
+		@Override
+		public boolean isCallbackOrderingPrereq(OFType type, String name) {
+			return false;
+		}
+
+		@Override
+		public boolean isCallbackOrderingPostreq(OFType type, String name) {
+			return false;
+		}
+
+		@Override
+		public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
+			if (msg.getType() == OFType.STATS_REPLY) {
+				handleStatsReply(sw, (OFStatisticsReply) msg);
+			}
+			return Command.CONTINUE;
+		}
+    }
+    
     /**
      * Scans all available switches periodically for new flows in its flow table
      */
@@ -183,7 +306,7 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsCollec
             for (Long switchId : switches.keySet()) {
                 SwitchFlowTablePeriodicScanTask scanTask = new SwitchFlowTablePeriodicScanTask(switchId);
                 // Schedule the queries to different switches in a staggered way.
-                threadPool.getScheduledExecutor().schedule(scanTask, interval_ms*idx, TimeUnit.MILLISECONDS);
+                threadPool.getScheduledExecutor(ExecutorLane.POLLING).schedule(scanTask, interval_ms*idx, TimeUnit.MILLISECONDS);
                 idx++;
             }
         }
@@ -222,12 +345,15 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsCollec
         restApi = context.getServiceImpl(IRestApiService.class);
         flowQueryTask = new SendPeriodicFlowQueryToSwitches();
         statsCache = new ConcurrentHashMap<Long, ConcurrentHashMap <Short, StatisticEntry>>();
+        statisticsListeners = new CopyOnWriteArrayList<IStatisticsListener>();
+        pollingRounds = new ConcurrentHashMap<Long, PollingRound>();
+        statsReplyHandler = new StatisticsReplyHandler();
 	}
 
 	@Override
 	public void startUp(FloodlightModuleContext context) throws FloodlightModuleException {
 		restApi.addRestletRoutable(new StatisticsCollectorWebRoutable()); 
-		threadPool.getScheduledExecutor().scheduleAtFixedRate(
+		threadPool.getScheduledExecutor(ExecutorLane.POLLING).scheduleAtFixedRate(
 				flowQueryTask,
 				DEFAULT_SWITCH_FLOW_TBL_SCAN_INITIAL_DELAY_MSEC, 
 				DEFAULT_SWITCH_FLOW_TBL_SCAN_INTERVAL_MSEC,
@@ -284,103 +410,100 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsCollec
 		return null;
 	}
 	
-	/**
-	 * Queries the flow table of a specific switch by sending a flow statistics requests.
-	 * 
-	 * @param switchId The unique ID of the switch to query.
-	 */
-	protected void querySwitchStats(long switchId) {
-		this.queryPortStats(switchId);
-		this.queryFlowStats(switchId);
+	@Override
+	public void addStatisticsListener(IStatisticsListener listener) {
+		statisticsListeners.addIfAbsent(listener);
 	}
 	
 	/**
+	 * Starts a polling round for a specific switch: Sends an aggregate statistics
+	 * request for each of its physical ports and a flow statistics request at once.
+	 * The replies are processed asynchronously by the statistics reply handler.
+	 * 
+	 * A new round is only started if the previous round of the switch has been
+	 * completed or has timed out. Thus, slow switches are not flooded with requests.
 	 * 
 	 * @param switchId The unique ID of the switch to query.
 	 */
-	protected void queryPortStats(long switchId) {
+	protected void querySwitchStats(long switchId) {
 		/* The switch we want to query. */
 		IOFSwitch iofSwitch = floodlightProvider.getSwitch(switchId);
 		
 		if ((iofSwitch == null) || (!iofSwitch.isConnected())) {
 			if (log.isDebugEnabled()) {
-				log.debug("Failed to send port-stats request to switch Id {}", switchId);
+				log.debug("Failed to send stats requests to switch Id {}", switchId);
 			}
 			return;
-		} else {
-			if (log.isTraceEnabled()) {
-				log.trace("Sending port-stats request to switch {} Id={}", iofSwitch, switchId);
+		}
+		
+		/* The new polling round. */
+		PollingRound round = new PollingRound(switchId);
+		if (pollingRounds.putIfAbsent(switchId, round) != null) {
+			if (log.isDebugEnabled()) {
+				log.debug("Skipping stats requests to switch {}. Previous polling round still in progress.", iofSwitch);
 			}
+			return;
 		}
-
+		
+		if (log.isTraceEnabled()) {
+			log.trace("Sending port-stats and flow-stats requests to switch {} Id={}", iofSwitch, switchId);
+		}
+		
 		// Aggregate statistics request for each port per switch.
 		Set<Short> phyPortNumbers = new HashSet<Short>();
 		for (OFSwitchPort port : iofSwitch.getPorts()) {
-			short pyhPortNumber = port.getOFPhysicalPort().getPortNumber();
-			if (!phyPortNumbers.contains(pyhPortNumber)) {
-				phyPortNumbers.add(pyhPortNumber);
-			}
+			phyPortNumbers.add(port.getOFPhysicalPort().getPortNumber());
 		}
 		
-		for (short phyPortNumber : phyPortNumbers) {
-			OFStatisticsRequest req = new OFStatisticsRequest();
-			req.setStatisticType(OFStatisticsType.AGGREGATE);
-			int requestLength = req.getLengthU();
+		synchronized (round) {
+			for (short phyPortNumber : phyPortNumbers) {
+				this.sendStatsRequest(iofSwitch, round, phyPortNumber, this.createPortStatsRequest(phyPortNumber));
+			}
+			this.sendStatsRequest(iofSwitch, round, OFPort.OFPP_NONE.getValue(), this.createFlowStatsRequest());
 			
-			OFAggregateStatisticsRequest aggregateStatsReq = new OFAggregateStatisticsRequest();
-			OFMatch match = new OFMatch();
-			// All flows, i.e. all matches.
-			match.setWildcards(0xffffffff);
-			aggregateStatsReq.setMatch(match);
-			// Specific port
-			aggregateStatsReq.setOutPort(phyPortNumber);
-			// All tables.
-			aggregateStatsReq.setTableId(TABLE_ALL);
-			req.setStatistics(Collections.singletonList((OFStatistics)aggregateStatsReq));
-			requestLength += aggregateStatsReq.getLength();
-			// Set request length
-			req.setLengthU(requestLength);
-
-			try {
-				Future<List<OFStatistics>> future = iofSwitch.queryStatistics(req);
-				List<OFStatistics> values = future.get(DEFAULT_SWITCH_QUERY_TIMEOUT_SEC, TimeUnit.SECONDS);
-				
-				// Store the replied information in the local statistics cache.            
-				for (OFStatistics stats : values) {
-					OFAggregateStatisticsReply statsReply = (OFAggregateStatisticsReply) stats;
-					if (statsReply.getFlowCount() > 0) {
-						this.storeOrUpdateToStatsCache(switchId, phyPortNumber, statsReply);
-					} else {
-						this.removeFromStatsCache(switchId, phyPortNumber);
-					}
-				}
-            
-			} catch (Exception e) {
-				log.error("Failure to send aggregate stats request to switch {}, {}", iofSwitch, e);
+			if (round.pendingRequests.isEmpty()) {
+				this.finishPollingRound(round);
+				return;
 			}
+			
+			round.timeout = threadPool.getScheduledExecutor(ExecutorLane.POLLING).schedule(new PollingRoundTimeoutTask(round), DEFAULT_SWITCH_QUERY_TIMEOUT_SEC, TimeUnit.SECONDS);
 		}
-		
 	}
 	
 	/**
+	 * Creates an aggregate statistics request for all flows that output to a port.
 	 * 
-	 * @param switchId The unique ID of the switch to query.
+	 * @param phyPortNumber The physical port number.
+	 * @return <b>OFStatisticsRequest</b> An aggregate statistics request.
 	 */
-	protected void queryFlowStats(long switchId) {
-		/* The switch we want to query. */
-		IOFSwitch iofSwitch = floodlightProvider.getSwitch(switchId);
+	protected OFStatisticsRequest createPortStatsRequest(short phyPortNumber) {
+		OFStatisticsRequest req = new OFStatisticsRequest();
+		req.setStatisticType(OFStatisticsType.AGGREGATE);
+		int requestLength = req.getLengthU();
 		
-		if ((iofSwitch == null) || (!iofSwitch.isConnected())) {
-			if (log.isDebugEnabled()) {
-				log.debug("Failed to send flow-stats request to switch Id {}", switchId);
-			}
-			return;
-		} else {
-			if (log.isTraceEnabled()) {
-				log.trace("Sending flow-stats request to switch {} Id={}", iofSwitch, switchId);
-			}
-		}
+		OFAggregateStatisticsRequest aggregateStatsReq = new OFAggregateStatisticsRequest();
+		OFMatch match = new OFMatch();
+		// All flows, i.e. all matches.
+		match.setWildcards(0xffffffff);
+		aggregateStatsReq.setMatch(match);
+		// Specific port
+		aggregateStatsReq.setOutPort(phyPortNumber);
+		// All tables.
+		aggregateStatsReq.setTableId(TABLE_ALL);
+		req.setStatistics(Collections.singletonList((OFStatistics)aggregateStatsReq));
+		requestLength += aggregateStatsReq.getLength();
+		// Set request length
+		req.setLengthU(requestLength);
 		
+		return req;
+	}
+	
+	/**
+	 * Creates a flow statistics request for all flows of a switch.
+	 * 
+	 * @return <b>OFStatisticsRequest</b> A flow statistics request.
+	 */
+	protected OFStatisticsRequest createFlowStatsRequest() {
 		OFStatisticsRequest req = new OFStatisticsRequest();
 		req.setStatisticType(OFStatisticsType.FLOW);
 		int requestLength = req.getLengthU();
@@ -399,40 +522,154 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsCollec
 		// Set request length
 		req.setLengthU(requestLength);
 		
+		return req;
+	}
+	
+	/**
+	 * Sends a statistics request to a switch and adds it to the pending requests
+	 * of the polling round. Has to be called while holding the lock of the round.
+	 * 
+	 * @param iofSwitch The switch to query.
+	 * @param round The polling round of the switch.
+	 * @param port The physical port of an aggregate request, or OFPP_NONE for a flow request.
+	 * @param req The statistics request.
+	 */
+	private void sendStatsRequest(IOFSwitch iofSwitch, PollingRound round, short port, OFStatisticsRequest req) {
+		/* The transaction Id of the request. */
+		int xid = iofSwitch.getNextTransactionId();
+		
+		round.pendingRequests.put(xid, new PendingStatsRequest(port));
 		try {
-			Future<List<OFStatistics>> future = iofSwitch.queryStatistics(req);
-			List<OFStatistics> values = future.get(DEFAULT_SWITCH_QUERY_TIMEOUT_SEC, TimeUnit.SECONDS);
+			iofSwitch.sendStatsQuery(req, xid, statsReplyHandler);
+		} catch (Exception e) {
+			round.pendingRequests.remove(xid);
+			log.error("Failure to send stats request to switch {}, {}", iofSwitch, e);
+		}
+	}
+	
+	/**
+	 * Handles a (partial) statistics reply of a polling round. Once all
+	 * parts of a reply are received, its statistics are processed.
+	 * 
+	 * @param iofSwitch The switch that sent the reply.
+	 * @param reply The statistics reply.
+	 */
+	protected void handleStatsReply(IOFSwitch iofSwitch, OFStatisticsReply reply) {
+		/* The polling round of the switch. */
+		PollingRound round = pollingRounds.get(iofSwitch.getId());
+		/* The request the reply belongs to. */
+		PendingStatsRequest request;
+		/* States whether this was the last outstanding reply of the round. */
+		boolean roundCompleted;
+		
+		if (round == null) {
+			return;
+		}
+		
+		synchronized (round) {
+			request = round.pendingRequests.get(reply.getXid());
+			if (request == null) {
+				// Late reply of a timed-out round.
+				return;
+			}
+			request.statistics.addAll(reply.getStatistics());
+			if ((reply.getFlags() & OFStatisticsReply.OFStatisticsReplyFlags.REPLY_MORE.getTypeValue()) != 0) {
+				// More parts to come.
+				return;
+			}
+			round.pendingRequests.remove(reply.getXid());
+			roundCompleted = round.pendingRequests.isEmpty();
+		}
+		
+		iofSwitch.cancelStatisticsReply(reply.getXid());
+		
+		if (request.port == OFPort.OFPP_NONE.getValue()) {
+			this.processFlowStats(iofSwitch.getId(), request.statistics);
+		} else {
+			this.processPortStats(iofSwitch.getId(), request.port, request.statistics);
+		}
 		
-			// Store the replied information in the flow cache.
-			for (OFStatistics stats : values) {
-				FlowCacheQueryResp fcqr = null;
-				OFFlowStatisticsReply statsReply = (OFFlowStatisticsReply) stats;
-				Future<FlowCacheQueryResp> flowCacheFuture = this.flowCache.queryDB(new FlowCacheQuery(null, "statisticsCollector", null, iofSwitch.getId(), statsReply.getMatch()));
-				try {
-					fcqr = flowCacheFuture.get(DEFAULT_FLOW_CACHE_QUERY_TIMEOUT_SEC, TimeUnit.SECONDS);
-				} catch (InterruptedException | ExecutionException | TimeoutException e) {
-					if (log.isDebugEnabled()) {
-						log.debug("Flow not found: " + e);
-					}
-					// Flow not found. Thus, trigger flow cache update.
-					this.flowCache.querySwitchFlowTable(iofSwitch.getId());
-					return;
+		if (roundCompleted) {
+			this.finishPollingRound(round);
+		}
+	}
+	
+	/**
+	 * Stores the aggregated statistics of a switch port in the local statistics cache.
+	 * 
+	 * @param switchId The unique ID of the queried switch.
+	 * @param phyPortNumber The physical port number.
+	 * @param values The aggregate statistics replies.
+	 */
+	protected void processPortStats(long switchId, short phyPortNumber, List<OFStatistics> values) {
+		// Store the replied information in the local statistics cache.            
+		for (OFStatistics stats : values) {
+			OFAggregateStatisticsReply statsReply = (OFAggregateStatisticsReply) stats;
+			if (statsReply.getFlowCount() > 0) {
+				this.storeOrUpdateToStatsCache(switchId, phyPortNumber, statsReply);
+			} else {
+				this.removeFromStatsCache(switchId, phyPortNumber);
+			}
+		}
+	}
+	
+	/**
+	 * Stores the flow statistics of a switch in the corresponding flow cache objects.
+	 * Joins all flow statistics of the switch with its flow cache objects at once,
+	 * instead of querying the flow cache for every single flow statistic.
+	 * 
+	 * @param switchId The unique ID of the queried switch.
+	 * @param values The flow statistics replies.
+	 */
+	protected void processFlowStats(long switchId, List<OFStatistics> values) {
+		if (values.isEmpty()) {
+			return;
+		}
+		
+		/* All flow cache objects of the switch: Id -> FlowCacheObj. */
+		Map<Integer, FlowCacheObj> flowCacheObjs = new HashMap<Integer, FlowCacheObj>();
+		FlowCacheQueryResp fcqr = this.flowCache.queryFlows(new FlowCacheQuery(null, IFlowCacheService.DEFAULT_DB_NAME, "statisticsCollector", null, switchId));
+		if (fcqr == null || fcqr.flowCacheObjList.isEmpty()) {
+			return;
+		}
+		for (FlowCacheObj fco : fcqr.flowCacheObjList) {
+			flowCacheObjs.put(fco.getId(), fco);
+		}
+		
+		// Store the replied information in the flow cache.
+		for (OFStatistics stats : values) {
+			OFFlowStatisticsReply statsReply = (OFFlowStatisticsReply) stats;
+			/* A flow cache object with the same Id as the flow of the statistics reply. */
+			FlowCacheObj statsFco = new FlowCacheObj(statsReply.getCookie(), statsReply.getPriority(), statsReply.getMatch(), null);
+			FlowCacheObj fco = flowCacheObjs.get(statsFco.getId());
+			
+			// If we have found the flow cache object, add or update the statistics.
+			if (fco != null && fco.getMatch().equals(statsFco.getMatch())) {
+				if (fco.hasAttribute(FlowCacheObj.Attribute.STATISTIC)) {
+					((StatisticEntry) fco.getAttribute(FlowCacheObj.Attribute.STATISTIC)).updateStatistics(statsReply);
+				} else {
+					fco.setAttribute(FlowCacheObj.Attribute.STATISTIC, new StatisticEntry(statsReply));
 				}
-				
-				// If we have found the flow cache object, add or update the statistics.
-				if (fcqr != null && fcqr.flowCacheObjList.size() == 1) {
-					FlowCacheObj fco = fcqr.flowCacheObjList.get(0);
-					if (fco.hasAttribute(FlowCacheObj.Attribute.STATISTIC)) {
-						((StatisticEntry) fco.getAttribute(FlowCacheObj.Attribute.STATISTIC)).updateStatistics(statsReply);
-					} else {
-						fco.setAttribute(FlowCacheObj.Attribute.STATISTIC, new StatisticEntry(statsReply));
-					}
+				for (IStatisticsListener listener : statisticsListeners) {
+					listener.flowStatisticsUpdated(switchId, fco, (StatisticEntry) fco.getAttribute(FlowCacheObj.Attribute.STATISTIC));
 				}
-				
 			}
-		} catch (Exception e) {
-			log.error("Failure to send flow stats request to switch {}, {}", iofSwitch, e);
-			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Finishes a polling round, such that the next round of the switch can start.
+	 * 
+	 * @param round The polling round.
+	 */
+	protected void finishPollingRound(PollingRound round) {
+		if (round.timeout != null) {
+			round.timeout.cancel(false);
+		}
+		pollingRounds.remove(round.switchId, round);
+		
+		if (log.isTraceEnabled()) {
+			log.trace("Polling round for switch {} finished after {} ms", HexString.toHexString(round.switchId), System.currentTimeMillis() - round.startTime);
 		}
 	}
 	
@@ -462,6 +699,10 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsCollec
 				log.debug("Stored statistic entry for switch-port {}-{}.", HexString.toHexString(switchId), port);
 			}
 		}
+		
+		for (IStatisticsListener listener : statisticsListeners) {
+			listener.portStatisticsUpdated(switchId, port, statsCache.get(switchId).get(port));
+		}
 	}
 	
 	/**
@@ -488,6 +729,12 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsCollec
 		if (log.isDebugEnabled() && stats != null) {
 			log.debug("Removed a statistic entry from the stats-cache for switch-port {}-{}.", HexString.toHexString(switchId), port);
 		}
+		
+		if (stats != null) {
+			for (IStatisticsListener listener : statisticsListeners) {
+				listener.portStatisticsUpdated(switchId, port, null);
+			}
+		}
 			
 		// Return stats or null.
 		return stats;
@@ -36,10 +36,6 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IOFSwitch;
@@ -359,33 +355,12 @@ public class StatisticsCollectorResource extends ServerResource {
 				.setPathId(path.getId());
 			flowCacheQueryList.add(fcq);
 		}
-        List<Future<FlowCacheQueryResp>> futureList = this.flowCacheService.queryDB(flowCacheQueryList);
-        
-        if (futureList == null) {
-        	// Error.
-        	return null;
+        for (FlowCacheQueryResp fcqr : this.flowCacheService.queryFlows(flowCacheQueryList)) {
+        	if (fcqr.flowCacheObjList != null) {
+        		flowCacheObjs.addAll(fcqr.flowCacheObjList);
+        	}
         }
         
-        while (!futureList.isEmpty()) {
-			Iterator<Future<FlowCacheQueryResp>> iter = futureList.iterator();
-			while (iter.hasNext()) {
-				Future<FlowCacheQueryResp> future = iter.next();
-				try {
-					FlowCacheQueryResp fcqr = future.get(10, TimeUnit.SECONDS);
-					if (fcqr != null && fcqr.flowCacheObjList != null) {
-						flowCacheObjs.addAll(fcqr.flowCacheObjList);
-					}
-					iter.remove();
-				} catch (InterruptedException | ExecutionException e) {
-					e.printStackTrace();
-				} catch (TimeoutException e) {
-					iter.remove();
-				} catch (Exception e) {
-					iter.remove();
-				}
-			}
-		}
-        
         // Reduce flow cache objects by match.
         Set<OFMatch> matchSet = new HashSet<OFMatch>();
         for (Iterator<FlowCacheObj> iter = flowCacheObjs.iterator(); iter.hasNext();) {
@@ -0,0 +1,373 @@
+package net.floodlightcontroller.packet;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import org.openflow.protocol.OFMatch;
+
+/**
+ * A read-only view of the packet data of a packet-in message. The
+ * view decodes the L2, L3, and L4 header fields directly from the
+ * packet buffer on demand, without copying the buffer or creating
+ * a packet object per header.
+ * 
+ * The header offsets are calculated once, on the first access of
+ * a field beyond the Ethernet addresses. The OFMatch and the
+ * deserialized Ethernet packet are created once, on demand, and
+ * shared by all callers. Thus, callers must not modify them.
+ * 
+ * The view is not thread-safe, as a packet-in is processed by a
+ * single thread.
+ */
+public class PacketInView {
+	/** The length of an Ethernet header without VLAN tag. */
+	private static final int ETHERNET_HEADER_LENGTH = 14;
+	/** The length of a VLAN tag. */
+	private static final int VLAN_TAG_LENGTH = 4;
+	/** The Ethertype of a VLAN tag. */
+	private static final short TYPE_VLAN = (short) 0x8100;
+	
+	/** The packet data of the packet-in message. */
+	private final byte[] data;
+	/** The input port of the packet-in message. */
+	private final short inPort;
+	/** States whether the header offsets are calculated already. */
+	private boolean parsed;
+	/** The Ethertype of the packet, after an optional VLAN tag. */
+	private short etherType;
+	/** The VLAN ID of the packet, or Ethernet.VLAN_UNTAGGED. */
+	private short vlanId;
+	/** The VLAN priority code point of the packet. */
+	private byte vlanPriority;
+	/** The offset of the network header, or -1 if the packet is truncated. */
+	private int networkOffset;
+	/** The offset of the transport header, or -1 if the packet is no complete IPv4 packet. */
+	private int transportOffset;
+	/** The OFMatch of the packet. Created on demand. */
+	private OFMatch match;
+	/** The deserialized Ethernet packet. Created on demand. */
+	private Ethernet ethernet;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param data The packet data of the packet-in message.
+	 * @param inPort The input port of the packet-in message.
+	 */
+	public PacketInView(byte[] data, short inPort) {
+		this.data = data;
+		this.inPort = inPort;
+	}
+	
+	/**
+	 * Getter for the packet data. The data is not copied.
+	 * 
+	 * @return The packet data of the packet-in message.
+	 */
+	public byte[] getPacketData() {
+		return this.data;
+	}
+	
+	/**
+	 * Getter for the input port.
+	 * 
+	 * @return The input port of the packet-in message.
+	 */
+	public short getInPort() {
+		return this.inPort;
+	}
+	
+	/**
+	 * Checks whether the packet contains a complete Ethernet header.
+	 * 
+	 * @return <b>true</b> iff the packet contains an Ethernet header.
+	 */
+	public boolean isEthernet() {
+		return this.data.length >= ETHERNET_HEADER_LENGTH;
+	}
+	
+	/**
+	 * Getter for the destination MAC address.
+	 * 
+	 * @return The destination MAC address as long.
+	 */
+	public long getDestinationMAC() {
+		return this.getMAC(0);
+	}
+	
+	/**
+	 * Getter for the source MAC address.
+	 * 
+	 * @return The source MAC address as long.
+	 */
+	public long getSourceMAC() {
+		return this.getMAC(Ethernet.DATALAYER_ADDRESS_LENGTH);
+	}
+	
+	/**
+	 * Checks whether the packet is an Ethernet broadcast.
+	 * 
+	 * @return <b>true</b> iff the destination MAC address is the broadcast address.
+	 */
+	public boolean isBroadcast() {
+		return this.getDestinationMAC() == 0xffffffffffffL;
+	}
+	
+	/**
+	 * Checks whether the packet is an Ethernet multicast, excluding broadcasts.
+	 * 
+	 * @return <b>true</b> iff the destination MAC address is a multicast address.
+	 */
+	public boolean isMulticast() {
+		return this.isEthernet() && (this.data[0] & 0x01) != 0 && !this.isBroadcast();
+	}
+	
+	/**
+	 * Getter for the Ethertype. If the packet is VLAN tagged, this
+	 * is the Ethertype of the encapsulated packet.
+	 * 
+	 * @return The Ethertype of the packet.
+	 */
+	public short getEtherType() {
+		this.parse();
+		return this.etherType;
+	}
+	
+	/**
+	 * Getter for the VLAN ID.
+	 * 
+	 * @return The VLAN ID, or Ethernet.VLAN_UNTAGGED if the packet is not VLAN tagged.
+	 */
+	public short getVlanId() {
+		this.parse();
+		return this.vlanId;
+	}
+	
+	/**
+	 * Getter for the VLAN priority code point.
+	 * 
+	 * @return The VLAN priority code point, or 0 if the packet is not VLAN tagged.
+	 */
+	public byte getVlanPriority() {
+		this.parse();
+		return this.vlanPriority;
+	}
+	
+	/**
+	 * Checks whether the packet carries a complete IPv4 header.
+	 * 
+	 * @return <b>true</b> iff the packet is an IPv4 packet.
+	 */
+	public boolean isIPv4() {
+		this.parse();
+		return this.transportOffset >= 0;
+	}
+	
+	/**
+	 * Getter for the IPv4 protocol number.
+	 * 
+	 * @return The IPv4 protocol number, or 0 if the packet is no IPv4 packet.
+	 */
+	public byte getNetworkProtocol() {
+		if (!this.isIPv4())
+			return 0;
+		return this.data[this.networkOffset + 9];
+	}
+	
+	/**
+	 * Getter for the IPv4 type of service, i.e. the DSCP bits.
+	 * 
+	 * @return The IPv4 DSCP, or 0 if the packet is no IPv4 packet.
+	 */
+	public byte getNetworkTypeOfService() {
+		if (!this.isIPv4())
+			return 0;
+		return (byte) ((this.data[this.networkOffset + 1] & 0xfc) >> 2);
+	}
+	
+	/**
+	 * Getter for the network source address. For ARP packets,
+	 * this is the sender protocol address.
+	 * 
+	 * @return The IPv4 source address, or 0 if not available.
+	 */
+	public int getNetworkSource() {
+		if (this.isIPv4())
+			return this.getInt(this.networkOffset + 12);
+		if (this.isIPv4Arp())
+			return this.getInt(this.networkOffset + 14);
+		return 0;
+	}
+	
+	/**
+	 * Getter for the network destination address. For ARP packets,
+	 * this is the target protocol address.
+	 * 
+	 * @return The IPv4 destination address, or 0 if not available.
+	 */
+	public int getNetworkDestination() {
+		if (this.isIPv4())
+			return this.getInt(this.networkOffset + 16);
+		if (this.isIPv4Arp())
+			return this.getInt(this.networkOffset + 24);
+		return 0;
+	}
+	
+	/**
+	 * Getter for the TCP or UDP source port.
+	 * 
+	 * @return The transport source port, or 0 if the packet is no TCP or UDP packet.
+	 */
+	public short getTransportSource() {
+		if (!this.hasTransportPorts())
+			return 0;
+		return this.getShort(this.transportOffset);
+	}
+	
+	/**
+	 * Getter for the TCP or UDP destination port.
+	 * 
+	 * @return The transport destination port, or 0 if the packet is no TCP or UDP packet.
+	 */
+	public short getTransportDestination() {
+		if (!this.hasTransportPorts())
+			return 0;
+		return this.getShort(this.transportOffset + 2);
+	}
+	
+	/**
+	 * Getter for the OFMatch of the packet. The match is created on
+	 * the first call and shared afterwards, i.e. callers that modify
+	 * the match need to clone it first.
+	 * 
+	 * @return The OFMatch of the packet.
+	 */
+	public OFMatch getMatch() {
+		if (this.match == null) {
+			this.match = new OFMatch().loadFromPacket(this.data, this.inPort);
+		}
+		return this.match;
+	}
+	
+	/**
+	 * Getter for the deserialized Ethernet packet. The packet is
+	 * deserialized on the first call and shared afterwards.
+	 * 
+	 * @return The Ethernet packet.
+	 */
+	public Ethernet getEthernet() {
+		if (this.ethernet == null) {
+			Ethernet eth = new Ethernet();
+			eth.deserialize(this.data, 0, this.data.length);
+			this.ethernet = eth;
+		}
+		return this.ethernet;
+	}
+	
+	/**
+	 * Calculates the header offsets, the Ethertype, and the VLAN tag.
+	 */
+	private void parse() {
+		if (this.parsed)
+			return;
+		this.parsed = true;
+		this.vlanId = Ethernet.VLAN_UNTAGGED;
+		this.networkOffset = -1;
+		this.transportOffset = -1;
+		
+		if (this.data.length < ETHERNET_HEADER_LENGTH)
+			return;
+		int offset = ETHERNET_HEADER_LENGTH;
+		this.etherType = this.getShort(offset - 2);
+		if (this.etherType == TYPE_VLAN) {
+			if (this.data.length < ETHERNET_HEADER_LENGTH + VLAN_TAG_LENGTH)
+				return;
+			short tci = this.getShort(offset);
+			this.vlanId = (short) (tci & 0x0fff);
+			this.vlanPriority = (byte) ((tci & 0xe000) >> 13);
+			this.etherType = this.getShort(offset + 2);
+			offset += VLAN_TAG_LENGTH;
+		}
+		this.networkOffset = offset;
+		
+		if (this.etherType == Ethernet.TYPE_IPv4 && this.data.length >= offset + 20) {
+			int headerLength = (this.data[offset] & 0x0f) * 4;
+			if (headerLength >= 20 && this.data.length >= offset + headerLength)
+				this.transportOffset = offset + headerLength;
+		}
+	}
+	
+	/**
+	 * Checks whether the packet is an ARP packet for IPv4 addresses.
+	 * 
+	 * @return <b>true</b> iff the packet is an IPv4 ARP packet.
+	 */
+	private boolean isIPv4Arp() {
+		this.parse();
+		return this.etherType == Ethernet.TYPE_ARP
+				&& this.data.length >= this.networkOffset + 28
+				&& this.getShort(this.networkOffset + 2) == Ethernet.TYPE_IPv4
+				&& this.data[this.networkOffset + 5] == 4;
+	}
+	
+	/**
+	 * Checks whether the packet is a TCP or UDP packet with complete ports.
+	 * 
+	 * @return <b>true</b> iff the transport ports are available.
+	 */
+	private boolean hasTransportPorts() {
+		if (!this.isIPv4())
+			return false;
+		byte protocol = this.data[this.networkOffset + 9];
+		return (protocol == IPv4.PROTOCOL_TCP || protocol == IPv4.PROTOCOL_UDP)
+				&& this.data.length >= this.transportOffset + 4;
+	}
+	
+	private long getMAC(int offset) {
+		long mac = 0;
+		if (!this.isEthernet())
+			return mac;
+		for (int i = offset; i < offset + Ethernet.DATALAYER_ADDRESS_LENGTH; i++) {
+			mac = (mac << 8) | (this.data[i] & 0xffL);
+		}
+		return mac;
+	}
+	
+	private short getShort(int offset) {
+		return (short) (((this.data[offset] & 0xff) << 8) | (this.data[offset + 1] & 0xff));
+	}
+	
+	private int getInt(int offset) {
+		return ((this.data[offset] & 0xff) << 24) | ((this.data[offset + 1] & 0xff) << 16)
+				| ((this.data[offset + 2] & 0xff) << 8) | (this.data[offset + 3] & 0xff);
+	}
+	
+}
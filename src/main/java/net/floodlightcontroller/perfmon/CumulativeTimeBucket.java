@@ -132,6 +132,28 @@ public class CumulativeTimeBucket {
         }
     }
     
+    /**
+     * Loads all counters from latency histograms.
+     * 
+     * @param total The packet-in processing times.
+     * @param components The processing times per listener.
+     */
+    public void load(LatencySnapshot total, 
+                     Map<IOFMessageListener, LatencySnapshot> components) {
+        totalPktCnt = total.getCount();
+        avgTotalProcTimeNs = total.getAverageNs();
+        totalProcTimeNs = avgTotalProcTimeNs * totalPktCnt;
+        minTotalProcTimeNs = total.getMinNs();
+        maxTotalProcTimeNs = total.getMaxNs();
+        sigmaTotalProcTimeNs = total.getStdDeviationNs();
+        sumSquaredProcTimeNs2 = OneComponentTime.getSumSquared(total);
+        for (Map.Entry<IOFMessageListener, LatencySnapshot> entry : components.entrySet()) {
+            OneComponentTime oct = compStats.get(entry.getKey().hashCode());
+            if (oct != null)
+                oct.load(entry.getValue());
+        }
+    }
+    
     public void updateOneComponent(IOFMessageListener l, long procTimeNs) {
         compStats.get(l.hashCode()).updatePerPacketCounters(procTimeNs);
     }
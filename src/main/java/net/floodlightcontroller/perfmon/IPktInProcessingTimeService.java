@@ -17,6 +17,7 @@
 package net.floodlightcontroller.perfmon;
 
 import java.util.List;
+import java.util.Map;
 
 import org.openflow.protocol.OFMessage;
 
@@ -50,4 +51,33 @@ public interface IPktInProcessingTimeService extends IFloodlightService {
     public void setEnabled(boolean enabled);
     
     public CumulativeTimeBucket getCtb();
+    
+    /**
+     * Clears all processing times.
+     */
+    public void reset();
+    
+    /**
+     * Gets the packet-in processing times, merged over all threads.
+     * 
+     * @param windowSeconds The most recent seconds to cover, or 0 for the whole window.
+     * @return The packet-in processing times.
+     */
+    public LatencySnapshot getPktInLatency(int windowSeconds);
+    
+    /**
+     * Gets the processing times per listener, merged over all threads.
+     * 
+     * @param windowSeconds The most recent seconds to cover, or 0 for the whole window.
+     * @return The processing times: [listener name -> latencies].
+     */
+    public Map<String, LatencySnapshot> getListenerLatencies(int windowSeconds);
+    
+    /**
+     * Gets the packet-in processing times per switch, merged over all threads.
+     * 
+     * @param windowSeconds The most recent seconds to cover, or 0 for the whole window.
+     * @return The processing times: [DPID -> latencies].
+     */
+    public Map<Long, LatencySnapshot> getSwitchLatencies(int windowSeconds);
 }
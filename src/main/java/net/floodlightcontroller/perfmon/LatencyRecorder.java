@@ -0,0 +1,205 @@
+package net.floodlightcontroller.perfmon;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records latencies into per-thread, log-bucketed histograms over a rolling
+ * window. Each thread writes to its own histogram without locks, the
+ * histograms of all threads are merged when they are read.
+ *
+ * A histogram covers a window of WINDOW_SLOTS time slots. When a thread
+ * records a value into a slot that belongs to an expired slot period, it
+ * clears the slot first. Readers do not synchronize with the writers, thus
+ * a snapshot may miss a few values that are recorded at the same time.
+ *
+ * Values are recorded in units of 2^UNIT_SHIFT nanoseconds (about one
+ * microsecond), using 2^SUB_BUCKET_BITS linear sub-buckets for the first
+ * values and half as many sub-buckets for every further power of two. This
+ * bounds the relative error of a value to about 6%.
+ */
+public class LatencyRecorder {
+    /** The number of nanoseconds per recorded unit, as a power of two. */
+    protected static final int UNIT_SHIFT = 10;
+    /** The number of linear sub-buckets, as a power of two. */
+    protected static final int SUB_BUCKET_BITS = 5;
+    protected static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    protected static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    /** The largest recordable value in units, as a power of two (about 18 minutes). */
+    protected static final int MAX_VALUE_BITS = 30;
+    /** The number of buckets per histogram slot. */
+    protected static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * SUB_BUCKET_HALF;
+    /** The number of time slots of the rolling window. */
+    public static final int WINDOW_SLOTS = 6;
+
+    /** The duration of one time slot in nanoseconds. */
+    private final long slotDurationNs;
+    /** The histogram of the current thread. */
+    private final ThreadLocal<ThreadHistogram> threadHistogram = new ThreadLocal<ThreadHistogram>() {
+        @Override
+        protected ThreadHistogram initialValue() {
+            ThreadHistogram histogram = new ThreadHistogram();
+            histograms.add(histogram);
+            return histogram;
+        }
+    };
+    /** The histograms of all threads that recorded values. */
+    private final List<ThreadHistogram> histograms = new CopyOnWriteArrayList<ThreadHistogram>();
+
+    /**
+     * The histogram of a single thread. It is only written by its own thread.
+     */
+    protected class ThreadHistogram {
+        /** The slot period, i.e. the time divided by the slot duration, per slot. */
+        private final AtomicLongArray slotPeriods = new AtomicLongArray(WINDOW_SLOTS);
+        /** The number of values, the sum of the values and the max value per slot. */
+        private final AtomicLongArray slotStats = new AtomicLongArray(WINDOW_SLOTS * 3);
+        /** The bucket counts of all slots. */
+        private final AtomicIntegerArray counts = new AtomicIntegerArray(WINDOW_SLOTS * BUCKET_COUNT);
+
+        /**
+         * Records a value. Uses lazy sets only, as there is a single writer.
+         *
+         * @param valueNs The value in nanoseconds.
+         * @param period The current slot period.
+         */
+        void record(long valueNs, long period) {
+            int slot = (int) (period % WINDOW_SLOTS);
+            if (slotPeriods.get(slot) != period) {
+                for (int i = slot * BUCKET_COUNT; i < (slot + 1) * BUCKET_COUNT; i++) {
+                    counts.lazySet(i, 0);
+                }
+                slotStats.lazySet(slot * 3, 0);
+                slotStats.lazySet(slot * 3 + 1, 0);
+                slotStats.lazySet(slot * 3 + 2, 0);
+                slotPeriods.set(slot, period);
+            }
+            int index = slot * BUCKET_COUNT + getBucketIndex(valueNs);
+            counts.lazySet(index, counts.get(index) + 1);
+            slotStats.lazySet(slot * 3, slotStats.get(slot * 3) + 1);
+            slotStats.lazySet(slot * 3 + 1, slotStats.get(slot * 3 + 1) + valueNs);
+            if (valueNs > slotStats.get(slot * 3 + 2))
+                slotStats.lazySet(slot * 3 + 2, valueNs);
+        }
+
+        /**
+         * Adds the slots of a window to a snapshot.
+         *
+         * @param snapshot The snapshot to add to.
+         * @param period The current slot period.
+         * @param slots The number of slots of the window, including the current slot.
+         */
+        void addTo(LatencySnapshot snapshot, long period, int slots) {
+            for (int slot = 0; slot < WINDOW_SLOTS; slot++) {
+                long slotPeriod = slotPeriods.get(slot);
+                if (slotPeriod > period || slotPeriod <= period - slots)
+                    continue;
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    int count = counts.get(slot * BUCKET_COUNT + i);
+                    if (count > 0)
+                        snapshot.addBucket(i, count);
+                }
+                snapshot.addStats(slotStats.get(slot * 3), slotStats.get(slot * 3 + 1), slotStats.get(slot * 3 + 2));
+            }
+        }
+    }
+
+    /**
+     * Default constructor.
+     *
+     * @param slotDurationNs The duration of one time slot in nanoseconds.
+     */
+    public LatencyRecorder(long slotDurationNs) {
+        this.slotDurationNs = slotDurationNs;
+    }
+
+    /**
+     * Records a latency of the current thread.
+     *
+     * @param valueNs The latency in nanoseconds.
+     * @param nowNs The current time in nanoseconds, as given by System.nanoTime().
+     */
+    public void record(long valueNs, long nowNs) {
+        if (valueNs < 0)
+            return;
+        threadHistogram.get().record(valueNs, nowNs / slotDurationNs);
+    }
+
+    /**
+     * Merges the histograms of all threads.
+     *
+     * @param nowNs The current time in nanoseconds, as given by System.nanoTime().
+     * @param slots The number of most recent time slots to merge.
+     * @return A snapshot of the latencies in the window.
+     */
+    public LatencySnapshot getSnapshot(long nowNs, int slots) {
+        LatencySnapshot snapshot = new LatencySnapshot();
+        int windowSlots = Math.max(1, Math.min(slots, WINDOW_SLOTS));
+        long period = nowNs / slotDurationNs;
+        for (ThreadHistogram histogram : histograms) {
+            histogram.addTo(snapshot, period, windowSlots);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Gets the bucket of a value.
+     *
+     * @param valueNs The value in nanoseconds.
+     * @return The bucket index.
+     */
+    protected static int getBucketIndex(long valueNs) {
+        long value = Math.min(valueNs >>> UNIT_SHIFT, (1L << MAX_VALUE_BITS) - 1);
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        return SUB_BUCKET_COUNT + (exponent - 1) * SUB_BUCKET_HALF + (int) (value >>> exponent) - SUB_BUCKET_HALF;
+    }
+
+    /**
+     * Gets the value in the middle of a bucket.
+     *
+     * @param index The bucket index.
+     * @return The value in nanoseconds.
+     */
+    protected static long getBucketValue(int index) {
+        if (index < SUB_BUCKET_COUNT)
+            return ((long) index << UNIT_SHIFT) + (1L << (UNIT_SHIFT - 1));
+        int exponent = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket << exponent) + (1L << (exponent - 1))) << UNIT_SHIFT;
+    }
+}
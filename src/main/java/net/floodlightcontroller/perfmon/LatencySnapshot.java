@@ -0,0 +1,167 @@
+package net.floodlightcontroller.perfmon;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The merged latency histograms of all threads over a time window.
+ */
+public class LatencySnapshot {
+    /** The bucket counts. */
+    private final long[] counts = new long[LatencyRecorder.BUCKET_COUNT];
+    /** The number of values. */
+    private long count;
+    /** The sum of all values in nanoseconds. */
+    private long sumNs;
+    /** The max value in nanoseconds. */
+    private long maxNs;
+
+    /**
+     * Adds the count of a bucket.
+     *
+     * @param index The bucket index.
+     * @param bucketCount The number of values in the bucket.
+     */
+    void addBucket(int index, long bucketCount) {
+        counts[index] += bucketCount;
+    }
+
+    /**
+     * Adds the statistics of a histogram slot.
+     *
+     * @param slotCount The number of values.
+     * @param slotSumNs The sum of the values.
+     * @param slotMaxNs The max value.
+     */
+    void addStats(long slotCount, long slotSumNs, long slotMaxNs) {
+        count += slotCount;
+        sumNs += slotSumNs;
+        maxNs = Math.max(maxNs, slotMaxNs);
+    }
+
+    @JsonProperty("count")
+    public long getCount() {
+        return count;
+    }
+
+    @JsonProperty("average")
+    public long getAverageNs() {
+        return (count > 0) ? sumNs / count : 0;
+    }
+
+    /**
+     * Gets the min value, i.e. the middle of the lowest bucket.
+     *
+     * @return The min value in nanoseconds.
+     */
+    @JsonProperty("min")
+    public long getMinNs() {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0)
+                return Math.min(LatencyRecorder.getBucketValue(i), maxNs);
+        }
+        return 0;
+    }
+
+    @JsonProperty("max")
+    public long getMaxNs() {
+        return maxNs;
+    }
+
+    @JsonProperty("p50")
+    public long getP50Ns() {
+        return getPercentileNs(50.0);
+    }
+
+    @JsonProperty("p99")
+    public long getP99Ns() {
+        return getPercentileNs(99.0);
+    }
+
+    @JsonProperty("p999")
+    public long getP999Ns() {
+        return getPercentileNs(99.9);
+    }
+
+    /**
+     * Gets the standard deviation, based on the bucket values.
+     *
+     * @return The standard deviation in nanoseconds.
+     */
+    @JsonProperty("std-dev")
+    public long getStdDeviationNs() {
+        long total = 0;
+        double mean = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i];
+            mean += (double) counts[i] * LatencyRecorder.getBucketValue(i);
+        }
+        if (total == 0)
+            return 0;
+        mean /= total;
+        double variance = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                double deviation = LatencyRecorder.getBucketValue(i) - mean;
+                variance += counts[i] * deviation * deviation;
+            }
+        }
+        return (long) Math.sqrt(variance / total);
+    }
+
+    /**
+     * Gets a percentile of the values. The result is the middle of the
+     * bucket that holds the percentile, but never more than the max value.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The percentile in nanoseconds.
+     */
+    @JsonIgnore
+    public long getPercentileNs(double percentile) {
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank)
+                return Math.min(LatencyRecorder.getBucketValue(i), maxNs);
+        }
+        return maxNs;
+    }
+}
@@ -129,6 +129,31 @@ public class OneComponentTime {
         sigmaProcTimeNs = (long) Math.sqrt(temp);
     }
     
+    /**
+     * Loads all counters from a latency histogram.
+     * 
+     * @param snapshot The processing times of this component.
+     */
+    public void load(LatencySnapshot snapshot) {
+        pktCnt = (int) snapshot.getCount();
+        avgProcTimeNs = snapshot.getAverageNs();
+        totalProcTimeNs = avgProcTimeNs * pktCnt;
+        minProcTimeNs = snapshot.getMinNs();
+        maxProcTimeNs = snapshot.getMaxNs();
+        sigmaProcTimeNs = snapshot.getStdDeviationNs();
+        sumSquaredProcTimeNs2 = getSumSquared(snapshot);
+    }
+    
+    /**
+     * Derives the sum of the squared values, i.e. n * (sigma^2 + mean^2),
+     * such that computeSigma() yields the standard deviation again.
+     */
+    static long getSumSquared(LatencySnapshot snapshot) {
+        double sigma = snapshot.getStdDeviationNs();
+        double mean = snapshot.getAverageNs();
+        return (long) (snapshot.getCount() * (sigma * sigma + mean * mean));
+    }
+    
     public void updatePerPacketCounters(long procTimeNs) {
         increasePktCount();
         updateTotalProcessingTime(procTimeNs);
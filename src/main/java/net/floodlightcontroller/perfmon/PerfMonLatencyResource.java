@@ -0,0 +1,80 @@
+package net.floodlightcontroller.perfmon;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openflow.util.HexString;
+import org.restlet.data.Status;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+/**
+ * Returns the packet-in processing time percentiles of the rolling window,
+ * in total, per message listener and per switch. The optional query
+ * parameter "window" limits the result to the most recent seconds.
+ */
+public class PerfMonLatencyResource extends ServerResource {
+
+    @Get("json")
+    public Map<String, Object> retrieve() {
+        IPktInProcessingTimeService pktinProcTime =
+                (IPktInProcessingTimeService)getContext().getAttributes().
+                    get(IPktInProcessingTimeService.class.getCanonicalName());
+
+        int windowSeconds = 0;
+        String windowStr = getQueryValue("window");
+        Map<String, Object> result = new HashMap<String, Object>();
+        try {
+            if (windowStr != null)
+                windowSeconds = Integer.parseInt(windowStr);
+        } catch (NumberFormatException e) {
+            setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+            result.put("error", "Expected the window in seconds; received " + windowStr);
+            return result;
+        }
+
+        Map<String, LatencySnapshot> switches = new TreeMap<String, LatencySnapshot>();
+        for (Map.Entry<Long, LatencySnapshot> entry : pktinProcTime.getSwitchLatencies(windowSeconds).entrySet()) {
+            switches.put(HexString.toHexString(entry.getKey()), entry.getValue());
+        }
+
+        result.put("enabled", pktinProcTime.isEnabled());
+        result.put("packet-in", pktinProcTime.getPktInLatency(windowSeconds));
+        result.put("modules", new TreeMap<String, LatencySnapshot>(pktinProcTime.getListenerLatencies(windowSeconds)));
+        result.put("switches", switches);
+        setStatus(Status.SUCCESS_OK, "OK");
+        return result;
+    }
+}
@@ -24,11 +24,16 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.IOFSwitchListener;
+import net.floodlightcontroller.core.OFSwitchPort;
+import net.floodlightcontroller.core.IOFSwitch.PortChangeType;
 import net.floodlightcontroller.core.annotations.LogMessageCategory;
 import net.floodlightcontroller.core.annotations.LogMessageDoc;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
@@ -51,6 +56,12 @@ import org.slf4j.LoggerFactory;
  * Buckets are reused to reduce garbage generation! Once the
  * last bucket is used up the LRU bucket is reused.
  * 
+ * The processing times are recorded per thread into lock-free
+ * latency histograms, one for the whole packet-in, one per
+ * IOFMessageListener and one per switch. The histograms of all
+ * threads are merged on read, thus recording never blocks any
+ * of the threads that process packet-ins.
+ * 
  * Naming convention for variable or constants
  * variable_s : value in seconds
  * variable_ms: value in milliseconds
@@ -68,7 +79,8 @@ import org.slf4j.LoggerFactory;
  */
 @LogMessageCategory("Performance Monitoring")
 public class PktInProcessingTime
-    implements IFloodlightModule, IPktInProcessingTimeService {
+    implements IFloodlightModule, IPktInProcessingTimeService,
+               IOFSwitchListener {
 
     
 	protected IFloodlightProviderService floodlightProvider;
@@ -90,19 +102,46 @@ public class PktInProcessingTime
     // Maintains the time when the last packet was processed
     protected long lastPktTime_ns;
     private CumulativeTimeBucket ctb = null;
+    /** The packet-in processing times. */
+    protected volatile LatencyRecorder pktInLatency;
+    /** The processing times per listener. */
+    protected volatile ConcurrentMap<IOFMessageListener, LatencyRecorder> listenerLatencies;
+    /** The packet-in processing times per switch: [DPID -> latencies]. */
+    protected volatile ConcurrentMap<Long, LatencyRecorder> switchLatencies;
+    /** The start times of the current thread: [packet-in, component]. */
+    private final ThreadLocal<long[]> startTimesNs = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
 
     
     /***
-     * BUCKET_SET_SIZE buckets each holding 10s of processing time data, a total
-     * of 30*10s = 5mins of processing time data is maintained
+     * WINDOW_SLOTS buckets each holding 10s of processing time data, a total
+     * of 6*10s = 1min of processing time data is maintained
      */
     protected static final int ONE_BUCKET_DURATION_SECONDS = 10;// seconds
     protected static final long ONE_BUCKET_DURATION_NANOSECONDS  =
-                                ONE_BUCKET_DURATION_SECONDS * 1000000000;
+                                ONE_BUCKET_DURATION_SECONDS * 1000000000L;
     
     @Override
-    public void bootstrap(List<IOFMessageListener> listeners) {
+    public synchronized void bootstrap(List<IOFMessageListener> listeners) {
             ctb = new CumulativeTimeBucket(listeners);
+            ConcurrentMap<IOFMessageListener, LatencyRecorder> newListenerLatencies =
+                    new ConcurrentHashMap<IOFMessageListener, LatencyRecorder>();
+            for (IOFMessageListener listener : listeners) {
+                newListenerLatencies.put(listener, 
+                        new LatencyRecorder(ONE_BUCKET_DURATION_NANOSECONDS));
+            }
+            listenerLatencies = newListenerLatencies;
+            switchLatencies = new ConcurrentHashMap<Long, LatencyRecorder>();
+            pktInLatency = new LatencyRecorder(ONE_BUCKET_DURATION_NANOSECONDS);
+    }
+    
+    @Override
+    public void reset() {
+        bootstrap(floodlightProvider.getListeners().get(OFType.PACKET_IN));
     }
     
     @Override
@@ -119,32 +158,105 @@ public class PktInProcessingTime
         logger.debug("Setting module to " + isEnabled);
     }
     
+    /**
+     * Loads the processing times of the whole window into the
+     * cumulative time bucket. Synchronized as concurrent REST requests
+     * would load the shared bucket at the same time.
+     */
     @Override
-    public CumulativeTimeBucket getCtb() {
+    public synchronized CumulativeTimeBucket getCtb() {
+        if (ctb != null && pktInLatency != null) {
+            long nowNs = System.nanoTime();
+            Map<IOFMessageListener, LatencySnapshot> snapshots = 
+                    new HashMap<IOFMessageListener, LatencySnapshot>();
+            for (Map.Entry<IOFMessageListener, LatencyRecorder> entry : 
+                    listenerLatencies.entrySet()) {
+                snapshots.put(entry.getKey(), 
+                        entry.getValue().getSnapshot(nowNs, LatencyRecorder.WINDOW_SLOTS));
+            }
+            ctb.load(pktInLatency.getSnapshot(nowNs, LatencyRecorder.WINDOW_SLOTS), 
+                     snapshots);
+        }
         return ctb;
     }
     
-    private long startTimePktNs;
-    private long startTimeCompNs;
+    @Override
+    public LatencySnapshot getPktInLatency(int windowSeconds) {
+        if (pktInLatency == null)
+            return new LatencySnapshot();
+        return pktInLatency.getSnapshot(System.nanoTime(), getWindowSlots(windowSeconds));
+    }
+    
+    @Override
+    public Map<String, LatencySnapshot> getListenerLatencies(int windowSeconds) {
+        Map<String, LatencySnapshot> snapshots = new HashMap<String, LatencySnapshot>();
+        if (listenerLatencies == null)
+            return snapshots;
+        long nowNs = System.nanoTime();
+        int slots = getWindowSlots(windowSeconds);
+        for (Map.Entry<IOFMessageListener, LatencyRecorder> entry : 
+                listenerLatencies.entrySet()) {
+            snapshots.put(entry.getKey().getName(), 
+                    entry.getValue().getSnapshot(nowNs, slots));
+        }
+        return snapshots;
+    }
+    
+    @Override
+    public Map<Long, LatencySnapshot> getSwitchLatencies(int windowSeconds) {
+        Map<Long, LatencySnapshot> snapshots = new HashMap<Long, LatencySnapshot>();
+        if (switchLatencies == null)
+            return snapshots;
+        long nowNs = System.nanoTime();
+        int slots = getWindowSlots(windowSeconds);
+        for (Map.Entry<Long, LatencyRecorder> entry : switchLatencies.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().getSnapshot(nowNs, slots));
+        }
+        return snapshots;
+    }
+    
+    /**
+     * Converts a window into the number of time buckets that cover it.
+     * 
+     * @param windowSeconds The window in seconds, or 0 for the whole window.
+     * @return The number of time buckets.
+     */
+    protected int getWindowSlots(int windowSeconds) {
+        if (windowSeconds <= 0)
+            return LatencyRecorder.WINDOW_SLOTS;
+        return (windowSeconds + ONE_BUCKET_DURATION_SECONDS - 1) / ONE_BUCKET_DURATION_SECONDS;
+    }
+    
     @Override
     public void recordStartTimeComp(IOFMessageListener listener) {
         if (isEnabled()) {
-            startTimeCompNs = System.nanoTime();
+            startTimesNs.get()[1] = System.nanoTime();
         }
     }
     
     @Override
     public void recordEndTimeComp(IOFMessageListener listener) {
         if (isEnabled()) {
-            long procTime = System.nanoTime() - startTimeCompNs;
-            ctb.updateOneComponent(listener, procTime);
+            long nowNs = System.nanoTime();
+            long startTimeNs = startTimesNs.get()[1];
+            if (startTimeNs == 0)
+                return;
+            LatencyRecorder recorder = listenerLatencies.get(listener);
+            if (recorder == null) {
+                // The listener has been added after bootstrapping.
+                recorder = new LatencyRecorder(ONE_BUCKET_DURATION_NANOSECONDS);
+                LatencyRecorder existing = listenerLatencies.putIfAbsent(listener, recorder);
+                if (existing != null)
+                    recorder = existing;
+            }
+            recorder.record(nowNs - startTimeNs, nowNs);
         }
     }
     
     @Override
     public void recordStartTimePktIn() {
         if (isEnabled()) {
-            startTimePktNs = System.nanoTime();
+            startTimesNs.get()[0] = System.nanoTime();
         }
     }
     
@@ -156,8 +268,21 @@ public class PktInProcessingTime
             recommendation=LogMessageDoc.CHECK_CONTROLLER)
     public void recordEndTimePktIn(IOFSwitch sw, OFMessage m, FloodlightContext cntx) {
         if (isEnabled()) {
-            long procTimeNs = System.nanoTime() - startTimePktNs;
-            ctb.updatePerPacketCounters(procTimeNs);
+            long nowNs = System.nanoTime();
+            long startTimeNs = startTimesNs.get()[0];
+            if (startTimeNs == 0)
+                return;
+            long procTimeNs = nowNs - startTimeNs;
+            pktInLatency.record(procTimeNs, nowNs);
+            
+            LatencyRecorder recorder = switchLatencies.get(sw.getId());
+            if (recorder == null) {
+                recorder = new LatencyRecorder(ONE_BUCKET_DURATION_NANOSECONDS);
+                LatencyRecorder existing = switchLatencies.putIfAbsent(sw.getId(), recorder);
+                if (existing != null)
+                    recorder = existing;
+            }
+            recorder.record(procTimeNs, nowNs);
             
             if (ptWarningThresholdInNano > 0 && 
                     procTimeNs > ptWarningThresholdInNano) {
@@ -166,7 +291,41 @@ public class PktInProcessingTime
             }
         }
     }
-    
+
+    // IOFSwitchListener methods
+
+    @Override
+    public void switchAdded(long switchId) {
+        // no-op
+    }
+
+    /**
+     * Drops the processing times of a removed switch, so the recorders of
+     * switches that come and go do not pile up.
+     */
+    @Override
+    public void switchRemoved(long switchId) {
+        ConcurrentMap<Long, LatencyRecorder> latencies = switchLatencies;
+        if (latencies != null)
+            latencies.remove(switchId);
+    }
+
+    @Override
+    public void switchActivated(long switchId) {
+        // no-op
+    }
+
+    @Override
+    public void switchPortChanged(long switchId, OFSwitchPort port,
+                                  PortChangeType type) {
+        // no-op
+    }
+
+    @Override
+    public void switchChanged(long switchId) {
+        // no-op
+    }
+
     // IFloodlightModule methods
     
     @Override
@@ -215,6 +374,7 @@ public class PktInProcessingTime
     public void startUp(FloodlightModuleContext context) {
         // Add our REST API
         restApi.addRestletRoutable(new PerfWebRoutable());
+        floodlightProvider.addOFSwitchListener(this);
         
         // TODO - Alex - change this to a config option
         ptWarningThresholdInNano = Long.parseLong(System.getProperty(
@@ -402,9 +402,9 @@ public abstract class ForwardingBase
         }
 
         if (po.getBufferId() == OFPacketOut.BUFFER_ID_NONE) {
-            byte[] packetData = pi.getPacketData();
-            poLength += packetData.length;
-            po.setPacketData(packetData);
+            // Reference the packet-in data instead of copying it
+            poLength += pi.getPacketDataLength();
+            po.setPacketData(pi.getPacketDataBuffer());
         }
 
         po.setInPort(pi.getInPort());
@@ -0,0 +1,113 @@
+package net.floodlightcontroller.threadpool;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import net.floodlightcontroller.perfmon.LatencySnapshot;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The queue depth and task latencies of one executor lane.
+ */
+public class ExecutorLaneStatistics {
+    /** The lane. */
+    private final IThreadPoolService.ExecutorLane lane;
+    /** The number of threads of the lane. */
+    private final int threads;
+    /** The number of threads that currently run a task. */
+    private final int activeThreads;
+    /** The number of queued tasks, including delayed and periodic tasks. */
+    private final int queuedTasks;
+    /** The number of queued tasks that are due, but have not started yet. */
+    private final int overdueTasks;
+    /** The number of completed tasks. */
+    private final long completedTasks;
+    /** The time tasks wait behind their scheduled time. */
+    private final LatencySnapshot startDelay;
+    /** The time tasks run. */
+    private final LatencySnapshot taskTime;
+
+    /**
+     * Default constructor.
+     */
+    public ExecutorLaneStatistics(IThreadPoolService.ExecutorLane lane, int threads, int activeThreads,
+            int queuedTasks, int overdueTasks, long completedTasks, LatencySnapshot startDelay, LatencySnapshot taskTime) {
+        this.lane = lane;
+        this.threads = threads;
+        this.activeThreads = activeThreads;
+        this.queuedTasks = queuedTasks;
+        this.overdueTasks = overdueTasks;
+        this.completedTasks = completedTasks;
+        this.startDelay = startDelay;
+        this.taskTime = taskTime;
+    }
+
+    @JsonProperty("lane")
+    public String getLane() {
+        return lane.toString();
+    }
+
+    @JsonProperty("threads")
+    public int getThreads() {
+        return threads;
+    }
+
+    @JsonProperty("active-threads")
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    @JsonProperty("queued-tasks")
+    public int getQueuedTasks() {
+        return queuedTasks;
+    }
+
+    @JsonProperty("overdue-tasks")
+    public int getOverdueTasks() {
+        return overdueTasks;
+    }
+
+    @JsonProperty("completed-tasks")
+    public long getCompletedTasks() {
+        return completedTasks;
+    }
+
+    @JsonProperty("start-delay")
+    public LatencySnapshot getStartDelay() {
+        return startDelay;
+    }
+
+    @JsonProperty("task-time")
+    public LatencySnapshot getTaskTime() {
+        return taskTime;
+    }
+}
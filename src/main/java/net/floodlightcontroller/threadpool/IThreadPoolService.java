@@ -16,11 +16,38 @@
 
 package net.floodlightcontroller.threadpool;
 
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 import net.floodlightcontroller.core.module.IFloodlightService;
 
 public interface IThreadPoolService extends IFloodlightService {
+    /**
+     * Isolated executor lanes. Each lane has its own threads, such that
+     * blocking tasks of one lane do not delay the tasks of other lanes.
+     */
+    public enum ExecutorLane {
+        /** Tasks without a dedicated lane. */
+        DEFAULT("default"),
+        /** Periodic switch polling and other I/O bound tasks. */
+        POLLING("polling"),
+        /** Link discovery and topology computation. */
+        TOPOLOGY("topology"),
+        /** Cleanup and expiry tasks. */
+        HOUSEKEEPING("housekeeping");
+
+        private final String name;
+
+        private ExecutorLane(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
     /**
      * Get the master scheduled thread pool executor maintained by the
      * ThreadPool provider.  This can be used by other modules as a centralized
@@ -28,4 +55,18 @@ public interface IThreadPoolService extends IFloodlightService {
      * @return
      */
     public ScheduledExecutorService getScheduledExecutor();
+
+    /**
+     * Get the scheduled executor of an executor lane. Lanes without
+     * threads of their own fall back to the master executor.
+     * @param lane The executor lane.
+     * @return
+     */
+    public ScheduledExecutorService getScheduledExecutor(ExecutorLane lane);
+
+    /**
+     * Get the queue depth and the task latencies of all executor lanes.
+     * @return
+     */
+    public Map<ExecutorLane, ExecutorLaneStatistics> getLaneStatistics();
 }
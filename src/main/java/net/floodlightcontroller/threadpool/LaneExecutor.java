@@ -0,0 +1,110 @@
+package net.floodlightcontroller.threadpool;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.perfmon.LatencyRecorder;
+
+/**
+ * A scheduled executor of one executor lane that measures how long its
+ * tasks wait behind their scheduled time and how long they run.
+ */
+public class LaneExecutor extends ScheduledThreadPoolExecutor {
+    /** The duration of one slot of the latency histograms: 10s. */
+    protected static final long LATENCY_SLOT_NS = 10000000000L;
+
+    /** The lane this executor serves. */
+    private final IThreadPoolService.ExecutorLane lane;
+    /** The time tasks wait behind their scheduled time. */
+    private final LatencyRecorder startDelays = new LatencyRecorder(LATENCY_SLOT_NS);
+    /** The time tasks run. */
+    private final LatencyRecorder taskTimes = new LatencyRecorder(LATENCY_SLOT_NS);
+    /** The start time of the task the current thread runs. */
+    private final ThreadLocal<long[]> startTimeNs = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    /**
+     * Default constructor.
+     *
+     * @param lane The lane this executor serves.
+     * @param threads The number of threads.
+     * @param threadFactory The thread factory.
+     */
+    public LaneExecutor(IThreadPoolService.ExecutorLane lane, int threads, ThreadFactory threadFactory) {
+        super(threads, threadFactory);
+        this.lane = lane;
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        long nowNs = System.nanoTime();
+        if (r instanceof Delayed) {
+            // A negative delay is the time the task is overdue.
+            startDelays.record(Math.max(0, -((Delayed) r).getDelay(TimeUnit.NANOSECONDS)), nowNs);
+        }
+        startTimeNs.get()[0] = nowNs;
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        long nowNs = System.nanoTime();
+        taskTimes.record(nowNs - startTimeNs.get()[0], nowNs);
+        super.afterExecute(r, t);
+    }
+
+    /**
+     * Gets the statistics of this executor.
+     *
+     * @return The current statistics.
+     */
+    public ExecutorLaneStatistics getStatistics() {
+        long nowNs = System.nanoTime();
+        int overdue = 0;
+        for (Runnable r : getQueue()) {
+            if (r instanceof Delayed && ((Delayed) r).getDelay(TimeUnit.NANOSECONDS) <= 0)
+                overdue++;
+        }
+        return new ExecutorLaneStatistics(lane, getCorePoolSize(), getActiveCount(), getQueue().size(),
+                overdue, getCompletedTaskCount(),
+                startDelays.getSnapshot(nowNs, LatencyRecorder.WINDOW_SLOTS),
+                taskTimes.getSnapshot(nowNs, LatencyRecorder.WINDOW_SLOTS));
+    }
+}
@@ -20,7 +20,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.EnumMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -30,8 +30,24 @@ import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 public class ThreadPool implements IThreadPoolService, IFloodlightModule {
+    protected static Logger log = LoggerFactory.getLogger(ThreadPool.class);
+    
     protected ScheduledExecutorService executor = null;
+    /** The executors of all lanes with threads of their own. */
+    protected Map<ExecutorLane, LaneExecutor> laneExecutors;
+    /** The default number of threads per lane. */
+    protected static final Map<ExecutorLane, Integer> DEFAULT_LANE_THREADS;
+    static {
+        DEFAULT_LANE_THREADS = new EnumMap<ExecutorLane, Integer>(ExecutorLane.class);
+        DEFAULT_LANE_THREADS.put(ExecutorLane.DEFAULT, 5);
+        DEFAULT_LANE_THREADS.put(ExecutorLane.POLLING, 4);
+        DEFAULT_LANE_THREADS.put(ExecutorLane.TOPOLOGY, 2);
+        DEFAULT_LANE_THREADS.put(ExecutorLane.HOUSEKEEPING, 1);
+    }
     
     // IThreadPoolService
 
@@ -40,6 +56,22 @@ public class ThreadPool implements IThreadPoolService, IFloodlightModule {
         return executor;
     }
     
+    @Override
+    public ScheduledExecutorService getScheduledExecutor(ExecutorLane lane) {
+        LaneExecutor laneExecutor = laneExecutors.get(lane);
+        return (laneExecutor != null) ? laneExecutor : executor;
+    }
+    
+    @Override
+    public Map<ExecutorLane, ExecutorLaneStatistics> getLaneStatistics() {
+        Map<ExecutorLane, ExecutorLaneStatistics> statistics = 
+                new EnumMap<ExecutorLane, ExecutorLaneStatistics>(ExecutorLane.class);
+        for (Map.Entry<ExecutorLane, LaneExecutor> entry : laneExecutors.entrySet()) {
+            statistics.put(entry.getKey(), entry.getValue().getStatistics());
+        }
+        return statistics;
+    }
+    
     // IFloodlightModule
     
     @Override
@@ -72,17 +104,37 @@ public class ThreadPool implements IThreadPoolService, IFloodlightModule {
     @Override
     public void init(FloodlightModuleContext context)
                                  throws FloodlightModuleException {
+        Map<String, String> configOptions = context.getConfigParams(this);
         final ThreadGroup tg = new ThreadGroup("Scheduled Task Threads");
-        ThreadFactory f = new ThreadFactory() {
-            AtomicInteger id = new AtomicInteger();
-            
-            @Override
-            public Thread newThread(Runnable runnable) {
-                return new Thread(tg, runnable, 
-                                  "Scheduled-" + id.getAndIncrement());
+        laneExecutors = new EnumMap<ExecutorLane, LaneExecutor>(ExecutorLane.class);
+        for (final ExecutorLane lane : ExecutorLane.values()) {
+            int threads = DEFAULT_LANE_THREADS.get(lane);
+            String option = configOptions.get(lane.toString() + "threads");
+            try {
+                if (option != null) {
+                    threads = Integer.parseInt(option);
+                }
+            } catch (NumberFormatException e) {
+                log.warn("Error parsing the number of {} threads, using default of {}", lane, threads);
+            }
+            if (threads <= 0 && lane != ExecutorLane.DEFAULT) {
+                log.debug("Executor lane {} runs on the default lane", lane);
+                continue;
             }
-        };
-        executor = Executors.newScheduledThreadPool(5, f);
+            ThreadFactory f = new ThreadFactory() {
+                AtomicInteger id = new AtomicInteger();
+                
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    String prefix = (lane == ExecutorLane.DEFAULT) ? "Scheduled-" : "Scheduled-" + lane + "-";
+                    return new Thread(tg, runnable, 
+                                      prefix + id.getAndIncrement());
+                }
+            };
+            laneExecutors.put(lane, new LaneExecutor(lane, Math.max(1, threads), f));
+            log.debug("Executor lane {} set to {} threads", lane, threads);
+        }
+        executor = laneExecutors.get(ExecutorLane.DEFAULT);
     }
 
     @Override
@@ -0,0 +1,182 @@
+package net.floodlightcontroller.topology;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.util.IndexedMinHeap;
+
+/**
+ * Dijkstra's algorithm on a compact topology. The work arrays are kept
+ * between runs and only grow with the topology, i.e. a run does not
+ * allocate memory. An instance is not thread-safe and holds the result
+ * of its last run.
+ */
+public class CompactDijkstra {
+	/** The distance of unreachable nodes. */
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+	
+	/** The topology of the last run. */
+	private CompactTopology topology;
+	/** States whether the last run followed the edges in reverse direction. */
+	private boolean reverse;
+	/** Node id -> distance to the root. */
+	private int[] distance = new int[0];
+	/** Node id -> edge towards the root in the shortest path tree, or -1. */
+	private int[] parentEdge = new int[0];
+	/** The priority queue. */
+	private final IndexedMinHeap heap = new IndexedMinHeap(0);
+	/** Node id -> true if the node must not be traversed in the current run. May be null. */
+	private boolean[] disabledNodes;
+	/** Edge -> true if the edge must not be traversed in the current run. May be null. */
+	private boolean[] disabledEdges;
+	
+	/**
+	 * Calculates the shortest path tree of a root node.
+	 * 
+	 * @param topology The compact topology.
+	 * @param root The root node id.
+	 * @param reverse If true, the tree contains the shortest paths from all nodes to the root. Otherwise, from the root to all nodes.
+	 */
+	public void compute(CompactTopology topology, int root, boolean reverse) {
+		this.compute(topology, root, reverse, null, null);
+	}
+	
+	/**
+	 * Calculates the shortest path tree of a root node, without traversing
+	 * the disabled nodes and edges.
+	 * 
+	 * @param topology The compact topology.
+	 * @param root The root node id.
+	 * @param reverse If true, the tree contains the shortest paths from all nodes to the root. Otherwise, from the root to all nodes.
+	 * @param disabledNodes Node id -> true if the node must not be traversed. May be null.
+	 * @param disabledEdges Edge -> true if the edge must not be traversed. May be null.
+	 */
+	public void compute(CompactTopology topology, int root, boolean reverse, boolean[] disabledNodes, boolean[] disabledEdges) {
+		int nodeCount = topology.getNodeCount();
+		this.topology = topology;
+		this.reverse = reverse;
+		this.disabledNodes = disabledNodes;
+		this.disabledEdges = disabledEdges;
+		
+		if (distance.length < nodeCount) {
+			this.distance = new int[nodeCount];
+			this.parentEdge = new int[nodeCount];
+		}
+		Arrays.fill(distance, 0, nodeCount, UNREACHABLE);
+		Arrays.fill(parentEdge, 0, nodeCount, -1);
+		heap.reset(nodeCount);
+		
+		distance[root] = 0;
+		heap.insertOrDecrease(root, 0);
+		while (!heap.isEmpty()) {
+			int node = heap.poll();
+			int nodeDistance = distance[node];
+			if (reverse) {
+				for (int i = topology.getInBegin(node); i < topology.getInEnd(node); i++) {
+					int edge = topology.getInEdge(i);
+					this.relax(edge, topology.getSource(edge), nodeDistance);
+				}
+			} else {
+				for (int edge = topology.getOutBegin(node); edge < topology.getOutEnd(node); edge++) {
+					this.relax(edge, topology.getTarget(edge), nodeDistance);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Relaxes an edge.
+	 * 
+	 * @param edge The edge.
+	 * @param neighbor The node reached by the edge.
+	 * @param nodeDistance The distance of the node the edge is traversed from.
+	 */
+	private void relax(int edge, int neighbor, int nodeDistance) {
+		if ((disabledEdges != null && disabledEdges[edge]) || (disabledNodes != null && disabledNodes[neighbor]))
+			return;
+		int newDistance = nodeDistance + topology.getWeight(edge);
+		if (newDistance < distance[neighbor]) {
+			distance[neighbor] = newDistance;
+			parentEdge[neighbor] = edge;
+			heap.insertOrDecrease(neighbor, newDistance);
+		}
+	}
+	
+	/**
+	 * Gets the distance of a node to the root of the last run.
+	 * 
+	 * @param node The node id.
+	 * @return <b>int</b> The distance, or UNREACHABLE.
+	 */
+	public int getDistance(int node) {
+		return this.distance[node];
+	}
+	
+	/**
+	 * Gets the edge that connects a node to its parent in the shortest path tree of the last run.
+	 * 
+	 * @param node The node id.
+	 * @return <b>int</b> The edge, or -1 for the root and unreachable nodes.
+	 */
+	public int getParentEdge(int node) {
+		return this.parentEdge[node];
+	}
+	
+	/**
+	 * Gets the shortest path between a node and the root of the last run, in
+	 * the direction of the links. I.e. from the root to the node, or from the
+	 * node to the root if the last run was reversed.
+	 * 
+	 * @param node The node id.
+	 * @return <b>List</b> The links of the path, or null if the node is not reachable.
+	 */
+	public List<Link> getPath(int node) {
+		if (distance[node] == UNREACHABLE)
+			return null;
+		
+		LinkedList<Link> links = new LinkedList<Link>();
+		for (int edge = parentEdge[node]; edge >= 0; edge = parentEdge[node]) {
+			if (reverse) {
+				links.addLast(topology.getLink(edge));
+				node = topology.getTarget(edge);
+			} else {
+				links.addFirst(topology.getLink(edge));
+				node = topology.getSource(edge);
+			}
+		}
+		return links;
+	}
+}
@@ -0,0 +1,287 @@
+package net.floodlightcontroller.topology;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.floodlightcontroller.routing.Link;
+
+/**
+ * An immutable, compact snapshot of a topology cluster for graph algorithms.
+ * Switch DPIDs are mapped to dense node ids [0, n) in ascending DPID order.
+ * The directed links are stored in compressed sparse row (CSR) arrays: The
+ * edges are numbered by their source node, i.e. the outgoing edges of node u
+ * are [getOutBegin(u), getOutEnd(u)). An additional index lists the incoming
+ * edges of every node.
+ */
+public class CompactTopology {
+	/** The cluster this snapshot has been built from. */
+	private final Cluster cluster;
+	/** Node id -> switch DPID. */
+	private final long[] nodeIds;
+	/** Switch DPID -> node id. */
+	private final Map<Long, Integer> nodeIndex;
+	/** Node id -> first outgoing edge. outOffset[n] is the number of edges. */
+	private final int[] outOffset;
+	/** Node id -> first entry in inEdges. */
+	private final int[] inOffset;
+	/** Incoming edges, grouped by their target node. */
+	private final int[] inEdges;
+	/** Edge -> source node id. */
+	private final int[] edgeSource;
+	/** Edge -> target node id. */
+	private final int[] edgeTarget;
+	/** Edge -> weight. */
+	private final int[] edgeWeight;
+	/** Edge -> link. */
+	private final Link[] edgeLink;
+	
+	/**
+	 * Constructor. Every link has a weight of 1.
+	 * 
+	 * @param cluster The topology cluster.
+	 */
+	public CompactTopology(Cluster cluster) {
+		this(cluster, null);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param cluster The topology cluster.
+	 * @param linkCost The costs of the links. Links without costs have a weight of 1. May be null.
+	 */
+	public CompactTopology(Cluster cluster, Map<Link, Integer> linkCost) {
+		this.cluster = cluster;
+		Map<Long, Set<Link>> links = cluster.getLinks();
+		
+		// Map the DPIDs to dense node ids.
+		int nodeCount = links.size();
+		this.nodeIds = new long[nodeCount];
+		int i = 0;
+		for (Long node : links.keySet()) {
+			nodeIds[i++] = node;
+		}
+		Arrays.sort(nodeIds);
+		this.nodeIndex = new HashMap<Long, Integer>(2 * nodeCount);
+		for (i = 0; i < nodeCount; i++) {
+			nodeIndex.put(nodeIds[i], i);
+		}
+		
+		// Count the outgoing edges of every node. Every link is contained in the link set of its source and its destination.
+		this.outOffset = new int[nodeCount + 1];
+		for (i = 0; i < nodeCount; i++) {
+			for (Link link : links.get(nodeIds[i])) {
+				if (link.getSrc() == nodeIds[i] && nodeIndex.containsKey(link.getDst())) {
+					outOffset[i + 1]++;
+				}
+			}
+		}
+		for (i = 0; i < nodeCount; i++) {
+			outOffset[i + 1] += outOffset[i];
+		}
+		
+		// Fill the edges.
+		int edgeCount = outOffset[nodeCount];
+		this.edgeSource = new int[edgeCount];
+		this.edgeTarget = new int[edgeCount];
+		this.edgeWeight = new int[edgeCount];
+		this.edgeLink = new Link[edgeCount];
+		int[] inDegree = new int[nodeCount + 1];
+		int edge = 0;
+		for (i = 0; i < nodeCount; i++) {
+			for (Link link : links.get(nodeIds[i])) {
+				if (link.getSrc() == nodeIds[i] && nodeIndex.containsKey(link.getDst())) {
+					Integer cost = (linkCost != null) ? linkCost.get(link) : null;
+					edgeSource[edge] = i;
+					edgeTarget[edge] = nodeIndex.get(link.getDst());
+					edgeWeight[edge] = (cost != null) ? cost : 1;
+					edgeLink[edge] = link;
+					inDegree[edgeTarget[edge] + 1]++;
+					edge++;
+				}
+			}
+		}
+		
+		// Build the index of incoming edges.
+		this.inOffset = new int[nodeCount + 1];
+		for (i = 0; i < nodeCount; i++) {
+			inOffset[i + 1] = inOffset[i] + inDegree[i + 1];
+		}
+		this.inEdges = new int[edgeCount];
+		int[] next = Arrays.copyOf(inOffset, nodeCount);
+		for (edge = 0; edge < edgeCount; edge++) {
+			inEdges[next[edgeTarget[edge]]++] = edge;
+		}
+	}
+	
+	/**
+	 * Getter for the cluster this snapshot has been built from.
+	 * 
+	 * @return <b>Cluster</b> The topology cluster.
+	 */
+	public Cluster getCluster() {
+		return this.cluster;
+	}
+	
+	/**
+	 * Gets the number of nodes.
+	 * 
+	 * @return <b>int</b> The number of nodes.
+	 */
+	public int getNodeCount() {
+		return this.nodeIds.length;
+	}
+	
+	/**
+	 * Gets the number of directed edges.
+	 * 
+	 * @return <b>int</b> The number of edges.
+	 */
+	public int getEdgeCount() {
+		return this.edgeLink.length;
+	}
+	
+	/**
+	 * Gets the dense node id of a switch.
+	 * 
+	 * @param switchId The switch DPID.
+	 * @return <b>int</b> The node id, or -1 if the switch is not part of the topology.
+	 */
+	public int getNodeIndex(long switchId) {
+		Integer index = this.nodeIndex.get(switchId);
+		return (index != null) ? index : -1;
+	}
+	
+	/**
+	 * Gets the switch DPID of a node.
+	 * 
+	 * @param node The node id.
+	 * @return <b>long</b> The switch DPID.
+	 */
+	public long getNodeId(int node) {
+		return this.nodeIds[node];
+	}
+	
+	/**
+	 * Gets the first outgoing edge of a node.
+	 * 
+	 * @param node The node id.
+	 * @return <b>int</b> The first outgoing edge.
+	 */
+	public int getOutBegin(int node) {
+		return this.outOffset[node];
+	}
+	
+	/**
+	 * Gets the end, i.e. the last outgoing edge + 1, of the outgoing edges of a node.
+	 * 
+	 * @param node The node id.
+	 * @return <b>int</b> The end of the outgoing edges.
+	 */
+	public int getOutEnd(int node) {
+		return this.outOffset[node + 1];
+	}
+	
+	/**
+	 * Gets the first position of a node in the index of incoming edges.
+	 * 
+	 * @param node The node id.
+	 * @return <b>int</b> The first position in the index of incoming edges.
+	 */
+	public int getInBegin(int node) {
+		return this.inOffset[node];
+	}
+	
+	/**
+	 * Gets the end of a node in the index of incoming edges.
+	 * 
+	 * @param node The node id.
+	 * @return <b>int</b> The end position in the index of incoming edges.
+	 */
+	public int getInEnd(int node) {
+		return this.inOffset[node + 1];
+	}
+	
+	/**
+	 * Gets an incoming edge from the index of incoming edges.
+	 * 
+	 * @param position The position in the index of incoming edges.
+	 * @return <b>int</b> The edge.
+	 */
+	public int getInEdge(int position) {
+		return this.inEdges[position];
+	}
+	
+	/**
+	 * Gets the source node of an edge.
+	 * 
+	 * @param edge The edge.
+	 * @return <b>int</b> The source node id.
+	 */
+	public int getSource(int edge) {
+		return this.edgeSource[edge];
+	}
+	
+	/**
+	 * Gets the target node of an edge.
+	 * 
+	 * @param edge The edge.
+	 * @return <b>int</b> The target node id.
+	 */
+	public int getTarget(int edge) {
+		return this.edgeTarget[edge];
+	}
+	
+	/**
+	 * Gets the weight of an edge.
+	 * 
+	 * @param edge The edge.
+	 * @return <b>int</b> The edge weight.
+	 */
+	public int getWeight(int edge) {
+		return this.edgeWeight[edge];
+	}
+	
+	/**
+	 * Gets the link of an edge.
+	 * 
+	 * @param edge The edge.
+	 * @return <b>Link</b> The link.
+	 */
+	public Link getLink(int edge) {
+		return this.edgeLink[edge];
+	}
+}
@@ -32,6 +32,7 @@ package net.floodlightcontroller.topology;
 */
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -65,6 +66,8 @@ public class OlimpsTopologyInstance extends TopologyInstance {
     protected Map<Long, OlimpsCluster> switchOfClusterMap;
     /** Data structure contains all links, i.e. within an OpenFlow island, between OpenFlow islands, and tunnel links. */
     protected Map<NodePortTuple, Set<Link>> allSwitchPortLinks;
+    /** Whether the spanning trees of the whole topology have been repaired from the previous instance. */
+    protected boolean topologyTreesIncrementallyUpdated;
     
 //    /**
 //     * Constructor. Instantiates all class attributes.
@@ -280,31 +283,52 @@ public class OlimpsTopologyInstance extends TopologyInstance {
     }
     
     /**
-     * Sets the link weights and calculates a spanning tree
-     * using Dijkstra's algorithm.
+     * Calculates the spanning trees of all nodes using Dijkstra's
+     * algorithm, or repairs the trees of the previous instance if
+     * only a few links changed.
      */
     protected void calculateShortestPathTree() {
-        topologyDestinationRootedTrees.clear();
-
-        Map<Link, Integer> linkCost = new HashMap<Link, Integer>();
-        int tunnel_weight = switchPorts.size() + 1;
-
-        // calculate and set link costs.
-        for(NodePortTuple npt: tunnelPorts) {
-            if (switchPortLinks.get(npt) == null) 
-            	continue;
-            for(Link link: switchPortLinks.get(npt)) {
-                if (link == null) 
-                	continue;
-                linkCost.put(link, tunnel_weight);
-            }
-        }
-
-        // calculate the spanning tree using dijkstra's algorithm.
-        for (Long node : cluster.getLinks().keySet()) {
-        	BroadcastTree tree = dijkstra(cluster, node, linkCost, true);
-        	topologyDestinationRootedTrees.put(node, tree);
-        }
+    	// the link costs have been set by calculateShortestPathTreeInClusters.
+    	Map<Long, BroadcastTree> trees = null;
+    	if (previousInstance instanceof OlimpsTopologyInstance) {
+    		OlimpsTopologyInstance previous = (OlimpsTopologyInstance) previousInstance;
+    		// the spanning tree is derived from a single tree, thus there are no routes to retain.
+    		trees = updateShortestPathTrees(Collections.singleton(cluster), Collections.singleton(previous.cluster), 
+    				previous.topologyDestinationRootedTrees, previous.linkCost, new HashMap<Long, Set<Long>>());
+    	}
+    	
+    	if (trees == null) {
+    		// calculate the spanning trees of all nodes in parallel using dijkstra's algorithm.
+    		trees = ShortestPathTreeCalculator.calculate(Collections.singleton(cluster), linkCost);
+    	} else {
+    		topologyTreesIncrementallyUpdated = true;
+    		if (verifyIncrementalUpdate) {
+    			Map<Long, BroadcastTree> fullTrees = ShortestPathTreeCalculator.calculate(Collections.singleton(cluster), linkCost);
+    			if (!isConsistent(trees, fullTrees))
+    				trees = fullTrees;
+    		}
+    	}
+    	topologyDestinationRootedTrees = trees;
+    }
+    
+    /**
+     * Checks whether the spanning trees of the whole topology have been
+     * repaired from the previous instance.
+     * 
+     * @return <b>true</b> iff the spanning trees of the whole topology have been repaired.
+     */
+    public boolean isTopologyTreesIncrementallyUpdated() {
+    	return topologyTreesIncrementallyUpdated;
+    }
+    
+    /**
+     * Checks whether the instance has been updated incrementally, i.e.
+     * both the per-cluster trees and the spanning trees of the whole
+     * topology have been repaired from the previous instance.
+     */
+    @Override
+    public boolean isIncrementallyUpdated() {
+    	return super.isIncrementallyUpdated() && topologyTreesIncrementallyUpdated;
     }
     
     /**
@@ -61,9 +61,9 @@ import net.floodlightcontroller.topology.NodePortTuple;
  */
 public class OlimpsTopologyManager extends TopologyManager implements IOlimpsTopologyService {
 	/** The current multipath topology instance. */
-    protected OlimpsTopologyInstance currentInstance;
+    protected volatile OlimpsTopologyInstance currentInstance;
     /** The current multipath topology instance without tunnels. */
-    protected OlimpsTopologyInstance currentInstanceWithoutTunnels;
+    protected volatile OlimpsTopologyInstance currentInstanceWithoutTunnels;
     
     /**
      * Constructor, only calls the constructor of the parent class.
@@ -125,7 +125,7 @@ public class OlimpsTopologyManager extends TopologyManager implements IOlimpsTop
                 portBroadcastDomainLinks, 
                 tunnelPorts);
         
-        nt.compute();
+        computeInstance(nt, currentInstance);
         // We set the instances with and without tunnels to be identical.
         // If needed, we may compute them differently.
         currentInstance = nt;
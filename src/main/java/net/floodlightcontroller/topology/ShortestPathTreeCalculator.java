@@ -0,0 +1,177 @@
+package net.floodlightcontroller.topology;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Link;
+
+/**
+ * Calculates the destination rooted shortest path trees of all nodes of a
+ * set of clusters. Every cluster is converted into a compact topology once,
+ * and the per-root Dijkstra runs are split into chunks of roots that run in
+ * parallel on a shared fork-join pool. Each chunk reuses one CompactDijkstra,
+ * i.e. the searches themselves run on primitive arrays; only the resulting
+ * broadcast trees are boxed.
+ */
+public class ShortestPathTreeCalculator {
+	/** The number of roots a task calculates without splitting any further. */
+	protected static final int ROOTS_PER_TASK = 16;
+	
+	/** The pool shared by all topology instances. Its worker threads are daemon threads. */
+	private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+			new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+				private final AtomicInteger threadCount = new AtomicInteger();
+				
+				@Override
+				public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+					ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+					thread.setName("ShortestPathTree-" + threadCount.incrementAndGet());
+					return thread;
+				}
+			}, null, false);
+	
+	/**
+	 * Calculates the trees of a range of roots of one compact topology.
+	 */
+	protected static class TreeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		/** The compact topology. */
+		private final CompactTopology topology;
+		/** Root node id -> tree. Every task writes a distinct range. */
+		private final BroadcastTree[] trees;
+		/** The first root node id. */
+		private final int begin;
+		/** The last root node id + 1. */
+		private final int end;
+		
+		protected TreeTask(CompactTopology topology, BroadcastTree[] trees, int begin, int end) {
+			this.topology = topology;
+			this.trees = trees;
+			this.begin = begin;
+			this.end = end;
+		}
+		
+		@Override
+		protected void compute() {
+			if (end - begin > ROOTS_PER_TASK) {
+				int middle = (begin + end) >>> 1;
+				invokeAll(new TreeTask(topology, trees, begin, middle), new TreeTask(topology, trees, middle, end));
+				return;
+			}
+			CompactDijkstra dijkstra = new CompactDijkstra();
+			for (int root = begin; root < end; root++) {
+				dijkstra.compute(topology, root, true);
+				trees[root] = toBroadcastTree(topology, dijkstra);
+			}
+		}
+	}
+	
+	/**
+	 * Calculates the destination rooted shortest path trees of all nodes in the given clusters.
+	 * 
+	 * @param clusters The clusters.
+	 * @param linkCost The costs of the links. Links without costs have a weight of 1. May be null.
+	 * @return <b>Map</b> Root switch DPID -> tree. The map is new and not shared.
+	 */
+	public static Map<Long, BroadcastTree> calculate(Collection<? extends Cluster> clusters, Map<Link, Integer> linkCost) {
+		List<CompactTopology> topologies = new ArrayList<CompactTopology>(clusters.size());
+		List<BroadcastTree[]> results = new ArrayList<BroadcastTree[]>(clusters.size());
+		final List<TreeTask> tasks = new ArrayList<TreeTask>(clusters.size());
+		int nodeCount = 0;
+		for (Cluster cluster : clusters) {
+			CompactTopology topology = new CompactTopology(cluster, linkCost);
+			BroadcastTree[] trees = new BroadcastTree[topology.getNodeCount()];
+			topologies.add(topology);
+			results.add(trees);
+			tasks.add(new TreeTask(topology, trees, 0, trees.length));
+			nodeCount += trees.length;
+		}
+		
+		if (nodeCount <= ROOTS_PER_TASK) {
+			// Not worth a hand-off to the pool.
+			for (TreeTask task : tasks) {
+				task.compute();
+			}
+		} else {
+			pool.invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected void compute() {
+					invokeAll(tasks);
+				}
+			});
+		}
+		
+		Map<Long, BroadcastTree> destinationRootedTrees = new HashMap<Long, BroadcastTree>(2 * nodeCount);
+		for (int i = 0; i < topologies.size(); i++) {
+			CompactTopology topology = topologies.get(i);
+			BroadcastTree[] trees = results.get(i);
+			for (int root = 0; root < trees.length; root++) {
+				destinationRootedTrees.put(topology.getNodeId(root), trees[root]);
+			}
+		}
+		return destinationRootedTrees;
+	}
+	
+	/**
+	 * Converts the result of the last (reverse) run of a Dijkstra into a
+	 * broadcast tree. Unreachable nodes have no tree link and a cost of
+	 * TopologyInstance.MAX_PATH_WEIGHT.
+	 * 
+	 * @param topology The compact topology.
+	 * @param dijkstra The Dijkstra engine.
+	 * @return <b>BroadcastTree</b> The tree.
+	 */
+	protected static BroadcastTree toBroadcastTree(CompactTopology topology, CompactDijkstra dijkstra) {
+		int nodeCount = topology.getNodeCount();
+		HashMap<Long, Link> links = new HashMap<Long, Link>(2 * nodeCount);
+		HashMap<Long, Integer> costs = new HashMap<Long, Integer>(2 * nodeCount);
+		for (int node = 0; node < nodeCount; node++) {
+			int edge = dijkstra.getParentEdge(node);
+			int distance = dijkstra.getDistance(node);
+			links.put(topology.getNodeId(node), (edge >= 0) ? topology.getLink(edge) : null);
+			costs.put(topology.getNodeId(node), (distance == CompactDijkstra.UNREACHABLE) ? TopologyInstance.MAX_PATH_WEIGHT : distance);
+		}
+		return new BroadcastTree(links, costs);
+	}
+}
@@ -0,0 +1,264 @@
+package net.floodlightcontroller.topology;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Link;
+
+/**
+ * Repairs destination rooted shortest path trees after a few links of a
+ * cluster have been removed or added, instead of recalculating them.
+ * 
+ * Only nodes whose tree path contains a removed link, i.e. the subtrees
+ * below the removed tree links, may get longer paths. These nodes are reset
+ * to unreachable. Then, their links to the rest of the tree and the added
+ * links are relaxed, and every node whose path got shorter propagates the
+ * improvement along its incoming links like a Dijkstra. Nodes outside the
+ * reset subtrees keep their path unless a shorter one is found.
+ * 
+ * The trees of a previous topology instance are never modified. A tree that
+ * needs to be repaired is copied first; unaffected trees are returned as is.
+ * An instance is not thread-safe.
+ */
+public class ShortestPathTreeUpdater {
+	/** The maximum number of changed (directed) links that are repaired incrementally. More changes should cause a full recalculation. */
+	public static final int MAX_CHANGED_LINKS = 32;
+	
+	/** The cluster after the links have changed. */
+	private final Cluster cluster;
+	/** The links that have been removed from the cluster. */
+	private final Collection<Link> removedLinks;
+	/** The links that have been added to the cluster. */
+	private final Collection<Link> addedLinks;
+	/** The costs of the links. Links without costs have a weight of 1. May be null. */
+	private final Map<Link, Integer> linkCost;
+	/** The nodes whose tree link has changed in the last update. */
+	private Set<Long> changedNodes;
+	
+	/**
+	 * A node and its distance to the root in the priority queue.
+	 */
+	private static class NodeDistance implements Comparable<NodeDistance> {
+		final long node;
+		final int distance;
+		
+		NodeDistance(long node, int distance) {
+			this.node = node;
+			this.distance = distance;
+		}
+		
+		@Override
+		public int compareTo(NodeDistance other) {
+			return (this.distance < other.distance) ? -1 : ((this.distance == other.distance) ? 0 : 1);
+		}
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param cluster The cluster after the links have changed.
+	 * @param removedLinks The links that have been removed from the cluster.
+	 * @param addedLinks The links that have been added to the cluster.
+	 * @param linkCost The costs of the links. Links without costs have a weight of 1. May be null.
+	 */
+	public ShortestPathTreeUpdater(Cluster cluster, Collection<Link> removedLinks, Collection<Link> addedLinks, Map<Link, Integer> linkCost) {
+		this.cluster = cluster;
+		this.removedLinks = removedLinks;
+		this.addedLinks = addedLinks;
+		this.linkCost = linkCost;
+	}
+	
+	/**
+	 * Repairs the destination rooted tree of a root node.
+	 * 
+	 * @param root The root node.
+	 * @param previous The tree before the links have changed. It is not modified.
+	 * @return <b>BroadcastTree</b> The previous tree if the changes do not affect it, or a repaired copy.
+	 */
+	public BroadcastTree update(long root, BroadcastTree previous) {
+		changedNodes = new HashSet<Long>();
+		
+		Set<Long> detached = new HashSet<Long>();
+		for (Link link : removedLinks) {
+			if (link.equals(previous.getTreeLink(link.getSrc())))
+				detached.add(link.getSrc());
+		}
+		boolean improved = false;
+		for (Link link : addedLinks) {
+			if (this.improves(previous, link)) {
+				improved = true;
+				break;
+			}
+		}
+		if (detached.isEmpty() && !improved)
+			return previous;
+		
+		BroadcastTree tree = new BroadcastTree(new HashMap<Long, Link>(previous.getLinks()), new HashMap<Long, Integer>(previous.getCosts()));
+		Set<Long> touched = new HashSet<Long>();
+		PriorityQueue<NodeDistance> nodeq = new PriorityQueue<NodeDistance>();
+		
+		// Reset the subtrees below the removed tree links and connect them to the rest of the tree.
+		Set<Long> affected = this.getSubtrees(tree, detached);
+		for (long node : affected) {
+			tree.getCosts().put(node, TopologyInstance.MAX_PATH_WEIGHT);
+			tree.getLinks().put(node, null);
+		}
+		touched.addAll(affected);
+		for (long node : affected) {
+			for (Link link : this.getLinks(node)) {
+				if (link.getSrc() == node && !affected.contains(link.getDst()))
+					this.relax(tree, link, nodeq, touched);
+			}
+		}
+		
+		// Apply the added links.
+		for (Link link : addedLinks) {
+			this.relax(tree, link, nodeq, touched);
+		}
+		
+		// Propagate the shorter paths along the incoming links.
+		while (!nodeq.isEmpty()) {
+			NodeDistance nd = nodeq.poll();
+			if (nd.distance != tree.getCost(nd.node))
+				continue;
+			for (Link link : this.getLinks(nd.node)) {
+				if (link.getDst() == nd.node)
+					this.relax(tree, link, nodeq, touched);
+			}
+		}
+		
+		for (long node : touched) {
+			Link link = tree.getTreeLink(node);
+			Link previousLink = previous.getTreeLink(node);
+			if ((link == null) ? previousLink != null : !link.equals(previousLink))
+				changedNodes.add(node);
+		}
+		return tree;
+	}
+	
+	/**
+	 * Gets the nodes whose tree link has changed in the last update.
+	 * 
+	 * @return <b>Set</b> The nodes whose tree link has changed.
+	 */
+	public Set<Long> getChangedNodes() {
+		return this.changedNodes;
+	}
+	
+	/**
+	 * Collects the subtrees of a tree below the given nodes, i.e. the nodes
+	 * whose tree path leads through one of them.
+	 * 
+	 * @param tree The tree.
+	 * @param nodes The roots of the subtrees.
+	 * @return <b>Set</b> The nodes of the subtrees, including the given nodes.
+	 */
+	private Set<Long> getSubtrees(BroadcastTree tree, Set<Long> nodes) {
+		Set<Long> subtrees = new HashSet<Long>(nodes);
+		ArrayDeque<Long> queue = new ArrayDeque<Long>(nodes);
+		while (!queue.isEmpty()) {
+			long node = queue.poll();
+			for (Link link : this.getLinks(node)) {
+				if (link.getDst() == node && link.equals(tree.getTreeLink(link.getSrc())) && subtrees.add(link.getSrc()))
+					queue.add(link.getSrc());
+			}
+		}
+		return subtrees;
+	}
+	
+	/**
+	 * Relaxes a link, i.e. makes it the tree link of its source node if it shortens the path of the source node.
+	 * 
+	 * @param tree The tree to repair.
+	 * @param link The link.
+	 * @param nodeq The priority queue the source node is added to if its path has been shortened.
+	 * @param touched The nodes whose tree link has been set.
+	 */
+	private void relax(BroadcastTree tree, Link link, PriorityQueue<NodeDistance> nodeq, Set<Long> touched) {
+		if (!this.improves(tree, link))
+			return;
+		int distance = this.getCost(tree, link.getDst()) + this.getWeight(link);
+		tree.getCosts().put(link.getSrc(), distance);
+		tree.getLinks().put(link.getSrc(), link);
+		nodeq.add(new NodeDistance(link.getSrc(), distance));
+		touched.add(link.getSrc());
+	}
+	
+	/**
+	 * Checks whether a link shortens the path of its source node.
+	 * 
+	 * @param tree The tree.
+	 * @param link The link.
+	 * @return <b>boolean</b> True if the link leads to a shorter path.
+	 */
+	private boolean improves(BroadcastTree tree, Link link) {
+		if (link.getSrc() == link.getDst())
+			return false;
+		int dstCost = this.getCost(tree, link.getDst());
+		if (dstCost >= TopologyInstance.MAX_PATH_WEIGHT)
+			return false;
+		return dstCost + this.getWeight(link) < this.getCost(tree, link.getSrc());
+	}
+	
+	/**
+	 * Gets the cost of a node in a tree. Unknown nodes are unreachable.
+	 */
+	private int getCost(BroadcastTree tree, long node) {
+		Integer cost = tree.getCosts().get(node);
+		return (cost != null) ? cost : TopologyInstance.MAX_PATH_WEIGHT;
+	}
+	
+	/**
+	 * Gets the weight of a link.
+	 */
+	private int getWeight(Link link) {
+		Integer cost = (linkCost != null) ? linkCost.get(link) : null;
+		return (cost != null) ? cost : 1;
+	}
+	
+	/**
+	 * Gets the links of a node in the cluster.
+	 */
+	private Set<Link> getLinks(long node) {
+		Set<Link> links = cluster.getLinks().get(node);
+		return (links != null) ? links : Collections.<Link>emptySet();
+	}
+}
@@ -17,6 +17,7 @@
 package net.floodlightcontroller.topology;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -26,6 +27,7 @@ import java.util.PriorityQueue;
 import java.util.Set;
 
 
+import org.openflow.util.HexString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -80,6 +82,20 @@ public class TopologyInstance {
     protected Map<Long, BroadcastTree> destinationRootedTrees;
     protected Map<Long, Set<NodePortTuple>> clusterBroadcastNodePorts;
     protected Map<Long, BroadcastTree> clusterBroadcastTrees;
+    // Link costs used for the destination rooted trees
+    protected Map<Link, Integer> linkCost;
+
+    /**
+     * The instance whose trees are repaired instead of being rebuilt.  Only
+     * set while computing the instance, so that instances are not chained.
+     */
+    protected TopologyInstance previousInstance;
+    /** Whether repaired trees are compared with a full rebuild. */
+    protected boolean verifyIncrementalUpdate;
+    /** Whether the trees have been repaired from the previous instance. */
+    protected boolean incrementallyUpdated;
+    /** Whether repaired trees differed from a full rebuild. */
+    protected boolean consistencyCheckFailed;
 
     protected class PathCacheLoader extends CacheLoader<RouteId, Route> {
         TopologyInstance ti;
@@ -190,6 +206,32 @@ public class TopologyInstance {
         printTopology();
     }
 
+    /**
+     * Compute the topology.  If only a few links changed compared to the
+     * previous instance, and the clusters and link costs are the same, the
+     * shortest path trees of the previous instance are repaired instead of
+     * rebuilt, and cached routes that did not change are kept.
+     * @param previous the previous instance, may be null
+     * @param verify whether to check repaired trees against a full rebuild
+     */
+    public void compute(TopologyInstance previous, boolean verify) {
+        this.previousInstance = previous;
+        this.verifyIncrementalUpdate = verify;
+        try {
+            compute();
+        } finally {
+            this.previousInstance = null;
+        }
+    }
+
+    public boolean isIncrementallyUpdated() {
+        return incrementallyUpdated;
+    }
+
+    public boolean isConsistencyCheckFailed() {
+        return consistencyCheckFailed;
+    }
+
     public void printTopology() {
         if (log.isTraceEnabled()) {
             log.trace("-----------------------------------------------");
@@ -540,9 +582,8 @@ public class TopologyInstance {
 
     protected void calculateShortestPathTreeInClusters() {
         pathcache.invalidateAll();
-        destinationRootedTrees.clear();
 
-        Map<Link, Integer> linkCost = new HashMap<Link, Integer>();
+        linkCost = new HashMap<Link, Integer>();
         int tunnel_weight = switchPorts.size() + 1;
 
         for(NodePortTuple npt: tunnelPorts) {
@@ -553,11 +594,173 @@ public class TopologyInstance {
             }
         }
 
-        for(Cluster c: clusters) {
-            for (Long node : c.links.keySet()) {
-                BroadcastTree tree = dijkstra(c, node, linkCost, true);
-                destinationRootedTrees.put(node, tree);
+        Map<Long, Set<Long>> changedNodes = null;
+        Map<Long, BroadcastTree> trees = null;
+        if (previousInstance != null) {
+            changedNodes = new HashMap<Long, Set<Long>>();
+            trees = updateShortestPathTrees(clusters,
+                                            previousInstance.clusters,
+                                            previousInstance.destinationRootedTrees,
+                                            previousInstance.linkCost,
+                                            changedNodes);
+        }
+
+        if (trees == null) {
+            // The trees of all roots are computed in parallel and the
+            // resulting map replaces the previous one as a whole.
+            trees = ShortestPathTreeCalculator.calculate(clusters, linkCost);
+        } else {
+            incrementallyUpdated = true;
+            if (verifyIncrementalUpdate) {
+                Map<Long, BroadcastTree> fullTrees =
+                        ShortestPathTreeCalculator.calculate(clusters, linkCost);
+                if (!isConsistent(trees, fullTrees)) {
+                    trees = fullTrees;
+                    changedNodes = null;
+                }
+            }
+        }
+        destinationRootedTrees = trees;
+
+        if (incrementallyUpdated && changedNodes != null)
+            retainRoutes(previousInstance, changedNodes);
+    }
+
+    /**
+     * Repair the destination rooted trees of a previous instance.  This is
+     * only done if every cluster has the same switches as a cluster of the
+     * previous instance, the link costs are the same, and at most
+     * {@link ShortestPathTreeUpdater#MAX_CHANGED_LINKS} links changed.
+     * @param newClusters the clusters of this instance
+     * @param oldClusters the clusters of the previous instance
+     * @param oldTrees the trees of the previous instance, which are not modified
+     * @param oldLinkCost the link costs of the previous instance
+     * @param changedNodes filled with the nodes whose tree link changed, by
+     *        the root of every tree that has been repaired
+     * @return the trees of this instance, or null if they must be rebuilt
+     */
+    protected Map<Long, BroadcastTree>
+            updateShortestPathTrees(Collection<? extends Cluster> newClusters,
+                                    Collection<? extends Cluster> oldClusters,
+                                    Map<Long, BroadcastTree> oldTrees,
+                                    Map<Link, Integer> oldLinkCost,
+                                    Map<Long, Set<Long>> changedNodes) {
+        if (oldTrees == null || oldLinkCost == null ||
+                !oldLinkCost.equals(linkCost))
+            return null;
+        if (oldClusters == null || oldClusters.size() != newClusters.size())
+            return null;
+
+        Map<Long, Cluster> oldClusterMap = new HashMap<Long, Cluster>();
+        for (Cluster c: oldClusters) {
+            oldClusterMap.put(c.getId(), c);
+        }
+
+        // Find the links that changed within each cluster.
+        Map<Cluster, Set<Link>> removedLinks = new HashMap<Cluster, Set<Link>>();
+        Map<Cluster, Set<Link>> addedLinks = new HashMap<Cluster, Set<Link>>();
+        int changes = 0;
+        for (Cluster c: newClusters) {
+            Cluster old = oldClusterMap.get(c.getId());
+            if (old == null || !old.getNodes().equals(c.getNodes()))
+                return null;
+            Set<Link> oldLinks = getClusterLinks(old);
+            Set<Link> newLinks = getClusterLinks(c);
+            Set<Link> removed = new HashSet<Link>(oldLinks);
+            removed.removeAll(newLinks);
+            newLinks.removeAll(oldLinks);
+            changes += removed.size() + newLinks.size();
+            if (changes > ShortestPathTreeUpdater.MAX_CHANGED_LINKS)
+                return null;
+            removedLinks.put(c, removed);
+            addedLinks.put(c, newLinks);
+        }
+
+        Map<Long, BroadcastTree> trees = new HashMap<Long, BroadcastTree>();
+        for (Cluster c: newClusters) {
+            ShortestPathTreeUpdater updater = null;
+            if (!removedLinks.get(c).isEmpty() || !addedLinks.get(c).isEmpty())
+                updater = new ShortestPathTreeUpdater(c, removedLinks.get(c),
+                                                      addedLinks.get(c),
+                                                      linkCost);
+            for (Long node: c.getNodes()) {
+                BroadcastTree tree = oldTrees.get(node);
+                if (tree == null) return null;
+                if (updater != null) {
+                    BroadcastTree repaired = updater.update(node, tree);
+                    if (repaired != tree) {
+                        changedNodes.put(node, updater.getChangedNodes());
+                        tree = repaired;
+                    }
+                }
+                trees.put(node, tree);
+            }
+        }
+        return trees;
+    }
+
+    /**
+     * Get the links of a cluster.  Every link is contained in the link sets
+     * of its source and its destination, so only the source side is used.
+     */
+    protected Set<Link> getClusterLinks(Cluster c) {
+        Set<Link> result = new HashSet<Link>();
+        for (Map.Entry<Long, Set<Link>> entry: c.getLinks().entrySet()) {
+            for (Link link: entry.getValue()) {
+                if (link.getSrc() == entry.getKey()) result.add(link);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check that repaired trees have the same costs as rebuilt trees.
+     */
+    @LogMessageDoc(level="ERROR",
+            message="Incrementally updated shortest path tree of {switch} " +
+                    "is inconsistent with a full rebuild",
+            explanation="The repaired shortest path trees differ from the " +
+                    "recomputed ones, which are used instead",
+            recommendation=LogMessageDoc.REPORT_CONTROLLER_BUG)
+    protected boolean isConsistent(Map<Long, BroadcastTree> trees,
+                                   Map<Long, BroadcastTree> fullTrees) {
+        for (Map.Entry<Long, BroadcastTree> entry: fullTrees.entrySet()) {
+            BroadcastTree tree = trees.get(entry.getKey());
+            if (tree == null ||
+                    !tree.getCosts().equals(entry.getValue().getCosts())) {
+                log.error("Incrementally updated shortest path tree of {} " +
+                          "is inconsistent with a full rebuild",
+                          HexString.toHexString(entry.getKey()));
+                consistencyCheckFailed = true;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy the cached routes of the previous instance that do not cross a
+     * switch whose tree link changed.  Such routes are the same in this
+     * instance.
+     * @param previous the previous instance
+     * @param changedNodes the nodes whose tree link changed, by tree root
+     */
+    protected void retainRoutes(TopologyInstance previous,
+                                Map<Long, Set<Long>> changedNodes) {
+        if (previous.pathcache == null) return;
+        for (Map.Entry<RouteId, Route> entry:
+                previous.pathcache.asMap().entrySet()) {
+            Set<Long> changed = changedNodes.get(entry.getKey().getDst());
+            boolean valid = true;
+            if (changed != null) {
+                for (NodePortTuple npt: entry.getValue().getPath()) {
+                    if (changed.contains(npt.getNodeId())) {
+                        valid = false;
+                        break;
+                    }
+                }
             }
+            if (valid) pathcache.put(entry.getKey(), entry.getValue());
         }
     }
 
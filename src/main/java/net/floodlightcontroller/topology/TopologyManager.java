@@ -69,6 +69,7 @@ import net.floodlightcontroller.routing.IRoutingService;
 import net.floodlightcontroller.routing.Link;
 import net.floodlightcontroller.routing.Route;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.threadpool.IThreadPoolService.ExecutorLane;
 import net.floodlightcontroller.topology.web.TopologyWebRoutable;
 
 import org.openflow.protocol.OFMessage;
@@ -141,8 +142,8 @@ public class TopologyManager implements
     protected BlockingQueue<LDUpdate> ldUpdates;
 
     // These must be accessed using getCurrentInstance(), not directly
-    protected TopologyInstance currentInstance;
-    protected TopologyInstance currentInstanceWithoutTunnels;
+    protected volatile TopologyInstance currentInstance;
+    protected volatile TopologyInstance currentInstanceWithoutTunnels;
 
     protected SingletonTask newInstanceTask;
     private Date lastUpdateTime;
@@ -164,6 +165,18 @@ public class TopologyManager implements
 
     protected int TOPOLOGY_COMPUTE_INTERVAL_MS = 500;
 
+    /**
+     * Whether new instances repair the shortest path trees of the current
+     * instance instead of rebuilding them, if only a few links changed.
+     */
+    protected boolean incrementalUpdates = true;
+    /**
+     * Every n-th incrementally updated instance is checked against a full
+     * rebuild.  0 disables the check.
+     */
+    protected int consistencyCheckInterval = 100;
+    private int incrementalInstancesSinceCheck;
+
     private IHAListener haListener;
 
     /**
@@ -171,6 +184,9 @@ public class TopologyManager implements
      */
     protected static final String PACKAGE = TopologyManager.class.getPackage().getName();
     protected IDebugCounter ctrIncoming;
+    protected IDebugCounter ctrIncrementalInstances;
+    protected IDebugCounter ctrFullInstances;
+    protected IDebugCounter ctrConsistencyCheckFailures;
 
     /**
      * Debug Events
@@ -855,6 +871,25 @@ public class TopologyManager implements
         topologyAware = new ArrayList<ITopologyListener>();
         ldUpdates = new LinkedBlockingQueue<LDUpdate>();
         haListener = new HAListenerDelegate();
+
+        // read our config options
+        Map<String, String> configOptions = context.getConfigParams(this);
+        String incremental = configOptions.get("incrementalupdates");
+        if (incremental != null) {
+            incrementalUpdates = Boolean.parseBoolean(incremental);
+        }
+        try {
+            String interval = configOptions.get("consistencycheckinterval");
+            if (interval != null) {
+                consistencyCheckInterval = Integer.parseInt(interval);
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Error parsing consistency check interval, using " +
+                     "default of {}", consistencyCheckInterval);
+        }
+        log.debug("Incremental topology updates {}, consistency check " +
+                  "interval {}", incrementalUpdates, consistencyCheckInterval);
+
         registerTopologyDebugCounters();
         registerTopologyDebugEvents();
     }
@@ -880,7 +915,7 @@ public class TopologyManager implements
         // Initialize role to floodlight provider role.
         this.role = floodlightProvider.getRole();
 
-        ScheduledExecutorService ses = threadPool.getScheduledExecutor();
+        ScheduledExecutorService ses = threadPool.getScheduledExecutor(ExecutorLane.TOPOLOGY);
         newInstanceTask = new SingletonTask(ses, new UpdateTopologyWorker());
 
         if (role != Role.SLAVE)
@@ -902,6 +937,20 @@ public class TopologyManager implements
             ctrIncoming = debugCounters.registerCounter(PACKAGE, "incoming",
                 "All incoming packets seen by this module",
                 CounterType.ALWAYS_COUNT);
+            ctrIncrementalInstances = debugCounters.registerCounter(PACKAGE,
+                "incremental-instances",
+                "Topology instances whose shortest path trees were repaired " +
+                "from the previous instance",
+                CounterType.ALWAYS_COUNT);
+            ctrFullInstances = debugCounters.registerCounter(PACKAGE,
+                "full-instances",
+                "Topology instances whose shortest path trees were rebuilt",
+                CounterType.ALWAYS_COUNT);
+            ctrConsistencyCheckFailures = debugCounters.registerCounter(
+                PACKAGE, "consistency-check-failures",
+                "Repaired shortest path trees that differed from a full " +
+                "rebuild",
+                CounterType.ALWAYS_COUNT);
         } catch (CounterException e) {
             throw new FloodlightModuleException(e.getMessage());
         }
@@ -1239,7 +1288,7 @@ public class TopologyManager implements
                                                    openflowLinks,
                                                    broadcastDomainPorts,
                                                    tunnelPorts);
-        nt.compute();
+        computeInstance(nt, currentInstance);
         // We set the instances with and without tunnels to be identical.
         // If needed, we may compute them differently.
         currentInstance = nt;
@@ -1254,6 +1303,37 @@ public class TopologyManager implements
         return true;
     }
 
+    /**
+     * Compute a new topology instance.  If incremental updates are enabled,
+     * the instance repairs the shortest path trees of the previous instance
+     * where possible, and is periodically checked against a full rebuild.
+     * @param nt the new instance
+     * @param previous the current instance, may be null
+     */
+    protected void computeInstance(TopologyInstance nt,
+                                   TopologyInstance previous) {
+        if (!incrementalUpdates) {
+            nt.compute();
+            ctrFullInstances.updateCounterWithFlush();
+            return;
+        }
+
+        boolean verify = consistencyCheckInterval > 0 &&
+                incrementalInstancesSinceCheck + 1 >= consistencyCheckInterval;
+        nt.compute(previous, verify);
+        if (nt.isIncrementallyUpdated()) {
+            ctrIncrementalInstances.updateCounterWithFlush();
+            if (verify)
+                incrementalInstancesSinceCheck = 0;
+            else
+                incrementalInstancesSinceCheck++;
+        } else {
+            ctrFullInstances.updateCounterWithFlush();
+        }
+        if (nt.isConsistencyCheckFailed())
+            ctrConsistencyCheckFailures.updateCounterWithFlush();
+    }
+
     /**
      *  We expect every switch port to have at most two links.  Both these
      *  links must be unidirectional links connecting to the same switch port.
@@ -0,0 +1,173 @@
+package net.floodlightcontroller.util;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of dense integer nodes with integer keys that supports
+ * decreasing the key of a node in place. All storage is held in primitive
+ * arrays that are reused across resets, i.e. a heap sized for the largest
+ * graph does not allocate memory during graph searches.
+ */
+public class IndexedMinHeap {
+	/** Heap position -> node. */
+	private int[] heap;
+	/** Node -> heap position, or -1 if the node is not in the heap. */
+	private int[] position;
+	/** Node -> key. */
+	private int[] key;
+	/** The current number of nodes in the heap. */
+	private int size;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param capacity The number of nodes the heap can hold, i.e. nodes are in [0, capacity).
+	 */
+	public IndexedMinHeap(int capacity) {
+		this.heap = new int[capacity];
+		this.position = new int[capacity];
+		this.key = new int[capacity];
+		Arrays.fill(position, -1);
+	}
+	
+	/**
+	 * Empties the heap and makes sure it can hold nodes in [0, capacity).
+	 * 
+	 * @param capacity The number of nodes the heap can hold.
+	 */
+	public void reset(int capacity) {
+		if (capacity > heap.length) {
+			this.heap = new int[capacity];
+			this.position = new int[capacity];
+			this.key = new int[capacity];
+			Arrays.fill(position, -1);
+		} else {
+			for (int i = 0; i < size; i++) {
+				position[heap[i]] = -1;
+			}
+		}
+		this.size = 0;
+	}
+	
+	/**
+	 * Checks whether the heap is empty.
+	 * 
+	 * @return <b>boolean</b> True if the heap contains no nodes.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Inserts a node, or decreases its key if the node is already in the heap.
+	 * A key larger than the current key of the node is ignored.
+	 * 
+	 * @param node The node.
+	 * @param newKey The key of the node.
+	 */
+	public void insertOrDecrease(int node, int newKey) {
+		int pos = position[node];
+		if (pos < 0) {
+			pos = size++;
+			heap[pos] = node;
+			position[node] = pos;
+		} else if (newKey >= key[node]) {
+			return;
+		}
+		key[node] = newKey;
+		this.siftUp(pos);
+	}
+	
+	/**
+	 * Removes the node with the smallest key from the heap.
+	 * 
+	 * @return <b>int</b> The node with the smallest key.
+	 */
+	public int poll() {
+		int node = heap[0];
+		position[node] = -1;
+		if (--size > 0) {
+			heap[0] = heap[size];
+			position[heap[0]] = 0;
+			this.siftDown(0);
+		}
+		return node;
+	}
+	
+	/**
+	 * Moves the node at the given heap position up until the heap property holds.
+	 * 
+	 * @param pos The heap position.
+	 */
+	private void siftUp(int pos) {
+		int node = heap[pos];
+		int nodeKey = key[node];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			int parentNode = heap[parent];
+			if (key[parentNode] <= nodeKey)
+				break;
+			heap[pos] = parentNode;
+			position[parentNode] = pos;
+			pos = parent;
+		}
+		heap[pos] = node;
+		position[node] = pos;
+	}
+	
+	/**
+	 * Moves the node at the given heap position down until the heap property holds.
+	 * 
+	 * @param pos The heap position.
+	 */
+	private void siftDown(int pos) {
+		int node = heap[pos];
+		int nodeKey = key[node];
+		int half = size >>> 1;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			int right = child + 1;
+			if (right < size && key[heap[right]] < key[heap[child]])
+				child = right;
+			int childNode = heap[child];
+			if (nodeKey <= key[childNode])
+				break;
+			heap[pos] = childNode;
+			position[childNode] = pos;
+			pos = child;
+		}
+		heap[pos] = node;
+		position[node] = pos;
+	}
+}
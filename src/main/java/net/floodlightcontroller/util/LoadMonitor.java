@@ -42,6 +42,23 @@ public class LoadMonitor implements Runnable {
         return loadlevel ;
     }
 
+    /**
+     * Get the load level, raised to the level of a queue backlog if
+     * the backlog exceeds the load thresholds.
+     * @param backlog the fill level of a bounded queue, between 0.0 and 1.0
+     * @return the higher of the load level and the backlog level
+     */
+    public LoadLevel getLoadLevel(double backlog) {
+        LoadLevel level = loadlevel;
+        if (backlog > THRESHOLD_VERYHIGH) {
+            return LoadLevel.VERYHIGH;
+        }
+        if (backlog > THRESHOLD_HIGH && level == LoadLevel.OK) {
+            return LoadLevel.HIGH;
+        }
+        return level;
+    }
+
     public double getLoad() {
         return load ;
     }
@@ -0,0 +1,180 @@
+package net.floodlightcontroller.util;
+
+
+/*
+* Copyright (c) 2013, California Institute of Technology
+* ALL RIGHTS RESERVED.
+* Based on Government Sponsored Research DE-SC0007346
+* 
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+* 
+*     http://www.apache.org/licenses/LICENSE-2.0
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+* HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+* INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+* BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS
+* OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED
+* AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+* LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+* WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+* POSSIBILITY OF SUCH DAMAGE.
+* 
+* Neither the name of the California Institute of Technology
+* (Caltech) nor the names of its contributors may be used to endorse
+* or promote products derived from this software without specific prior
+* written permission.
+*/
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A hashed timing wheel that expires elements at their expiration time.
+ * Elements are hashed into slots by their expiration tick. Expiring visits
+ * only the slots of the ticks that passed since the last call, not all
+ * elements.
+ * 
+ * The wheel reads the expiration time of an element whenever it visits
+ * the element's slot. An element whose expiration time was extended is
+ * moved to its new slot then, i.e. extending the expiration time is a
+ * single write and does not touch the wheel. The same holds for elements
+ * that expire more than one rotation ahead.
+ * 
+ * Adding elements is lock-free and may happen concurrently to expiring.
+ * An element added concurrently to the expiry of its slot may be visited
+ * one rotation late.
+ * 
+ * @param <E> The type of the elements.
+ */
+public class TimingWheel<E extends TimingWheel.Expirable> {
+	/**
+	 * An element with an expiration time.
+	 */
+	public interface Expirable {
+		/**
+		 * Gets the current expiration time. May change while the element is in the wheel.
+		 * 
+		 * @return The expiration time in milliseconds.
+		 */
+		public long getExpirationTime();
+	}
+	
+	/** The maximum number of elements moved to their correct slot when polling the earliest element. */
+	protected static final int MAX_POLL_RESCHEDULES = 16;
+	
+	/** The duration of one tick in milliseconds. */
+	private final long tickDuration;
+	/** The slots of the wheel. The number of slots is a power of two. */
+	private final Queue<E>[] slots;
+	/** Masks a tick to its slot index. */
+	private final int mask;
+	/** The last tick whose slot has been expired. */
+	private volatile long currentTick;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param tickDuration The duration of one tick in milliseconds.
+	 * @param ticksPerWheel The number of slots, rounded up to a power of two.
+	 * @param now The current time in milliseconds.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public TimingWheel(long tickDuration, int ticksPerWheel, long now) {
+		if (tickDuration <= 0)
+			throw new IllegalArgumentException("tickDuration must be positive: " + tickDuration);
+		if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30))
+			throw new IllegalArgumentException("ticksPerWheel out of range: " + ticksPerWheel);
+		
+		int size = Integer.highestOneBit(ticksPerWheel);
+		if (size < ticksPerWheel)
+			size <<= 1;
+		this.tickDuration = tickDuration;
+		this.slots = new Queue[size];
+		for (int i = 0; i < size; i++) {
+			this.slots[i] = new ConcurrentLinkedQueue<E>();
+		}
+		this.mask = size - 1;
+		this.currentTick = now / tickDuration;
+	}
+	
+	/**
+	 * Adds an element to the slot of its expiration time. Elements that expire in
+	 * the past are expired by the next call to {@link #expire(long)}.
+	 * 
+	 * @param element The element to add.
+	 */
+	public void add(E element) {
+		long tick = Math.max(element.getExpirationTime() / tickDuration, currentTick + 1);
+		slots[(int) (tick & mask)].add(element);
+	}
+	
+	/**
+	 * Removes and returns all elements whose expiration time is not after now.
+	 * 
+	 * @param now The current time in milliseconds.
+	 * @return <b>List&lt;E&gt;</b> The expired elements.
+	 */
+	public synchronized List<E> expire(long now) {
+		long nowTick = now / tickDuration;
+		// Visit each slot at most once, even if several rotations passed.
+		long lastTick = Math.min(nowTick, currentTick + slots.length);
+		List<E> expired = new ArrayList<E>();
+		List<E> reschedule = new ArrayList<E>();
+		
+		for (long tick = currentTick + 1; tick <= lastTick; tick++) {
+			Queue<E> slot = slots[(int) (tick & mask)];
+			E element;
+			while ((element = slot.poll()) != null) {
+				if (element.getExpirationTime() <= now) {
+					expired.add(element);
+				} else {
+					reschedule.add(element);
+				}
+			}
+			currentTick = tick;
+			for (E e : reschedule) {
+				this.add(e);
+			}
+			reschedule.clear();
+		}
+		
+		if (nowTick > currentTick)
+			currentTick = nowTick;
+		return expired;
+	}
+	
+	/**
+	 * Removes and returns an element of the earliest non-empty slot, i.e. an
+	 * element that expires next or almost next.
+	 * 
+	 * @return <b>E</b> The element, or null if the wheel is empty.
+	 */
+	public synchronized E pollEarliest() {
+		int reschedules = 0;
+		long tick = currentTick + 1;
+		for (int i = 0; i < slots.length; i++, tick++) {
+			for (Iterator<E> iter = slots[(int) (tick & mask)].iterator(); iter.hasNext();) {
+				E element = iter.next();
+				// Skip elements that expire in a later tick, e.g. extended ones.
+				if (element.getExpirationTime() / tickDuration > tick && reschedules < MAX_POLL_RESCHEDULES) {
+					iter.remove();
+					this.add(element);
+					reschedules++;
+					continue;
+				}
+				iter.remove();
+				return element;
+			}
+		}
+		return null;
+	}
+}
@@ -9,10 +9,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
@@ -303,22 +299,11 @@ public class WANSwitchHandler {
 										.setInPort(localPortId);
 	    	queryList.add(fcqOutPort);
 	    	queryList.add(fcqInPort);
-	    	List<Future<FlowCacheQueryResp>> futures = this.flowCache.queryDB(queryList);
-	    	
-	    	if (futures == null || futures.isEmpty()) {
-		 		log.error("Could not get futures from flow cache.");
-		 		return;
-		 	}
-	    	try {
-	    		for (Future<FlowCacheQueryResp> future : futures) {
-	    			FlowCacheQueryResp fcqr = future.get(10, TimeUnit.SECONDS);
-	    			if (fcqr != null && fcqr.flowCacheObjList != null) {
-	    				flowCacheObjects.put(fcqr.switchId, fcqr.flowCacheObjList);
-	    			}
-				}
-			} catch (InterruptedException | ExecutionException | TimeoutException e) {
-				e.printStackTrace();
-			}
+	    	for (FlowCacheQueryResp fcqr : this.flowCache.queryFlows(queryList)) {
+	    		if (fcqr.flowCacheObjList != null) {
+	    			flowCacheObjects.put(fcqr.switchId, fcqr.flowCacheObjList);
+	    		}
+	    	}
 			
 			// Create the flow statistics reply.
 	    	if (flowCacheObjects.containsKey(localSwitchId)) {
@@ -758,20 +743,10 @@ public class WANSwitchHandler {
     	if (flowId != 0) {
     		fcq.setCookie(AppCookie.makeCookie(WANSwitchManager.WANSWITCH_APP_ID, flowId));
     	}						
-    	Future<FlowCacheQueryResp> future = this.flowCache.queryDB(fcq);
-    	
-    	if (future == null) {
-	 		log.error("Could not get future from flow cache.");
-	 		return;
-	 	}
-    	try {
-			FlowCacheQueryResp fcqr = future.get(2, TimeUnit.SECONDS);
-			if (fcqr != null && fcqr.flowCacheObjList != null) {
-				flowCacheObjects.put(fcqr.switchId, fcqr.flowCacheObjList);
-			}
-		} catch (InterruptedException | ExecutionException | TimeoutException e) {
-			e.printStackTrace();
-		}
+    	FlowCacheQueryResp fcqr = this.flowCache.queryFlows(fcq);
+    	if (fcqr != null && fcqr.flowCacheObjList != null) {
+    		flowCacheObjects.put(fcqr.switchId, fcqr.flowCacheObjList);
+    	}
     	
     	// Populate local input port information if available (in the match).
     	NodePortTuple npt = this.wanSwitchManager.getPort(wanSwitchInPortID);
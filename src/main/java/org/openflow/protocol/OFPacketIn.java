@@ -20,6 +20,7 @@ package org.openflow.protocol;
 import java.util.Arrays;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.openflow.util.U16;
 import org.openflow.util.U32;
 import org.openflow.util.U8;
@@ -41,6 +42,8 @@ public class OFPacketIn extends OFMessage {
     protected short inPort;
     protected OFPacketInReason reason;
     protected byte[] packetData;
+    // The packet data as a slice of the inbound buffer, if read without copy
+    protected ChannelBuffer packetDataBuffer;
 
     public OFPacketIn() {
         super();
@@ -66,19 +69,51 @@ public class OFPacketIn extends OFMessage {
     }
 
     /**
-     * Returns the packet data
+     * Returns the packet data. If the message was read without copy, the
+     * packet data is copied out of the inbound buffer on the first call.
      * @return
      */
     public byte[] getPacketData() {
+        if (this.packetData == null && this.packetDataBuffer != null) {
+            byte[] data = new byte[this.packetDataBuffer.readableBytes()];
+            this.packetDataBuffer.getBytes(
+                    this.packetDataBuffer.readerIndex(), data);
+            this.packetData = data;
+        }
         return this.packetData;
     }
 
+    /**
+     * Returns the packet data as a buffer, without copying it
+     * @return a buffer with independent indexes
+     */
+    public ChannelBuffer getPacketDataBuffer() {
+        if (this.packetData != null)
+            return ChannelBuffers.wrappedBuffer(this.packetData);
+        if (this.packetDataBuffer != null)
+            return this.packetDataBuffer.duplicate();
+        return ChannelBuffers.EMPTY_BUFFER;
+    }
+
+    /**
+     * Returns the length of the packet data
+     * @return
+     */
+    public int getPacketDataLength() {
+        if (this.packetData != null)
+            return this.packetData.length;
+        if (this.packetDataBuffer != null)
+            return this.packetDataBuffer.readableBytes();
+        return 0;
+    }
+
     /**
      * Sets the packet data, and updates the length of this message
      * @param packetData
      */
     public OFPacketIn setPacketData(byte[] packetData) {
         this.packetData = packetData;
+        this.packetDataBuffer = null;
         this.length = U16.t(OFPacketIn.MINIMUM_LENGTH + packetData.length);
         return this;
     }
@@ -136,14 +171,31 @@ public class OFPacketIn extends OFMessage {
 
     @Override
     public void readFrom(ChannelBuffer data) {
+        readFrom(data, false);
+    }
+
+    /**
+     * Read this message from a buffer. Without copy, the packet data
+     * references a slice of the buffer, so the buffer content must not be
+     * modified afterwards.
+     * @param data the buffer to read from
+     * @param zeroCopy true to reference the packet data instead of copying it
+     */
+    public void readFrom(ChannelBuffer data, boolean zeroCopy) {
         super.readFrom(data);
         this.bufferId = data.readInt();
         this.totalLength = data.readShort();
         this.inPort = data.readShort();
         this.reason = OFPacketInReason.values()[U8.f(data.readByte())];
         data.readByte(); // pad
-        this.packetData = new byte[getLengthU() - MINIMUM_LENGTH];
-        data.readBytes(this.packetData);
+        if (zeroCopy) {
+            this.packetData = null;
+            this.packetDataBuffer = data.readSlice(getLengthU() - MINIMUM_LENGTH);
+        } else {
+            this.packetData = new byte[getLengthU() - MINIMUM_LENGTH];
+            data.readBytes(this.packetData);
+            this.packetDataBuffer = null;
+        }
     }
 
     @Override
@@ -154,7 +206,12 @@ public class OFPacketIn extends OFMessage {
         data.writeShort(inPort);
         data.writeByte((byte) reason.ordinal());
         data.writeByte((byte) 0x0); // pad
-        data.writeBytes(this.packetData);
+        if (this.packetData == null && this.packetDataBuffer != null)
+            data.writeBytes(this.packetDataBuffer,
+                    this.packetDataBuffer.readerIndex(),
+                    this.packetDataBuffer.readableBytes());
+        else
+            data.writeBytes(this.packetData);
     }
 
     @Override
@@ -163,7 +220,7 @@ public class OFPacketIn extends OFMessage {
         int result = super.hashCode();
         result = prime * result + bufferId;
         result = prime * result + inPort;
-        result = prime * result + Arrays.hashCode(packetData);
+        result = prime * result + Arrays.hashCode(getPacketData());
         result = prime * result + ((reason == null) ? 0 : reason.hashCode());
         result = prime * result + totalLength;
         return result;
@@ -187,7 +244,7 @@ public class OFPacketIn extends OFMessage {
         if (inPort != other.inPort) {
             return false;
         }
-        if (!Arrays.equals(packetData, other.packetData)) {
+        if (!Arrays.equals(getPacketData(), other.getPacketData())) {
             return false;
         }
         if (reason == null) {
@@ -221,7 +278,10 @@ public class OFPacketIn extends OFMessage {
     	clone.totalLength = this.totalLength;
     	clone.inPort = this.inPort;
     	clone.reason = this.reason;
-    	clone.packetData = this.packetData.clone();
+    	if (this.packetData != null)
+    		clone.packetData = this.packetData.clone();
+    	// The inbound buffer is never modified, so the clone can share it.
+    	clone.packetDataBuffer = this.packetDataBuffer;
     	return clone;
     }
 }
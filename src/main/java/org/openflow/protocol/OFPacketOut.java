@@ -42,6 +42,8 @@ public class OFPacketOut extends OFMessage implements OFActionFactoryAware {
     protected short actionsLength;
     protected List<OFAction> actions;
     protected byte[] packetData;
+    // The packet data as a buffer, e.g. a slice of an inbound packet-in
+    protected ChannelBuffer packetDataBuffer;
 
     public OFPacketOut() {
         super();
@@ -63,7 +65,7 @@ public class OFPacketOut extends OFMessage implements OFActionFactoryAware {
      * @param bufferId
      */
     public OFPacketOut setBufferId(int bufferId) {
-        if (packetData != null && packetData.length > 0 && bufferId != BUFFER_ID_NONE) {
+        if (getPacketDataLength() > 0 && bufferId != BUFFER_ID_NONE) {
             throw new IllegalArgumentException(
                     "PacketOut should not have both bufferId and packetData set");
         }
@@ -72,13 +74,48 @@ public class OFPacketOut extends OFMessage implements OFActionFactoryAware {
     }
 
     /**
-     * Returns the packet data
+     * Returns the packet data. If the packet data was set as a buffer, it
+     * is copied out of the buffer on the first call.
      * @return
      */
     public byte[] getPacketData() {
+        if (this.packetData == null && this.packetDataBuffer != null) {
+            byte[] data = new byte[this.packetDataBuffer.readableBytes()];
+            this.packetDataBuffer.getBytes(
+                    this.packetDataBuffer.readerIndex(), data);
+            this.packetData = data;
+        }
         return this.packetData;
     }
 
+    /**
+     * Returns the length of the packet data
+     * @return
+     */
+    public int getPacketDataLength() {
+        if (this.packetData != null)
+            return this.packetData.length;
+        if (this.packetDataBuffer != null)
+            return this.packetDataBuffer.readableBytes();
+        return 0;
+    }
+
+    /**
+     * Sets the packet data as a buffer, which is written without an
+     * intermediate copy. The readable bytes of the buffer are used, its
+     * content must not be modified afterwards.
+     * @param packetDataBuffer
+     */
+    public OFPacketOut setPacketData(ChannelBuffer packetDataBuffer) {
+        if (packetDataBuffer != null && packetDataBuffer.readable() && bufferId != BUFFER_ID_NONE) {
+            throw new IllegalArgumentException(
+                    "PacketOut should not have both bufferId and packetData set");
+        }
+        this.packetData = null;
+        this.packetDataBuffer = packetDataBuffer;
+        return this;
+    }
+
     /**
      * Sets the packet data
      * @param packetData
@@ -89,6 +126,7 @@ public class OFPacketOut extends OFMessage implements OFActionFactoryAware {
                     "PacketOut should not have both bufferId and packetData set");
         }
         this.packetData = packetData;
+        this.packetDataBuffer = null;
         return this;
     }
 
@@ -176,6 +214,7 @@ public class OFPacketOut extends OFMessage implements OFActionFactoryAware {
         this.actions = this.actionFactory.parseActions(data, getActionsLengthU());
         this.packetData = new byte[getLengthU() - MINIMUM_LENGTH - getActionsLengthU()];
         data.readBytes(this.packetData);
+        this.packetDataBuffer = null;
         validate();
     }
 
@@ -191,11 +230,15 @@ public class OFPacketOut extends OFMessage implements OFActionFactoryAware {
         }
         if (this.packetData != null)
             data.writeBytes(this.packetData);
+        else if (this.packetDataBuffer != null)
+            data.writeBytes(this.packetDataBuffer,
+                    this.packetDataBuffer.readerIndex(),
+                    this.packetDataBuffer.readableBytes());
     }
 
     /** validate the invariants of this OFMessage hold */
     public void validate() {
-        if (!((bufferId != BUFFER_ID_NONE) ^ (packetData != null && packetData.length > 0))) {
+        if (!((bufferId != BUFFER_ID_NONE) ^ (getPacketDataLength() > 0))) {
             throw new IllegalStateException(
                     "OFPacketOut must have exactly one of (bufferId, packetData) set (not one, not both)");
         }
@@ -209,7 +252,7 @@ public class OFPacketOut extends OFMessage implements OFActionFactoryAware {
         result = prime * result + actionsLength;
         result = prime * result + bufferId;
         result = prime * result + inPort;
-        result = prime * result + Arrays.hashCode(packetData);
+        result = prime * result + Arrays.hashCode(getPacketData());
         return result;
     }
 
@@ -241,7 +284,7 @@ public class OFPacketOut extends OFMessage implements OFActionFactoryAware {
         if (inPort != other.inPort) {
             return false;
         }
-        if (!Arrays.equals(packetData, other.packetData)) {
+        if (!Arrays.equals(getPacketData(), other.getPacketData())) {
             return false;
         }
         return true;
@@ -255,6 +298,6 @@ public class OFPacketOut extends OFMessage implements OFActionFactoryAware {
         return "OFPacketOut [actionFactory=" + actionFactory + ", actions="
                 + actions + ", actionsLength=" + actionsLength + ", bufferId=0x"
                 + Integer.toHexString(bufferId) + ", inPort=" + inPort + ", packetData="
-                + HexString.toHexString(packetData) + "]";
+                + HexString.toHexString(getPacketData()) + "]";
     }
 }
@@ -99,20 +99,19 @@ public enum BasicFactory implements OFMessageFactory, OFActionFactory,
 
     public OFMessage parseMessageOne(ChannelBuffer data) throws MessageParseException {
         try {
-            OFMessage demux = new OFMessage();
             OFMessage ofm = null;
 
             if (data.readableBytes() < OFMessage.MINIMUM_LENGTH)
                 return ofm;
 
+            // Peek at the type and length of the header without
+            // allocating a message to read it
             data.markReaderIndex();
-            demux.readFrom(data);
-            data.resetReaderIndex();
-
-            if (demux.getLengthU() > data.readableBytes())
+            int index = data.readerIndex();
+            if (data.getUnsignedShort(index + 2) > data.readableBytes())
                 return ofm;
 
-            ofm = getMessage(demux.getType());
+            ofm = getMessage(OFType.valueOf(data.getByte(index + 1)));
             if (ofm == null)
                 return null;
 
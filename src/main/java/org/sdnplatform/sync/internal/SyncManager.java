@@ -3,11 +3,13 @@ package org.sdnplatform.sync.internal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -40,12 +42,15 @@ import org.sdnplatform.sync.internal.rpc.TProtocolUtil;
 import org.sdnplatform.sync.internal.store.IStorageEngine;
 import org.sdnplatform.sync.internal.store.IStore;
 import org.sdnplatform.sync.internal.store.MappingStoreListener;
+import org.sdnplatform.sync.internal.store.StoreDigestTree;
 import org.sdnplatform.sync.internal.store.SynchronizingStorageEngine;
 import org.sdnplatform.sync.internal.util.ByteArray;
 import org.sdnplatform.sync.internal.version.VectorClock;
 import org.sdnplatform.sync.thrift.SyncMessage;
 import org.sdnplatform.sync.thrift.KeyedValues;
 import org.sdnplatform.sync.thrift.KeyedVersions;
+import org.sdnplatform.sync.thrift.MessageType;
+import org.sdnplatform.sync.thrift.SyncDigestMessage;
 import org.sdnplatform.sync.thrift.SyncOfferMessage;
 import org.sdnplatform.sync.thrift.SyncValueMessage;
 import org.slf4j.Logger;
@@ -143,6 +148,13 @@ public class SyncManager extends AbstractSyncManager {
     private final Map<Integer, Cursor> cursorMap =
             new ConcurrentHashMap<Integer, Cursor>();
 
+    /**
+     * Nodes that answered a digest request with an error, e.g. because
+     * they run an older version.  Anti-entropy offers them all keys.
+     */
+    private final Set<Short> fullOfferNodes =
+            Collections.newSetFromMap(new ConcurrentHashMap<Short, Boolean>());
+
     /**
      * Whether to allow persistent stores or to use in-memory even
      * when persistence is requested
@@ -163,6 +175,7 @@ public class SyncManager extends AbstractSyncManager {
     public static IDebugCounter counterIterators;
     public static IDebugCounter counterErrorRemote;
     public static IDebugCounter counterErrorProcessing;
+    public static IDebugCounter counterDigestMismatches;
 
     // ************
     // ISyncService
@@ -230,41 +243,146 @@ public class SyncManager extends AbstractSyncManager {
                 continue;
             }
 
-            IClosableIterator<Entry<ByteArray,
-                                  List<Versioned<byte[]>>>> entries =
-                    store.entries();
+            if (fullOfferNodes.contains(node.getNodeId())) {
+                offerAllKeys(node.getNodeId(), store);
+                continue;
+            }
+
+            // Start at the root of the hash tree.  The remote node will
+            // report the nodes that differ and we descend from there
+            StoreDigestTree tree = store.getDigestTree();
+            if (tree.getCount(0) == 0) continue;
+
+            SyncMessage bsm =
+                    TProtocolUtil.getTSyncDigestMessage(MessageType.SYNC_DIGEST_REQUEST,
+                                                        store.getName(),
+                                                        store.getScope(),
+                                                        store.isPersistent());
+            bsm.getSyncDigestRequest().addToNodes(0);
+            bsm.getSyncDigestRequest().addToDigests(tree.getDigest(0));
             try {
-                SyncMessage bsm =
-                        TProtocolUtil.getTSyncOfferMessage(store.getName(),
-                                                           store.getScope(),
-                                                           store.isPersistent());
-                int count = 0;
-                while (entries.hasNext()) {
-                    if (!rpcService.isConnected(node.getNodeId())) return;
-
-                    Entry<ByteArray, List<Versioned<byte[]>>> pair =
-                            entries.next();
-                    KeyedVersions kv =
-                            TProtocolUtil.getTKeyedVersions(pair.getKey(),
-                                                            pair.getValue());
-                    bsm.getSyncOffer().addToVersions(kv);
-                    count += 1;
-                    if (count >= 50) {
-                        sendSyncOffer(node.getNodeId(), bsm);
-                        bsm.getSyncOffer().unsetVersions();
-                        count = 0;
-                    }
-                }
-                sendSyncOffer(node.getNodeId(), bsm);
+                sendSyncDigest(node.getNodeId(), bsm);
             } catch (InterruptedException e) {
                 // This can't really happen
                 throw new RuntimeException(e);
-            } finally {
-                entries.close();
             }
         }
     }
 
+    /**
+     * Compare the hash tree digests sent by a remote node with the digests
+     * of the local copy of the store
+     * @param storeName the store name
+     * @param nodes the IDs of the hash tree nodes to compare
+     * @param digests the remote digests for each of the nodes
+     * @param response the digest response to fill in with the nodes that
+     * differ and the local digest of each
+     * @return the number of nodes that differ
+     */
+    public int handleSyncDigest(String storeName,
+                                List<Integer> nodes,
+                                List<Long> digests,
+                                SyncDigestMessage response) {
+        if (nodes == null || digests == null) return 0;
+
+        SynchronizingStorageEngine store = storeRegistry.get(storeName);
+        List<Integer> diffNodes = new ArrayList<Integer>();
+        List<Long> diffDigests = new ArrayList<Long>();
+        if (store != null) {
+            store.getDigestTree().compare(nodes, digests,
+                                          diffNodes, diffDigests);
+        } else {
+            // We don't have the store, so everything differs
+            for (int i = 0; i < nodes.size() && i < digests.size(); i++) {
+                if (!StoreDigestTree.isValid(nodes.get(i))) continue;
+                diffNodes.add(nodes.get(i));
+                diffDigests.add(0L);
+            }
+        }
+        for (int i = 0; i < diffNodes.size(); i++) {
+            response.addToNodes(diffNodes.get(i));
+            response.addToDigests(diffDigests.get(i));
+        }
+        return diffNodes.size();
+    }
+
+    /**
+     * Continue anti-entropy with a remote node for the hash tree nodes that
+     * the remote node reported as different.  Inner nodes are expanded into
+     * their children and sent back for comparison; for leaf buckets, and for
+     * subtrees that are empty on the remote node, the keys are offered to
+     * the remote node.
+     * @param nodeId the remote node ID
+     * @param storeName the store name
+     * @param nodes the IDs of the hash tree nodes that differ
+     * @param digests the remote digests for each of the nodes
+     */
+    public void handleSyncDigestResponse(short nodeId,
+                                         String storeName,
+                                         List<Integer> nodes,
+                                         List<Long> digests) {
+        if (nodes == null || digests == null) return;
+        SynchronizingStorageEngine store = storeRegistry.get(storeName);
+        if (store == null) return;
+        StoreDigestTree tree = store.getDigestTree();
+
+        SyncMessage bsm =
+                TProtocolUtil.getTSyncDigestMessage(MessageType.SYNC_DIGEST_REQUEST,
+                                                    store.getName(),
+                                                    store.getScope(),
+                                                    store.isPersistent());
+        SyncDigestMessage sdm = bsm.getSyncDigestRequest();
+        List<Integer> childNodes = new ArrayList<Integer>();
+        List<Long> childDigests = new ArrayList<Long>();
+        List<ByteArray> keys = new ArrayList<ByteArray>();
+        tree.expand(nodes, digests, childNodes, childDigests, keys);
+        for (int i = 0; i < childNodes.size(); i++) {
+            sdm.addToNodes(childNodes.get(i));
+            sdm.addToDigests(childDigests.get(i));
+        }
+
+        try {
+            if (sdm.isSetNodes())
+                sendSyncDigest(nodeId, bsm);
+            offerKeys(nodeId, store, keys);
+        } catch (SyncException e) {
+            logger.debug("[{}->{}] Could not offer keys for store {}: {}",
+                         new Object[]{getLocalNodeId(), nodeId,
+                                      storeName, e.getMessage()});
+        } catch (InterruptedException e) {
+            // This can't really happen
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Record whether a remote node supports digest requests.  A node that
+     * answered a digest request with an error is offered all keys of every
+     * store from then on, starting immediately, until it sends digest
+     * messages itself.
+     * @param nodeId the remote node ID
+     * @param supported whether the node supports digest requests
+     */
+    @LogMessageDoc(level="INFO",
+                   message="[{id}->{id}] Remote node does not support " +
+                           "digest requests; offering all keys",
+                   explanation="The remote node runs an older version that " +
+                               "synchronizes by offering all keys")
+    public void setDigestsSupported(short nodeId, boolean supported) {
+        if (supported) {
+            fullOfferNodes.remove(nodeId);
+            return;
+        }
+        if (!fullOfferNodes.add(nodeId)) return;
+
+        logger.info("[{}->{}] Remote node does not support digest " +
+                    "requests; offering all keys",
+                    getLocalNodeId(), nodeId);
+        Node node = getClusterConfig().getNode(nodeId);
+        if (node != null)
+            antientropy(node);
+    }
+
     /**
      * Communicate with a random node and do a full synchronization of the
      * all the stores on each node that have the appropriate scope.
@@ -542,6 +660,10 @@ public class SyncManager extends AbstractSyncManager {
                                     "Number of errors processing messages from remote clients",
                                     CounterType.ALWAYS_COUNT,
                                     IDebugCounterService.CTR_MDATA_ERROR);
+                counterDigestMismatches = debugCounter.registerCounter(PACKAGE,
+                                    "digest-mismatches",
+                                    "Hash tree nodes that differed from a remote node during anti-entropy",
+                                    CounterType.ALWAYS_COUNT);
             } catch (CounterException e) {
                 throw new FloodlightModuleException(e.getMessage());
             }
@@ -669,6 +791,82 @@ public class SyncManager extends AbstractSyncManager {
         return store;
     }
 
+    /**
+     * Offer all keys and versions of a store to a remote node
+     */
+    private void offerAllKeys(short nodeId, SynchronizingStorageEngine store) {
+        IClosableIterator<Entry<ByteArray,
+                              List<Versioned<byte[]>>>> entries =
+                store.entries();
+        try {
+            SyncMessage bsm =
+                    TProtocolUtil.getTSyncOfferMessage(store.getName(),
+                                                       store.getScope(),
+                                                       store.isPersistent());
+            int count = 0;
+            while (entries.hasNext()) {
+                if (!rpcService.isConnected(nodeId)) return;
+
+                Entry<ByteArray, List<Versioned<byte[]>>> pair =
+                        entries.next();
+                KeyedVersions kv =
+                        TProtocolUtil.getTKeyedVersions(pair.getKey(),
+                                                        pair.getValue());
+                bsm.getSyncOffer().addToVersions(kv);
+                count += 1;
+                if (count >= 50) {
+                    sendSyncOffer(nodeId, bsm);
+                    bsm.getSyncOffer().unsetVersions();
+                    count = 0;
+                }
+            }
+            sendSyncOffer(nodeId, bsm);
+        } catch (InterruptedException e) {
+            // This can't really happen
+            throw new RuntimeException(e);
+        } finally {
+            entries.close();
+        }
+    }
+
+    private void offerKeys(short nodeId, SynchronizingStorageEngine store,
+                           List<ByteArray> keys)
+            throws SyncException, InterruptedException {
+        SyncMessage bsm =
+                TProtocolUtil.getTSyncOfferMessage(store.getName(),
+                                                   store.getScope(),
+                                                   store.isPersistent());
+        int count = 0;
+        for (ByteArray key : keys) {
+            if (!rpcService.isConnected(nodeId)) return;
+
+            List<Versioned<byte[]>> values = store.get(key);
+            if (values == null || values.size() == 0) continue;
+            KeyedVersions kv = TProtocolUtil.getTKeyedVersions(key, values);
+            bsm.getSyncOffer().addToVersions(kv);
+            count += 1;
+            if (count >= 50) {
+                sendSyncOffer(nodeId, bsm);
+                bsm.getSyncOffer().unsetVersions();
+                count = 0;
+            }
+        }
+        sendSyncOffer(nodeId, bsm);
+    }
+
+    private void sendSyncDigest(short nodeId, SyncMessage bsm)
+            throws InterruptedException {
+        SyncDigestMessage sdm = bsm.getSyncDigestRequest();
+        if (logger.isTraceEnabled()) {
+            logger.trace("[{}->{}] Sending SyncDigestRequest with {} nodes",
+                         new Object[]{getLocalNodeId(), nodeId,
+                                      sdm.getNodesSize()});
+        }
+
+        sdm.getHeader().setTransactionId(rpcService.getTransactionId());
+        rpcService.writeToNode(nodeId, bsm);
+    }
+
     private void sendSyncOffer(short nodeId, SyncMessage bsm)
             throws InterruptedException {
         SyncOfferMessage som = bsm.getSyncOffer();
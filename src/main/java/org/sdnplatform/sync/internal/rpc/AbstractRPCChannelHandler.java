@@ -51,6 +51,7 @@ import org.sdnplatform.sync.thrift.PutRequestMessage;
 import org.sdnplatform.sync.thrift.PutResponseMessage;
 import org.sdnplatform.sync.thrift.RegisterRequestMessage;
 import org.sdnplatform.sync.thrift.RegisterResponseMessage;
+import org.sdnplatform.sync.thrift.SyncDigestMessage;
 import org.sdnplatform.sync.thrift.SyncOfferMessage;
 import org.sdnplatform.sync.thrift.SyncRequestMessage;
 import org.sdnplatform.sync.thrift.SyncValueMessage;
@@ -308,6 +309,13 @@ public abstract class AbstractRPCChannelHandler
             case SYNC_REQUEST:
                 handleSyncRequest(bsm.getSyncRequest(), channel);
                 break;
+            case SYNC_DIGEST_REQUEST:
+                handleSyncDigestRequest(bsm.getSyncDigestRequest(), channel);
+                break;
+            case SYNC_DIGEST_RESPONSE:
+                handleSyncDigestResponse(bsm.getSyncDigestResponse(),
+                                         channel);
+                break;
             case CURSOR_REQUEST:
                 handleCursorRequest(bsm.getCursorRequest(), channel);
                 break;
@@ -491,6 +499,18 @@ public abstract class AbstractRPCChannelHandler
                           MessageType.FULL_SYNC_REQUEST, channel);        
     }
 
+    protected void handleSyncDigestRequest(SyncDigestMessage request,
+                                           Channel channel) {
+        unexpectedMessage(request.getHeader().getTransactionId(),
+                          MessageType.SYNC_DIGEST_REQUEST, channel);
+    }
+
+    protected void handleSyncDigestResponse(SyncDigestMessage response,
+                                            Channel channel) {
+        unexpectedMessage(response.getHeader().getTransactionId(),
+                          MessageType.SYNC_DIGEST_RESPONSE, channel);
+    }
+
     protected void handleCursorRequest(CursorRequestMessage request,
                                        Channel channel) {
         unexpectedMessage(request.getHeader().getTransactionId(),
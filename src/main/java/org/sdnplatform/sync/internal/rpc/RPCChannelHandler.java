@@ -377,6 +377,66 @@ public class RPCChannelHandler extends AbstractRPCChannelHandler {
         startAntientropy();
     }
 
+    @Override
+    protected void handleSyncDigestRequest(SyncDigestMessage request,
+                                           Channel channel) {
+        try {
+            String storeName = request.getStore().getStoreName();
+            Short nodeId = getRemoteNodeId();
+            if (nodeId != null)
+                syncManager.setDigestsSupported(nodeId, true);
+
+            SyncDigestMessage sdm = new SyncDigestMessage();
+            AsyncMessageHeader header = new AsyncMessageHeader();
+            header.setTransactionId(request.getHeader().getTransactionId());
+            sdm.setHeader(header);
+            sdm.setStore(request.getStore());
+
+            int mismatches = syncManager.handleSyncDigest(storeName,
+                                                          request.getNodes(),
+                                                          request.getDigests(),
+                                                          sdm);
+            // Nothing differs, so there is nothing more to do
+            if (mismatches == 0) return;
+
+            updateCounter(SyncManager.counterDigestMismatches, mismatches);
+            SyncMessage bsm =
+                    new SyncMessage(MessageType.SYNC_DIGEST_RESPONSE);
+            bsm.setSyncDigestResponse(sdm);
+            if (logger.isTraceEnabled()) {
+                logger.trace("[{}->{}] Sending SyncDigestResponse with {} nodes",
+                             new Object[]{getLocalNodeIdString(),
+                                          getRemoteNodeIdString(),
+                                          mismatches});
+            }
+            channel.write(bsm);
+        } catch (Exception e) {
+            channel.write(getError(request.getHeader().getTransactionId(),
+                                   e, MessageType.SYNC_DIGEST_REQUEST));
+        }
+    }
+
+    @Override
+    protected void handleSyncDigestResponse(final SyncDigestMessage response,
+                                            Channel channel) {
+        final Short nodeId = getRemoteNodeId();
+        if (nodeId == null) return;
+
+        // Expanding the tree and offering keys reads from the store and
+        // may block on the message window, so keep it off the I/O thread
+        Runnable digestTask = new Runnable() {
+            @Override
+            public void run() {
+                syncManager.setDigestsSupported(nodeId, true);
+                syncManager.handleSyncDigestResponse(nodeId,
+                                                     response.getStore().getStoreName(),
+                                                     response.getNodes(),
+                                                     response.getDigests());
+            }
+        };
+        syncManager.getThreadPool().getScheduledExecutor().execute(digestTask);
+    }
+
     @Override
     protected void handleCursorRequest(CursorRequestMessage request,
                                        Channel channel) {
@@ -534,6 +594,20 @@ public class RPCChannelHandler extends AbstractRPCChannelHandler {
         rpcService.messageAcked(error.getType(), getRemoteNodeId());
         updateCounter(SyncManager.counterErrorRemote, 1);
         super.handleError(error, channel);
+
+        final Short nodeId = getRemoteNodeId();
+        if (nodeId != null &&
+            MessageType.SYNC_DIGEST_REQUEST.equals(error.getType())) {
+            // Fall back to offering all keys.  This may block on the
+            // message window, so keep it off the I/O thread
+            Runnable fallbackTask = new Runnable() {
+                @Override
+                public void run() {
+                    syncManager.setDigestsSupported(nodeId, false);
+                }
+            };
+            syncManager.getThreadPool().getScheduledExecutor().execute(fallbackTask);
+        }
     }
 
     // *************************
@@ -9,6 +9,7 @@ import org.sdnplatform.sync.internal.util.ByteArray;
 import org.sdnplatform.sync.internal.version.ClockEntry;
 import org.sdnplatform.sync.internal.version.VectorClock;
 import org.sdnplatform.sync.thrift.AsyncMessageHeader;
+import org.sdnplatform.sync.thrift.SyncDigestMessage;
 import org.sdnplatform.sync.thrift.SyncMessage;
 import org.sdnplatform.sync.thrift.KeyedValues;
 import org.sdnplatform.sync.thrift.KeyedVersions;
@@ -247,6 +248,34 @@ public class TProtocolUtil {
         return bsm;
     }
 
+    /**
+     * Allocate a thrift {@link org.sdnplatform.sync.thrift.SyncMessage} for
+     * a digest request or response for the given store
+     * @param type the message type: either
+     * {@link MessageType#SYNC_DIGEST_REQUEST} or
+     * {@link MessageType#SYNC_DIGEST_RESPONSE}
+     * @param storeName the store name
+     * @param scope the scope
+     * @param persist whether the store is persistent
+     * @return the {@link SyncMessage}
+     */
+    public static SyncMessage getTSyncDigestMessage(MessageType type,
+                                                    String storeName,
+                                                    Scope scope,
+                                                    boolean persist) {
+        SyncMessage bsm = new SyncMessage(type);
+        AsyncMessageHeader header = new AsyncMessageHeader();
+        SyncDigestMessage sdm = new SyncDigestMessage();
+        sdm.setHeader(header);
+        sdm.setStore(getTStore(storeName, scope, persist));
+
+        if (MessageType.SYNC_DIGEST_REQUEST.equals(type))
+            bsm.setSyncDigestRequest(sdm);
+        else
+            bsm.setSyncDigestResponse(sdm);
+        return bsm;
+    }
+
     /**
      * Convert a thrift {@link org.sdnplatform.sync.thrift.VectorClock} into
      * a {@link VectorClock}.
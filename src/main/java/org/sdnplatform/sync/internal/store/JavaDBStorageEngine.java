@@ -1,6 +1,5 @@
 package org.sdnplatform.sync.internal.store;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -11,14 +10,28 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import javax.sql.ConnectionPoolDataSource;
 import javax.xml.bind.DatatypeConverter;
 
 import net.floodlightcontroller.core.annotations.LogMessageCategory;
+import net.floodlightcontroller.core.annotations.LogMessageDoc;
 
 import org.apache.derby.jdbc.EmbeddedConnectionPoolDataSource40;
 
@@ -43,7 +56,17 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 
 /**
- * Persistent storage engine that keeps its data in a JDB database
+ * Persistent storage engine that keeps its data in a JDB database.
+ *
+ * Writes are applied to an in-memory table of pending writes and then
+ * written to the database in the background by a batch writer, which
+ * writes all the keys queued since its last batch in a single transaction.
+ * Reads consult the pending writes before the database, so callers always
+ * see their own writes.  A put returns before its value is committed, so
+ * writes made just before the process dies may be lost; the cluster will
+ * resynchronize them.  The same holds for rows that the database keeps
+ * rejecting, which are dropped after a few attempts.  Connections are kept with their prepared
+ * statements so that they don't need to be prepared on every call.
  * @author readams
  */
 @LogMessageCategory("State Synchronization")
@@ -67,6 +90,63 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
     private static String TRUNCATE =
             "delete from <tbl>";
     
+    /**
+     * Maximum number of keys waiting to be written to the database.  Writers
+     * block when the queue is full.
+     */
+    private static final int WRITE_QUEUE_SIZE = 8192;
+
+    /**
+     * Maximum number of keys written in a single transaction
+     */
+    private static final int MAX_BATCH_SIZE = 512;
+
+    /**
+     * How long the batch writer waits for new writes before checking
+     * whether it has been shut down
+     */
+    private static final int WRITER_POLL_INTERVAL = 100;
+
+    /**
+     * How long the batch writer waits before retrying the rows of a failed
+     * batch
+     */
+    private static final int WRITER_RETRY_INTERVAL = 1000;
+
+    /**
+     * Number of times the batch writer tries to write a row before the row
+     * is dropped.  The first attempt writes the whole batch; later attempts
+     * write the remaining rows one at a time.
+     */
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    /**
+     * How long truncate and close wait for pending writes to be committed
+     */
+    private static final int WRITE_WAIT_TIMEOUT = 30000;
+
+    /**
+     * Maximum length of the base64 encoded key, as given by the datakey
+     * column
+     */
+    private static final int MAX_KEY_STRING_LENGTH = 4096;
+
+    /**
+     * Number of locks used to serialize writes to the same key
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * Maximum number of idle connections to keep along with their
+     * prepared statements
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+
+    /**
+     * Number of rows fetched at a time by iterators
+     */
+    private static final int FETCH_SIZE = 128;
+
     private String name;
     private String dbTableName;
     
@@ -77,6 +157,44 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
      */
     private int tombstoneDeletion = 24 * 60 * 60 * 1000;
 
+    /**
+     * Values that have been written but not yet committed to the database
+     */
+    private final ConcurrentMap<ByteArray, PendingWrite> pending =
+            new ConcurrentHashMap<ByteArray, PendingWrite>();
+
+    /**
+     * Keys that are currently in the write queue
+     */
+    private final Set<ByteArray> queued =
+            Collections.newSetFromMap(new ConcurrentHashMap<ByteArray,
+                                                           Boolean>());
+
+    /**
+     * Keys waiting for the batch writer
+     */
+    private final BlockingQueue<ByteArray> writeQueue =
+            new ArrayBlockingQueue<ByteArray>(WRITE_QUEUE_SIZE);
+
+    /**
+     * Locks that serialize the read-modify-write of a key
+     */
+    private final Object[] keyLocks = new Object[LOCK_STRIPES];
+
+    /**
+     * Idle connections with their cached prepared statements
+     */
+    private final ConcurrentLinkedQueue<CachedConnection> idleConnections =
+            new ConcurrentLinkedQueue<CachedConnection>();
+
+    /**
+     * Signalled by the batch writer after each batch
+     */
+    private final Object flushLock = new Object();
+
+    private final Thread writerThread;
+    private volatile boolean shutdown = false;
+
     private static final ObjectMapper mapper = 
             new ObjectMapper(new SmileFactory());
     {
@@ -99,6 +217,9 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
         this.name = name;
         this.dbTableName = name.replace('.', '_');
         this.dataSource = dataSource;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            keyLocks[i] = new Object();
+        }
 
         try {
             initTable();
@@ -106,6 +227,10 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
             throw new PersistException("Could not initialize persistent storage",
                                        sqle);
         }
+
+        writerThread = new Thread(new BatchWriter(), "SyncDB-Writer-" + name);
+        writerThread.setDaemon(true);
+        writerThread.start();
     }
     
     // *******************************
@@ -115,19 +240,24 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
     @Override
     public List<Versioned<byte[]>> get(ByteArray key) throws SyncException {
         StoreUtils.assertValidKey(key);
-        Connection dbConnection = null;
-        PreparedStatement stmt = null;
-        try {
-            dbConnection = getConnection();
-            stmt = dbConnection.prepareStatement(getSql(SELECT_KEY));
-            return doSelect(stmt, getKeyAsString(key));
+        PendingWrite pw = pending.get(key);
+        if (pw != null)
+            return new ArrayList<Versioned<byte[]>>(pw.values);
 
+        CachedConnection conn = null;
+        boolean ok = false;
+        try {
+            conn = borrowConnection();
+            List<Versioned<byte[]>> values =
+                    doSelect(conn.prepare(SELECT_KEY), getKeyAsString(key));
+            ok = true;
+            return values;
         } catch (Exception e) {
             throw new PersistException("Could not retrieve key" +
                     " from database",
                     e);
         } finally {
-            cleanupSQL(dbConnection, stmt);
+            releaseConnection(conn, ok);
         }
     }
 
@@ -140,9 +270,10 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
             // we never close this connection unless there's an error; 
             // it must be closed by the DbIterator
             dbConnection = getConnection();
-            stmt = dbConnection.prepareStatement(getSql(SELECT_ALL));
+            stmt = prepareCursor(dbConnection);
             ResultSet rs = stmt.executeQuery();
-            return new DbIterator(dbConnection, stmt, rs);                
+            return new DbIterator(dbConnection, stmt, rs,
+                                  new HashSet<ByteArray>(pending.keySet()));
         } catch (Exception e) {
             logger.error("Could not create iterator on data", e);
             try {
@@ -157,62 +288,7 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
     @Override
     public void put(ByteArray key, Versioned<byte[]> value) 
             throws SyncException {
-        StoreUtils.assertValidKey(key);
-        Connection dbConnection = null;
-        try {
-            PreparedStatement stmt = null;
-            PreparedStatement update = null;
-            try {
-                String keyStr = getKeyAsString(key);
-                dbConnection = getConnection();
-                dbConnection.setAutoCommit(false);
-                stmt = dbConnection.prepareStatement(getSql(SELECT_KEY));
-                List<Versioned<byte[]>> values = doSelect(stmt, keyStr);
-
-                int vindex;
-                if (values.size() > 0) {
-                    update = dbConnection.prepareStatement(getSql(UPDATE_KEY));
-                    update.setString(2, keyStr);
-                    vindex = 1;
-                } else {
-                    update = dbConnection.prepareStatement(getSql(INSERT_KEY));
-                    update.setString(1, keyStr);
-                    vindex = 2;
-                }
-
-                List<Versioned<byte[]>> itemsToRemove = 
-                        new ArrayList<Versioned<byte[]>>(values.size());
-                for(Versioned<byte[]> versioned: values) {
-                    Occurred occurred = value.getVersion().compare(versioned.getVersion());
-                    if(occurred == Occurred.BEFORE) {
-                        throw new ObsoleteVersionException("Obsolete version for key '" + key
-                                                           + "': " + value.getVersion());
-                    } else if(occurred == Occurred.AFTER) {
-                        itemsToRemove.add(versioned);
-                    }
-                }
-                values.removeAll(itemsToRemove);
-                values.add(value);
-
-                ByteArrayInputStream is = 
-                        new ByteArrayInputStream(mapper.writeValueAsBytes(values));                
-                update.setBinaryStream(vindex, is);
-                update.execute();
-                dbConnection.commit();
-            } catch (SyncException e) {
-                dbConnection.rollback();
-                throw e;
-            } catch (Exception e) {
-                dbConnection.rollback();
-                throw new PersistException("Could not retrieve key from database",
-                                           e);
-            } finally {
-                cleanupSQL(dbConnection, stmt, update);
-            }
-        } catch (SQLException e) {
-            cleanupSQL(dbConnection);
-            throw new PersistException("Could not clean up", e);
-        }
+        doPut(key, Collections.singletonList(value), true);
     }
 
     @Override
@@ -222,16 +298,18 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
 
     @Override
     public void truncate() throws SyncException {
-        Connection dbConnection = null;
-        PreparedStatement update = null;
+        waitForWrites(WRITE_WAIT_TIMEOUT);
+
+        CachedConnection conn = null;
+        boolean ok = false;
         try {
-            dbConnection = getConnection();
-            update = dbConnection.prepareStatement(getSql(TRUNCATE));
-            update.execute();
+            conn = borrowConnection();
+            conn.prepare(TRUNCATE).execute();
+            ok = true;
         } catch (Exception e) {
             logger.error("Failed to truncate store " + getName(), e);
         } finally {
-            cleanupSQL(dbConnection, update);
+            releaseConnection(conn, ok);
         }
     }
 
@@ -242,25 +320,30 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
 
     @Override
     public void close() throws SyncException {
+        waitForWrites(WRITE_WAIT_TIMEOUT);
+        shutdown = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         
+        CachedConnection conn;
+        while ((conn = idleConnections.poll()) != null) {
+            conn.close();
+        }
     }
 
     @Override
     public boolean writeSyncValue(ByteArray key,
                                   Iterable<Versioned<byte[]>> values) {
-        boolean success = false;
-        for (Versioned<byte[]> value : values) {
-            try {
-                put (key, value);
-                success = true;
-            } catch (PersistException e) {
-                logger.error("Failed to sync value because of " +
-                             "persistence exception", e);
-            } catch (SyncException e) {
-                // ignore obsolete version exception
-            }
+        try {
+            return doPut(key, values, false);
+        } catch (SyncException e) {
+            logger.error("Failed to sync value because of " +
+                         "persistence exception", e);
+            return false;
         }
-        return success;
     }
 
     @Override
@@ -272,15 +355,16 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
     public void cleanupTask() throws SyncException {
         Connection dbConnection = null;
         PreparedStatement stmt = null;
+        List<String> candidates = new ArrayList<String>();
         try {
             dbConnection = getConnection();
             dbConnection.setAutoCommit(true);
-            stmt = dbConnection.prepareStatement(getSql(SELECT_ALL));
+            stmt = prepareCursor(dbConnection);
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
                 List<Versioned<byte[]>> items = getVersionedList(rs);
                 if (StoreUtils.canDelete(items, tombstoneDeletion)) {
-                    doClearTombstone(rs.getString("datakey"));
+                    candidates.add(rs.getString("datakey"));
                 }
             }                
         } catch (Exception e) {
@@ -288,6 +372,9 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
         } finally {
             cleanupSQL(dbConnection, stmt);
         }
+
+        if (candidates.size() > 0)
+            doClearTombstones(candidates);
     }
 
     @Override
@@ -371,6 +458,41 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
         return conn;
     }
     
+    /**
+     * Get an idle connection, or open a new one if there are none
+     */
+    private CachedConnection borrowConnection() throws SQLException {
+        CachedConnection conn = idleConnections.poll();
+        if (conn != null) return conn;
+        return new CachedConnection();
+    }
+
+    /**
+     * Return a connection obtained from {@link #borrowConnection()}.
+     * Connections that saw an error are closed rather than reused.
+     */
+    private void releaseConnection(CachedConnection conn, boolean ok) {
+        if (conn == null) return;
+        if (ok && idleConnections.size() < MAX_IDLE_CONNECTIONS) {
+            idleConnections.offer(conn);
+        } else {
+            conn.close();
+        }
+    }
+
+    /**
+     * Prepare a forward-only, read-only statement that walks the whole table
+     */
+    private PreparedStatement prepareCursor(Connection dbConnection)
+            throws SQLException {
+        PreparedStatement stmt =
+                dbConnection.prepareStatement(getSql(SELECT_ALL),
+                                              ResultSet.TYPE_FORWARD_ONLY,
+                                              ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(FETCH_SIZE);
+        return stmt;
+    }
+
     private void initTable() throws SQLException {
         Connection dbConnection = getConnection();
         Statement statement = null;
@@ -393,6 +515,10 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
         return DatatypeConverter.printBase64Binary(key.get());
     }
 
+    private static int getKeyStringLength(ByteArray key) {
+        return (key.length() + 2) / 3 * 4;
+    }
+
     private static ByteArray getStringAsKey(String keyStr) 
             throws UnsupportedEncodingException {
         return new ByteArray(DatatypeConverter.parseBase64Binary(keyStr));
@@ -402,6 +528,10 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
         return sql.replace("<tbl>", dbTableName);
     }
     
+    private Object getKeyLock(ByteArray key) {
+        return keyLocks[(key.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
     private static List<Versioned<byte[]>> getVersionedList(ResultSet rs) 
                 throws SQLException, JsonParseException, 
                     JsonMappingException, IOException {
@@ -416,89 +546,419 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
                     JsonMappingException, IOException {
         stmt.setString(1, key);
         ResultSet rs = stmt.executeQuery();
-        
-        if (rs.next()) {
-            return getVersionedList(rs);
-        } else {
-            return new ArrayList<Versioned<byte[]>>(0);
+        try {
+            if (rs.next()) {
+                return getVersionedList(rs);
+            } else {
+                return new ArrayList<Versioned<byte[]>>(0);
+            }
+        } finally {
+            rs.close();
         }
     }
 
-    private void doClearTombstone(String keyStr) throws SyncException {
-        Connection dbConnection = null;
-        try {
-            PreparedStatement stmt = null;
-            PreparedStatement update = null;
+    /**
+     * Merge the given values into the current values for the key and queue
+     * the result for the batch writer
+     * @param key the key
+     * @param newValues the values to write
+     * @param failObsolete if true, throw an {@link ObsoleteVersionException}
+     * for a value older than the current value; otherwise skip it
+     * @return true if any of the values was written
+     * @throws SyncException
+     */
+    private boolean doPut(ByteArray key,
+                          Iterable<Versioned<byte[]>> newValues,
+                          boolean failObsolete) throws SyncException {
+        StoreUtils.assertValidKey(key);
+        // Reject keys the database would refuse before they reach the
+        // batch writer
+        if (getKeyStringLength(key) > MAX_KEY_STRING_LENGTH)
+            throw new PersistException("Key of " + key.length() +
+                                       " bytes is too long to persist");
+        boolean enqueue;
+        synchronized (getKeyLock(key)) {
+            List<Versioned<byte[]>> values = get(key);
+            boolean written = false;
+            for (Versioned<byte[]> value : newValues) {
+                try {
+                    merge(key, values, value);
+                    written = true;
+                } catch (ObsoleteVersionException e) {
+                    if (failObsolete) throw e;
+                }
+            }
+            if (!written) return false;
+
+            pending.put(key, new PendingWrite(values));
+            enqueue = queued.add(key);
+        }
+
+        // Block for space in the queue outside of the key lock
+        if (enqueue) {
             try {
-                dbConnection = getConnection();
-                dbConnection.setAutoCommit(false);    
-                stmt = dbConnection.prepareStatement(getSql(SELECT_KEY));
-                List<Versioned<byte[]>> items = doSelect(stmt, keyStr);
-                if (StoreUtils.canDelete(items, tombstoneDeletion)) {
-                    update = dbConnection.prepareStatement(getSql(DELETE_KEY));
-                    update.setString(1, keyStr);
-                    update.execute();
+                writeQueue.put(key);
+            } catch (InterruptedException e) {
+                queued.remove(key);
+                Thread.currentThread().interrupt();
+                throw new PersistException("Interrupted while queueing " +
+                                           "write to database", e);
+            }
+        }
+        return true;
+    }
+
+    private static void merge(ByteArray key,
+                              List<Versioned<byte[]>> values,
+                              Versioned<byte[]> value)
+                                      throws ObsoleteVersionException {
+        List<Versioned<byte[]>> itemsToRemove =
+                new ArrayList<Versioned<byte[]>>(values.size());
+        for(Versioned<byte[]> versioned: values) {
+            Occurred occurred = value.getVersion().compare(versioned.getVersion());
+            if(occurred == Occurred.BEFORE) {
+                throw new ObsoleteVersionException("Obsolete version for key '" + key
+                                                   + "': " + value.getVersion());
+            } else if(occurred == Occurred.AFTER) {
+                itemsToRemove.add(versioned);
+            }
+        }
+        values.removeAll(itemsToRemove);
+        values.add(value);
+    }
+
+    /**
+     * Wait until the batch writer has committed or dropped all pending
+     * writes
+     * @param timeout the maximum time to wait in milliseconds
+     * @return true if there are no pending writes left
+     */
+    @LogMessageDoc(level="WARN",
+                   message="Timed out waiting for {count} pending writes " +
+                           "to store {store}",
+                   explanation="The local database did not accept writes " +
+                               "in time; the remaining values may be lost",
+                   recommendation=LogMessageDoc.CHECK_CONTROLLER)
+    protected boolean waitForWrites(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (flushLock) {
+            while (!pending.isEmpty() && writerThread.isAlive()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    logger.warn("Timed out waiting for {} pending writes " +
+                                "to store {}", pending.size(), getName());
+                    return false;
+                }
+                try {
+                    flushLock.wait(Math.min(remaining, WRITER_POLL_INTERVAL));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
                 }
-                dbConnection.commit();
-
-            } catch (Exception e) {
-                if (dbConnection != null)
-                    dbConnection.rollback();
-                logger.error("Failed to delete key", e);
-            } finally {
-                cleanupSQL(dbConnection, stmt, update);
             }
-        } catch (SQLException e) {
-            logger.error("Failed to clean up after error", e);
-            cleanupSQL(dbConnection);
         }
+        return pending.isEmpty();
+    }
+
+    /**
+     * Take the pending values of the given keys for the batch writer
+     * @param keys the keys taken from the write queue
+     * @return the pending values by key
+     */
+    private Map<ByteArray, PendingWrite> takeBatch(List<ByteArray> keys) {
+        Map<ByteArray, PendingWrite> batch =
+                new LinkedHashMap<ByteArray, PendingWrite>();
+        for (ByteArray key : keys) {
+            // Remove from the queued set first so that a write that
+            // arrives while the batch is in progress is queued again
+            queued.remove(key);
+            PendingWrite pw = pending.get(key);
+            if (pw != null) batch.put(key, pw);
+        }
+        return batch;
     }
     
-    private static class DbIterator implements 
+    /**
+     * Write pending values to the database in a single transaction.  Rows
+     * that already exist are updated in one batch and the remaining rows
+     * inserted in a second batch.
+     * @param conn the connection to use
+     * @param batch the pending values by key
+     * @throws Exception
+     */
+    private void writeBatch(CachedConnection conn,
+                            Map<ByteArray, PendingWrite> batch)
+                                    throws Exception {
+        if (batch.isEmpty()) return;
+
+        List<String> keyStrs = new ArrayList<String>(batch.size());
+        List<byte[]> data = new ArrayList<byte[]>(batch.size());
+        PreparedStatement update = conn.prepare(UPDATE_KEY);
+        for (Entry<ByteArray, PendingWrite> e : batch.entrySet()) {
+            String keyStr = getKeyAsString(e.getKey());
+            byte[] bytes = mapper.writeValueAsBytes(e.getValue().values);
+            keyStrs.add(keyStr);
+            data.add(bytes);
+            update.setBytes(1, bytes);
+            update.setString(2, keyStr);
+            update.addBatch();
+        }
+
+        boolean success = false;
+        try {
+            int[] updated = update.executeBatch();
+
+            PreparedStatement insert = null;
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] != 0) continue;
+                if (insert == null) insert = conn.prepare(INSERT_KEY);
+                insert.setString(1, keyStrs.get(i));
+                insert.setBytes(2, data.get(i));
+                insert.addBatch();
+            }
+            if (insert != null) insert.executeBatch();
+
+            conn.connection.commit();
+            success = true;
+        } finally {
+            if (!success) {
+                update.clearBatch();
+                conn.connection.rollback();
+            }
+        }
+
+        // Only drop the values that were actually written; a newer write
+        // has already been queued again
+        dropPending(batch);
+    }
+
+    /**
+     * Write pending values to the database in one transaction per row, so
+     * that a row the database rejects does not hold up the others
+     * @param conn the connection to use
+     * @param batch the pending values by key
+     * @return the pending values that could not be written
+     */
+    private Map<ByteArray, PendingWrite>
+            writeRows(CachedConnection conn,
+                      Map<ByteArray, PendingWrite> batch) {
+        Map<ByteArray, PendingWrite> failed =
+                new LinkedHashMap<ByteArray, PendingWrite>();
+        for (Entry<ByteArray, PendingWrite> e : batch.entrySet()) {
+            try {
+                writeBatch(conn, Collections.singletonMap(e.getKey(),
+                                                          e.getValue()));
+            } catch (Exception ex) {
+                logger.debug("Failed to write key to database", ex);
+                failed.put(e.getKey(), e.getValue());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Forget pending values that have been written or dropped.  Only the
+     * given values are removed; a newer write has already been queued again.
+     */
+    private void dropPending(Map<ByteArray, PendingWrite> batch) {
+        for (Entry<ByteArray, PendingWrite> e : batch.entrySet()) {
+            pending.remove(e.getKey(), e.getValue());
+        }
+    }
+
+    private void doClearTombstones(List<String> keyStrs)
+            throws SyncException {
+        CachedConnection conn = null;
+        boolean ok = false;
+        try {
+            conn = borrowConnection();
+            PreparedStatement select = conn.prepare(SELECT_KEY);
+            PreparedStatement delete = conn.prepare(DELETE_KEY);
+            for (String keyStr : keyStrs) {
+                ByteArray key = getStringAsKey(keyStr);
+                // Hold the key lock so that a concurrent write cannot
+                // slip in between the check and the delete
+                synchronized (getKeyLock(key)) {
+                    if (pending.containsKey(key)) continue;
+                    List<Versioned<byte[]>> items = doSelect(select, keyStr);
+                    if (StoreUtils.canDelete(items, tombstoneDeletion)) {
+                        delete.setString(1, keyStr);
+                        delete.execute();
+                    }
+                }
+            }
+            ok = true;
+        } catch (Exception e) {
+            logger.error("Failed to delete key", e);
+        } finally {
+            releaseConnection(conn, ok);
+        }
+    }
+
+    /**
+     * Values for a key that have not yet been written to the database.
+     * Compared by identity so that the batch writer removes exactly the
+     * values it wrote.
+     */
+    private static final class PendingWrite {
+        final List<Versioned<byte[]>> values;
+
+        public PendingWrite(List<Versioned<byte[]>> values) {
+            this.values = values;
+        }
+    }
+
+    /**
+     * A database connection along with the statements prepared on it
+     */
+    private class CachedConnection {
+        final Connection connection;
+        final Map<String, PreparedStatement> statements =
+                new HashMap<String, PreparedStatement>();
+
+        public CachedConnection() throws SQLException {
+            connection = getConnection();
+        }
+
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement stmt = statements.get(sql);
+            if (stmt == null) {
+                stmt = connection.prepareStatement(getSql(sql));
+                statements.put(sql, stmt);
+            }
+            return stmt;
+        }
+
+        public void close() {
+            try {
+                cleanupSQL(connection,
+                           statements.values().toArray(new PreparedStatement[0]));
+            } catch (SyncException e) {
+                logger.error("Could not close database connection", e);
+            }
+        }
+    }
+
+    /**
+     * Drains the write queue and writes the queued keys in batches.  If a
+     * batch fails, its rows are retried one at a time a bounded number of
+     * times, after which the rows that still fail are dropped.
+     */
+    protected class BatchWriter implements Runnable {
+        private CachedConnection conn = null;
+
+        @Override
+        public void run() {
+            List<ByteArray> keys = new ArrayList<ByteArray>();
+            while (!shutdown) {
+                try {
+                    ByteArray key =
+                            writeQueue.poll(WRITER_POLL_INTERVAL,
+                                            TimeUnit.MILLISECONDS);
+                    if (key == null) continue;
+                    keys.add(key);
+                    writeQueue.drainTo(keys, MAX_BATCH_SIZE - keys.size());
+
+                    write(takeBatch(keys));
+                    keys.clear();
+                } catch (InterruptedException e) {
+                    // check for shutdown
+                } finally {
+                    synchronized (flushLock) {
+                        flushLock.notifyAll();
+                    }
+                }
+            }
+            closeConnection();
+        }
+
+        @LogMessageDoc(level="ERROR",
+                       message="Dropped {count} rows of store {store} that " +
+                               "could not be written to the database",
+                       explanation="Persistent sync data could not be written to " +
+                                   "the local database",
+                       recommendation=LogMessageDoc.CHECK_CONTROLLER)
+        private void write(Map<ByteArray, PendingWrite> batch)
+                throws InterruptedException {
+            for (int attempt = 1; !batch.isEmpty(); attempt++) {
+                try {
+                    if (conn == null) {
+                        conn = new CachedConnection();
+                        conn.connection.setAutoCommit(false);
+                    }
+                    if (attempt == 1) {
+                        writeBatch(conn, batch);
+                        return;
+                    }
+                    batch = writeRows(conn, batch);
+                    if (batch.isEmpty()) return;
+                    // Retry the remaining rows on a fresh connection
+                    closeConnection();
+                } catch (Exception e) {
+                    logger.debug("Failed to write batch to database", e);
+                    closeConnection();
+                }
+
+                if (attempt >= MAX_WRITE_ATTEMPTS || shutdown) {
+                    logger.error("Dropped {} rows of store {} that could " +
+                                 "not be written to the database",
+                                 batch.size(), getName());
+                    dropPending(batch);
+                    return;
+                }
+                if (attempt > 1)
+                    Thread.sleep(WRITER_RETRY_INTERVAL);
+            }
+        }
+
+        private void closeConnection() {
+            if (conn != null) {
+                conn.close();
+                conn = null;
+            }
+        }
+    }
+
+    /**
+     * Iterates over the rows of the table followed by any keys that had
+     * pending writes but were not found in the table.  Rows are streamed
+     * from a forward-only cursor rather than loaded up front.
+     */
+    private class DbIterator implements
         IClosableIterator<Entry<ByteArray,List<Versioned<byte[]>>>> {
 
         private final Connection dbConnection;
         private final PreparedStatement stmt;
         private final ResultSet rs;
-        private boolean hasNext = false;
-        private boolean hasNextSet = false;
+        private final Set<ByteArray> unseenPending;
+        private Iterator<ByteArray> pendingIterator;
+        private boolean rsDone = false;
+        private Pair<ByteArray, List<Versioned<byte[]>>> nextEntry;
         
         public DbIterator(Connection dbConnection,
                           PreparedStatement stmt, 
-                          ResultSet rs) {
+                          ResultSet rs,
+                          Set<ByteArray> unseenPending) {
             super();
             this.dbConnection = dbConnection;
             this.stmt = stmt;
             this.rs = rs;
+            this.unseenPending = unseenPending;
         }
 
         @Override
         public boolean hasNext() {
-            try {
-                if (hasNextSet) return hasNext;
-                hasNextSet = true;
-                hasNext = rs.next();
-            } catch (Exception e) {
-                logger.error("Error in DB Iterator", e);
-                hasNextSet = true;
-                hasNext = false;
-            }
-            return hasNext;
+            if (nextEntry == null)
+                nextEntry = advance();
+            return nextEntry != null;
         }
 
         @Override
         public Pair<ByteArray, List<Versioned<byte[]>>> next() {
             if (hasNext()) {
-                try {
-                    ByteArray key = getStringAsKey(rs.getString("datakey"));
-                    List<Versioned<byte[]>> vlist = getVersionedList(rs);
-                    hasNextSet = false;
-                    return new Pair<ByteArray, 
-                                    List<Versioned<byte[]>>>(key, vlist);
-                } catch (Exception e) {
-                    throw new SyncRuntimeException("Error in DB Iterator", 
-                                                   new PersistException(e));
-                }
+                Pair<ByteArray, List<Versioned<byte[]>>> r = nextEntry;
+                nextEntry = null;
+                return r;
             } else {
                 throw new NoSuchElementException();
             }
@@ -518,5 +978,50 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
             }
         }
         
+        private Pair<ByteArray, List<Versioned<byte[]>>> advance() {
+            while (!rsDone) {
+                try {
+                    if (!rs.next()) {
+                        rsDone = true;
+                        break;
+                    }
+                } catch (Exception e) {
+                    logger.error("Error in DB Iterator", e);
+                    rsDone = true;
+                    break;
+                }
+                try {
+                    ByteArray key = getStringAsKey(rs.getString("datakey"));
+                    List<Versioned<byte[]>> vlist = null;
+                    if (unseenPending.remove(key)) {
+                        PendingWrite pw = pending.get(key);
+                        if (pw != null)
+                            vlist = new ArrayList<Versioned<byte[]>>(pw.values);
+                    }
+                    if (vlist == null)
+                        vlist = getVersionedList(rs);
+                    return new Pair<ByteArray,
+                                    List<Versioned<byte[]>>>(key, vlist);
+                } catch (Exception e) {
+                    throw new SyncRuntimeException("Error in DB Iterator",
+                                                   new PersistException(e));
+                }
+            }
+
+            if (pendingIterator == null)
+                pendingIterator = unseenPending.iterator();
+            while (pendingIterator.hasNext()) {
+                ByteArray key = pendingIterator.next();
+                try {
+                    List<Versioned<byte[]>> vlist = get(key);
+                    if (vlist.size() == 0) continue;
+                    return new Pair<ByteArray,
+                                    List<Versioned<byte[]>>>(key, vlist);
+                } catch (SyncException e) {
+                    throw new SyncRuntimeException("Error in DB Iterator", e);
+                }
+            }
+            return null;
+        }
     }
 }
@@ -0,0 +1,355 @@
+package org.sdnplatform.sync.internal.store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.sdnplatform.sync.IClosableIterator;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.error.SyncException;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.version.ClockEntry;
+import org.sdnplatform.sync.internal.version.VectorClock;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * A hash tree over the contents of a store that allows two nodes to find
+ * the keys on which they disagree without exchanging the full list of keys
+ * and versions.
+ *
+ * Keys are hashed into a fixed number of leaf buckets.  Every node of the
+ * tree holds the XOR of the hashes of all keys below it, so a change to a
+ * single key is applied by XORing the difference into its leaf and the
+ * ancestors of the leaf instead of rehashing the bucket.  Nodes are numbered
+ * in breadth-first order starting with the root at 0; the children of node
+ * <code>n</code> are <code>FANOUT * n + 1</code> to
+ * <code>FANOUT * n + FANOUT</code>.
+ */
+public class StoreDigestTree {
+    /**
+     * The number of children of each inner node
+     */
+    public static final int FANOUT = 16;
+
+    /**
+     * The number of levels below the root
+     */
+    public static final int DEPTH = 3;
+
+    /**
+     * The number of leaf buckets
+     */
+    public static final int LEAVES = 4096;
+
+    /**
+     * The node ID of the first leaf
+     */
+    public static final int FIRST_LEAF = (LEAVES - 1) / (FANOUT - 1);
+
+    /**
+     * The total number of nodes in the tree
+     */
+    public static final int NODES = FIRST_LEAF + LEAVES;
+
+    private static final HashFunction bucketHash = Hashing.murmur3_32();
+    private static final HashFunction keyHash = Hashing.murmur3_128();
+
+    /**
+     * The store whose contents are summarized
+     */
+    private final IStorageEngine<ByteArray, byte[]> store;
+
+    /**
+     * The XOR of the key hashes below each node
+     */
+    private final AtomicLongArray digests = new AtomicLongArray(NODES);
+
+    /**
+     * The number of keys below each node
+     */
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(NODES);
+
+    /**
+     * The hash of each key, by leaf bucket.  Each bucket is guarded by its
+     * own monitor.
+     */
+    private final List<Map<ByteArray, Long>> buckets;
+
+    /**
+     * Updates hold the read lock; a rebuild holds the write lock
+     */
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+
+    /**
+     * Allocate a digest tree for the given store.  The tree is initially
+     * empty; call {@link #rebuild()} to populate it.
+     * @param store the store to summarize
+     */
+    public StoreDigestTree(IStorageEngine<ByteArray, byte[]> store) {
+        this.store = store;
+        buckets = new ArrayList<Map<ByteArray, Long>>(LEAVES);
+        for (int i = 0; i < LEAVES; i++) {
+            buckets.add(new HashMap<ByteArray, Long>());
+        }
+    }
+
+    // **************
+    // Public methods
+    // **************
+
+    /**
+     * Bring the tree up to date with the current value of a key in the
+     * store.  This must be called after every write to the key.
+     * @param key the key that changed
+     * @throws SyncException
+     */
+    public void update(ByteArray key) throws SyncException {
+        int bucket = getBucket(key);
+        Map<ByteArray, Long> hashes = buckets.get(bucket);
+        rebuildLock.readLock().lock();
+        try {
+            // Read the value under the bucket lock so that concurrent
+            // writes to the same key are applied in order
+            synchronized (hashes) {
+                long hash = hash(key, store.get(key));
+                Long old = (hash == 0)
+                        ? hashes.remove(key)
+                        : hashes.put(key, hash);
+                long delta = hash ^ (old == null ? 0 : old.longValue());
+                int countDelta = (hash == 0 ? 0 : 1) - (old == null ? 0 : 1);
+                if (delta != 0 || countDelta != 0)
+                    apply(FIRST_LEAF + bucket, delta, countDelta);
+            }
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Recompute the tree from the contents of the store.  This is needed
+     * after operations that modify the store without going through
+     * {@link #update(ByteArray)}, such as tombstone cleanup.
+     */
+    public void rebuild() {
+        rebuildLock.writeLock().lock();
+        try {
+            for (int i = 0; i < NODES; i++) {
+                digests.set(i, 0);
+                counts.set(i, 0);
+            }
+            for (Map<ByteArray, Long> hashes : buckets) {
+                hashes.clear();
+            }
+
+            IClosableIterator<Entry<ByteArray,
+                                    List<Versioned<byte[]>>>> entries =
+                    store.entries();
+            try {
+                while (entries.hasNext()) {
+                    Entry<ByteArray, List<Versioned<byte[]>>> e =
+                            entries.next();
+                    long hash = hash(e.getKey(), e.getValue());
+                    if (hash == 0) continue;
+                    int bucket = getBucket(e.getKey());
+                    Long old = buckets.get(bucket).put(e.getKey(), hash);
+                    if (old != null)
+                        apply(FIRST_LEAF + bucket, old.longValue(), -1);
+                    apply(FIRST_LEAF + bucket, hash, 1);
+                }
+            } finally {
+                entries.close();
+            }
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the digest of a node
+     * @param node the node ID
+     * @return the XOR of the hashes of all keys below the node
+     */
+    public long getDigest(int node) {
+        return digests.get(node);
+    }
+
+    /**
+     * Get the number of keys below a node
+     * @param node the node ID
+     * @return the number of keys
+     */
+    public int getCount(int node) {
+        return counts.get(node);
+    }
+
+    /**
+     * Check whether the given node ID is a leaf bucket
+     * @param node the node ID
+     * @return <code>true</code> if the node is a leaf
+     */
+    public static boolean isLeaf(int node) {
+        return node >= FIRST_LEAF;
+    }
+
+    /**
+     * Check whether the given node ID is part of the tree
+     * @param node the node ID
+     * @return <code>true</code> if the node ID is valid
+     */
+    public static boolean isValid(int node) {
+        return node >= 0 && node < NODES;
+    }
+
+    /**
+     * Get the ID of the first child of an inner node.  The node has
+     * {@link #FANOUT} children with consecutive IDs.
+     * @param node the inner node ID
+     * @return the ID of the first child
+     */
+    public static int getFirstChild(int node) {
+        return FANOUT * node + 1;
+    }
+
+    /**
+     * Get a snapshot of the keys below a node
+     * @param node the node ID
+     * @return the keys
+     */
+    public List<ByteArray> getKeys(int node) {
+        int first = node;
+        int last = node;
+        while (!isLeaf(first)) {
+            first = getFirstChild(first);
+            last = getFirstChild(last) + FANOUT - 1;
+        }
+
+        List<ByteArray> keys = new ArrayList<ByteArray>(counts.get(node));
+        for (int leaf = first; leaf <= last; leaf++) {
+            if (counts.get(leaf) == 0) continue;
+            Map<ByteArray, Long> hashes = buckets.get(leaf - FIRST_LEAF);
+            synchronized (hashes) {
+                keys.addAll(hashes.keySet());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Compare the digests of a remote copy of the store with the local
+     * digests
+     * @param nodes the IDs of the nodes to compare
+     * @param digests the remote digest of each node
+     * @param diffNodes filled in with the IDs of the nodes that differ
+     * @param diffDigests filled in with the local digest of each node that
+     * differs
+     */
+    public void compare(List<Integer> nodes, List<Long> digests,
+                        List<Integer> diffNodes, List<Long> diffDigests) {
+        for (int i = 0; i < nodes.size() && i < digests.size(); i++) {
+            int node = nodes.get(i);
+            if (!isValid(node)) continue;
+            long local = getDigest(node);
+            if (local == digests.get(i)) continue;
+
+            diffNodes.add(node);
+            diffDigests.add(local);
+        }
+    }
+
+    /**
+     * Descend into the nodes that differ from a remote copy of the store.
+     * Inner nodes are expanded into their non-empty children, which are to
+     * be compared next.  For leaf buckets, and for subtrees that are empty
+     * in the remote copy, the keys are collected to be offered.
+     * @param nodes the IDs of the nodes that differ
+     * @param digests the remote digest of each node
+     * @param childNodes filled in with the IDs of the children to compare
+     * @param childDigests filled in with the local digest of each child
+     * @param keys filled in with the keys to offer
+     */
+    public void expand(List<Integer> nodes, List<Long> digests,
+                       List<Integer> childNodes, List<Long> childDigests,
+                       List<ByteArray> keys) {
+        for (int i = 0; i < nodes.size() && i < digests.size(); i++) {
+            int node = nodes.get(i);
+            if (!isValid(node)) continue;
+            if (getCount(node) == 0) continue;
+
+            if (isLeaf(node) || digests.get(i) == 0) {
+                keys.addAll(getKeys(node));
+            } else {
+                int first = getFirstChild(node);
+                for (int c = first; c < first + FANOUT; c++) {
+                    if (getCount(c) == 0) continue;
+                    childNodes.add(c);
+                    childDigests.add(getDigest(c));
+                }
+            }
+        }
+    }
+
+    // *************
+    // Local methods
+    // *************
+
+    /**
+     * XOR the digest change into a leaf and all of its ancestors
+     */
+    private void apply(int leaf, long delta, int countDelta) {
+        int node = leaf;
+        while (true) {
+            if (delta != 0) {
+                long current;
+                do {
+                    current = digests.get(node);
+                } while (!digests.compareAndSet(node, current,
+                                                current ^ delta));
+            }
+            if (countDelta != 0)
+                counts.addAndGet(node, countDelta);
+            if (node == 0) break;
+            node = (node - 1) / FANOUT;
+        }
+    }
+
+    static int getBucket(ByteArray key) {
+        return bucketHash.hashBytes(key.get()).asInt() & (LEAVES - 1);
+    }
+
+    /**
+     * Compute the hash of a key and its versions.  The hash does not depend
+     * on the order of the versions.  Returns 0 for a key without versions.
+     */
+    private static long hash(ByteArray key, List<Versioned<byte[]>> values) {
+        if (values == null || values.size() == 0) return 0;
+
+        long versions = 0;
+        for (Versioned<byte[]> value : values) {
+            VectorClock vc = (VectorClock)value.getVersion();
+            Hasher vh = keyHash.newHasher();
+            vh.putLong(vc.getTimestamp());
+            for (ClockEntry ce : vc.getEntries()) {
+                vh.putShort(ce.getNodeId());
+                vh.putLong(ce.getVersion());
+            }
+            vh.putBoolean(value.getValue() == null);
+            versions += vh.hash().asLong();
+        }
+
+        long hash = keyHash.newHasher()
+                .putBytes(key.get())
+                .putLong(versions)
+                .hash().asLong();
+        // Reserve 0 for absent keys
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -30,6 +30,11 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
      */
     protected Scope scope;
 
+    /**
+     * Hash tree over the contents of the store used for anti-entropy
+     */
+    protected StoreDigestTree digestTree;
+
     /**
      * Allocate a synchronizing storage engine
      * @param localStorage the local storage
@@ -48,6 +53,9 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
         this.localStorage = localStorage;
         this.syncManager = syncManager;
         this.scope = scope;
+        this.digestTree = new StoreDigestTree(localStorage);
+        if (!Scope.UNSYNCHRONIZED.equals(scope))
+            digestTree.rebuild();
     }
 
     // *************************
@@ -58,8 +66,38 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
     public void put(ByteArray key, Versioned<byte[]> value)
             throws SyncException {
         super.put(key, value);
-        if (!Scope.UNSYNCHRONIZED.equals(scope))
+        if (!Scope.UNSYNCHRONIZED.equals(scope)) {
+            digestTree.update(key);
             syncManager.queueSyncTask(this, key, value);
+        }
+    }
+
+    @Override
+    public boolean writeSyncValue(ByteArray key,
+                                  Iterable<Versioned<byte[]>> values) {
+        boolean r = super.writeSyncValue(key, values);
+        if (r && !Scope.UNSYNCHRONIZED.equals(scope)) {
+            try {
+                digestTree.update(key);
+            } catch (SyncException e) {
+                // The next cleanup will rebuild the tree
+                logger.debug("Could not update digest for key", e);
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public void cleanupTask() throws SyncException {
+        super.cleanupTask();
+        if (!Scope.UNSYNCHRONIZED.equals(scope))
+            digestTree.rebuild();
+    }
+
+    @Override
+    public void truncate() throws SyncException {
+        super.truncate();
+        digestTree.rebuild();
     }
     
     // **************
@@ -73,4 +111,12 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
     public Scope getScope() {
         return scope;
     }
+
+    /**
+     * Get the hash tree over the contents of this store
+     * @return the {@link StoreDigestTree}
+     */
+    public StoreDigestTree getDigestTree() {
+        return digestTree;
+    }
 }
@@ -93,6 +93,8 @@ enum MessageType {
   REGISTER_RESPONSE = 19,
   CLUSTER_JOIN_REQUEST = 20,
   CLUSTER_JOIN_RESPONSE = 21,
+  SYNC_DIGEST_REQUEST = 22,
+  SYNC_DIGEST_RESPONSE = 23,
 }
 
 enum AuthScheme {
@@ -186,6 +188,13 @@ struct SyncRequestMessage {
   3: optional list<binary> keys
 }
 
+struct SyncDigestMessage {
+  1: required AsyncMessageHeader header,
+  2: required Store store,
+  3: optional list<i32> nodes,
+  4: optional list<i64> digests
+}
+
 struct FullSyncRequestMessage {
   1: required AsyncMessageHeader header,
 }
@@ -250,4 +259,6 @@ struct SyncMessage {
   20: optional RegisterResponseMessage registerResponse,
   21: optional ClusterJoinRequestMessage clusterJoinRequest,
   22: optional ClusterJoinResponseMessage clusterJoinResponse,
+  23: optional SyncDigestMessage syncDigestRequest,
+  24: optional SyncDigestMessage syncDigestResponse,
 }
\ No newline at end of file
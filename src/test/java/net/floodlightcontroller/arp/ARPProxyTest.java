@@ -0,0 +1,120 @@
+package net.floodlightcontroller.arp;
+
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.IOFSwitch.PortChangeType;
+import net.floodlightcontroller.core.OFSwitchPort;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.topology.IOlimpsTopologyService;
+import net.floodlightcontroller.topology.NodePortTuple;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openflow.protocol.OFPhysicalPort;
+import org.openflow.protocol.OFPhysicalPort.OFPortConfig;
+import org.openflow.protocol.OFPhysicalPort.OFPortState;
+
+public class ARPProxyTest {
+	/** The ARP proxy under test. */
+	ARPProxy arpProxy;
+	/** The ports of the switch. */
+	List<OFSwitchPort> ports;
+	/** The switch. */
+	IOFSwitch sw;
+
+	/**
+	 * Creates a switch port with a given port number, configuration, and state.
+	 */
+	private static OFSwitchPort port(int portNumber, int config, int state) {
+		OFPhysicalPort ofpPort = new OFPhysicalPort();
+		ofpPort.setPortNumber((short) portNumber);
+		ofpPort.setHardwareAddress(new byte[] {0, 0, 0, 0, 0, (byte) portNumber});
+		ofpPort.setName("port" + portNumber);
+		ofpPort.setConfig(config);
+		ofpPort.setState(state);
+		return OFSwitchPort.fromOFPhysicalPort(ofpPort);
+	}
+
+	/**
+	 * Gets the physical port numbers of the untagged edge ports of the switch.
+	 */
+	private List<Short> getEdgePorts() {
+		List<Short> portNumbers = new ArrayList<Short>();
+		Map<Short, List<OFSwitchPort>> edgePorts = arpProxy.getEdgePorts(sw);
+		if (edgePorts.containsKey(Ethernet.VLAN_UNTAGGED)) {
+			for (OFSwitchPort port : edgePorts.get(Ethernet.VLAN_UNTAGGED)) {
+				portNumbers.add(port.getOFPhysicalPort().getPortNumber());
+			}
+		}
+		Collections.sort(portNumbers);
+		return portNumbers;
+	}
+
+	@Before
+	public void setUp() {
+		ports = new ArrayList<OFSwitchPort>();
+		ports.add(port(1, 0, 0));
+		ports.add(port(2, OFPortConfig.OFPPC_PORT_DOWN.getValue(), 0));
+		ports.add(port(3, 0, OFPortState.OFPPS_LINK_DOWN.getValue()));
+		ports.add(port(4, 0, 0));
+
+		sw = createNiceMock(IOFSwitch.class);
+		expect(sw.getId()).andReturn(1L).anyTimes();
+		expect(sw.getPorts()).andReturn(ports).anyTimes();
+		IOlimpsTopologyService topology = createNiceMock(IOlimpsTopologyService.class);
+		expect(topology.isAttachmentPointPort(anyLong(), anyInt())).andReturn(true).anyTimes();
+		replay(sw, topology);
+
+		arpProxy = new ARPProxy();
+		arpProxy.topologyManager = topology;
+		arpProxy.suppressARP = Collections.synchronizedSet(new HashSet<NodePortTuple>());
+		arpProxy.edgePorts = new ConcurrentHashMap<Long, Map<Short, List<OFSwitchPort>>>();
+		arpProxy.edgePortsVersion = new AtomicLong();
+	}
+
+	@Test
+	public void testEdgePortsSkipDownPorts() {
+		// Ports that are disabled or whose link is down are no edge ports.
+		assertEquals(Arrays.asList((short) 1, (short) 4), getEdgePorts());
+	}
+
+	@Test
+	public void testEdgePortsCached() {
+		Map<Short, List<OFSwitchPort>> edgePorts = arpProxy.getEdgePorts(sw);
+		assertSame(edgePorts, arpProxy.getEdgePorts(sw));
+
+		// The link of port 4 goes down.
+		OFSwitchPort downPort = port(4, 0, OFPortState.OFPPS_LINK_DOWN.getValue());
+		ports.set(3, downPort);
+		assertSame(edgePorts, arpProxy.getEdgePorts(sw));
+		arpProxy.switchPortChanged(1L, downPort, PortChangeType.DOWN);
+		assertEquals(Arrays.asList((short) 1), getEdgePorts());
+
+		// The link of port 3 comes up.
+		OFSwitchPort upPort = port(3, 0, 0);
+		ports.set(2, upPort);
+		arpProxy.switchPortChanged(1L, upPort, PortChangeType.UP);
+		assertEquals(Arrays.asList((short) 1, (short) 3), getEdgePorts());
+
+		// Topology changes invalidate the edge ports of all switches.
+		edgePorts = arpProxy.getEdgePorts(sw);
+		arpProxy.topologyChanged(null);
+		assertNotSame(edgePorts, arpProxy.getEdgePorts(sw));
+	}
+
+}
@@ -0,0 +1,124 @@
+package net.floodlightcontroller.arp;
+
+import static org.junit.Assert.*;
+
+import java.util.Collection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PendingARPTableTest {
+	/** The ARP timeout: 1s. */
+	long timeout = 1000L;
+	/** The time the test starts. */
+	long now;
+
+	@Before
+	public void setUp() {
+		now = System.currentTimeMillis();
+	}
+
+	private ARPMessage request(long srcMac, int targetIp, long startTime) {
+		return new ARPMessage()
+			.setSourceMACAddress(srcMac)
+			.setSourceIPAddress((int) srcMac)
+			.setTargetIPAddress(targetIp)
+			.setSwitchId(1L)
+			.setInPort(1)
+			.setStartTime(startTime);
+	}
+
+	@Test
+	public void testCoalesce() {
+		PendingARPTable table = new PendingARPTable(timeout, 16, 16);
+		assertTrue(table.put(request(1L, 100, now)));
+		assertFalse(table.put(request(2L, 100, now)));
+		// A retry of the same requester replaces its previous request.
+		assertFalse(table.put(request(2L, 100, now)));
+		assertTrue(table.put(request(1L, 200, now)));
+		assertEquals(2, table.size());
+
+		Collection<ARPMessage> requests = table.remove(100);
+		assertEquals(2, requests.size());
+		assertNull(table.remove(100));
+		assertEquals(1, table.size());
+	}
+
+	@Test
+	public void testExpire() {
+		PendingARPTable table = new PendingARPTable(timeout, 16, 16);
+		table.put(request(1L, 100, now));
+		table.put(request(1L, 200, now + 500));
+		table.put(request(1L, 300, now));
+		table.remove(300);
+
+		assertEquals(0, table.expire(now + 500));
+		assertEquals(1, table.expire(now + timeout + 100));
+		assertFalse(table.contains(100));
+		assertTrue(table.contains(200));
+
+		// A coalesced request extends the timeout of its target.
+		table.put(request(2L, 200, now + 1200));
+		assertEquals(0, table.expire(now + 1600));
+		assertTrue(table.contains(200));
+		assertEquals(1, table.expire(now + 2300));
+		assertEquals(0, table.size());
+	}
+
+	@Test
+	public void testExpireAfterSeveralRotations() {
+		PendingARPTable table = new PendingARPTable(10 * timeout, 16, 16);
+		table.put(request(1L, 100, now));
+		long rotation = PendingARPTable.TICK_DURATION * PendingARPTable.TICKS_PER_WHEEL;
+		for (long t = now; t < now + 10 * timeout; t += rotation / 3) {
+			assertEquals(0, table.expire(t));
+		}
+		assertEquals(1, table.expire(now + 10 * timeout + PendingARPTable.TICK_DURATION));
+	}
+
+	@Test
+	public void testBounds() {
+		PendingARPTable table = new PendingARPTable(timeout, 4, 2);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(table.put(request(1L, 100 + i, now + 100 * i)));
+		}
+		// The target that expires next is evicted.
+		assertTrue(table.put(request(1L, 200, now + 1000)));
+		assertEquals(4, table.size());
+		assertFalse(table.contains(100));
+		assertTrue(table.contains(101));
+		assertTrue(table.contains(200));
+
+		// Requests beyond the per-target bound are dropped.
+		assertFalse(table.put(request(2L, 200, now + 1000)));
+		assertFalse(table.put(request(3L, 200, now + 1000)));
+		assertEquals(2, table.remove(200).size());
+	}
+
+	@Test
+	public void testTargetRemovedWhileCoalescing() {
+		// The target is answered right before the second request joins it.
+		PendingARPTable table = new PendingARPTable(timeout, 16, 16) {
+			boolean answered = false;
+
+			@Override
+			protected boolean coalesce(PendingTarget target, ARPMessage arpRequest, long expirationTime) {
+				if (!answered) {
+					answered = true;
+					assertEquals(1, remove(target.targetIPAddress).size());
+				}
+				return super.coalesce(target, arpRequest, expirationTime);
+			}
+		};
+		assertTrue(table.put(request(1L, 100, now)));
+
+		// The request is not lost in the removed target, but pending again.
+		ARPMessage arpRequest = request(2L, 100, now);
+		assertTrue(table.put(arpRequest));
+		assertEquals(1, table.size());
+		Collection<ARPMessage> requests = table.remove(100);
+		assertEquals(1, requests.size());
+		assertSame(arpRequest, requests.iterator().next());
+	}
+
+}
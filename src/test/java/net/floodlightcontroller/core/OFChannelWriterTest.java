@@ -0,0 +1,139 @@
+package net.floodlightcontroller.core;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import net.floodlightcontroller.core.internal.OFMessageEncoder;
+
+import org.easymock.IAnswer;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.junit.Before;
+import org.junit.Test;
+import org.openflow.protocol.OFBarrierRequest;
+import org.openflow.protocol.OFFlowMod;
+import org.openflow.protocol.OFMatch;
+import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFType;
+import org.openflow.protocol.action.OFAction;
+
+public class OFChannelWriterTest {
+	/** The message lists written to the channel. */
+	List<List<OFMessage>> writes;
+	/** The channel mock. */
+	Channel channel;
+
+	/**
+	 * An encoder that exposes its encode method.
+	 */
+	private static class TestEncoder extends OFMessageEncoder {
+		@Override
+		public ChannelBuffer encode(List<OFMessage> msglist) {
+			return super.encode(msglist);
+		}
+	}
+
+	@Before
+	public void setUp() {
+		writes = new ArrayList<List<OFMessage>>();
+		channel = createNiceMock(Channel.class);
+		expect(channel.write(anyObject())).andAnswer(new IAnswer<ChannelFuture>() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public ChannelFuture answer() throws Throwable {
+				synchronized (writes) {
+					writes.add((List<OFMessage>) getCurrentArguments()[0]);
+				}
+				return null;
+			}
+		}).anyTimes();
+		replay(channel);
+	}
+
+	private OFFlowMod createFlowMod(int xid) {
+		OFFlowMod fm = new OFFlowMod();
+		fm.setXid(xid);
+		fm.setMatch(new OFMatch());
+		fm.setActions(new ArrayList<OFAction>());
+		return fm;
+	}
+
+	@Test
+	public void testCoalesceUntilFlush() {
+		OFChannelWriter writer = new OFChannelWriter(channel, 100, 1024 * 1024, 5);
+		for (int xid = 1; xid <= 10; xid++) {
+			writer.write(createFlowMod(xid), false);
+		}
+		assertEquals(0, writes.size());
+		assertEquals(10, writer.getPendingMessages());
+
+		// A message that needs to be sent immediately flushes all queued messages in order.
+		OFBarrierRequest barrier = new OFBarrierRequest();
+		barrier.setXid(11);
+		writer.write(barrier, true);
+		assertEquals(1, writes.size());
+		assertEquals(11, writes.get(0).size());
+		for (int i = 0; i < 11; i++) {
+			assertEquals(i + 1, writes.get(0).get(i).getXid());
+		}
+		assertEquals(OFType.BARRIER_REQUEST, writes.get(0).get(10).getType());
+		assertEquals(0, writer.getPendingMessages());
+		assertEquals(0, writer.getPendingBytes());
+	}
+
+	@Test
+	public void testSizeLimit() {
+		int length = createFlowMod(0).getLengthU();
+		OFChannelWriter writer = new OFChannelWriter(channel, 100, 4 * length, 5);
+		for (int xid = 1; xid <= 10; xid++) {
+			writer.write(createFlowMod(xid), false);
+		}
+		assertEquals(2, writes.size());
+		assertEquals(4, writes.get(0).size());
+		assertEquals(2, writer.getPendingMessages());
+
+		writer.write(Arrays.<OFMessage>asList(createFlowMod(11), createFlowMod(12)), false);
+		assertEquals(3, writes.size());
+		assertEquals(0, writer.getPendingMessages());
+	}
+
+	@Test
+	public void testFlushDelay() throws Exception {
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		try {
+			OFChannelWriter writer = new OFChannelWriter(channel, 100, 1024 * 1024, 5);
+			writer.setExecutor(executor);
+			writer.write(createFlowMod(1), false);
+			writer.write(createFlowMod(2), false);
+			for (int i = 0; i < 100 && writer.getPendingMessages() > 0; i++) {
+				Thread.sleep(10);
+			}
+			synchronized (writes) {
+				assertEquals(1, writes.size());
+				assertEquals(2, writes.get(0).size());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testEncodeIntoDirectBuffer() throws Exception {
+		List<OFMessage> msglist = Arrays.<OFMessage>asList(createFlowMod(1), createFlowMod(2));
+		ChannelBuffer buf = new TestEncoder().encode(msglist);
+		assertTrue(buf.isDirect());
+		assertEquals(2 * createFlowMod(0).getLengthU(), buf.readableBytes());
+	}
+
+}
@@ -0,0 +1,148 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.openflow.protocol.OFBarrierReply;
+import org.openflow.protocol.OFEchoRequest;
+import org.openflow.protocol.OFFlowRemoved;
+import org.openflow.protocol.OFFlowRemoved.OFFlowRemovedReason;
+import org.openflow.protocol.OFMatch;
+import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFPacketIn;
+import org.openflow.protocol.OFPacketIn.OFPacketInReason;
+
+/**
+ * Measures the decode throughput of the OFMessageDecoder for a message mix
+ * of a packet-in heavy workload: 80% packet-ins with 64 to 1500 byte frames,
+ * 10% flow removed, 5% echo requests, and 5% barrier replies. The messages
+ * are read in chunks of the size of a socket read.
+ *
+ * Compares the copying decoder, the zero-copy decoder, and the zero-copy
+ * decoder when every listener accesses the packet data as array.
+ *
+ * Usage: OFMessageDecoderBenchmark [messages] [readSize] [rounds]
+ */
+public class OFMessageDecoderBenchmark {
+	/** The default number of messages per round. */
+	private static final int DEFAULT_MESSAGES = 200000;
+	/** The default size of a socket read. */
+	private static final int DEFAULT_READ_SIZE = 16 * 1024;
+	/** The default number of measured rounds. */
+	private static final int DEFAULT_ROUNDS = 5;
+	/** The number of warm up rounds. */
+	private static final int WARMUP_ROUNDS = 3;
+
+	/**
+	 * Serializes the message mix and splits it into socket reads. Messages
+	 * that do not fit into a read are split across two reads.
+	 */
+	private static List<byte[]> createReads(int messages, int readSize, Random random) {
+		ChannelBuffer buf = ChannelBuffers.dynamicBuffer(messages * 512);
+		OFMatch match = new OFMatch();
+		for (int i = 0; i < messages; i++) {
+			int kind = random.nextInt(100);
+			OFMessage ofm;
+			if (kind < 80) {
+				OFPacketIn pi = new OFPacketIn();
+				pi.setReason(OFPacketInReason.NO_MATCH);
+				pi.setInPort((short) (1 + random.nextInt(48)));
+				byte[] frame = new byte[64 + random.nextInt(1500 - 64)];
+				random.nextBytes(frame);
+				pi.setPacketData(frame);
+				ofm = pi;
+			} else if (kind < 90) {
+				OFFlowRemoved fr = new OFFlowRemoved();
+				fr.setMatch(match);
+				fr.setReason(OFFlowRemovedReason.OFPRR_IDLE_TIMEOUT);
+				ofm = fr;
+			} else if (kind < 95) {
+				ofm = new OFEchoRequest();
+			} else {
+				ofm = new OFBarrierReply();
+			}
+			ofm.setXid(i);
+			ofm.writeTo(buf);
+		}
+
+		List<byte[]> reads = new ArrayList<byte[]>();
+		while (buf.readable()) {
+			byte[] read = new byte[Math.min(readSize, buf.readableBytes())];
+			buf.readBytes(read);
+			reads.add(read);
+		}
+		return reads;
+	}
+
+	/**
+	 * Decodes all reads like the netty pipeline does, i.e. with a fresh
+	 * buffer per read. Returns the number of decoded messages.
+	 */
+	private static int decode(OFMessageDecoder decoder, Channel channel, List<byte[]> reads, boolean accessData) throws Exception {
+		int count = 0;
+		ChannelBuffer remainder = null;
+		for (byte[] read : reads) {
+			ChannelBuffer input = ChannelBuffers.wrappedBuffer(read);
+			ChannelBuffer buffer = (remainder == null) ? input : ChannelBuffers.wrappedBuffer(remainder, input);
+			@SuppressWarnings("unchecked")
+			List<OFMessage> msglist = (List<OFMessage>) decoder.decode(null, channel, buffer);
+			remainder = buffer.readable() ? buffer.slice(buffer.readerIndex(), buffer.readableBytes()) : null;
+			if (msglist == null)
+				continue;
+			count += msglist.size();
+			if (accessData) {
+				for (OFMessage ofm : msglist) {
+					if (ofm instanceof OFPacketIn)
+						((OFPacketIn) ofm).getPacketData();
+				}
+			}
+		}
+		return count;
+	}
+
+	private static void measure(String name, boolean zeroCopy, boolean accessData, Channel channel, List<byte[]> reads, long bytes, int rounds) throws Exception {
+		OFMessageDecoder decoder = new OFMessageDecoder(zeroCopy);
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			decode(decoder, channel, reads, accessData);
+		}
+		long nanos = 0;
+		int messages = 0;
+		for (int round = 0; round < rounds; round++) {
+			long start = System.nanoTime();
+			messages = decode(decoder, channel, reads, accessData);
+			nanos += System.nanoTime() - start;
+		}
+		double seconds = nanos / 1e9 / rounds;
+		System.out.println(String.format("  %-34s %10.0f msgs/s  %8.1f MB/s", name,
+				messages / seconds, bytes / seconds / (1024 * 1024)));
+	}
+
+	public static void main(String[] args) throws Exception {
+		int messages = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_MESSAGES;
+		int readSize = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_READ_SIZE;
+		int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_ROUNDS;
+
+		Channel channel = createNiceMock(Channel.class);
+		expect(channel.isConnected()).andReturn(true).anyTimes();
+		replay(channel);
+
+		List<byte[]> reads = createReads(messages, readSize, new Random(42));
+		long bytes = 0;
+		for (byte[] read : reads) {
+			bytes += read.length;
+		}
+		System.out.println(String.format("messages=%d reads=%d bytes=%d", messages, reads.size(), bytes));
+		measure("copy", false, false, channel, reads, bytes, rounds);
+		measure("zero-copy", true, false, channel, reads, bytes, rounds);
+		measure("zero-copy, packet data accessed", true, true, channel, reads, bytes, rounds);
+	}
+
+}
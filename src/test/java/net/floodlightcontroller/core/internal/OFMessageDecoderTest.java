@@ -0,0 +1,128 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.easymock.IAnswer;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.UpstreamMessageEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.openflow.protocol.OFEchoRequest;
+import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFPacketIn;
+import org.openflow.protocol.OFPacketIn.OFPacketInReason;
+import org.openflow.protocol.OFPacketOut;
+import org.openflow.protocol.OFType;
+import org.openflow.protocol.action.OFAction;
+
+public class OFMessageDecoderTest {
+	/** The decoded messages. */
+	List<OFMessage> decoded;
+	/** The channel mock. */
+	Channel channel;
+	/** The channel handler context mock. */
+	ChannelHandlerContext ctx;
+
+	@Before
+	public void setUp() {
+		decoded = new ArrayList<OFMessage>();
+		channel = createNiceMock(Channel.class);
+		expect(channel.isConnected()).andReturn(true).anyTimes();
+		ctx = createNiceMock(ChannelHandlerContext.class);
+		expect(ctx.getChannel()).andReturn(channel).anyTimes();
+		ctx.sendUpstream(anyObject(ChannelEvent.class));
+		expectLastCall().andAnswer(new IAnswer<Object>() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public Object answer() throws Throwable {
+				decoded.addAll((List<OFMessage>) ((MessageEvent) getCurrentArguments()[0]).getMessage());
+				return null;
+			}
+		}).anyTimes();
+		replay(channel, ctx);
+	}
+
+	/**
+	 * Serializes a packet-in and an echo request into one buffer.
+	 */
+	private byte[] createMessages(byte[] packetData) {
+		OFPacketIn pi = new OFPacketIn();
+		pi.setXid(1);
+		pi.setInPort((short) 2);
+		pi.setReason(OFPacketInReason.NO_MATCH);
+		pi.setPacketData(packetData);
+		OFEchoRequest echo = new OFEchoRequest();
+		echo.setXid(2);
+		ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+		pi.writeTo(buf);
+		echo.writeTo(buf);
+		byte[] data = new byte[buf.readableBytes()];
+		buf.readBytes(data);
+		return data;
+	}
+
+	@Test
+	public void testZeroCopySplitMessages() throws Exception {
+		byte[] packetData = new byte[] {1, 2, 3, 4, 5, 6, 7, 8};
+		byte[] data = createMessages(packetData);
+		OFMessageDecoder decoder = new OFMessageDecoder(true);
+
+		// The packet-in is split across two inbound buffers.
+		ChannelBuffer first = ChannelBuffers.wrappedBuffer(data, 0, 20);
+		ChannelBuffer second = ChannelBuffers.wrappedBuffer(data, 20, data.length - 20);
+		decoder.messageReceived(ctx, new UpstreamMessageEvent(channel, first, null));
+		assertTrue(decoded.isEmpty());
+		decoder.messageReceived(ctx, new UpstreamMessageEvent(channel, second, null));
+
+		assertEquals(2, decoded.size());
+		OFPacketIn pi = (OFPacketIn) decoded.get(0);
+		assertEquals(2, pi.getInPort());
+		assertEquals(packetData.length, pi.getPacketDataLength());
+		assertEquals(OFType.ECHO_REQUEST, decoded.get(1).getType());
+		assertEquals(2, decoded.get(1).getXid());
+
+		// The packet data references the inbound buffer until it is accessed as array.
+		data[data.length - OFEchoRequest.MINIMUM_LENGTH - 1] = 42;
+		assertEquals(42, pi.getPacketDataBuffer().getByte(packetData.length - 1));
+		assertEquals(42, pi.getPacketData()[packetData.length - 1]);
+		assertSame(pi.getPacketData(), pi.getPacketData());
+
+		// A packet-out sends the referenced packet data.
+		OFPacketOut po = new OFPacketOut();
+		po.setActions(new ArrayList<OFAction>());
+		po.setPacketData(pi.getPacketDataBuffer());
+		po.setLengthU(OFPacketOut.MINIMUM_LENGTH + pi.getPacketDataLength());
+		ChannelBuffer out = ChannelBuffers.dynamicBuffer();
+		po.writeTo(out);
+		assertEquals(OFPacketOut.MINIMUM_LENGTH + packetData.length, out.readableBytes());
+		assertEquals(42, out.getByte(out.writerIndex() - 1));
+	}
+
+	@Test
+	public void testCopyMode() throws Exception {
+		byte[] packetData = new byte[] {1, 2, 3, 4, 5, 6, 7, 8};
+		byte[] data = createMessages(packetData);
+		OFMessageDecoder decoder = new OFMessageDecoder(false);
+
+		Object messages = decoder.decode(ctx, channel, ChannelBuffers.wrappedBuffer(data));
+		@SuppressWarnings("unchecked")
+		OFPacketIn pi = (OFPacketIn) ((List<OFMessage>) messages).get(0);
+		data[data.length - OFEchoRequest.MINIMUM_LENGTH - 1] = 42;
+		assertArrayEquals(packetData, pi.getPacketData());
+	}
+
+}
@@ -0,0 +1,197 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.packet.Data;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.PacketInView;
+import net.floodlightcontroller.packet.UDP;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Before;
+import org.junit.Test;
+import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFPacketIn;
+
+public class PacketInDispatcherTest {
+	/** The switch that sends the packet-ins. */
+	IOFSwitch sw;
+	/** Source port -> sequence numbers of the processed packet-ins. */
+	Map<Short, List<Integer>> processed;
+	/** Source port -> thread that processed the last packet-in. */
+	Map<Short, Thread> threads;
+	/** Counts down the processed packet-ins. */
+	CountDownLatch latch;
+	/** A controller that records the processed packet-ins. */
+	Controller controller = new Controller() {
+		@Override
+		protected void handleMessage(IOFSwitch sw, OFMessage m, FloodlightContext bContext) {
+			// The packet view is passed on to the listeners.
+			if (IFloodlightProviderService.piViewStore.get(bContext, IFloodlightProviderService.CONTEXT_PI_VIEW) == null)
+				return;
+			OFPacketIn pi = (OFPacketIn) m;
+			Ethernet eth = new Ethernet();
+			eth.deserialize(pi.getPacketData(), 0, pi.getPacketData().length);
+			UDP udp = (UDP) eth.getPayload().getPayload();
+			synchronized (processed) {
+				if (!processed.containsKey(udp.getSourcePort()))
+					processed.put(udp.getSourcePort(), new ArrayList<Integer>());
+				processed.get(udp.getSourcePort()).add(pi.getBufferId());
+				threads.put(udp.getSourcePort(), Thread.currentThread());
+			}
+			latch.countDown();
+		}
+
+		@Override
+		void flushAll() {
+			// Do nothing.
+		}
+	};
+
+	/**
+	 * Creates a UDP packet-in with a given source port and sequence number.
+	 */
+	private OFPacketIn createPacketIn(short srcPort, int sequence) {
+		byte[] data = new Ethernet()
+			.setDestinationMACAddress("00:11:22:33:44:55")
+			.setSourceMACAddress("00:44:33:22:11:00")
+			.setEtherType(Ethernet.TYPE_IPv4)
+			.setPayload(new IPv4()
+				.setTtl((byte) 64)
+				.setSourceAddress("10.0.0.1")
+				.setDestinationAddress("10.0.0.2")
+				.setPayload(new UDP()
+					.setSourcePort(srcPort)
+					.setDestinationPort((short) 5000)
+					.setPayload(new Data(new byte[] {1}))))
+			.serialize();
+		OFPacketIn pi = new OFPacketIn();
+		pi.setBufferId(sequence);
+		pi.setInPort((short) 1);
+		pi.setPacketData(data);
+		return pi;
+	}
+
+	@Before
+	public void setUp() {
+		sw = createNiceMock(IOFSwitch.class);
+		expect(sw.getId()).andReturn(1L).anyTimes();
+		replay(sw);
+		processed = new HashMap<Short, List<Integer>>();
+		threads = new HashMap<Short, Thread>();
+	}
+
+	@Test
+	public void testFlowOrder() throws Exception {
+		int flows = 16, packets = 50;
+		latch = new CountDownLatch(flows * packets);
+		PacketInDispatcher dispatcher = new PacketInDispatcher(controller, 4, flows * packets, PacketInDispatcher.Sharding.FLOW);
+		dispatcher.start();
+
+		for (int sequence = 0; sequence < packets; sequence++) {
+			for (short flow = 1; flow <= flows; flow++) {
+				assertTrue(dispatcher.dispatch(sw, createPacketIn(flow, sequence)));
+			}
+		}
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+		// All packet-ins of a flow are processed by one worker, in order.
+		assertEquals(flows, processed.size());
+		for (List<Integer> sequences : processed.values()) {
+			assertEquals(packets, sequences.size());
+			for (int sequence = 0; sequence < packets; sequence++) {
+				assertEquals(sequence, (int) sequences.get(sequence));
+			}
+		}
+		// The flows are spread across the workers.
+		assertTrue(new HashSet<Thread>(threads.values()).size() > 1);
+		dispatcher.stop(1000);
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		latch = new CountDownLatch(1);
+		PacketInDispatcher dispatcher = new PacketInDispatcher(controller, 2, 4, PacketInDispatcher.Sharding.SWITCH);
+		dispatcher.start();
+		Thread[] workerThreads = dispatcher.threads.clone();
+		assertTrue(dispatcher.dispatch(sw, createPacketIn((short) 1, 0)));
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+		dispatcher.stop(1000);
+		for (Thread thread : workerThreads) {
+			assertFalse(thread.isAlive());
+		}
+		// Stopping twice does nothing.
+		dispatcher.stop(1000);
+	}
+
+	@Test
+	public void testDispatchWithoutCopy() {
+		// A packet-in read without copy, as by the message decoder.
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+		createPacketIn((short) 1, 0).setReason(OFPacketIn.OFPacketInReason.NO_MATCH).writeTo(buffer);
+		OFPacketIn pi = new OFPacketIn() {
+			@Override
+			public String toString() {
+				// Exposes whether the packet data has been copied.
+				return String.valueOf(this.packetData != null);
+			}
+		};
+		pi.readFrom(buffer, true);
+
+		// The worker is not started, so the packet-in stays in its queue.
+		PacketInDispatcher dispatcher = new PacketInDispatcher(controller, 4, 2, PacketInDispatcher.Sharding.FLOW);
+		assertTrue(dispatcher.dispatch(sw, pi));
+		assertEquals("false", pi.toString());
+
+		// The shard matches the one of the copied packet data.
+		assertEquals(dispatcher.getShard(sw, createPacketIn((short) 1, 1)), dispatcher.getShard(sw, pi));
+		assertEquals("false", pi.toString());
+	}
+
+	@Test
+	public void testDispatchWithView() {
+		// The input throttle decoded the packet-in already.
+		latch = new CountDownLatch(1);
+		OFPacketIn pi = createPacketIn((short) 1, 0);
+		FloodlightContext cntx = new FloodlightContext();
+		PacketInView piView = new PacketInView(pi.getPacketData(), pi.getInPort());
+		IFloodlightProviderService.piViewStore.put(cntx, IFloodlightProviderService.CONTEXT_PI_VIEW, piView);
+
+		// The worker is not started, so the packet-in is processed here.
+		PacketInDispatcher dispatcher = new PacketInDispatcher(controller, 1, 2, PacketInDispatcher.Sharding.SWITCH);
+		assertTrue(dispatcher.dispatch(sw, pi, cntx));
+		dispatcher.process(dispatcher.workers[0].queue.poll());
+		assertEquals(0, latch.getCount());
+		// The listeners got the view of the throttle.
+		assertSame(piView, IFloodlightProviderService.piViewStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_VIEW));
+	}
+
+	@Test
+	public void testBoundedQueue() {
+		// The worker is not started, so its queue fills up.
+		PacketInDispatcher dispatcher = new PacketInDispatcher(controller, 1, 2, PacketInDispatcher.Sharding.SWITCH);
+		assertTrue(dispatcher.dispatch(sw, createPacketIn((short) 1, 0)));
+		assertEquals(0.5, dispatcher.getBacklog(), 0.0);
+		assertTrue(dispatcher.dispatch(sw, createPacketIn((short) 2, 1)));
+		assertFalse(dispatcher.dispatch(sw, createPacketIn((short) 3, 2)));
+		assertEquals(1.0, dispatcher.getBacklog(), 0.0);
+	}
+
+}
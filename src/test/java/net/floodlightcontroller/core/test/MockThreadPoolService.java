@@ -18,6 +18,7 @@ package net.floodlightcontroller.core.test;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
@@ -26,6 +27,7 @@ import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.threadpool.ExecutorLaneStatistics;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 
 public class MockThreadPoolService implements IFloodlightModule, IThreadPoolService {
@@ -41,6 +43,19 @@ public class MockThreadPoolService implements IFloodlightModule, IThreadPoolServ
         return mockExecutor;
     }
 
+    /**
+     * All lanes share the mock executor.
+     */
+    @Override
+    public ScheduledExecutorService getScheduledExecutor(ExecutorLane lane) {
+        return mockExecutor;
+    }
+
+    @Override
+    public Map<ExecutorLane, ExecutorLaneStatistics> getLaneStatistics() {
+        return Collections.emptyMap();
+    }
+
     // IFloodlightModule
     
     @Override
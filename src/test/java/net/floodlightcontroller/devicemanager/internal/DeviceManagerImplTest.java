@@ -0,0 +1,225 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.*;
+
+import java.util.Date;
+import java.util.EnumSet;
+
+import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.test.MockFloodlightProvider;
+import net.floodlightcontroller.core.test.MockThreadPoolService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.NullDebugCounter;
+import net.floodlightcontroller.debugevent.IDebugEventService;
+import net.floodlightcontroller.debugevent.NullDebugEvent;
+import net.floodlightcontroller.devicemanager.IDevice;
+import net.floodlightcontroller.devicemanager.IDeviceService.DeviceField;
+import net.floodlightcontroller.devicemanager.IEntityClass;
+import net.floodlightcontroller.devicemanager.IEntityClassifierService;
+import net.floodlightcontroller.flowcache.IFlowReconcileService;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.topology.IOlimpsTopologyService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sdnplatform.sync.ISyncService;
+
+public class DeviceManagerImplTest {
+    protected DeviceManagerImpl deviceManager;
+    protected FloodlightModuleContext fmc;
+    protected TestEntityClassifier entityClassifier;
+
+    protected static final int IP = IPv4.toIPv4Address("10.0.0.1");
+    protected static final int IP2 = IPv4.toIPv4Address("10.0.0.2");
+
+    /**
+     * An entity classifier whose entity class can be changed
+     */
+    protected static class TestEntityClassifier
+            extends DefaultEntityClassifier {
+        protected IEntityClass current = entityClass;
+
+        @Override
+        public IEntityClass classifyEntity(Entity entity) {
+            return current;
+        }
+
+        @Override
+        public IEntityClass reclassifyEntity(IDevice curDevice,
+                                             Entity entity) {
+            return current;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        IOlimpsTopologyService topology =
+                createNiceMock(IOlimpsTopologyService.class);
+        IFlowReconcileService flowReconcileMgr =
+                createNiceMock(IFlowReconcileService.class);
+        ISyncService syncService = createNiceMock(ISyncService.class);
+        replay(topology, flowReconcileMgr, syncService);
+
+        fmc = new FloodlightModuleContext();
+        fmc.addService(IFloodlightProviderService.class,
+                       new MockFloodlightProvider());
+        fmc.addService(IOlimpsTopologyService.class, topology);
+        fmc.addService(IThreadPoolService.class, new MockThreadPoolService());
+        fmc.addService(IFlowReconcileService.class, flowReconcileMgr);
+        entityClassifier = new TestEntityClassifier();
+        fmc.addService(IEntityClassifierService.class, entityClassifier);
+        fmc.addService(IDebugCounterService.class, new NullDebugCounter());
+        fmc.addService(IDebugEventService.class, new NullDebugEvent());
+        fmc.addService(ISyncService.class, syncService);
+
+        deviceManager = new DeviceManagerImpl();
+        deviceManager.init(fmc);
+        deviceManager.startUp(fmc);
+    }
+
+    /**
+     * Get the time at which an entity last seen at the given time has
+     * expired and its tick of the expiry wheel has passed
+     */
+    protected static long expired(long lastSeen) {
+        return lastSeen + DeviceManagerImpl.ENTITY_TIMEOUT +
+                2 * DeviceManagerImpl.ENTITY_CLEANUP_INTERVAL * 1000L;
+    }
+
+    protected Device learn(long mac, Integer ip, long lastSeen) {
+        return deviceManager.learnDeviceByEntity(
+                new Entity(mac, null, ip, null, null, new Date(lastSeen)));
+    }
+
+    protected static void assertIPv4(Device device, Integer... addresses) {
+        assertArrayEquals(addresses, device.getIPv4Addresses());
+    }
+
+    @Test
+    public void testSharedIPv4Invalidation() throws Exception {
+        long now = System.currentTimeMillis();
+        Device d1 = learn(1L, IP, now - 2000);
+        assertIPv4(d1, IP);
+
+        // Another device claims the address later, so the cached
+        // addresses of the first device become stale
+        Device d2 = learn(2L, IP, now - 1000);
+        assertIPv4(d1);
+        assertIPv4(d2, IP);
+
+        // The first device claims the address back
+        d1 = learn(1L, IP, now);
+        assertIPv4(d1, IP);
+        assertIPv4(d2);
+    }
+
+    @Test
+    public void testAddIndexKeepsIPv4Index() throws Exception {
+        DeviceIndex ipv4Index = deviceManager.ipv4Index;
+        deviceManager.addIndex(false, EnumSet.of(DeviceField.IPV4));
+        assertSame(ipv4Index, deviceManager.secondaryIndexMap.get(
+                EnumSet.of(DeviceField.IPV4)));
+
+        // Shared addresses are still found in the maintained index
+        long now = System.currentTimeMillis();
+        Device d1 = learn(1L, IP, now - 1000);
+        assertIPv4(d1, IP);
+        Device d2 = learn(2L, IP, now);
+        assertIPv4(d1);
+        assertIPv4(d2, IP);
+    }
+
+    @Test
+    public void testEntityExpiry() throws Exception {
+        long now = System.currentTimeMillis();
+        Device device = learn(1L, IP, now);
+        Device liveDevice =
+                learn(2L, IP2, now + DeviceManagerImpl.ENTITY_TIMEOUT / 2);
+
+        // The entity is kept until it times out
+        deviceManager.cleanupEntities(
+                now + DeviceManagerImpl.ENTITY_TIMEOUT - 1000);
+        assertSame(device, deviceManager.getDevice(device.getDeviceKey()));
+
+        deviceManager.cleanupEntities(expired(now));
+        assertNull(deviceManager.getDevice(device.getDeviceKey()));
+        assertFalse(deviceManager.queryDevices(1L, null, null, null, null)
+                .hasNext());
+        assertFalse(deviceManager.queryDevices(null, null, IP, null, null)
+                .hasNext());
+        assertSame(liveDevice,
+                   deviceManager.getDevice(liveDevice.getDeviceKey()));
+        assertEquals(1, deviceManager.getAllDevices().size());
+    }
+
+    @Test
+    public void testRefreshedEntityRescheduled() throws Exception {
+        long now = System.currentTimeMillis();
+        Device device = learn(1L, IP, now);
+        Entity entity = device.getEntities()[0];
+
+        // The entity is refreshed before it times out
+        long refreshed = now + DeviceManagerImpl.ENTITY_TIMEOUT / 2;
+        assertSame(device, learn(1L, IP, refreshed));
+        assertSame(entity, device.getEntities()[0]);
+        deviceManager.cleanupEntities(expired(now));
+        assertSame(device, deviceManager.getDevice(device.getDeviceKey()));
+        assertTrue(entity.expiryScheduled);
+
+        // The entity is removed once the refresh times out
+        deviceManager.cleanupEntities(expired(refreshed));
+        assertNull(deviceManager.getDevice(device.getDeviceKey()));
+        assertFalse(entity.expiryScheduled);
+    }
+
+    @Test
+    public void testPartialEntityExpiry() throws Exception {
+        long now = System.currentTimeMillis();
+        long later = now + DeviceManagerImpl.ENTITY_TIMEOUT / 2;
+        learn(1L, IP, now);
+        Device device = learn(1L, IP2, later);
+        assertEquals(2, device.getEntities().length);
+        assertIPv4(device, IP, IP2);
+
+        deviceManager.cleanupEntities(expired(now));
+        Device newDevice =
+                (Device) deviceManager.getDevice(device.getDeviceKey());
+        assertNotNull(newDevice);
+        assertEquals(1, newDevice.getEntities().length);
+        assertEquals(Integer.valueOf(IP2),
+                     newDevice.getEntities()[0].getIpv4Address());
+        assertIPv4(newDevice, IP2);
+        assertFalse(deviceManager.queryDevices(null, null, IP, null, null)
+                .hasNext());
+        assertSame(newDevice,
+                   deviceManager.queryDevices(null, null, IP2, null, null)
+                           .next());
+
+        // The remaining entity still expires
+        deviceManager.cleanupEntities(expired(later));
+        assertTrue(deviceManager.getAllDevices().isEmpty());
+    }
+
+    @Test
+    public void testReclassifiedDeviceExpiry() throws Exception {
+        long now = System.currentTimeMillis();
+        Device device = learn(1L, IP, now);
+
+        entityClassifier.current =
+                new DefaultEntityClassifier.DefaultEntityClass("Other");
+        assertTrue(deviceManager.reclassifyDevice(device));
+        assertNull(deviceManager.getDevice(device.getDeviceKey()));
+        assertEquals(1, deviceManager.getAllDevices().size());
+        Device newDevice = (Device) deviceManager.getAllDevices()
+                .iterator().next();
+        assertEquals("Other", newDevice.getEntityClass().getName());
+
+        // The entities of the new device are still in the expiry wheel
+        deviceManager.cleanupEntities(expired(now));
+        assertTrue(deviceManager.getAllDevices().isEmpty());
+    }
+}
@@ -5,10 +5,6 @@ import static org.easymock.EasyMock.createMock;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
@@ -172,13 +168,7 @@ public class FlowCacheTest extends FloodlightTestCase {
 		// Create flow cache query.
 		FlowCacheQuery fcq = new FlowCacheQuery(new dummyQueryHandler(), IFlowCacheService.DEFAULT_DB_NAME, "test", null, switchId_1)
 			.setPathId(pathId);
-		Future<FlowCacheQueryResp> future = this.flowCacheService.queryDB(fcq);
-		FlowCacheQueryResp fcqr = null;
-		try {
-			fcqr = future.get(10, TimeUnit.SECONDS);
-		} catch (InterruptedException | ExecutionException | TimeoutException e) {
-			fail(e.toString());
-		}
+		FlowCacheQueryResp fcqr = this.flowCacheService.queryFlows(fcq);
 		
 		if (fcqr == null) {
 			fail("Flow query result is null");
@@ -200,4 +190,31 @@ public class FlowCacheTest extends FloodlightTestCase {
 		assert(true);
 	}
 	
+	@Test
+	public void testQueryFlows() {
+		// Populate database.
+		this.flowCacheService.addFlow(FlowCache.DEFAULT_DB_NAME, switchId_1, cookie, (short) priority_1, match_1, actionList_1);
+		this.flowCacheService.addFlow(FlowCache.DEFAULT_DB_NAME, switchId_1, cookie, (short) priority_1, match_2, actionList_2);
+		this.flowCacheService.addFlow(FlowCache.DEFAULT_DB_NAME, switchId_2, cookie, (short) priority_1, match_1, actionList_2);
+		
+		// Query a single switch synchronously.
+		FlowCacheQuery fcq = new FlowCacheQuery(null, IFlowCacheService.DEFAULT_DB_NAME, "test", null, switchId_1)
+			.setOutPort(port_1);
+		FlowCacheQueryResp fcqr = this.flowCacheService.queryFlows(fcq);
+		assertNotNull(fcqr);
+		assertEquals(switchId_1, fcqr.switchId);
+		assertEquals(1, fcqr.flowCacheObjList.size());
+		
+		// Query several switches at once. Empty results are omitted.
+		List<FlowCacheQuery> fcqList = new ArrayList<FlowCacheQuery>();
+		fcqList.add(new FlowCacheQuery(null, IFlowCacheService.DEFAULT_DB_NAME, "test", null, switchId_1).setOutPort(port_2));
+		fcqList.add(new FlowCacheQuery(null, IFlowCacheService.DEFAULT_DB_NAME, "test", null, switchId_2).setOutPort(port_2));
+		fcqList.add(new FlowCacheQuery(null, IFlowCacheService.DEFAULT_DB_NAME, "test", null, switchId_2).setOutPort(port_1));
+		List<FlowCacheQueryResp> fcqrList = this.flowCacheService.queryFlows(fcqList);
+		assertEquals(2, fcqrList.size());
+		for (FlowCacheQueryResp resp : fcqrList) {
+			assertEquals(1, resp.flowCacheObjList.size());
+		}
+	}
+	
 }
@@ -0,0 +1,163 @@
+package net.floodlightcontroller.flowcache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import org.openflow.protocol.OFMatch;
+import org.openflow.protocol.Wildcards;
+import org.openflow.protocol.Wildcards.Flag;
+import org.openflow.protocol.action.OFAction;
+import org.openflow.protocol.action.OFActionOutput;
+
+public class IndexedFlowCacheDBTest {
+	/** The flow cache database to test. */
+	IndexedFlowCacheDB flowCacheDB = new IndexedFlowCacheDB("default");
+	/** A standard switch id. */
+	long switchId_1 = 1L;
+	long switchId_2 = 2L;
+	/** A standard cookie. */
+	long cookie_1 = 1L;
+	long cookie_2 = 2L;
+	/** A standard priority. */
+	int priority = 1;
+	/** Wildcards, generated by the matching fields, i.e. the wildcards are the inverse. */
+	int wildcards = (Wildcards.ofMatches(Flag.DL_TYPE, Flag.NW_SRC, Flag.NW_DST, Flag.NW_PROTO, Flag.TP_SRC, Flag.TP_DST)).getInt();
+	/** OpenFlow matches.*/
+	OFMatch match_1 = new OFMatch()
+		.setDataLayerType((short) 1)
+		.setNetworkSource(1)
+		.setNetworkDestination(2)
+		.setNetworkProtocol((byte) 1)
+		.setTransportSource((short) 1)
+		.setTransportDestination((short) 2)
+		.setWildcards(wildcards);
+	OFMatch match_2 = new OFMatch()
+		.setDataLayerType((short) 1)
+		.setNetworkSource(2)
+		.setNetworkDestination(1)
+		.setNetworkProtocol((byte) 1)
+		.setTransportSource((short) 2)
+		.setTransportDestination((short) 1)
+		.setWildcards(wildcards);
+	/** Port used by the output actions. */
+	short port_1 = 2;
+	short port_2 = 1;
+	/** List of output actions used by the flow cache objects. */
+	List<OFAction> actionList_1 = new ArrayList<OFAction>(Arrays.asList((OFAction) new OFActionOutput().setPort(port_1)));
+	List<OFAction> actionList_2 = new ArrayList<OFAction>(Arrays.asList((OFAction) new OFActionOutput().setPort(port_2)));
+
+	/** A standard flow cache object, as installed e.g. by the forwarding application. */
+	FlowCacheObj fco_1 = new FlowCacheObj(cookie_1, priority, match_1, actionList_1);
+	/** A standard flow cache object, as installed e.g. by the forwarding application. */
+	FlowCacheObj fco_2 = new FlowCacheObj(cookie_1, priority, match_2, actionList_2);
+	/** A flow cache object, with the same match, but different action as fco_1. */
+	FlowCacheObj fco_3 = new FlowCacheObj(cookie_1, priority, match_1, actionList_2);
+	/** A flow cache object, similar (i.e. same hash) to fco_1, as generated by a flow remove message. */
+	FlowCacheObj fco_4 = new FlowCacheObj(cookie_1, priority, match_1, null);
+
+	/**
+	 * Creates a new flow cache query for a switch.
+	 *
+	 * @param switchId The switch to query.
+	 * @return A new flow cache query.
+	 */
+	private FlowCacheQuery newQuery(long switchId) {
+		return new FlowCacheQuery(null, IFlowCacheService.DEFAULT_DB_NAME, "test", null, switchId);
+	}
+
+	@Test
+	public void StoreAndGetTest() {
+		assertTrue(flowCacheDB.storeEntry(switchId_1, fco_1, true));
+		assertTrue(flowCacheDB.hasEntry(switchId_1, fco_1));
+		assertTrue(flowCacheDB.hasEntry(switchId_1, fco_4));
+		assertFalse(flowCacheDB.hasEntry(switchId_2, fco_1));
+		assertSame(fco_1, flowCacheDB.getEntry(switchId_1, fco_4));
+		assertEquals(1, flowCacheDB.getAllEntries().get(switchId_1).size());
+	}
+
+	@Test
+	public void OverrideTest() {
+		assertTrue(flowCacheDB.storeEntry(switchId_1, fco_1, true));
+		assertFalse(flowCacheDB.storeEntry(switchId_1, fco_3, false));
+		assertTrue(flowCacheDB.storeEntry(switchId_1, fco_3, true));
+		assertSame(fco_3, flowCacheDB.getEntry(switchId_1, fco_1));
+
+		// The out port index must point to the new object only.
+		assertNull(flowCacheDB.queryDB(switchId_1, newQuery(switchId_1).setOutPort(port_1)));
+		Map<Long, Set<FlowCacheObj>> result = flowCacheDB.queryDB(switchId_1, newQuery(switchId_1).setOutPort(port_2));
+		assertEquals(new HashSet<FlowCacheObj>(Arrays.asList(fco_3)), result.get(switchId_1));
+	}
+
+	@Test
+	public void RemoveTest() {
+		flowCacheDB.storeEntry(switchId_1, fco_1, true);
+		assertSame(fco_1, flowCacheDB.removeEntry(switchId_1, fco_4));
+		assertTrue(flowCacheDB.isEmpty());
+		assertEquals(0, flowCacheDB.getAllEntries().size());
+		assertNull(flowCacheDB.queryDB(switchId_1, newQuery(switchId_1).setOutPort(port_1)));
+		assertNull(flowCacheDB.queryDB(switchId_1, newQuery(switchId_1).setTransportDestination((short) 2)));
+	}
+
+	@Test
+	public void IndexedQueryTest() {
+		flowCacheDB.storeEntry(switchId_1, fco_1, true);
+		flowCacheDB.storeEntry(switchId_1, fco_2, true);
+
+		// Out port.
+		Map<Long, Set<FlowCacheObj>> result = flowCacheDB.queryDB(switchId_1, newQuery(switchId_1).setOutPort(port_1));
+		assertEquals(new HashSet<FlowCacheObj>(Arrays.asList(fco_1)), result.get(switchId_1));
+		// Transport destination.
+		result = flowCacheDB.queryDB(switchId_1, newQuery(switchId_1).setTransportDestination((short) 1));
+		assertEquals(new HashSet<FlowCacheObj>(Arrays.asList(fco_2)), result.get(switchId_1));
+		// Transport source combined with a non-matching out port.
+		result = flowCacheDB.queryDB(switchId_1, newQuery(switchId_1).setTransportSource((short) 1).setOutPort(port_2));
+		assertNull(result);
+		// Cookie matches both.
+		result = flowCacheDB.queryDB(switchId_1, newQuery(switchId_1).setCookie(cookie_1));
+		assertEquals(2, result.get(switchId_1).size());
+		// Unknown switch.
+		assertNull(flowCacheDB.queryDB(switchId_2, newQuery(switchId_2).setCookie(cookie_1)));
+	}
+
+	@Test
+	public void ReindexOnChangeTest() {
+		flowCacheDB.storeEntry(switchId_1, fco_1, true);
+		flowCacheDB.storeEntry(switchId_1, fco_2, true);
+
+		// Change the path Id and cookie after the object is stored.
+		fco_1.setPathId(1);
+		fco_2.setPathId(2);
+		fco_2.setCookie(cookie_2);
+
+		Map<Long, Set<FlowCacheObj>> result = flowCacheDB.queryDB(switchId_1, newQuery(switchId_1).setPathId(1));
+		assertEquals(new HashSet<FlowCacheObj>(Arrays.asList(fco_1)), result.get(switchId_1));
+		result = flowCacheDB.queryDB(switchId_1, newQuery(switchId_1).setCookie(cookie_2));
+		assertEquals(new HashSet<FlowCacheObj>(Arrays.asList(fco_2)), result.get(switchId_1));
+		result = flowCacheDB.queryDB(switchId_1, newQuery(switchId_1).setCookie(cookie_1));
+		assertEquals(new HashSet<FlowCacheObj>(Arrays.asList(fco_1)), result.get(switchId_1));
+
+		// Removed objects are not re-indexed any more.
+		flowCacheDB.removeEntry(switchId_1, fco_1);
+		fco_1.setPathId(2);
+		result = flowCacheDB.queryDB(switchId_1, newQuery(switchId_1).setPathId(2));
+		assertEquals(new HashSet<FlowCacheObj>(Arrays.asList(fco_2)), result.get(switchId_1));
+	}
+
+	@Test
+	public void ClearTest() {
+		flowCacheDB.storeEntry(switchId_1, fco_1, true);
+		flowCacheDB.storeEntry(switchId_2, fco_2, true);
+		flowCacheDB.clear();
+		assertTrue(flowCacheDB.isEmpty());
+		assertNull(flowCacheDB.queryDB(switchId_1, newQuery(switchId_1).setOutPort(port_1)));
+	}
+
+}
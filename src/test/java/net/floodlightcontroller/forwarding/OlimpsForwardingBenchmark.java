@@ -0,0 +1,284 @@
+package net.floodlightcontroller.forwarding;
+
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyShort;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.makeThreadSafe;
+import static org.easymock.EasyMock.replay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.floodlightcontroller.arp.IARPProxyService;
+import net.floodlightcontroller.configuration.IConfigurationService;
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.counter.ICounterStoreService;
+import net.floodlightcontroller.devicemanager.IDevice;
+import net.floodlightcontroller.devicemanager.IDeviceService;
+import net.floodlightcontroller.devicemanager.SwitchPort;
+import net.floodlightcontroller.flowcache.IFlowCacheService;
+import net.floodlightcontroller.multipath.IPathCacheService;
+import net.floodlightcontroller.multipath.IPathFinderService;
+import net.floodlightcontroller.packet.Data;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.TCP;
+import net.floodlightcontroller.routing.Path;
+import net.floodlightcontroller.topology.IOlimpsTopologyService;
+
+import org.easymock.IAnswer;
+import org.openflow.protocol.OFMatch;
+import org.openflow.protocol.OFPacketIn;
+import org.openflow.protocol.OFPacketIn.OFPacketInReason;
+import org.openflow.protocol.OFPacketOut;
+import org.openflow.protocol.action.OFAction;
+
+/**
+ * Load generator that measures the flow setup rate of OlimpsForwarding.doForwardFlow
+ * with an increasing number of packet-in worker threads. Each worker forwards its own
+ * set of distinct flows. The path calculation is simulated by a configurable amount
+ * of CPU work, all other services are mocked.
+ *
+ * The benchmark compares the striped flow setup locks with a forwarding instance whose
+ * doForwardFlow is serialized by a global monitor, i.e. the previous behavior.
+ *
+ * Usage: OlimpsForwardingBenchmark [flowsPerThread] [pathCostMicros] [maxThreads]
+ */
+public class OlimpsForwardingBenchmark {
+	/** The default number of flows each worker thread sets up. */
+	private static final int DEFAULT_FLOWS_PER_THREAD = 20000;
+	/** The default CPU time of a simulated path calculation in microseconds. */
+	private static final int DEFAULT_PATH_COST_MICROS = 20;
+	/** The default maximum number of worker threads. */
+	private static final int DEFAULT_MAX_THREADS = 8;
+	/** The source switch of all flows. */
+	private static final long SRC_SWITCH = 1L;
+	/** The destination switch of all flows. */
+	private static final long DST_SWITCH = 2L;
+
+	/**
+	 * Forwarding instance whose doForwardFlow is serialized by a global
+	 * monitor. Used as baseline.
+	 */
+	protected static class SerializedOlimpsForwarding extends OlimpsForwarding {
+		@Override
+		protected synchronized void doForwardFlow(IOFSwitch sw, OFPacketIn packetInMsg, FloodlightContext cntx, boolean requestFlowRemovedNotifn) {
+			super.doForwardFlow(sw, packetInMsg, cntx, requestFlowRemovedNotifn);
+		}
+	}
+
+	/**
+	 * A pre-generated packet-in and its context.
+	 */
+	protected static class PacketIn {
+		/** The packet-in message. */
+		OFPacketIn packetInMsg;
+		/** The Floodlight context carrying the source and destination devices. */
+		FloodlightContext cntx;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int flowsPerThread = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_FLOWS_PER_THREAD;
+		int pathCostMicros = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_PATH_COST_MICROS;
+		int maxThreads = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_MAX_THREADS;
+
+		IOFSwitch sw = createSwitch();
+		System.out.println("flowsPerThread=" + flowsPerThread + " pathCostMicros=" + pathCostMicros + " cores=" + Runtime.getRuntime().availableProcessors());
+		System.out.println(String.format("%8s %16s %16s", "threads", "serialized/s", "striped/s"));
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			List<List<PacketIn>> load = createLoad(threads, flowsPerThread);
+			double serialized = run(createForwarding(new SerializedOlimpsForwarding(), pathCostMicros), sw, load);
+			double striped = run(createForwarding(new OlimpsForwarding(), pathCostMicros), sw, load);
+			System.out.println(String.format("%8d %16.0f %16.0f", threads, serialized, striped));
+		}
+	}
+
+	/**
+	 * Forwards all packet-ins of the load with one thread per packet-in list.
+	 *
+	 * @param forwarding The forwarding instance to benchmark.
+	 * @param sw The switch that sent the packet-ins.
+	 * @param load One list of packet-ins per worker thread.
+	 * @return <b>double</b> The flow setup rate in flows per second.
+	 */
+	private static double run(final OlimpsForwarding forwarding, final IOFSwitch sw, List<List<PacketIn>> load) throws Exception {
+		ExecutorService workers = Executors.newFixedThreadPool(load.size());
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		int flows = 0;
+
+		for (final List<PacketIn> packetIns : load) {
+			flows += packetIns.size();
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					for (PacketIn packetIn : packetIns) {
+						forwarding.doForwardFlow(sw, packetIn.packetInMsg, packetIn.cntx, true);
+					}
+					return packetIns.size();
+				}
+			});
+		}
+
+		try {
+			long startTime = System.nanoTime();
+			for (Future<Integer> future : workers.invokeAll(tasks)) {
+				future.get();
+			}
+			return flows / ((System.nanoTime() - startTime) / 1e9);
+		} finally {
+			workers.shutdown();
+		}
+	}
+
+	/**
+	 * Creates a forwarding module with mocked services. The path finder
+	 * burns the given CPU time and returns no path, so no flow mods are written.
+	 *
+	 * @param forwarding The forwarding instance to set up.
+	 * @param pathCostMicros The CPU time of a path calculation in microseconds.
+	 * @return <b>OlimpsForwarding</b> The initialized and started forwarding instance.
+	 */
+	@SuppressWarnings("unchecked")
+	private static OlimpsForwarding createForwarding(OlimpsForwarding forwarding, final int pathCostMicros) throws Exception {
+		FloodlightModuleContext fmc = new FloodlightModuleContext();
+
+		IFlowCacheService flowCache = createNiceMock(IFlowCacheService.class);
+		expect(flowCache.hasFlow((String) anyObject(), anyLong(), (Long) anyObject(), anyShort(), (OFMatch) anyObject(), (List<OFAction>) anyObject())).andStubReturn(false);
+
+		IPathFinderService pathFinder = createNiceMock(IPathFinderService.class);
+		expect(pathFinder.getPath(anyLong(), anyLong(), (OFMatch) anyObject())).andStubAnswer(new IAnswer<Path>() {
+			@Override
+			public Path answer() throws Throwable {
+				long endTime = System.nanoTime() + pathCostMicros * 1000L;
+				while (System.nanoTime() < endTime) {
+					// Simulate the path calculation.
+				}
+				return null;
+			}
+		});
+
+		Object[] mocks = new Object[] {
+			createNiceMock(IFloodlightProviderService.class),
+			createNiceMock(IDeviceService.class),
+			createNiceMock(IOlimpsTopologyService.class),
+			createNiceMock(ICounterStoreService.class),
+			pathFinder,
+			createNiceMock(IARPProxyService.class),
+			flowCache,
+			createNiceMock(IPathCacheService.class),
+			createNiceMock(IConfigurationService.class)
+		};
+		for (Object mock : mocks) {
+			// Do not serialize the worker threads on the mocks.
+			makeThreadSafe(mock, false);
+			replay(mock);
+		}
+
+		fmc.addService(IFloodlightProviderService.class, (IFloodlightProviderService) mocks[0]);
+		fmc.addService(IDeviceService.class, (IDeviceService) mocks[1]);
+		fmc.addService(IOlimpsTopologyService.class, (IOlimpsTopologyService) mocks[2]);
+		fmc.addService(ICounterStoreService.class, (ICounterStoreService) mocks[3]);
+		fmc.addService(IPathFinderService.class, pathFinder);
+		fmc.addService(IARPProxyService.class, (IARPProxyService) mocks[5]);
+		fmc.addService(IFlowCacheService.class, flowCache);
+		fmc.addService(IPathCacheService.class, (IPathCacheService) mocks[7]);
+		fmc.addService(IConfigurationService.class, (IConfigurationService) mocks[8]);
+
+		forwarding.init(fmc);
+		forwarding.startUp(fmc);
+		return forwarding;
+	}
+
+	/**
+	 * Creates the switch that sends all packet-ins.
+	 *
+	 * @return <b>IOFSwitch</b> A mocked switch.
+	 */
+	private static IOFSwitch createSwitch() {
+		IOFSwitch sw = createNiceMock(IOFSwitch.class);
+		expect(sw.getId()).andStubReturn(SRC_SWITCH);
+		expect(sw.getAttribute(eq(IOFSwitch.PROP_FASTWILDCARDS))).andStubReturn(OFMatch.OFPFW_ALL);
+		makeThreadSafe(sw, false);
+		replay(sw);
+		return sw;
+	}
+
+	/**
+	 * Creates distinct TCP flows between two hosts, one list per worker thread.
+	 *
+	 * @param threads The number of worker threads.
+	 * @param flowsPerThread The number of flows per worker thread.
+	 * @return <b>List</b> One list of packet-ins per worker thread.
+	 */
+	private static List<List<PacketIn>> createLoad(int threads, int flowsPerThread) {
+		IDevice srcDevice = createDevice(SRC_SWITCH);
+		IDevice dstDevice = createDevice(DST_SWITCH);
+		List<List<PacketIn>> load = new ArrayList<List<PacketIn>>(threads);
+
+		for (int t = 0; t < threads; t++) {
+			List<PacketIn> packetIns = new ArrayList<PacketIn>(flowsPerThread);
+			for (int i = 0; i < flowsPerThread; i++) {
+				Ethernet eth = (Ethernet) new Ethernet()
+					.setSourceMACAddress("00:00:00:00:00:01")
+					.setDestinationMACAddress("00:00:00:00:00:02")
+					.setEtherType(Ethernet.TYPE_IPv4)
+					.setPayload(new IPv4()
+						.setTtl((byte) 64)
+						.setProtocol(IPv4.PROTOCOL_TCP)
+						.setSourceAddress(0x0a000000 + t + 1)
+						.setDestinationAddress(0x0b000000 + (i >>> 16) + 1)
+						.setPayload(new TCP()
+							.setSourcePort((short) i)
+							.setDestinationPort((short) 80)
+							.setPayload(new Data(new byte[] {0x01}))));
+				byte[] packetData = eth.serialize();
+
+				PacketIn packetIn = new PacketIn();
+				packetIn.packetInMsg = new OFPacketIn()
+					.setBufferId(OFPacketOut.BUFFER_ID_NONE)
+					.setInPort((short) 1)
+					.setPacketData(packetData)
+					.setReason(OFPacketInReason.NO_MATCH)
+					.setTotalLength((short) packetData.length);
+				packetIn.cntx = new FloodlightContext();
+				IDeviceService.fcStore.put(packetIn.cntx, IDeviceService.CONTEXT_SRC_DEVICE, srcDevice);
+				IDeviceService.fcStore.put(packetIn.cntx, IDeviceService.CONTEXT_DST_DEVICE, dstDevice);
+				packetIns.add(packetIn);
+			}
+			load.add(packetIns);
+		}
+
+		return load;
+	}
+
+	/**
+	 * Creates a device that is attached to port 1 of a switch.
+	 *
+	 * @param switchId The switch the device is attached to.
+	 * @return <b>IDevice</b> A mocked device.
+	 */
+	private static IDevice createDevice(final long switchId) {
+		IDevice device = createNiceMock(IDevice.class);
+		expect(device.getAttachmentPoints()).andStubAnswer(new IAnswer<SwitchPort[]>() {
+			@Override
+			public SwitchPort[] answer() throws Throwable {
+				return new SwitchPort[] { new SwitchPort(switchId, 2) };
+			}
+		});
+		makeThreadSafe(device, false);
+		replay(device);
+		return device;
+	}
+
+}
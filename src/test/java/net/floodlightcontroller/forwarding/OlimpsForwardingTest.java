@@ -0,0 +1,336 @@
+package net.floodlightcontroller.forwarding;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.floodlightcontroller.arp.IARPProxyService;
+import net.floodlightcontroller.configuration.IConfigurationService;
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IListener.Command;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.test.MockThreadPoolService;
+import net.floodlightcontroller.counter.ICounterStoreService;
+import net.floodlightcontroller.devicemanager.IDevice;
+import net.floodlightcontroller.devicemanager.IDeviceService;
+import net.floodlightcontroller.devicemanager.IEntityClassifierService;
+import net.floodlightcontroller.devicemanager.SwitchPort;
+import net.floodlightcontroller.devicemanager.internal.DefaultEntityClassifier;
+import net.floodlightcontroller.flowcache.FlowCache;
+import net.floodlightcontroller.flowcache.IFlowCacheService;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
+import net.floodlightcontroller.multipath.IPathCacheService;
+import net.floodlightcontroller.multipath.IPathFinderService;
+import net.floodlightcontroller.packet.Data;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.routing.Path;
+import net.floodlightcontroller.test.FloodlightTestCase;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.topology.IOlimpsTopologyService;
+
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+import org.openflow.protocol.OFBarrierReply;
+import org.openflow.protocol.OFFlowMod;
+import org.openflow.protocol.OFMatch;
+import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFPacketIn;
+import org.openflow.protocol.OFPacketOut;
+import org.openflow.protocol.OFType;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class OlimpsForwardingTest extends FloodlightTestCase {
+	/** The forwarding module to test. */
+	OlimpsForwarding forwarding;
+	/** The flow cache used by the forwarding module. */
+	FlowCache flowCache;
+	/** The Floodlight context. */
+	FloodlightContext cntx;
+	/** SwitchId -> messages written to the switch. */
+	Map<Long, List<OFMessage>> writtenMessages;
+	/** SwitchId -> switch. */
+	Map<Long, IOFSwitch> switches;
+	/** A standard cookie. */
+	long cookie = (2L << 52) | 1L;
+	/** The path to install: 1 -> 2 -> 3. */
+	Path path = new Path(1L, 3L, Arrays.asList(new Link(1L, 2, 2L, 1), new Link(2L, 2, 3L, 1)), 1, 0);
+	/** A flow match. */
+	OFMatch match = new OFMatch()
+		.setInputPort((short) 1)
+		.setDataLayerType((short) 0x0800)
+		.setNetworkSource(1)
+		.setNetworkDestination(2);
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+
+		cntx = new FloodlightContext();
+		writtenMessages = new HashMap<Long, List<OFMessage>>();
+		switches = new HashMap<Long, IOFSwitch>();
+		for (long switchId = 1; switchId <= 3; switchId++) {
+			switches.put(switchId, createSwitch(switchId));
+		}
+		getMockFloodlightProvider().setSwitches(switches);
+
+		MockThreadPoolService tps = new MockThreadPoolService();
+		DefaultEntityClassifier entityClassifier = new DefaultEntityClassifier();
+		flowCache = new FlowCache();
+		forwarding = new OlimpsForwarding();
+
+		FloodlightModuleContext fmc = new FloodlightModuleContext();
+		fmc.addService(IThreadPoolService.class, tps);
+		fmc.addService(IEntityClassifierService.class, entityClassifier);
+		fmc.addService(IFloodlightProviderService.class, getMockFloodlightProvider());
+		fmc.addService(IFlowCacheService.class, flowCache);
+		fmc.addService(ILinkDiscoveryService.class, createMock(ILinkDiscoveryService.class));
+		fmc.addService(IOlimpsTopologyService.class, createNiceMock(IOlimpsTopologyService.class));
+		fmc.addService(IDeviceService.class, createNiceMock(IDeviceService.class));
+		fmc.addService(ICounterStoreService.class, createNiceMock(ICounterStoreService.class));
+		fmc.addService(IPathFinderService.class, createNiceMock(IPathFinderService.class));
+		fmc.addService(IARPProxyService.class, createNiceMock(IARPProxyService.class));
+		fmc.addService(IPathCacheService.class, createNiceMock(IPathCacheService.class));
+		fmc.addService(IConfigurationService.class, createNiceMock(IConfigurationService.class));
+		replay(fmc.getServiceImpl(IOlimpsTopologyService.class), fmc.getServiceImpl(IDeviceService.class),
+				fmc.getServiceImpl(ICounterStoreService.class), fmc.getServiceImpl(IPathFinderService.class),
+				fmc.getServiceImpl(IARPProxyService.class), fmc.getServiceImpl(IPathCacheService.class),
+				fmc.getServiceImpl(IConfigurationService.class));
+
+		tps.init(fmc);
+		entityClassifier.init(fmc);
+		getMockFloodlightProvider().init(fmc);
+		flowCache.init(fmc);
+		forwarding.init(fmc);
+
+		tps.startUp(fmc);
+		entityClassifier.startUp(fmc);
+		getMockFloodlightProvider().startUp(fmc);
+		flowCache.startUp(fmc);
+		forwarding.startUp(fmc);
+	}
+
+	/**
+	 * Creates a switch mock that records all messages written to it.
+	 *
+	 * @param switchId The switch Id.
+	 * @return A switch mock.
+	 */
+	private IOFSwitch createSwitch(final long switchId) throws Exception {
+		final List<OFMessage> messages = new ArrayList<OFMessage>();
+		final AtomicInteger xid = new AtomicInteger(0);
+		IOFSwitch sw = createNiceMock(IOFSwitch.class);
+
+		expect(sw.getId()).andReturn(switchId).anyTimes();
+		expect(sw.getStringId()).andReturn(Long.toString(switchId)).anyTimes();
+		expect(sw.getAttribute(eq(IOFSwitch.PROP_FASTWILDCARDS))).andReturn(OFMatch.OFPFW_ALL).anyTimes();
+		expect(sw.getNextTransactionId()).andAnswer(new IAnswer<Integer>() {
+			@Override
+			public Integer answer() throws Throwable {
+				return xid.incrementAndGet();
+			}
+		}).anyTimes();
+		sw.writeThrottled(anyObject(OFMessage.class), anyObject(FloodlightContext.class));
+		expectLastCall().andAnswer(new IAnswer<Object>() {
+			@Override
+			public Object answer() throws Throwable {
+				synchronized (messages) {
+					messages.add((OFMessage) getCurrentArguments()[0]);
+				}
+				return null;
+			}
+		}).anyTimes();
+		replay(sw);
+
+		writtenMessages.put(switchId, messages);
+		return sw;
+	}
+
+	/**
+	 * Gets the transaction Ids of all barrier requests written to a switch.
+	 *
+	 * @param switchId The switch Id.
+	 * @return A list of barrier request transaction Ids.
+	 */
+	private List<Integer> getBarrierXids(long switchId) {
+		List<Integer> xids = new ArrayList<Integer>();
+		List<OFMessage> messages = writtenMessages.get(switchId);
+		synchronized (messages) {
+			for (OFMessage msg : messages) {
+				if (msg.getType() == OFType.BARRIER_REQUEST) {
+					xids.add(msg.getXid());
+				}
+			}
+		}
+		return xids;
+	}
+
+	/**
+	 * Sends a barrier reply for all barrier requests of a switch to the forwarding module.
+	 *
+	 * @param switchId The switch Id.
+	 */
+	private void replyBarriers(long switchId) {
+		for (int xid : getBarrierXids(switchId)) {
+			OFBarrierReply reply = new OFBarrierReply();
+			reply.setXid(xid);
+			forwarding.receive(switches.get(switchId), reply, cntx);
+		}
+	}
+
+	@Test
+	public void testInstallCompletesOnLastBarrierReply() throws Exception {
+		ListenableFuture<Boolean> installed = forwarding.installFlowAsync(match.clone(), path, 3, null, cookie);
+
+		// The last hop and the intermediate hop wait for their barrier replies.
+		assertEquals(1, getBarrierXids(3L).size());
+		assertEquals(1, getBarrierXids(2L).size());
+		// The first hop is the commit point and not written yet.
+		assertEquals(0, getBarrierXids(1L).size());
+		assertFalse(installed.isDone());
+
+		replyBarriers(3L);
+		assertFalse(installed.isDone());
+		assertEquals(0, getBarrierXids(1L).size());
+
+		// The last barrier reply commits the first hop immediately.
+		replyBarriers(2L);
+		assertTrue(installed.isDone());
+		assertTrue(installed.get());
+		assertEquals(1, getBarrierXids(1L).size());
+	}
+
+	@Test
+	public void testInstallPipelinesOneBarrierPerSwitch() throws Exception {
+		forwarding.installFlowAsync(match.clone(), path, 3, null, cookie);
+
+		// Every switch but the first gets its flow mod followed by a single barrier request, without waiting for a reply.
+		for (long switchId = 2; switchId <= 3; switchId++) {
+			List<OFMessage> messages = writtenMessages.get(switchId);
+			assertEquals(2, messages.size());
+			assertEquals(OFType.FLOW_MOD, messages.get(0).getType());
+			assertEquals(OFType.BARRIER_REQUEST, messages.get(1).getType());
+		}
+		// The first switch only got the temporary drop rule.
+		assertEquals(0, getBarrierXids(1L).size());
+	}
+
+	@Test
+	public void testInstallTimesOut() throws Exception {
+		forwarding.putJsonConfig(new ObjectMapper().readTree("{\"timeouts\": {\"barrier_message_timeout\": 1}}"));
+		ListenableFuture<Boolean> installed = forwarding.installFlowAsync(match.clone(), path, 3, null, cookie);
+
+		// Switch 2 never replies.
+		replyBarriers(3L);
+		assertFalse(installed.isDone());
+
+		assertFalse(installed.get(5, TimeUnit.SECONDS));
+		// The first hop has never been committed.
+		assertEquals(0, getBarrierXids(1L).size());
+		// The outstanding barrier request has been forgotten.
+		assertTrue(forwarding.barrierCacheCookie.get(2L).isEmpty());
+		// Late barrier replies are ignored.
+		for (int xid : getBarrierXids(2L)) {
+			OFBarrierReply reply = new OFBarrierReply();
+			reply.setXid(xid);
+			assertEquals(Command.CONTINUE, forwarding.receive(switches.get(2L), reply, cntx));
+		}
+		assertEquals(0, getBarrierXids(1L).size());
+	}
+
+	@Test
+	public void testPacketInsJoinFlowSetupInFlight() throws Exception {
+		IPathFinderService pathfinder = createMock(IPathFinderService.class);
+		expect(pathfinder.getPath(eq(1L), eq(3L), anyObject(OFMatch.class))).andReturn(path).once();
+		replay(pathfinder);
+		forwarding.pathfinder = pathfinder;
+
+		IDevice srcDevice = createNiceMock(IDevice.class);
+		expect(srcDevice.getAttachmentPoints()).andReturn(new SwitchPort[] {new SwitchPort(1L, 1)}).anyTimes();
+		IDevice dstDevice = createNiceMock(IDevice.class);
+		expect(dstDevice.getAttachmentPoints()).andReturn(new SwitchPort[] {new SwitchPort(3L, 3)}).anyTimes();
+		replay(srcDevice, dstDevice);
+		IDeviceService.fcStore.put(cntx, IDeviceService.CONTEXT_SRC_DEVICE, srcDevice);
+		IDeviceService.fcStore.put(cntx, IDeviceService.CONTEXT_DST_DEVICE, dstDevice);
+
+		Ethernet eth = (Ethernet) new Ethernet()
+			.setDestinationMACAddress("00:00:00:00:00:02")
+			.setSourceMACAddress("00:00:00:00:00:01")
+			.setEtherType(Ethernet.TYPE_IPv4)
+			.setPayload(new IPv4()
+				.setTtl((byte) 64)
+				.setSourceAddress(1)
+				.setDestinationAddress(2)
+				.setPayload(new Data(new byte[] {1})));
+		IFloodlightProviderService.bcStore.put(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD, eth);
+		OFPacketIn pi = new OFPacketIn();
+		pi.setInPort((short) 1);
+		pi.setBufferId(OFPacketOut.BUFFER_ID_NONE);
+		pi.setPacketData(eth.serialize());
+
+		// The second packet-in arrives before the first hop is committed.
+		forwarding.doForwardFlow(switches.get(1L), pi, cntx, true);
+		assertEquals(1, forwarding.flowSetupsInFlight.size());
+		forwarding.doForwardFlow(switches.get(1L), pi, cntx, true);
+		verify(pathfinder);
+		assertEquals(1, getBarrierXids(2L).size());
+		assertEquals(1, getBarrierXids(3L).size());
+
+		// Committing the first hop pushes the packets of both packet-ins.
+		replyBarriers(3L);
+		replyBarriers(2L);
+		assertTrue(forwarding.flowSetupsInFlight.isEmpty());
+		assertEquals(1, getBarrierXids(1L).size());
+		int packetOuts = 0;
+		for (OFMessage msg : writtenMessages.get(1L)) {
+			if (msg.getType() == OFType.PACKET_OUT)
+				packetOuts++;
+		}
+		assertEquals(2, packetOuts);
+	}
+
+	@Test
+	public void testSwitchRemovedAbortsInstall() throws Exception {
+		ListenableFuture<Boolean> installed = forwarding.installFlowAsync(match.clone(), path, 3, null, cookie);
+		replyBarriers(3L);
+		assertFalse(installed.isDone());
+
+		// Switch 2 disconnects, i.e. it is no longer known to the provider.
+		Map<Long, IOFSwitch> remainingSwitches = new HashMap<Long, IOFSwitch>(switches);
+		remainingSwitches.remove(2L);
+		getMockFloodlightProvider().setSwitches(remainingSwitches);
+
+		// The pending barrier request of switch 2 fails, without waiting for the timeout.
+		forwarding.switchRemoved(2L);
+		assertFalse(forwarding.barrierCacheCookie.containsKey(2L));
+		assertTrue(installed.isDone());
+		assertFalse(installed.get());
+		assertEquals(0, getBarrierXids(1L).size());
+		// The path is removed from the remaining switches, i.e. the first hop.
+		List<OFMessage> messages = writtenMessages.get(1L);
+		OFMessage lastMessage = messages.get(messages.size() - 1);
+		assertEquals(OFType.FLOW_MOD, lastMessage.getType());
+		assertEquals(OFFlowMod.OFPFC_DELETE_STRICT, ((OFFlowMod) lastMessage).getCommand());
+	}
+
+}
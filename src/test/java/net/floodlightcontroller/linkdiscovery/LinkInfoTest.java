@@ -0,0 +1,45 @@
+package net.floodlightcontroller.linkdiscovery;
+
+import static org.junit.Assert.*;
+
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LinkType;
+
+import org.junit.Test;
+
+public class LinkInfoTest {
+
+    @Test
+    public void testRefresh() {
+        LinkInfo info = new LinkInfo(100L, 100L, null);
+        assertTrue(info.refreshUnicastValidTime(200L));
+        assertEquals(Long.valueOf(200L), info.getUnicastValidTime());
+        // The valid time does not move backwards.
+        assertTrue(info.refreshUnicastValidTime(150L));
+        assertEquals(Long.valueOf(200L), info.getUnicastValidTime());
+        assertEquals(Long.valueOf(100L), info.getFirstSeenTime());
+
+        // A refresh never changes the link type.
+        assertFalse(info.refreshMulticastValidTime(200L));
+        assertNull(info.getMulticastValidTime());
+        assertEquals(LinkType.DIRECT_LINK, info.getLinkType());
+    }
+
+    @Test
+    public void testClear() {
+        LinkInfo info = new LinkInfo(100L, 100L, 100L);
+        Long unicastTime = info.getUnicastValidTime();
+        Long multicastTime = info.getMulticastValidTime();
+
+        // A concurrent refresh wins over the timeout.
+        info.refreshUnicastValidTime(200L);
+        assertFalse(info.clearUnicastValidTime(unicastTime));
+        assertEquals(Long.valueOf(200L), info.getUnicastValidTime());
+
+        assertTrue(info.clearMulticastValidTime(multicastTime));
+        assertNull(info.getMulticastValidTime());
+        assertFalse(info.refreshMulticastValidTime(300L));
+
+        assertTrue(info.clearUnicastValidTime(info.getUnicastValidTime()));
+        assertEquals(LinkType.INVALID_LINK, info.getLinkType());
+    }
+}
@@ -0,0 +1,256 @@
+package net.floodlightcontroller.multipath;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.topology.CompactTopology;
+import net.floodlightcontroller.topology.OlimpsCluster;
+
+/**
+ * Measures the calculation of link disjoint paths on fat-tree and random
+ * topologies. Compares the DisjointPathSolver on a compact topology with the
+ * previous DijkstraPathCalculator, that cloned the cluster and repeatedly ran
+ * a map based Dijkstra, removing the links of every path it found.
+ *
+ * The path capacity calculation is left out, as it is the same for both.
+ *
+ * Usage: DijkstraPathCalculatorBenchmark [fatTreeK] [randomNodes] [randomDegree] [queries]
+ */
+public class DijkstraPathCalculatorBenchmark {
+	/** The default number of ports per fat-tree switch. */
+	private static final int DEFAULT_FAT_TREE_K = 8;
+	/** The default number of switches of the random topology. */
+	private static final int DEFAULT_RANDOM_NODES = 200;
+	/** The default average node degree of the random topology. */
+	private static final int DEFAULT_RANDOM_DEGREE = 4;
+	/** The default number of path calculations per measurement. */
+	private static final int DEFAULT_QUERIES = 2000;
+	/** The number of warm up rounds. */
+	private static final int WARMUP_ROUNDS = 3;
+
+	/**
+	 * The previous DijkstraPathCalculator. Used as baseline.
+	 */
+	protected static class MapDijkstraBaseline {
+
+		public List<List<Link>> calculatePaths(long srcNode, long dstNode, OlimpsCluster topologyCluster) {
+			List<List<Link>> newPaths = new ArrayList<List<Link>>();
+			OlimpsCluster cluster = topologyCluster.clone();
+			Map<Link, Integer> linkCost = new HashMap<Link, Integer>();
+
+			for (Set<Link> links : topologyCluster.getLinks().values()) {
+				for (Link link : links) {
+					linkCost.put(link, 1);
+				}
+			}
+
+			while (!cluster.isEmpty()) {
+				List<Link> path = calculateShortestPath(cluster, linkCost, srcNode, dstNode);
+				if (path == null)
+					break;
+				newPaths.add(path);
+				for (Link link : path) {
+					cluster.delLink(reverseLink(link));
+				}
+			}
+
+			return newPaths;
+		}
+
+		private List<Link> calculateShortestPath(OlimpsCluster cluster, Map<Link, Integer> linkCost, long srcNode, long dstNode) {
+			LinkedList<Link> links = new LinkedList<Link>();
+			BroadcastTree tree = dijkstra(cluster, srcNode, linkCost);
+			long dst = dstNode;
+			while (tree.getTreeLink(dst) != null) {
+				links.addFirst(reverseLink(tree.getTreeLink(dst)));
+				dst = tree.getTreeLink(dst).getDst();
+			}
+			return (links.isEmpty()) ? null : links;
+		}
+
+		private BroadcastTree dijkstra(OlimpsCluster cluster, long root, Map<Link, Integer> linkCost) {
+			HashMap<Long, Link> nexthoplinks = new HashMap<Long, Link>();
+			HashMap<Long, Integer> cost = new HashMap<Long, Integer>();
+			HashMap<Long, Boolean> seen = new HashMap<Long, Boolean>();
+			PriorityQueue<NodeDist> nodeq = new PriorityQueue<NodeDist>();
+
+			for (Long node : cluster.getLinks().keySet()) {
+				nexthoplinks.put(node, null);
+				cost.put(node, PathFinder.MAX_PATH_WEIGHT);
+			}
+
+			nodeq.add(new NodeDist(root, 0));
+			cost.put(root, 0);
+			while (nodeq.peek() != null) {
+				NodeDist n = nodeq.poll();
+				Long cnode = n.getNode();
+				int cdist = n.getDist();
+				if (cdist >= PathFinder.MAX_PATH_WEIGHT)
+					break;
+				if (cluster.getLinks().get(cnode) == null)
+					break;
+				if (seen.containsKey(cnode))
+					continue;
+				seen.put(cnode, true);
+
+				for (Link link : cluster.getLinks().get(cnode)) {
+					Long neighbor = link.getSrc();
+					int weight = (linkCost.get(link) == null) ? 1 : linkCost.get(link);
+					int ndist = cdist + weight;
+					if (ndist < cost.get(neighbor)) {
+						cost.put(neighbor, ndist);
+						nexthoplinks.put(neighbor, link);
+						nodeq.add(new NodeDist(neighbor, ndist));
+					}
+				}
+			}
+			return new BroadcastTree(nexthoplinks, cost);
+		}
+
+		private Link reverseLink(Link link) {
+			return new Link(link.getDst(), link.getDstPort(), link.getSrc(), link.getSrcPort());
+		}
+	}
+
+	/** The port counter per switch, to create unique link ports. */
+	private static Map<Long, Integer> nextPort = new HashMap<Long, Integer>();
+
+	/**
+	 * Adds a bidirectional link between two switches to a cluster.
+	 */
+	private static void connect(OlimpsCluster cluster, long sw1, long sw2) {
+		int port1 = nextPort.containsKey(sw1) ? nextPort.get(sw1) : 1;
+		int port2 = nextPort.containsKey(sw2) ? nextPort.get(sw2) : 1;
+		nextPort.put(sw1, port1 + 1);
+		nextPort.put(sw2, port2 + 1);
+		cluster.addLink(new Link(sw1, port1, sw2, port2));
+		cluster.addLink(new Link(sw2, port2, sw1, port1));
+	}
+
+	/**
+	 * Creates a k-ary fat-tree. Returns the edge switches, i.e. the end points of the paths.
+	 */
+	private static List<Long> createFatTree(OlimpsCluster cluster, int k) {
+		List<Long> edgeSwitches = new ArrayList<Long>();
+		int half = k / 2;
+		long coreBase = 1L;
+		long podBase = coreBase + half * half;
+		for (int pod = 0; pod < k; pod++) {
+			for (int agg = 0; agg < half; agg++) {
+				long aggSwitch = podBase + pod * k + agg;
+				for (int core = 0; core < half; core++) {
+					connect(cluster, aggSwitch, coreBase + agg * half + core);
+				}
+				for (int edge = 0; edge < half; edge++) {
+					connect(cluster, aggSwitch, podBase + pod * k + half + edge);
+				}
+			}
+			for (int edge = 0; edge < half; edge++) {
+				edgeSwitches.add(podBase + pod * k + half + edge);
+			}
+		}
+		return edgeSwitches;
+	}
+
+	/**
+	 * Creates a connected random topology. Returns all switches.
+	 */
+	private static List<Long> createRandomTopology(OlimpsCluster cluster, int nodes, int degree, Random random) {
+		List<Long> switches = new ArrayList<Long>();
+		Set<Long> connected = new HashSet<Long>();
+		for (long sw = 1; sw <= nodes; sw++) {
+			switches.add(sw);
+			cluster.add(sw);
+			// A random spanning tree keeps the topology connected.
+			if (sw > 1) {
+				long peer = 1 + random.nextInt((int) sw - 1);
+				connect(cluster, sw, peer);
+				connected.add(sw * nodes + peer);
+				connected.add(peer * nodes + sw);
+			}
+		}
+		int extraLinks = nodes * degree / 2 - (nodes - 1);
+		while (extraLinks > 0) {
+			long sw1 = 1 + random.nextInt(nodes);
+			long sw2 = 1 + random.nextInt(nodes);
+			if (sw1 == sw2 || !connected.add(sw1 * nodes + sw2))
+				continue;
+			connected.add(sw2 * nodes + sw1);
+			connect(cluster, sw1, sw2);
+			extraLinks--;
+		}
+		return switches;
+	}
+
+	/**
+	 * Runs the baseline and the solver on random end point pairs of a topology.
+	 */
+	private static void measure(String name, OlimpsCluster cluster, List<Long> endPoints, int queries) {
+		Random random = new Random(42);
+		long[][] pairs = new long[queries][2];
+		for (int i = 0; i < queries; i++) {
+			pairs[i][0] = endPoints.get(random.nextInt(endPoints.size()));
+			do {
+				pairs[i][1] = endPoints.get(random.nextInt(endPoints.size()));
+			} while (pairs[i][1] == pairs[i][0]);
+		}
+
+		MapDijkstraBaseline baseline = new MapDijkstraBaseline();
+		DisjointPathSolver solver = new DisjointPathSolver();
+		long baselineNanos = 0, solverNanos = 0, snapshotNanos = 0;
+		long baselinePaths = 0, solverPaths = 0;
+
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			baselinePaths = 0;
+			solverPaths = 0;
+
+			long start = System.nanoTime();
+			for (long[] pair : pairs) {
+				baselinePaths += baseline.calculatePaths(pair[0], pair[1], cluster).size();
+			}
+			baselineNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			CompactTopology topology = new CompactTopology(cluster);
+			snapshotNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (long[] pair : pairs) {
+				solverPaths += solver.solve(topology, pair[0], pair[1], Integer.MAX_VALUE).size();
+			}
+			solverNanos = System.nanoTime() - start;
+		}
+
+		System.out.println(String.format("%-28s switches=%5d links=%6d snapshot=%8.1f us", name,
+				cluster.getNodes().size(), new CompactTopology(cluster).getEdgeCount(), snapshotNanos / 1000.0));
+		System.out.println(String.format("  %-26s %10.2f us/query  %6.2f paths/query", "map based Dijkstra",
+				baselineNanos / 1000.0 / queries, (double) baselinePaths / queries));
+		System.out.println(String.format("  %-26s %10.2f us/query  %6.2f paths/query  speedup %.1fx", "compact disjoint solver",
+				solverNanos / 1000.0 / queries, (double) solverPaths / queries, (double) baselineNanos / solverNanos));
+	}
+
+	public static void main(String[] args) {
+		int fatTreeK = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_FAT_TREE_K;
+		int randomNodes = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_RANDOM_NODES;
+		int randomDegree = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_RANDOM_DEGREE;
+		int queries = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_QUERIES;
+
+		OlimpsCluster fatTree = new OlimpsCluster();
+		List<Long> edgeSwitches = createFatTree(fatTree, fatTreeK);
+		measure("fat-tree k=" + fatTreeK, fatTree, edgeSwitches, queries);
+
+		OlimpsCluster randomTopology = new OlimpsCluster();
+		List<Long> switches = createRandomTopology(randomTopology, randomNodes, randomDegree, new Random(7));
+		measure("random n=" + randomNodes + " d=" + randomDegree, randomTopology, switches, queries);
+	}
+
+}
@@ -0,0 +1,85 @@
+package net.floodlightcontroller.multipath;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.topology.CompactDijkstra;
+import net.floodlightcontroller.topology.CompactTopology;
+import net.floodlightcontroller.topology.OlimpsCluster;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DisjointPathSolverTest {
+	/** The solver to test. */
+	DisjointPathSolver solver = new DisjointPathSolver();
+	/** The switches of the trap topology. */
+	long s = 1L, a = 2L, b = 3L, t = 4L, c = 5L, g = 6L, d = 7L, e = 8L;
+	/** A trap topology: The shortest path s-a-b-t blocks both disjoint paths s-a-d-e-t and s-c-g-b-t. */
+	OlimpsCluster cluster;
+	/** The compact snapshot of the cluster. */
+	CompactTopology topology;
+
+	/**
+	 * Creates a link from one switch to another. The port of a link is the DPID of the switch it connects to.
+	 */
+	private Link link(long src, long dst) {
+		return new Link(src, (int) dst, dst, (int) src);
+	}
+
+	/**
+	 * Adds links in both directions between consecutive switches.
+	 */
+	private void addPath(long... switches) {
+		for (int i = 1; i < switches.length; i++) {
+			cluster.addLink(link(switches[i - 1], switches[i]));
+			cluster.addLink(link(switches[i], switches[i - 1]));
+		}
+	}
+
+	@Before
+	public void setUp() {
+		cluster = new OlimpsCluster();
+		addPath(s, a, b, t);
+		addPath(a, d, e, t);
+		addPath(s, c, g, b);
+		cluster.add(9L);
+		topology = new CompactTopology(cluster);
+	}
+
+	@Test
+	public void testShortestPath() {
+		CompactDijkstra dijkstra = new CompactDijkstra();
+		dijkstra.compute(topology, topology.getNodeIndex(s), false);
+		assertEquals(3, dijkstra.getDistance(topology.getNodeIndex(t)));
+		assertEquals(Arrays.asList(link(s, a), link(a, b), link(b, t)), dijkstra.getPath(topology.getNodeIndex(t)));
+
+		// A destination rooted tree yields the same path.
+		dijkstra.compute(topology, topology.getNodeIndex(t), true);
+		assertEquals(Arrays.asList(link(s, a), link(a, b), link(b, t)), dijkstra.getPath(topology.getNodeIndex(s)));
+		assertNull(dijkstra.getPath(topology.getNodeIndex(9L)));
+	}
+
+	@Test
+	public void testTrapTopology() {
+		List<List<Link>> paths = solver.solve(topology, s, t, Integer.MAX_VALUE);
+		assertEquals(2, paths.size());
+		assertTrue(paths.contains(Arrays.asList(link(s, a), link(a, d), link(d, e), link(e, t))));
+		assertTrue(paths.contains(Arrays.asList(link(s, c), link(c, g), link(g, b), link(b, t))));
+
+		// Limited to one path, the solver returns the shortest path.
+		paths = solver.solve(topology, s, t, 1);
+		assertEquals(Arrays.asList(Arrays.asList(link(s, a), link(a, b), link(b, t))), paths);
+	}
+
+	@Test
+	public void testNoPath() {
+		assertTrue(solver.solve(topology, s, 9L, Integer.MAX_VALUE).isEmpty());
+		assertTrue(solver.solve(topology, s, 42L, Integer.MAX_VALUE).isEmpty());
+		assertTrue(solver.solve(topology, s, s, Integer.MAX_VALUE).isEmpty());
+	}
+
+}
@@ -0,0 +1,80 @@
+package net.floodlightcontroller.multipath;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.topology.CompactTopology;
+import net.floodlightcontroller.topology.OlimpsCluster;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class KShortestPathSolverTest {
+	/** The solver to test. */
+	KShortestPathSolver solver = new KShortestPathSolver();
+	/** A square 1-2-4-3-1 with the diagonal 2-3. */
+	OlimpsCluster cluster;
+	/** The compact snapshot of the cluster. */
+	CompactTopology topology;
+
+	/**
+	 * Creates a link from one switch to another. The port of a link is the DPID of the switch it connects to.
+	 */
+	private Link link(long src, long dst) {
+		return new Link(src, (int) dst, dst, (int) src);
+	}
+
+	/**
+	 * Adds links in both directions between two switches.
+	 */
+	private void connect(long sw1, long sw2) {
+		cluster.addLink(link(sw1, sw2));
+		cluster.addLink(link(sw2, sw1));
+	}
+
+	@Before
+	public void setUp() {
+		cluster = new OlimpsCluster();
+		connect(1L, 2L);
+		connect(2L, 4L);
+		connect(1L, 3L);
+		connect(3L, 4L);
+		connect(2L, 3L);
+		topology = new CompactTopology(cluster);
+	}
+
+	@Test
+	public void testKShortestPaths() {
+		List<List<Link>> paths = solver.solve(topology, 1L, 4L, 10, 1.0);
+		assertEquals(4, paths.size());
+		// Shortest paths first.
+		assertEquals(2, paths.get(0).size());
+		assertEquals(2, paths.get(1).size());
+		assertEquals(3, paths.get(2).size());
+		assertEquals(3, paths.get(3).size());
+		assertTrue(paths.contains(Arrays.asList(link(1L, 2L), link(2L, 3L), link(3L, 4L))));
+		assertTrue(paths.contains(Arrays.asList(link(1L, 3L), link(3L, 2L), link(2L, 4L))));
+
+		// Limited to k paths.
+		assertEquals(1, solver.solve(topology, 1L, 4L, 1, 1.0).size());
+	}
+
+	@Test
+	public void testDiversityConstraint() {
+		// Without any shared links, only the two disjoint paths remain.
+		List<List<Link>> paths = solver.solve(topology, 1L, 4L, 10, 0.0);
+		assertEquals(2, paths.size());
+		assertTrue(paths.contains(Arrays.asList(link(1L, 2L), link(2L, 4L))));
+		assertTrue(paths.contains(Arrays.asList(link(1L, 3L), link(3L, 4L))));
+	}
+
+	@Test
+	public void testNoPath() {
+		assertTrue(solver.solve(topology, 1L, 42L, 4, 1.0).isEmpty());
+		assertTrue(solver.solve(topology, 1L, 1L, 4, 1.0).isEmpty());
+	}
+
+}
@@ -0,0 +1,163 @@
+package net.floodlightcontroller.multipath;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import net.floodlightcontroller.appaware.AppEntry;
+import net.floodlightcontroller.appaware.IAppAwareService;
+import net.floodlightcontroller.core.OFSwitchPort;
+import net.floodlightcontroller.flowcache.FlowCacheObj;
+import net.floodlightcontroller.flowcache.IndexedFlowCacheDB;
+import net.floodlightcontroller.routing.Link;
+
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+import org.openflow.protocol.OFMatch;
+import org.openflow.protocol.action.OFAction;
+import org.openflow.protocol.action.OFActionOutput;
+
+public class LinkLoadTableTest {
+	/** The link load table to test. */
+	LinkLoadTable linkLoads;
+	/** The flow cache database that feeds the link load table. */
+	IndexedFlowCacheDB flowCacheDB;
+	/** The links leaving switch 1 on port 1 and port 2. */
+	Link link_1 = new Link(1L, 1, 2L, 1);
+	Link link_2 = new Link(1L, 2, 3L, 1);
+	/** Wildcards that match the data layer type and the network addresses. */
+	int wildcards = OFMatch.OFPFW_ALL & ~OFMatch.OFPFW_DL_TYPE & ~OFMatch.OFPFW_NW_SRC_MASK & ~OFMatch.OFPFW_NW_DST_MASK;
+	/** The matches of the flows. */
+	OFMatch match_1 = new OFMatch().setDataLayerType((short) 0x0800).setNetworkSource(1).setNetworkDestination(2).setWildcards(wildcards);
+	OFMatch match_2 = new OFMatch().setDataLayerType((short) 0x0800).setNetworkSource(1).setNetworkDestination(3).setWildcards(wildcards);
+
+	/**
+	 * Creates a flow cache object that forwards to a given port.
+	 */
+	private FlowCacheObj createFlow(OFMatch match, short port) {
+		List<OFAction> actions = new ArrayList<OFAction>(Arrays.asList((OFAction) new OFActionOutput().setPort(port)));
+		FlowCacheObj fco = new FlowCacheObj(1L, 1, match, actions);
+		fco.setStatus(FlowCacheObj.Status.ACTIVE);
+		return fco;
+	}
+
+	@Before
+	public void setUp() {
+		// Flow 1 transfers 100 MByte, flow 2 is unknown.
+		IAppAwareService appAware = createNiceMock(IAppAwareService.class);
+		expect(appAware.getApplication(anyObject(OFMatch.class))).andAnswer(new IAnswer<AppEntry>() {
+			@Override
+			public AppEntry answer() throws Throwable {
+				OFMatch match = (OFMatch) getCurrentArguments()[0];
+				return (match.getNetworkDestination() == 2) ? new AppEntry("transfer", 100, match) : null;
+			}
+		}).anyTimes();
+		replay(appAware);
+
+		linkLoads = new LinkLoadTable(appAware);
+		flowCacheDB = new IndexedFlowCacheDB("default");
+		flowCacheDB.addListener(linkLoads);
+	}
+
+	@Test
+	public void testFlowCacheEvents() {
+		FlowCacheObj fco_1 = createFlow(match_1, (short) 1);
+		FlowCacheObj fco_2 = createFlow(match_2, (short) 1);
+		flowCacheDB.storeEntry(1L, fco_1, true);
+		flowCacheDB.storeEntry(1L, fco_2, true);
+		// Storing the same flow twice does not count twice.
+		flowCacheDB.storeEntry(1L, fco_2, true);
+
+		assertEquals(2, linkLoads.getLinkLoad(link_1).getFlowCount());
+		assertEquals(800, linkLoads.getLinkLoad(link_1).getRemainingMBits());
+		assertEquals(0, linkLoads.getLinkLoad(link_2).getFlowCount());
+
+		// Flow 1 is moved to the second link.
+		fco_1.setOutPorts(Collections.singleton(2));
+		assertEquals(1, linkLoads.getLinkLoad(link_1).getFlowCount());
+		assertEquals(0, linkLoads.getLinkLoad(link_1).getRemainingMBits());
+		assertEquals(1, linkLoads.getLinkLoad(link_2).getFlowCount());
+		assertEquals(800, linkLoads.getLinkLoad(link_2).getRemainingMBits());
+
+		flowCacheDB.removeEntry(1L, fco_2);
+		assertEquals(0, linkLoads.getLinkLoad(link_1).getFlowCount());
+		flowCacheDB.clear();
+		assertEquals(0, linkLoads.getLinkLoad(link_2).getFlowCount());
+		assertEquals(0, linkLoads.getLinkLoad(link_2).getRemainingMBits());
+	}
+
+	@Test
+	public void testStatisticsSamples() {
+		FlowCacheObj fco_1 = createFlow(match_1, (short) 1);
+		flowCacheDB.storeEntry(1L, fco_1, true);
+
+		// 25 MByte have been transfered.
+		StatisticEntry flowStats = new StatisticEntry(1000, 25 * 1000 * 1000, 1);
+		fco_1.setAttribute(FlowCacheObj.Attribute.STATISTIC, flowStats);
+		linkLoads.flowStatisticsUpdated(1L, fco_1, flowStats);
+		assertEquals(600, linkLoads.getLinkLoad(link_1).getRemainingMBits());
+
+		// Statistics of flows that are not stored are ignored.
+		linkLoads.flowStatisticsUpdated(1L, createFlow(match_1, (short) 2), flowStats);
+		assertEquals(0, linkLoads.getLinkLoad(link_2).getFlowCount());
+
+		// A port that sends 1000 byte/s.
+		StatisticEntry portStats = new StatisticEntry(1000, 1000, 1) {
+			@Override
+			public long getByteRate() {
+				return 1000;
+			}
+		};
+		linkLoads.portStatisticsUpdated(1L, (short) 1, portStats);
+		assertEquals(8000, linkLoads.getLinkLoad(link_1).getBitRate());
+		// The flow count stems from the flow cache, not from the port statistics.
+		assertEquals(1, linkLoads.getLinkLoad(link_1).getFlowCount());
+		linkLoads.portStatisticsUpdated(1L, (short) 1, null);
+		assertEquals(0, linkLoads.getLinkLoad(link_1).getBitRate());
+	}
+
+	@Test
+	public void testInactiveFlows() {
+		// A flow that is not installed yet has no remaining bits.
+		FlowCacheObj fco_1 = createFlow(match_1, (short) 1);
+		fco_1.setStatus(FlowCacheObj.Status.PENDING);
+		flowCacheDB.storeEntry(1L, fco_1, true);
+		assertEquals(1, linkLoads.getLinkLoad(link_1).getFlowCount());
+		assertEquals(0, linkLoads.getLinkLoad(link_1).getRemainingMBits());
+
+		// Once it is active, the next statistics sample counts its remaining bits.
+		fco_1.setStatus(FlowCacheObj.Status.ACTIVE);
+		linkLoads.flowStatisticsUpdated(1L, fco_1, null);
+		assertEquals(800, linkLoads.getLinkLoad(link_1).getRemainingMBits());
+	}
+
+	@Test
+	public void testVirtualPorts() {
+		// The flow leaves port 1 on two VLANs.
+		FlowCacheObj fco_1 = createFlow(match_1, (short) 1);
+		flowCacheDB.storeEntry(1L, fco_1, true);
+		fco_1.setOutPorts(new HashSet<Integer>(Arrays.asList(OFSwitchPort.virtualPortIdOf((short) 1, (short) 10), OFSwitchPort.virtualPortIdOf((short) 1, (short) 20))));
+		assertEquals(1, linkLoads.getLinkLoad(link_1).getFlowCount());
+		assertEquals(800, linkLoads.getLinkLoad(link_1).getRemainingMBits());
+
+		// The flow is still mapped to the link by the remaining VLAN.
+		fco_1.setOutPorts(Collections.singleton(OFSwitchPort.virtualPortIdOf((short) 1, (short) 10)));
+		assertEquals(1, linkLoads.getLinkLoad(link_1).getFlowCount());
+		assertEquals(800, linkLoads.getLinkLoad(link_1).getRemainingMBits());
+
+		flowCacheDB.removeEntry(1L, fco_1);
+		assertEquals(0, linkLoads.getLinkLoad(link_1).getFlowCount());
+		assertEquals(0, linkLoads.getLinkLoad(link_1).getRemainingMBits());
+	}
+
+}
@@ -0,0 +1,148 @@
+package net.floodlightcontroller.multipath;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.floodlightcontroller.configuration.IConfigurationService;
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.flowcache.IFlowCacheService;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LinkType;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.UpdateOperation;
+import net.floodlightcontroller.restserver.IRestApiService;
+import net.floodlightcontroller.routing.EndPoints;
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.routing.Path;
+import net.floodlightcontroller.topology.Cluster;
+import net.floodlightcontroller.topology.IOlimpsTopologyService;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class PathFinderTest {
+	/** The path finder to test. */
+	PathFinder pathFinder;
+	/** The path cache used by the path finder. */
+	PathCache pathCache;
+	/** Links of the topology. */
+	Link link_1_2 = new Link(1L, 1, 2L, 1);
+	Link link_2_3 = new Link(2L, 2, 3L, 1);
+	Link link_1_3 = new Link(1L, 2, 3L, 2);
+	/** The links the calculator routes over: [EndPoints -> Links]. */
+	Map<EndPoints, Link> routes = new HashMap<EndPoints, Link>();
+	/** The number of path calculations: [EndPoints -> Count]. */
+	Map<EndPoints, Integer> calculations = new HashMap<EndPoints, Integer>();
+
+	/**
+	 * A path calculator that returns a single one-hop path and counts its calls.
+	 */
+	private class CountingPathCalculator implements IPathCalculator {
+		@Override
+		public String getName() {
+			return "countingpathcalculator";
+		}
+
+		@Override
+		public void setArgs(String args) {
+			// Do nothing.
+		}
+
+		@Override
+		public Set<Path> caluclatePaths(long srcSwitchId, long dstSwitchId, Cluster cluster) {
+			EndPoints endPoints = new EndPoints(srcSwitchId, dstSwitchId);
+			Integer count = calculations.get(endPoints);
+			calculations.put(endPoints, (count == null) ? 1 : count + 1);
+			Link link = routes.get(endPoints);
+			if (link == null)
+				return null;
+			return new HashSet<Path>(Collections.singleton(new Path(srcSwitchId, dstSwitchId, Arrays.asList(link), 0, 0)));
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		pathCache = new PathCache();
+		pathFinder = new PathFinder();
+
+		FloodlightModuleContext fmc = new FloodlightModuleContext();
+		fmc.addService(IPathCacheService.class, pathCache);
+		fmc.addService(IOlimpsTopologyService.class, createNiceMock(IOlimpsTopologyService.class));
+		fmc.addService(IRestApiService.class, createNiceMock(IRestApiService.class));
+		fmc.addService(IConfigurationService.class, createNiceMock(IConfigurationService.class));
+		fmc.addService(IFlowCacheService.class, createNiceMock(IFlowCacheService.class));
+		fmc.addService(IStatisticsCollectorService.class, createNiceMock(IStatisticsCollectorService.class));
+		replay(fmc.getServiceImpl(IOlimpsTopologyService.class), fmc.getServiceImpl(IRestApiService.class),
+				fmc.getServiceImpl(IConfigurationService.class), fmc.getServiceImpl(IFlowCacheService.class),
+				fmc.getServiceImpl(IStatisticsCollectorService.class));
+
+		pathCache.init(fmc);
+		pathFinder.init(fmc);
+		pathCache.startUp(fmc);
+		pathFinder.startUp(fmc);
+		pathFinder.currentPathCalculator = new CountingPathCalculator();
+
+		routes.put(new EndPoints(1L, 2L), link_1_2);
+		routes.put(new EndPoints(2L, 3L), link_2_3);
+		pathFinder.topologyChanged(Arrays.asList(
+				new LDUpdate(1L, 1, 2L, 1, LinkType.DIRECT_LINK, UpdateOperation.LINK_UPDATED),
+				new LDUpdate(2L, 2, 3L, 1, LinkType.DIRECT_LINK, UpdateOperation.LINK_UPDATED)));
+		pathFinder.getPaths(1L, 2L);
+		pathFinder.getPaths(2L, 3L);
+	}
+
+	@Test
+	public void testLinkRemovedRecomputesDependentPathsOnly() {
+		// The same link is reported twice in one batch.
+		pathFinder.topologyChanged(Arrays.asList(
+				new LDUpdate(1L, 1, 2L, 1, LinkType.DIRECT_LINK, UpdateOperation.LINK_REMOVED),
+				new LDUpdate(1L, 1, 2L, 1, LinkType.DIRECT_LINK, UpdateOperation.LINK_REMOVED)));
+
+		assertEquals(Integer.valueOf(2), calculations.get(new EndPoints(1L, 2L)));
+		assertEquals(Integer.valueOf(1), calculations.get(new EndPoints(2L, 3L)));
+	}
+
+	@Test
+	public void testLinkAddedRecomputesLazily() {
+		routes.put(new EndPoints(1L, 2L), link_1_3);
+		pathFinder.topologyChanged(Arrays.asList(
+				new LDUpdate(1L, 2, 3L, 2, LinkType.DIRECT_LINK, UpdateOperation.LINK_UPDATED)));
+		assertEquals(Integer.valueOf(1), calculations.get(new EndPoints(1L, 2L)));
+
+		// The next request recomputes the paths once.
+		Set<Path> paths = pathFinder.getPaths(1L, 2L);
+		pathFinder.getPaths(1L, 2L);
+		assertEquals(Integer.valueOf(2), calculations.get(new EndPoints(1L, 2L)));
+		assertEquals(Arrays.asList(link_1_3), paths.iterator().next().getLinks());
+		pathFinder.getPaths(2L, 3L);
+		assertEquals(Integer.valueOf(2), calculations.get(new EndPoints(2L, 3L)));
+
+		// Updates of known links do not invalidate any paths.
+		pathFinder.topologyChanged(Arrays.asList(
+				new LDUpdate(1L, 2, 3L, 2, LinkType.DIRECT_LINK, UpdateOperation.LINK_UPDATED)));
+		pathFinder.getPaths(1L, 2L);
+		pathFinder.getPaths(2L, 3L);
+		assertEquals(Integer.valueOf(2), calculations.get(new EndPoints(1L, 2L)));
+		assertEquals(Integer.valueOf(2), calculations.get(new EndPoints(2L, 3L)));
+	}
+
+	@Test
+	public void testPathCalculatorConfig() throws Exception {
+		pathFinder.putJsonConfig(new ObjectMapper().readTree("{\"calculator\": \"KShortestPathCalculator 2 0.25\"}"));
+		assertEquals("kshortestpathcalculator", pathFinder.getPathCalculator().getName());
+		assertEquals("kshortestpathcalculator 2 0.25", pathFinder.getJsonConfig().get("calculator").asText());
+
+		pathFinder.setPathCalculator("dijkstrapathcalculator");
+		assertEquals("dijkstrapathcalculator", pathFinder.getJsonConfig().get("calculator").asText());
+	}
+
+}
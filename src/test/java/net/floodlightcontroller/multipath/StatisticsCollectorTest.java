@@ -0,0 +1,180 @@
+package net.floodlightcontroller.multipath;
+
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IOFMessageListener;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.OFSwitchPort;
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.test.MockThreadPoolService;
+import net.floodlightcontroller.flowcache.FlowCacheObj;
+import net.floodlightcontroller.flowcache.FlowCacheQuery;
+import net.floodlightcontroller.flowcache.FlowCacheQueryResp;
+import net.floodlightcontroller.flowcache.IFlowCacheService;
+import net.floodlightcontroller.restserver.IRestApiService;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
+
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+import org.openflow.protocol.OFMatch;
+import org.openflow.protocol.OFPhysicalPort;
+import org.openflow.protocol.OFStatisticsReply;
+import org.openflow.protocol.OFStatisticsRequest;
+import org.openflow.protocol.OFType;
+import org.openflow.protocol.action.OFAction;
+import org.openflow.protocol.action.OFActionOutput;
+import org.openflow.protocol.statistics.OFAggregateStatisticsReply;
+import org.openflow.protocol.statistics.OFFlowStatisticsReply;
+import org.openflow.protocol.statistics.OFStatistics;
+import org.openflow.protocol.statistics.OFStatisticsType;
+
+public class StatisticsCollectorTest {
+	/** The statistics collector to test. */
+	StatisticsCollector statisticsCollector;
+	/** The switch to poll. */
+	IOFSwitch sw;
+	/** The statistics requests sent to the switch. */
+	List<OFStatisticsRequest> requests;
+	/** The flow cache object of the switch. */
+	FlowCacheObj fco;
+	/** The match of the flow. */
+	OFMatch match = new OFMatch()
+		.setDataLayerType((short) 0x0800)
+		.setNetworkSource(1)
+		.setNetworkDestination(2)
+		.setWildcards(OFMatch.OFPFW_ALL & ~OFMatch.OFPFW_DL_TYPE & ~OFMatch.OFPFW_NW_SRC_MASK & ~OFMatch.OFPFW_NW_DST_MASK);
+
+	@Before
+	public void setUp() throws Exception {
+		requests = new ArrayList<OFStatisticsRequest>();
+		List<OFAction> actions = new ArrayList<OFAction>(Arrays.asList((OFAction) new OFActionOutput().setPort((short) 1)));
+		fco = new FlowCacheObj(1L, 1, match, actions);
+
+		// A switch with three ports that records all statistics requests.
+		final AtomicInteger xid = new AtomicInteger(0);
+		List<OFSwitchPort> ports = new ArrayList<OFSwitchPort>();
+		for (short portNumber = 1; portNumber <= 3; portNumber++) {
+			OFPhysicalPort port = new OFPhysicalPort();
+			port.setPortNumber(portNumber);
+			ports.add(OFSwitchPort.fromOFPhysicalPort(port));
+		}
+		sw = createNiceMock(IOFSwitch.class);
+		expect(sw.getId()).andReturn(1L).anyTimes();
+		expect(sw.isConnected()).andReturn(true).anyTimes();
+		expect(sw.getPorts()).andReturn(ports).anyTimes();
+		expect(sw.getNextTransactionId()).andAnswer(new IAnswer<Integer>() {
+			@Override
+			public Integer answer() throws Throwable {
+				return xid.incrementAndGet();
+			}
+		}).anyTimes();
+		sw.sendStatsQuery(anyObject(OFStatisticsRequest.class), anyInt(), anyObject(IOFMessageListener.class));
+		expectLastCall().andAnswer(new IAnswer<Object>() {
+			@Override
+			public Object answer() throws Throwable {
+				OFStatisticsRequest request = (OFStatisticsRequest) getCurrentArguments()[0];
+				request.setXid((Integer) getCurrentArguments()[1]);
+				requests.add(request);
+				return null;
+			}
+		}).anyTimes();
+		replay(sw);
+
+		IFloodlightProviderService floodlightProvider = createNiceMock(IFloodlightProviderService.class);
+		expect(floodlightProvider.getSwitch(1L)).andReturn(sw).anyTimes();
+		IFlowCacheService flowCache = createNiceMock(IFlowCacheService.class);
+		expect(flowCache.queryFlows(anyObject(FlowCacheQuery.class))).andAnswer(new IAnswer<FlowCacheQueryResp>() {
+			@Override
+			public FlowCacheQueryResp answer() throws Throwable {
+				FlowCacheQueryResp resp = new FlowCacheQueryResp((FlowCacheQuery) getCurrentArguments()[0]);
+				resp.flowCacheObjList.add(fco);
+				return resp;
+			}
+		}).anyTimes();
+		replay(floodlightProvider, flowCache);
+
+		MockThreadPoolService tps = new MockThreadPoolService();
+		FloodlightModuleContext fmc = new FloodlightModuleContext();
+		fmc.addService(IFloodlightProviderService.class, floodlightProvider);
+		fmc.addService(IThreadPoolService.class, tps);
+		fmc.addService(IFlowCacheService.class, flowCache);
+		fmc.addService(IRestApiService.class, createNiceMock(IRestApiService.class));
+		tps.init(fmc);
+		tps.startUp(fmc);
+
+		statisticsCollector = new StatisticsCollector();
+		statisticsCollector.init(fmc);
+	}
+
+	/**
+	 * Sends a statistics reply for a request to the statistics collector.
+	 */
+	private void reply(OFStatisticsRequest request, OFStatistics statistics, boolean more) {
+		OFStatisticsReply reply = new OFStatisticsReply();
+		reply.setXid(request.getXid());
+		reply.setStatisticType(request.getStatisticType());
+		reply.setStatistics(Collections.singletonList(statistics));
+		if (more) {
+			reply.setFlags(OFStatisticsReply.OFStatisticsReplyFlags.REPLY_MORE.getTypeValue());
+		}
+		statisticsCollector.statsReplyHandler.receive(sw, reply, null);
+	}
+
+	@Test
+	public void testPollingRound() {
+		statisticsCollector.querySwitchStats(1L);
+
+		// All requests go out at once: one per port and one for the flows.
+		assertEquals(4, requests.size());
+		// No new round while the previous one is in progress.
+		statisticsCollector.querySwitchStats(1L);
+		assertEquals(4, requests.size());
+
+		// Reply in reverse order, the flow statistics in two parts.
+		for (int i = requests.size() - 1; i >= 0; i--) {
+			OFStatisticsRequest request = requests.get(i);
+			assertEquals(OFType.STATS_REQUEST, request.getType());
+			if (request.getStatisticType() == OFStatisticsType.FLOW) {
+				OFFlowStatisticsReply flowStats = new OFFlowStatisticsReply();
+				flowStats.setMatch(match.clone());
+				flowStats.setPriority((short) 1);
+				flowStats.setCookie(1L);
+				flowStats.setByteCount(1000);
+				reply(request, flowStats, true);
+				OFFlowStatisticsReply otherFlowStats = new OFFlowStatisticsReply();
+				otherFlowStats.setMatch(new OFMatch());
+				reply(request, otherFlowStats, false);
+			} else {
+				OFAggregateStatisticsReply portStats = new OFAggregateStatisticsReply();
+				portStats.setFlowCount(1);
+				portStats.setByteCount(2000);
+				reply(request, portStats, false);
+			}
+		}
+
+		StatisticEntry flowStats = (StatisticEntry) fco.getAttribute(FlowCacheObj.Attribute.STATISTIC);
+		assertNotNull(flowStats);
+		assertEquals(1000, flowStats.getByteCount());
+		assertEquals(1, statisticsCollector.getFlowCount(1L, 2));
+
+		// The round is completed, the next one can start.
+		statisticsCollector.querySwitchStats(1L);
+		assertEquals(8, requests.size());
+	}
+
+}
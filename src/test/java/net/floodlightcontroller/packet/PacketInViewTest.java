@@ -0,0 +1,106 @@
+package net.floodlightcontroller.packet;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.openflow.protocol.OFMatch;
+
+public class PacketInViewTest {
+
+	/**
+	 * Creates a VLAN tagged TCP packet.
+	 */
+	private byte[] createTcpPacket() {
+		IPacket packet = new Ethernet()
+			.setDestinationMACAddress("00:11:22:33:44:55")
+			.setSourceMACAddress("00:44:33:22:11:00")
+			.setVlanID((short) 42)
+			.setPriorityCode((byte) 3)
+			.setEtherType(Ethernet.TYPE_IPv4)
+			.setPayload(new IPv4()
+				.setTtl((byte) 128)
+				.setDiffServ((byte) (10 << 2))
+				.setSourceAddress("192.168.1.1")
+				.setDestinationAddress("192.168.1.2")
+				.setPayload(new TCP()
+					.setSourcePort((short) 5000)
+					.setDestinationPort((short) 80)
+					.setPayload(new Data(new byte[] {0x01}))));
+		return packet.serialize();
+	}
+
+	@Test
+	public void testTcpPacket() {
+		byte[] data = createTcpPacket();
+		PacketInView piView = new PacketInView(data, (short) 1);
+		OFMatch match = new OFMatch().loadFromPacket(data, (short) 1);
+
+		assertEquals(0x001122334455L, piView.getDestinationMAC());
+		assertEquals(0x004433221100L, piView.getSourceMAC());
+		assertFalse(piView.isBroadcast());
+		assertFalse(piView.isMulticast());
+		assertEquals(match.getDataLayerType(), piView.getEtherType());
+		assertEquals(match.getDataLayerVirtualLan(), piView.getVlanId());
+		assertEquals(match.getDataLayerVirtualLanPriorityCodePoint(), piView.getVlanPriority());
+		assertTrue(piView.isIPv4());
+		assertEquals(match.getNetworkTypeOfService(), piView.getNetworkTypeOfService());
+		assertEquals(match.getNetworkProtocol(), piView.getNetworkProtocol());
+		assertEquals(match.getNetworkSource(), piView.getNetworkSource());
+		assertEquals(match.getNetworkDestination(), piView.getNetworkDestination());
+		assertEquals(match.getTransportSource(), piView.getTransportSource());
+		assertEquals(match.getTransportDestination(), piView.getTransportDestination());
+
+		// The match and the Ethernet packet are created once.
+		assertEquals(match, piView.getMatch());
+		assertSame(piView.getMatch(), piView.getMatch());
+		assertSame(piView.getEthernet(), piView.getEthernet());
+		assertEquals(42, piView.getEthernet().getVlanID());
+	}
+
+	@Test
+	public void testArpPacket() {
+		byte[] data = new Ethernet()
+			.setDestinationMACAddress("ff:ff:ff:ff:ff:ff")
+			.setSourceMACAddress("00:44:33:22:11:00")
+			.setEtherType(Ethernet.TYPE_ARP)
+			.setPayload(new ARP()
+				.setHardwareType(ARP.HW_TYPE_ETHERNET)
+				.setProtocolType(ARP.PROTO_TYPE_IP)
+				.setHardwareAddressLength((byte) 6)
+				.setProtocolAddressLength((byte) 4)
+				.setOpCode(ARP.OP_REQUEST)
+				.setSenderHardwareAddress(Ethernet.toMACAddress("00:44:33:22:11:00"))
+				.setSenderProtocolAddress(IPv4.toIPv4AddressBytes("192.168.1.1"))
+				.setTargetHardwareAddress(Ethernet.toMACAddress("00:00:00:00:00:00"))
+				.setTargetProtocolAddress(IPv4.toIPv4AddressBytes("192.168.1.2")))
+			.serialize();
+		PacketInView piView = new PacketInView(data, (short) 1);
+
+		assertTrue(piView.isBroadcast());
+		assertFalse(piView.isMulticast());
+		assertEquals(Ethernet.TYPE_ARP, piView.getEtherType());
+		assertEquals(Ethernet.VLAN_UNTAGGED, piView.getVlanId());
+		assertFalse(piView.isIPv4());
+		assertEquals(IPv4.toIPv4Address("192.168.1.1"), piView.getNetworkSource());
+		assertEquals(IPv4.toIPv4Address("192.168.1.2"), piView.getNetworkDestination());
+		assertEquals(0, piView.getTransportSource());
+	}
+
+	@Test
+	public void testTruncatedPacket() {
+		PacketInView piView = new PacketInView(new byte[] {1, 2, 3}, (short) 1);
+		assertFalse(piView.isEthernet());
+		assertFalse(piView.isIPv4());
+		assertEquals(0, piView.getNetworkSource());
+		assertEquals(0, piView.getTransportDestination());
+		assertEquals(0, piView.getDestinationMAC());
+		assertFalse(piView.isMulticast());
+
+		// An empty packet.
+		piView = new PacketInView(new byte[0], (short) 1);
+		assertFalse(piView.isEthernet());
+		assertFalse(piView.isBroadcast());
+		assertFalse(piView.isMulticast());
+	}
+
+}
@@ -0,0 +1,77 @@
+package net.floodlightcontroller.perfmon;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyRecorderTest {
+	/** The slot duration: 10s. */
+	long slotNs = 10000000000L;
+
+	@Test
+	public void testBucketRoundTrip() {
+		int lastIndex = -1;
+		for (long valueNs = 32000; valueNs < 100000000000L; valueNs = valueNs * 11 / 10) {
+			int index = LatencyRecorder.getBucketIndex(valueNs);
+			assertTrue(index >= lastIndex);
+			assertTrue(index < LatencyRecorder.BUCKET_COUNT);
+			// Above 32 units, the relative error stays below about 6%.
+			long bucketValue = LatencyRecorder.getBucketValue(index);
+			assertEquals(1.0, (double) bucketValue / valueNs, 0.07);
+			lastIndex = index;
+		}
+	}
+
+	@Test
+	public void testMergeThreads() throws Exception {
+		final LatencyRecorder recorder = new LatencyRecorder(slotNs);
+		final long nowNs = 5 * slotNs;
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 250; i++) {
+						recorder.record((offset * 250 + i + 1) * 1000000L, nowNs);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// The values 1ms .. 1000ms, recorded by four threads.
+		LatencySnapshot snapshot = recorder.getSnapshot(nowNs, LatencyRecorder.WINDOW_SLOTS);
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(1000000000L, snapshot.getMaxNs());
+		assertEquals(500500000L, snapshot.getAverageNs());
+		assertEquals(500000000L, snapshot.getP50Ns(), 500000000L * 0.07);
+		assertEquals(990000000L, snapshot.getP99Ns(), 990000000L * 0.07);
+		assertEquals(1000000000L, snapshot.getP999Ns(), 1000000000L * 0.07);
+	}
+
+	@Test
+	public void testRollingWindow() {
+		LatencyRecorder recorder = new LatencyRecorder(slotNs);
+		recorder.record(1000000L, 0);
+		recorder.record(2000000L, slotNs);
+		recorder.record(3000000L, 2 * slotNs);
+
+		assertEquals(3, recorder.getSnapshot(2 * slotNs, LatencyRecorder.WINDOW_SLOTS).getCount());
+		assertEquals(1, recorder.getSnapshot(2 * slotNs, 1).getCount());
+		assertEquals(3000000L, recorder.getSnapshot(2 * slotNs, 1).getMaxNs());
+
+		// The first slot expires and is reused.
+		long nowNs = LatencyRecorder.WINDOW_SLOTS * slotNs;
+		assertEquals(2, recorder.getSnapshot(nowNs, LatencyRecorder.WINDOW_SLOTS).getCount());
+		recorder.record(4000000L, nowNs);
+		LatencySnapshot snapshot = recorder.getSnapshot(nowNs, LatencyRecorder.WINDOW_SLOTS);
+		assertEquals(3, snapshot.getCount());
+		assertEquals(4000000L, snapshot.getMaxNs());
+		assertEquals(2000000L, snapshot.getMinNs(), 2000000L * 0.07);
+	}
+
+}
@@ -0,0 +1,48 @@
+package net.floodlightcontroller.perfmon;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import net.floodlightcontroller.core.IOFMessageListener;
+import net.floodlightcontroller.core.IOFSwitch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PktInProcessingTimeTest {
+    protected PktInProcessingTime pktInProcessingTime;
+
+    @Before
+    public void setUp() {
+        pktInProcessingTime = new PktInProcessingTime();
+        pktInProcessingTime.bootstrap(
+                Collections.<IOFMessageListener>emptyList());
+        pktInProcessingTime.isEnabled = true;
+    }
+
+    protected IOFSwitch recordPacketIn(long switchId) {
+        IOFSwitch sw = createNiceMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(switchId).anyTimes();
+        replay(sw);
+        pktInProcessingTime.recordStartTimePktIn();
+        pktInProcessingTime.recordEndTimePktIn(sw, null, null);
+        return sw;
+    }
+
+    @Test
+    public void testSwitchRemoved() {
+        recordPacketIn(1L);
+        recordPacketIn(2L);
+        assertEquals(2, pktInProcessingTime.getSwitchLatencies(0).size());
+
+        // The processing times of a removed switch are dropped
+        pktInProcessingTime.switchRemoved(1L);
+        assertEquals(Collections.singleton(2L),
+                     pktInProcessingTime.getSwitchLatencies(0).keySet());
+        assertNotNull(pktInProcessingTime.getCtb());
+    }
+}
@@ -0,0 +1,133 @@
+package net.floodlightcontroller.threadpool;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.threadpool.IThreadPoolService.ExecutorLane;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ThreadPoolTest {
+    protected ThreadPool threadPool;
+    protected FloodlightModuleContext fmc;
+
+    @Before
+    public void setUp() {
+        threadPool = new ThreadPool();
+        fmc = new FloodlightModuleContext();
+    }
+
+    @After
+    public void tearDown() {
+        if (threadPool.laneExecutors != null) {
+            for (LaneExecutor executor : threadPool.laneExecutors.values()) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    protected int getThreads(ExecutorLane lane) {
+        ScheduledExecutorService executor =
+                threadPool.getScheduledExecutor(lane);
+        assertTrue(executor instanceof LaneExecutor);
+        return ((LaneExecutor) executor).getCorePoolSize();
+    }
+
+    @Test
+    public void testDefaultLanes() throws Exception {
+        threadPool.init(fmc);
+        for (ExecutorLane lane : ExecutorLane.values()) {
+            assertEquals((int) ThreadPool.DEFAULT_LANE_THREADS.get(lane),
+                         getThreads(lane));
+        }
+        assertSame(threadPool.getScheduledExecutor(),
+                   threadPool.getScheduledExecutor(ExecutorLane.DEFAULT));
+        assertEquals(ExecutorLane.values().length,
+                     threadPool.getLaneStatistics().size());
+    }
+
+    @Test
+    public void testLaneConfig() throws Exception {
+        fmc.addConfigParam(threadPool, "pollingthreads", "2");
+        fmc.addConfigParam(threadPool, "topologythreads", "0");
+        fmc.addConfigParam(threadPool, "housekeepingthreads", "-1");
+        fmc.addConfigParam(threadPool, "defaultthreads", "3");
+        threadPool.init(fmc);
+
+        assertEquals(3, getThreads(ExecutorLane.DEFAULT));
+        assertEquals(2, getThreads(ExecutorLane.POLLING));
+
+        // Lanes without threads run on the default lane
+        assertSame(threadPool.getScheduledExecutor(),
+                   threadPool.getScheduledExecutor(ExecutorLane.TOPOLOGY));
+        assertSame(threadPool.getScheduledExecutor(),
+                   threadPool.getScheduledExecutor(ExecutorLane.HOUSEKEEPING));
+        Map<ExecutorLane, ExecutorLaneStatistics> statistics =
+                threadPool.getLaneStatistics();
+        assertEquals(2, statistics.size());
+        assertEquals(2, statistics.get(ExecutorLane.POLLING).getThreads());
+        assertFalse(statistics.containsKey(ExecutorLane.TOPOLOGY));
+    }
+
+    @Test
+    public void testInvalidLaneConfig() throws Exception {
+        // The default lane always has a thread
+        fmc.addConfigParam(threadPool, "defaultthreads", "0");
+        fmc.addConfigParam(threadPool, "pollingthreads", "many");
+        threadPool.init(fmc);
+
+        assertEquals(1, getThreads(ExecutorLane.DEFAULT));
+        assertEquals((int) ThreadPool.DEFAULT_LANE_THREADS
+                             .get(ExecutorLane.POLLING),
+                     getThreads(ExecutorLane.POLLING));
+    }
+
+    @Test
+    public void testSerialLane() throws Exception {
+        threadPool.init(fmc);
+        assertEquals(1, getThreads(ExecutorLane.HOUSEKEEPING));
+        ScheduledExecutorService executor =
+                threadPool.getScheduledExecutor(ExecutorLane.HOUSEKEEPING);
+
+        // Tasks of a single threaded lane run one at a time, in order
+        int tasks = 100;
+        final CountDownLatch latch = new CountDownLatch(tasks);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<Integer> order =
+                Collections.synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < tasks; i++) {
+            final int task = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int r = running.incrementAndGet();
+                    if (r > maxRunning.get())
+                        maxRunning.set(r);
+                    order.add(task);
+                    Thread.yield();
+                    running.decrementAndGet();
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+        for (int i = 0; i < tasks; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+        assertEquals(1, threadPool.getLaneStatistics()
+                .get(ExecutorLane.HOUSEKEEPING).getThreads());
+    }
+}
@@ -0,0 +1,171 @@
+package net.floodlightcontroller.topology;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Link;
+
+/**
+ * Measures the recompute time of a topology instance against the number of
+ * switches. Compares the sequential map based Dijkstra per root, that
+ * TopologyInstance used before, with the parallel ShortestPathTreeCalculator
+ * on random single cluster topologies. Also measures the compute() time of
+ * an instance that repairs the trees of the previous instance after a link
+ * change.
+ *
+ * Usage: ShortestPathTreeBenchmark [degree] [switches...]
+ */
+public class ShortestPathTreeBenchmark {
+	/** The default average node degree. */
+	private static final int DEFAULT_DEGREE = 4;
+	/** The default switch counts. */
+	private static final int[] DEFAULT_SWITCHES = {50, 100, 200, 400, 800};
+	/** The number of warm up rounds. */
+	private static final int WARMUP_ROUNDS = 3;
+
+	/**
+	 * The inputs of a topology instance.
+	 */
+	private static class Topology {
+		Map<Long, Set<Integer>> switchPorts = new HashMap<Long, Set<Integer>>();
+		Map<NodePortTuple, Set<Link>> switchPortLinks = new HashMap<NodePortTuple, Set<Link>>();
+
+		void removeLink(Link link) {
+			for (NodePortTuple npt : new NodePortTuple[] {new NodePortTuple(link.getSrc(), link.getSrcPort()), new NodePortTuple(link.getDst(), link.getDstPort())}) {
+				switchPortLinks.get(npt).remove(link);
+			}
+		}
+
+		void addLink(Link link) {
+			addPortLink(link.getSrc(), link.getSrcPort(), link);
+			addPortLink(link.getDst(), link.getDstPort(), link);
+		}
+
+		private void addPortLink(long sw, int port, Link link) {
+			if (!switchPorts.containsKey(sw))
+				switchPorts.put(sw, new HashSet<Integer>());
+			switchPorts.get(sw).add(port);
+			NodePortTuple npt = new NodePortTuple(sw, port);
+			if (!switchPortLinks.containsKey(npt))
+				switchPortLinks.put(npt, new HashSet<Link>());
+			switchPortLinks.get(npt).add(link);
+		}
+
+		TopologyInstance newInstance() {
+			Set<NodePortTuple> none = new HashSet<NodePortTuple>();
+			return new TopologyInstance(switchPorts, none, switchPortLinks, none, none);
+		}
+	}
+
+	/**
+	 * Creates a connected random topology with bidirectional links.
+	 */
+	private static Topology createRandomTopology(int nodes, int degree, Random random) {
+		Topology topology = new Topology();
+		Map<Long, Integer> nextPort = new HashMap<Long, Integer>();
+		Set<Long> connected = new HashSet<Long>();
+		int links = nodes * degree / 2;
+		for (int i = 0; i < links; i++) {
+			long sw1, sw2;
+			if (i < nodes - 1) {
+				// A random spanning tree keeps the topology connected.
+				sw1 = i + 2;
+				sw2 = 1 + random.nextInt(i + 1);
+			} else {
+				sw1 = 1 + random.nextInt(nodes);
+				sw2 = 1 + random.nextInt(nodes);
+			}
+			if (sw1 == sw2 || !connected.add(sw1 * nodes + sw2)) {
+				i--;
+				continue;
+			}
+			connected.add(sw2 * nodes + sw1);
+			int port1 = nextPort.containsKey(sw1) ? nextPort.get(sw1) : 1;
+			int port2 = nextPort.containsKey(sw2) ? nextPort.get(sw2) : 1;
+			nextPort.put(sw1, port1 + 1);
+			nextPort.put(sw2, port2 + 1);
+			topology.addLink(new Link(sw1, port1, sw2, port2));
+			topology.addLink(new Link(sw2, port2, sw1, port1));
+		}
+		return topology;
+	}
+
+	/**
+	 * Runs the previous sequential computation of the trees of all clusters.
+	 */
+	private static Map<Long, BroadcastTree> sequentialTrees(TopologyInstance ti) {
+		Map<Long, BroadcastTree> trees = new HashMap<Long, BroadcastTree>();
+		Map<Link, Integer> linkCost = new HashMap<Link, Integer>();
+		for (Cluster c : ti.getClusters()) {
+			for (Long node : c.getNodes()) {
+				trees.put(node, ti.dijkstra(c, node, linkCost, true));
+			}
+		}
+		return trees;
+	}
+
+	private static void measure(int switches, int degree) {
+		Topology topology = createRandomTopology(switches, degree, new Random(switches));
+		long computeNanos = 0, sequentialNanos = 0, parallelNanos = 0, incrementalNanos = 0;
+		int trees = 0;
+
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			TopologyInstance ti = topology.newInstance();
+			long start = System.nanoTime();
+			ti.compute();
+			computeNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			trees = sequentialTrees(ti).size();
+			sequentialNanos = System.nanoTime() - start;
+
+			List<Cluster> clusters = new ArrayList<Cluster>(ti.getClusters());
+			start = System.nanoTime();
+			ShortestPathTreeCalculator.calculate(clusters, new HashMap<Link, Integer>());
+			parallelNanos = System.nanoTime() - start;
+
+			// Remove one direction of a link of the random spanning tree, and add it again.
+			Link link = topology.switchPortLinks.get(new NodePortTuple(switches, 1)).iterator().next();
+			long total = 0;
+			TopologyInstance previous = ti;
+			for (int i = 0; i < 2; i++) {
+				if (i == 0)
+					topology.removeLink(link);
+				else
+					topology.addLink(link);
+				TopologyInstance next = topology.newInstance();
+				start = System.nanoTime();
+				next.compute(previous, false);
+				total += System.nanoTime() - start;
+				previous = next;
+			}
+			incrementalNanos = total / 2;
+		}
+
+		System.out.println(String.format("switches=%5d trees=%5d  compute()=%9.2f ms  incremental compute()=%9.2f ms  sequential map Dijkstra=%9.2f ms  parallel compact Dijkstra=%9.2f ms  speedup %.1fx",
+				switches, trees, computeNanos / 1e6, incrementalNanos / 1e6, sequentialNanos / 1e6, parallelNanos / 1e6, (double) sequentialNanos / parallelNanos));
+	}
+
+	public static void main(String[] args) {
+		int degree = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_DEGREE;
+		int[] switchCounts = DEFAULT_SWITCHES;
+		if (args.length > 1) {
+			switchCounts = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++) {
+				switchCounts[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+
+		System.out.println("processors=" + Runtime.getRuntime().availableProcessors() + " degree=" + degree);
+		for (int switches : switchCounts) {
+			measure(switches, degree);
+		}
+	}
+
+}
@@ -0,0 +1,115 @@
+package net.floodlightcontroller.topology;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Link;
+
+import org.junit.Test;
+
+public class ShortestPathTreeCalculatorTest {
+	/** The next free port per switch. */
+	Map<Long, Integer> nextPort = new HashMap<Long, Integer>();
+	/** All links that have been created. */
+	List<Link> links = new ArrayList<Link>();
+
+	/**
+	 * Adds links in both directions between two switches.
+	 */
+	private void connect(Cluster cluster, long sw1, long sw2) {
+		int port1 = nextPort.containsKey(sw1) ? nextPort.get(sw1) : 1;
+		int port2 = nextPort.containsKey(sw2) ? nextPort.get(sw2) : 1;
+		nextPort.put(sw1, port1 + 1);
+		nextPort.put(sw2, port2 + 1);
+		Link forward = new Link(sw1, port1, sw2, port2);
+		Link backward = new Link(sw2, port2, sw1, port1);
+		cluster.addLink(forward);
+		cluster.addLink(backward);
+		links.add(forward);
+		links.add(backward);
+	}
+
+	/**
+	 * Checks that the tree links of every node lead to the root at the cost of the node.
+	 */
+	private void assertValidTree(long root, BroadcastTree tree, Map<Link, Integer> linkCost) {
+		for (long node : tree.getCosts().keySet()) {
+			int cost = tree.getCost(node);
+			if (cost == TopologyInstance.MAX_PATH_WEIGHT) {
+				assertNull(tree.getTreeLink(node));
+				continue;
+			}
+			int length = 0;
+			long current = node;
+			while (tree.getTreeLink(current) != null) {
+				Link link = tree.getTreeLink(current);
+				assertEquals(current, link.getSrc());
+				length += linkCost.containsKey(link) ? linkCost.get(link) : 1;
+				current = link.getDst();
+			}
+			assertEquals(root, current);
+			assertEquals(cost, length);
+		}
+	}
+
+	@Test
+	public void testMatchesMapDijkstra() {
+		Random random = new Random(3);
+		List<Cluster> clusters = new ArrayList<Cluster>();
+		for (long base = 0; base < 300; base += 100) {
+			Cluster cluster = new Cluster();
+			for (long sw = base + 2; sw <= base + 60; sw++) {
+				connect(cluster, sw, base + 1 + random.nextInt((int) (sw - base - 1)));
+				connect(cluster, sw, base + 1 + random.nextInt(60));
+			}
+			clusters.add(cluster);
+		}
+		Map<Link, Integer> linkCost = new HashMap<Link, Integer>();
+		for (Link link : links) {
+			if (random.nextInt(4) == 0)
+				linkCost.put(link, 1 + random.nextInt(5));
+		}
+
+		Map<Long, BroadcastTree> trees = ShortestPathTreeCalculator.calculate(clusters, linkCost);
+		TopologyInstance ti = new TopologyInstance();
+		int nodeCount = 0;
+		for (Cluster cluster : clusters) {
+			nodeCount += cluster.getNodes().size();
+			for (long root : cluster.getNodes()) {
+				BroadcastTree expected = ti.dijkstra(cluster, root, linkCost, true);
+				BroadcastTree tree = trees.get(root);
+				assertEquals(expected.getCosts(), tree.getCosts());
+				assertEquals(expected.getLinks().keySet(), tree.getLinks().keySet());
+				assertNull(tree.getTreeLink(root));
+				assertValidTree(root, tree, linkCost);
+			}
+		}
+		assertEquals(nodeCount, trees.size());
+	}
+
+	@Test
+	public void testUnreachableNodes() {
+		Cluster cluster = new Cluster();
+		connect(cluster, 1L, 2L);
+		// A link from 3 to 2 only: 2 cannot reach 3.
+		cluster.addLink(new Link(3L, 1, 2L, 9));
+
+		Map<Long, BroadcastTree> trees = ShortestPathTreeCalculator.calculate(Arrays.asList(cluster), null);
+		assertEquals(3, trees.size());
+		BroadcastTree tree = trees.get(3L);
+		assertEquals(0, tree.getCost(3L));
+		assertEquals(TopologyInstance.MAX_PATH_WEIGHT, tree.getCost(1L));
+		assertNull(tree.getTreeLink(1L));
+		assertEquals(1, trees.get(2L).getCost(3L));
+		assertEquals(2, trees.get(1L).getCost(3L));
+		assertValidTree(2L, trees.get(2L), new HashMap<Link, Integer>());
+	}
+
+}
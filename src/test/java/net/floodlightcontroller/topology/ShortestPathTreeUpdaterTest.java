@@ -0,0 +1,246 @@
+package net.floodlightcontroller.topology;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.routing.Route;
+import net.floodlightcontroller.routing.RouteId;
+
+import org.junit.Test;
+
+public class ShortestPathTreeUpdaterTest {
+	/** The next free port per switch. */
+	Map<Long, Integer> nextPort = new HashMap<Long, Integer>();
+
+	/**
+	 * Creates links in both directions between two switches.
+	 */
+	private List<Link> connect(long sw1, long sw2) {
+		int port1 = nextPort.containsKey(sw1) ? nextPort.get(sw1) : 1;
+		int port2 = nextPort.containsKey(sw2) ? nextPort.get(sw2) : 1;
+		nextPort.put(sw1, port1 + 1);
+		nextPort.put(sw2, port2 + 1);
+		List<Link> links = new ArrayList<Link>();
+		links.add(new Link(sw1, port1, sw2, port2));
+		links.add(new Link(sw2, port2, sw1, port1));
+		return links;
+	}
+
+	private OlimpsCluster cluster(int nodes, Set<Link> links) {
+		OlimpsCluster cluster = new OlimpsCluster();
+		for (long sw = 1; sw <= nodes; sw++) {
+			cluster.add(sw);
+		}
+		for (Link link : links) {
+			cluster.addLink(link);
+		}
+		return cluster;
+	}
+
+	/**
+	 * Checks that the tree links of every node lead to the root at the cost of the node.
+	 */
+	private void assertValidTree(long root, BroadcastTree tree, Map<Link, Integer> linkCost) {
+		for (long node : tree.getCosts().keySet()) {
+			if (tree.getCost(node) == TopologyInstance.MAX_PATH_WEIGHT) {
+				assertNull(tree.getTreeLink(node));
+				continue;
+			}
+			int length = 0;
+			long current = node;
+			while (tree.getTreeLink(current) != null) {
+				Link link = tree.getTreeLink(current);
+				assertEquals(current, link.getSrc());
+				length += linkCost.containsKey(link) ? linkCost.get(link) : 1;
+				current = link.getDst();
+			}
+			assertEquals(root, current);
+			assertEquals(tree.getCost(node), length);
+		}
+	}
+
+	@Test
+	public void testRandomChanges() {
+		Random random = new Random(5);
+		int nodes = 40;
+		Set<Link> links = new HashSet<Link>();
+		for (long sw = 2; sw <= nodes; sw++) {
+			links.addAll(connect(sw, 1 + random.nextInt((int) sw - 1)));
+		}
+		Map<Link, Integer> linkCost = new HashMap<Link, Integer>();
+
+		OlimpsCluster cluster = cluster(nodes, links);
+		Map<Long, BroadcastTree> trees = ShortestPathTreeCalculator.calculate(Collections.singleton(cluster), linkCost);
+
+		for (int round = 0; round < 50; round++) {
+			// Remove some links, possibly disconnecting switches, and add others.
+			List<Link> current = new ArrayList<Link>(links);
+			Set<Link> removed = new HashSet<Link>();
+			Set<Link> added = new HashSet<Link>();
+			for (int i = random.nextInt(4); i > 0; i--) {
+				removed.add(current.get(random.nextInt(current.size())));
+			}
+			for (int i = random.nextInt(4); i > 0; i--) {
+				long sw1 = 1 + random.nextInt(nodes);
+				long sw2 = 1 + random.nextInt(nodes);
+				if (sw1 != sw2)
+					added.addAll(connect(sw1, sw2));
+			}
+			for (Link link : added) {
+				if (random.nextInt(3) == 0)
+					linkCost.put(link, 1 + random.nextInt(3));
+			}
+			links.removeAll(removed);
+			links.addAll(added);
+			cluster = cluster(nodes, links);
+
+			ShortestPathTreeUpdater updater = new ShortestPathTreeUpdater(cluster, removed, added, linkCost);
+			Map<Long, BroadcastTree> expected = ShortestPathTreeCalculator.calculate(Collections.singleton(cluster), linkCost);
+			Map<Long, BroadcastTree> updated = new HashMap<Long, BroadcastTree>();
+			for (long root : cluster.getNodes()) {
+				BroadcastTree previous = trees.get(root);
+				Map<Long, Link> previousLinks = new HashMap<Long, Link>(previous.getLinks());
+				BroadcastTree tree = updater.update(root, previous);
+
+				assertEquals(previousLinks, previous.getLinks());
+				assertEquals(expected.get(root).getCosts(), tree.getCosts());
+				assertValidTree(root, tree, linkCost);
+				for (long node : cluster.getNodes()) {
+					Link link = tree.getTreeLink(node);
+					boolean same = (link == null) ? previousLinks.get(node) == null : link.equals(previousLinks.get(node));
+					if (!same)
+						assertTrue(updater.getChangedNodes().contains(node));
+				}
+				updated.put(root, tree);
+			}
+			trees = updated;
+		}
+	}
+
+	@Test
+	public void testUnaffectedTreeIsShared() {
+		Set<Link> links = new HashSet<Link>();
+		links.addAll(connect(1L, 2L));
+		links.addAll(connect(2L, 3L));
+		List<Link> extra = connect(1L, 3L);
+		links.addAll(extra);
+		OlimpsCluster cluster = cluster(3, links);
+		Map<Long, BroadcastTree> trees = ShortestPathTreeCalculator.calculate(Collections.singleton(cluster), null);
+
+		// The link from 1 to 3 is the tree link of 1 in the tree of 3 only.
+		links.remove(extra.get(0));
+		cluster = cluster(3, links);
+		ShortestPathTreeUpdater updater = new ShortestPathTreeUpdater(cluster, Collections.singleton(extra.get(0)), new HashSet<Link>(), null);
+		assertSame(trees.get(1L), updater.update(1L, trees.get(1L)));
+		assertSame(trees.get(2L), updater.update(2L, trees.get(2L)));
+		BroadcastTree tree = updater.update(3L, trees.get(3L));
+		assertNotSame(trees.get(3L), tree);
+		assertEquals(2, tree.getCost(1L));
+		assertEquals(Collections.singleton(1L), updater.getChangedNodes());
+	}
+
+	/**
+	 * Creates a topology instance of a ring of switches.
+	 */
+	private TopologyInstance ring(int switches, Set<Link> skipped) {
+		return ring(switches, skipped, false);
+	}
+
+	/**
+	 * Creates a topology instance, or an OLIMPS topology instance, of a ring of switches.
+	 */
+	private TopologyInstance ring(int switches, Set<Link> skipped, boolean olimps) {
+		Map<Long, Set<Integer>> switchPorts = new HashMap<Long, Set<Integer>>();
+		Map<NodePortTuple, Set<Link>> switchPortLinks = new HashMap<NodePortTuple, Set<Link>>();
+		for (long sw = 1; sw <= switches; sw++) {
+			long next = (sw % switches) + 1;
+			Link[] links = {new Link(sw, 2, next, 1), new Link(next, 1, sw, 2)};
+			for (Link link : links) {
+				if (skipped.contains(link))
+					continue;
+				for (NodePortTuple npt : new NodePortTuple[] {new NodePortTuple(link.getSrc(), link.getSrcPort()), new NodePortTuple(link.getDst(), link.getDstPort())}) {
+					if (!switchPorts.containsKey(npt.getNodeId()))
+						switchPorts.put(npt.getNodeId(), new HashSet<Integer>());
+					switchPorts.get(npt.getNodeId()).add(npt.getPortId());
+					if (!switchPortLinks.containsKey(npt))
+						switchPortLinks.put(npt, new HashSet<Link>());
+					switchPortLinks.get(npt).add(link);
+				}
+			}
+		}
+		Set<NodePortTuple> none = new HashSet<NodePortTuple>();
+		if (olimps)
+			return new OlimpsTopologyInstance(switchPorts, none, switchPortLinks, new HashMap<NodePortTuple, Set<Link>>(), none);
+		return new TopologyInstance(switchPorts, none, switchPortLinks, none, none);
+	}
+
+	@Test
+	public void testIncrementalInstance() {
+		TopologyInstance first = ring(6, new HashSet<Link>());
+		first.compute(null, false);
+		assertFalse(first.isIncrementallyUpdated());
+		Route unaffected = first.getRoute(2L, 3L, 0);
+		Route affected = first.getRoute(4L, 6L, 0);
+		assertEquals(2, first.getCost(4L, 6L));
+
+		// Removing one direction of the link between 5 and 6 keeps the ring strongly connected.
+		TopologyInstance second = ring(6, Collections.singleton(new Link(5L, 2, 6L, 1)));
+		second.compute(first, true);
+		assertTrue(second.isIncrementallyUpdated());
+		assertFalse(second.isConsistencyCheckFailed());
+		assertEquals(1, second.getClusters().size());
+		assertEquals(4, second.getCost(4L, 6L));
+		assertTrue(second.pathcache.asMap().containsKey(new RouteId(2L, 3L)));
+		assertSame(unaffected, second.getRoute(2L, 3L, 0));
+		assertFalse(second.pathcache.asMap().containsKey(new RouteId(4L, 6L)));
+		assertFalse(affected.getPath().equals(second.getRoute(4L, 6L, 0).getPath()));
+
+		// Removing the other direction as well splits the cluster.
+		Set<Link> skipped = new HashSet<Link>();
+		skipped.add(new Link(5L, 2, 6L, 1));
+		skipped.add(new Link(6L, 1, 5L, 2));
+		skipped.add(new Link(2L, 2, 3L, 1));
+		TopologyInstance third = ring(6, skipped);
+		third.compute(second, true);
+		assertFalse(third.isIncrementallyUpdated());
+		assertEquals(2, third.getClusters().size());
+	}
+
+	@Test
+	public void testIncrementalOlimpsInstance() {
+		OlimpsTopologyInstance first = (OlimpsTopologyInstance) ring(6, new HashSet<Link>(), true);
+		first.compute(null, false);
+		assertFalse(first.isTopologyTreesIncrementallyUpdated());
+		assertFalse(first.isIncrementallyUpdated());
+
+		// Both the cluster trees and the trees of the whole topology are repaired.
+		OlimpsTopologyInstance second = (OlimpsTopologyInstance) ring(6, Collections.singleton(new Link(5L, 2, 6L, 1)), true);
+		second.compute(first, true);
+		assertTrue(second.isTopologyTreesIncrementallyUpdated());
+		assertTrue(second.isIncrementallyUpdated());
+		assertFalse(second.isConsistencyCheckFailed());
+
+		// Splitting the cluster rebuilds the cluster trees, whereas the
+		// trees of the whole topology, which contains all switches, are repaired.
+		Set<Link> skipped = new HashSet<Link>();
+		skipped.add(new Link(5L, 2, 6L, 1));
+		skipped.add(new Link(6L, 1, 5L, 2));
+		skipped.add(new Link(2L, 2, 3L, 1));
+		OlimpsTopologyInstance third = (OlimpsTopologyInstance) ring(6, skipped, true);
+		third.compute(second, true);
+		assertTrue(third.isTopologyTreesIncrementallyUpdated());
+		assertFalse(third.isIncrementallyUpdated());
+		assertFalse(third.isConsistencyCheckFailed());
+	}
+
+}
@@ -0,0 +1,180 @@
+package org.sdnplatform.sync.internal.store;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.sql.ConnectionPoolDataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sdnplatform.sync.IClosableIterator;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.error.ObsoleteVersionException;
+import org.sdnplatform.sync.error.PersistException;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.version.VectorClock;
+
+public class JavaDBStorageEngineTest {
+    private static int storeCount = 0;
+
+    protected ConnectionPoolDataSource dataSource;
+    protected String storeName;
+    protected JavaDBStorageEngine store;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = JavaDBStorageEngine.getDataSource(null, true);
+        storeName = "test.javadb" + (storeCount++);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (store != null) store.close();
+    }
+
+    private static ByteArray key(String key) {
+        return new ByteArray(key.getBytes());
+    }
+
+    private static Versioned<byte[]> value(String value, long version) {
+        // An old timestamp, so that tombstones can be cleaned up
+        VectorClock vc = new VectorClock(1L);
+        for (int i = 0; i < version; i++) {
+            vc = vc.incremented(1, 1L);
+        }
+        return new Versioned<byte[]>(value == null ? null : value.getBytes(),
+                                     vc);
+    }
+
+    private static String getValue(List<Versioned<byte[]>> values) {
+        assertEquals(1, values.size());
+        return new String(values.get(0).getValue());
+    }
+
+    @Test
+    public void testReadYourWrites() throws Exception {
+        store = new JavaDBStorageEngine(storeName, dataSource);
+        store.put(key("a"), value("a1", 1));
+        assertEquals("a1", getValue(store.get(key("a"))));
+        store.put(key("a"), value("a2", 2));
+        assertEquals("a2", getValue(store.get(key("a"))));
+        try {
+            store.put(key("a"), value("a0", 0));
+            fail("Expected ObsoleteVersionException");
+        } catch (ObsoleteVersionException e) {
+            // expected
+        }
+
+        assertTrue(store.waitForWrites(10000));
+        assertEquals("a2", getValue(store.get(key("a"))));
+        assertEquals(0, store.get(key("b")).size());
+    }
+
+    @Test
+    public void testIteratorMergesPendingWrites() throws Exception {
+        store = new JavaDBStorageEngine(storeName, dataSource);
+        for (int i = 0; i < 5; i++) {
+            store.put(key("k" + i), value("old" + i, 1));
+        }
+        assertTrue(store.waitForWrites(10000));
+
+        // Overwrite a committed key and add a new one, then iterate
+        // before the writer had a chance to commit them
+        store.put(key("k0"), value("new0", 2));
+        store.put(key("k5"), value("new5", 1));
+
+        Map<String, String> entries = new HashMap<String, String>();
+        IClosableIterator<Entry<ByteArray, List<Versioned<byte[]>>>> iter =
+                store.entries();
+        try {
+            while (iter.hasNext()) {
+                Entry<ByteArray, List<Versioned<byte[]>>> e = iter.next();
+                assertNull(entries.put(new String(e.getKey().get()),
+                                       getValue(e.getValue())));
+            }
+        } finally {
+            iter.close();
+        }
+        assertEquals(6, entries.size());
+        assertEquals("new0", entries.get("k0"));
+        assertEquals("old1", entries.get("k1"));
+        assertEquals("new5", entries.get("k5"));
+    }
+
+    @Test
+    public void testCleanupKeepsPendingWrites() throws Exception {
+        store = new JavaDBStorageEngine(storeName, dataSource);
+        store.setTombstoneInterval(0);
+        store.put(key("live"), value(null, 1));
+        store.put(key("dead"), value(null, 1));
+        assertTrue(store.waitForWrites(10000));
+
+        // A write that supersedes the tombstone must survive the cleanup,
+        // whether it is still pending or already committed
+        store.put(key("live"), value("revived", 2));
+        store.cleanupTask();
+        assertEquals("revived", getValue(store.get(key("live"))));
+        assertTrue(store.waitForWrites(10000));
+        assertEquals("revived", getValue(store.get(key("live"))));
+        assertEquals(0, store.get(key("dead")).size());
+    }
+
+    @Test
+    public void testKeyLength() throws Exception {
+        store = new JavaDBStorageEngine(storeName, dataSource);
+        byte[] longKey = new byte[3072];
+        Arrays.fill(longKey, (byte)'x');
+        store.put(new ByteArray(longKey), value("long", 1));
+
+        byte[] tooLongKey = new byte[3073];
+        Arrays.fill(tooLongKey, (byte)'x');
+        try {
+            store.put(new ByteArray(tooLongKey), value("too long", 1));
+            fail("Expected PersistException");
+        } catch (PersistException e) {
+            // expected
+        }
+
+        assertTrue(store.waitForWrites(10000));
+        assertEquals("long", getValue(store.get(new ByteArray(longKey))));
+    }
+
+    @Test
+    public void testPoisonRowDropped() throws Exception {
+        // Create the table with a key column that rejects long keys
+        Connection conn = dataSource.getPooledConnection().getConnection();
+        try {
+            Statement stmt = conn.createStatement();
+            stmt.execute("CREATE TABLE " + storeName.replace('.', '_') +
+                         " (datakey varchar(16) primary key, datavalue blob)");
+            stmt.close();
+        } finally {
+            conn.close();
+        }
+
+        store = new JavaDBStorageEngine(storeName, dataSource);
+        store.put(key("good1"), value("v1", 1));
+        store.put(key("poisonpoisonpoison"), value("bad", 1));
+        store.put(key("good2"), value("v2", 1));
+
+        // The poison row is dropped and does not hold up the others
+        assertTrue(store.waitForWrites(20000));
+        assertEquals(0, store.get(key("poisonpoisonpoison")).size());
+        store.put(key("good3"), value("v3", 1));
+        assertTrue(store.waitForWrites(20000));
+        store.close();
+
+        store = new JavaDBStorageEngine(storeName, dataSource);
+        assertEquals("v1", getValue(store.get(key("good1"))));
+        assertEquals("v2", getValue(store.get(key("good2"))));
+        assertEquals("v3", getValue(store.get(key("good3"))));
+    }
+}
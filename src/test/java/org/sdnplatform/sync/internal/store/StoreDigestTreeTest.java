@@ -0,0 +1,227 @@
+package org.sdnplatform.sync.internal.store;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.version.VectorClock;
+
+public class StoreDigestTreeTest {
+
+    private static ByteArray key(int i) {
+        return new ByteArray(("key" + i).getBytes());
+    }
+
+    private static Versioned<byte[]> value(String value, int version) {
+        // An old timestamp, so that tombstones can be cleaned up
+        VectorClock vc = new VectorClock(1L);
+        for (int i = 0; i < version; i++) {
+            vc = vc.incremented(1, 1L);
+        }
+        return new Versioned<byte[]>(value == null ? null : value.getBytes(),
+                                     vc);
+    }
+
+    private static void assertSameTree(StoreDigestTree expected,
+                                       StoreDigestTree actual) {
+        for (int node = 0; node < StoreDigestTree.NODES; node++) {
+            assertEquals("digest of node " + node,
+                         expected.getDigest(node), actual.getDigest(node));
+            assertEquals("count of node " + node,
+                         expected.getCount(node), actual.getCount(node));
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdateMatchesRebuild() throws Exception {
+        InMemoryStorageEngine<ByteArray, byte[]> store =
+                new InMemoryStorageEngine<ByteArray, byte[]>("test");
+        StoreDigestTree tree = new StoreDigestTree(store);
+        Random random = new Random(42);
+        int[] versions = new int[500];
+        for (int i = 0; i < 5000; i++) {
+            int k = random.nextInt(versions.length);
+            versions[k] += 1;
+            String v = random.nextInt(4) == 0 ? null : "value" + i;
+            store.put(key(k), value(v, versions[k]));
+            tree.update(key(k));
+        }
+        // Removing keys is applied incrementally as well
+        for (int k = 0; k < versions.length; k += 7) {
+            store.remove(key(k));
+            tree.update(key(k));
+        }
+
+        StoreDigestTree rebuilt = new StoreDigestTree(store);
+        rebuilt.rebuild();
+        assertSameTree(rebuilt, tree);
+        assertEquals(store.size(), tree.getCount(0));
+
+        // Rebuilding an up to date tree changes nothing
+        tree.rebuild();
+        assertSameTree(rebuilt, tree);
+    }
+
+    @Test
+    public void testInsertOrderIndependent() throws Exception {
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            order.add(i);
+        }
+        InMemoryStorageEngine<ByteArray, byte[]> store1 =
+                new InMemoryStorageEngine<ByteArray, byte[]>("test1");
+        InMemoryStorageEngine<ByteArray, byte[]> store2 =
+                new InMemoryStorageEngine<ByteArray, byte[]>("test2");
+        StoreDigestTree tree1 = new StoreDigestTree(store1);
+        StoreDigestTree tree2 = new StoreDigestTree(store2);
+        for (int i : order) {
+            store1.put(key(i), value("v" + i, 1));
+            tree1.update(key(i));
+        }
+        Collections.shuffle(order, new Random(7));
+        for (int i : order) {
+            store2.put(key(i), value("v" + i, 1));
+            tree2.update(key(i));
+        }
+        assertSameTree(tree1, tree2);
+        assertTrue(tree1.getDigest(0) != 0);
+
+        // A different version of a single key changes the root
+        store2.put(key(0), value("v0", 2));
+        tree2.update(key(0));
+        assertTrue(tree1.getDigest(0) != tree2.getDigest(0));
+    }
+
+    @Test
+    public void testTombstones() throws Exception {
+        InMemoryStorageEngine<ByteArray, byte[]> store =
+                new InMemoryStorageEngine<ByteArray, byte[]>("test");
+        StoreDigestTree tree = new StoreDigestTree(store);
+        assertEquals(0, tree.getDigest(0));
+
+        store.put(key(1), value("v1", 1));
+        tree.update(key(1));
+        long live = tree.getDigest(0);
+        assertTrue(live != 0);
+
+        // A tombstone is a version of its own and still counts as a key
+        store.put(key(1), value(null, 2));
+        tree.update(key(1));
+        long dead = tree.getDigest(0);
+        assertTrue(dead != 0);
+        assertTrue(dead != live);
+        assertEquals(1, tree.getCount(0));
+        assertEquals(Collections.singletonList(key(1)), tree.getKeys(0));
+
+        // Once the tombstone is cleaned up, the key is gone from the tree
+        store.setTombstoneInterval(0);
+        store.cleanupTask();
+        assertFalse(store.containsKey(key(1)));
+        tree.update(key(1));
+        assertEquals(0, tree.getDigest(0));
+        assertEquals(0, tree.getCount(0));
+        assertTrue(tree.getKeys(0).isEmpty());
+    }
+
+    @Test
+    public void testGetKeys() throws Exception {
+        InMemoryStorageEngine<ByteArray, byte[]> store =
+                new InMemoryStorageEngine<ByteArray, byte[]>("test");
+        StoreDigestTree tree = new StoreDigestTree(store);
+        Set<ByteArray> all = new HashSet<ByteArray>();
+        for (int i = 0; i < 2000; i++) {
+            store.put(key(i), value("v" + i, 1));
+            tree.update(key(i));
+            all.add(key(i));
+        }
+        assertEquals(all, new HashSet<ByteArray>(tree.getKeys(0)));
+
+        // The keys of a leaf are the keys hashed into its bucket
+        int leaf = StoreDigestTree.FIRST_LEAF +
+                StoreDigestTree.getBucket(key(0));
+        for (ByteArray k : tree.getKeys(leaf)) {
+            assertEquals(leaf - StoreDigestTree.FIRST_LEAF,
+                         StoreDigestTree.getBucket(k));
+        }
+        assertTrue(tree.getKeys(leaf).contains(key(0)));
+
+        // The keys of an inner node are the keys of its children
+        int inner = (leaf - 1) / StoreDigestTree.FANOUT;
+        Set<ByteArray> children = new HashSet<ByteArray>();
+        int first = StoreDigestTree.getFirstChild(inner);
+        for (int c = first; c < first + StoreDigestTree.FANOUT; c++) {
+            children.addAll(tree.getKeys(c));
+        }
+        assertEquals(children, new HashSet<ByteArray>(tree.getKeys(inner)));
+        assertEquals(tree.getCount(inner), children.size());
+    }
+
+    @Test
+    public void testExchangeOffersDivergentBuckets() throws Exception {
+        InMemoryStorageEngine<ByteArray, byte[]> local =
+                new InMemoryStorageEngine<ByteArray, byte[]>("local");
+        InMemoryStorageEngine<ByteArray, byte[]> remote =
+                new InMemoryStorageEngine<ByteArray, byte[]>("remote");
+        for (int i = 0; i < 1000; i++) {
+            local.put(key(i), value("v" + i, 1));
+            remote.put(key(i), value("v" + i, 1));
+        }
+        // Keys that are newer locally or missing remotely
+        Set<ByteArray> divergent = new HashSet<ByteArray>();
+        for (int i = 0; i < 1000; i += 250) {
+            local.put(key(i), value("new" + i, 2));
+            divergent.add(key(i));
+        }
+        local.put(key(5000), value("v5000", 1));
+        divergent.add(key(5000));
+
+        StoreDigestTree localTree = new StoreDigestTree(local);
+        StoreDigestTree remoteTree = new StoreDigestTree(remote);
+        localTree.rebuild();
+        remoteTree.rebuild();
+
+        // Run the exchange of SyncManager.antientropy
+        List<Integer> nodes = Collections.singletonList(0);
+        List<Long> digests =
+                Collections.singletonList(localTree.getDigest(0));
+        List<ByteArray> offered = new ArrayList<ByteArray>();
+        int rounds = 0;
+        while (!nodes.isEmpty()) {
+            List<Integer> diffNodes = new ArrayList<Integer>();
+            List<Long> diffDigests = new ArrayList<Long>();
+            remoteTree.compare(nodes, digests, diffNodes, diffDigests);
+
+            nodes = new ArrayList<Integer>();
+            digests = new ArrayList<Long>();
+            localTree.expand(diffNodes, diffDigests, nodes, digests, offered);
+            rounds += 1;
+        }
+        assertEquals(StoreDigestTree.DEPTH + 1, rounds);
+
+        // Only the keys of the buckets that differ are offered
+        Set<Integer> divergentBuckets = new HashSet<Integer>();
+        for (ByteArray k : divergent) {
+            divergentBuckets.add(StoreDigestTree.getBucket(k));
+        }
+        assertTrue(offered.containsAll(divergent));
+        for (ByteArray k : offered) {
+            assertTrue(divergentBuckets.contains(StoreDigestTree.getBucket(k)));
+        }
+        assertTrue(offered.size() < 20);
+
+        // Stores in sync stop after comparing the root
+        List<Integer> diffNodes = new ArrayList<Integer>();
+        remoteTree.compare(Collections.singletonList(0),
+                           Collections.singletonList(remoteTree.getDigest(0)),
+                           diffNodes, new ArrayList<Long>());
+        assertTrue(diffNodes.isEmpty());
+    }
+}